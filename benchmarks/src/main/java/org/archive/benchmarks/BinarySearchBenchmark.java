@@ -0,0 +1,124 @@
+package org.archive.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.binsearch.SeekableLineReaderFactory;
+import org.archive.util.binsearch.SortedTextFile;
+import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory;
+import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory.HttpLibs;
+import org.archive.util.binsearch.impl.MappedSeekableLineReaderFactory;
+import org.archive.util.binsearch.impl.NIOSeekableLineReaderFactory;
+import org.archive.util.binsearch.impl.NIOSeekableLineReaderFactory.NIOType;
+import org.archive.util.binsearch.impl.RandomAccessFileSeekableLineReaderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Looks up keys in a sorted CDX file with
+ * {@link SortedTextFile#binaryFindOffset(SeekableLineReader, String, java.util.Comparator)},
+ * through each {@link SeekableLineReader}. The local ones are named as in
+ * SeekCDXBenchmarker: bio (RandomAccessFile), nio (FileChannel), mmap
+ * (mapped block per read) and bigmap (whole file mapped). http reads
+ * ranges of the file served on the loopback address, with the pooled
+ * {@link HttpLibs#APACHE_43_POOLED} readers: the other http readers don't
+ * report the size of the file, so they can't be binary searched.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinarySearchBenchmark {
+
+	private final static int NUM_KEYS = 1024;
+
+	@Param({"bio", "nio", "mmap", "bigmap", "http"})
+	public String reader;
+
+	@Param({"200000"})
+	public int lines;
+
+	private File dir;
+	private HttpServer server;
+	private SeekableLineReaderFactory factory;
+	private SortedTextFile sorted;
+	private String[] keys;
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next = 0;
+	}
+
+	@Setup
+	public void setup() throws IOException, URISyntaxException {
+		dir = Fixtures.createTempDir();
+		List<String> cdx = new Fixtures(18).cdxLines(lines);
+		File file = Fixtures.writeLines(new File(dir, "index.cdx"), cdx);
+
+		int blockSize = SeekableLineReaderFactory.BINSEARCH_BLOCK_SIZE;
+		if (reader.equals("bio")) {
+			factory = new RandomAccessFileSeekableLineReaderFactory(file, blockSize);
+		} else if (reader.equals("nio")) {
+			factory = new NIOSeekableLineReaderFactory(file, blockSize, NIOType.PLAIN);
+		} else if (reader.equals("mmap")) {
+			factory = new NIOSeekableLineReaderFactory(file, blockSize, NIOType.MMAP);
+		} else if (reader.equals("bigmap")) {
+			factory = new MappedSeekableLineReaderFactory(file, blockSize);
+		} else if (reader.equals("http")) {
+			server = Fixtures.serve(file);
+			HTTPSeekableLineReaderFactory http = HTTPSeekableLineReaderFactory.getHttpFactory(
+					HttpLibs.APACHE_43_POOLED, Fixtures.url(server));
+			http.setSocketTimeoutMS(10000);
+			factory = http;
+		} else {
+			throw new IllegalArgumentException("Unknown reader " + reader);
+		}
+		sorted = new SortedTextFile(factory);
+
+		// urlkeys of lines in the file, in random order
+		Random random = new Random(18);
+		keys = new String[NUM_KEYS];
+		for (int i = 0; i < NUM_KEYS; i++) {
+			String line = cdx.get(random.nextInt(cdx.size()));
+			keys[i] = line.substring(0, line.indexOf(' '));
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		factory.close();
+		if (server != null) {
+			server.stop();
+		}
+		Fixtures.delete(dir);
+	}
+
+	@Benchmark
+	public long binaryFindOffset(Cursor cursor) throws IOException {
+		String key = keys[cursor.next++ & (NUM_KEYS - 1)];
+		SeekableLineReader slr = factory.get();
+		try {
+			return sorted.binaryFindOffset(slr, key, SortedTextFile.defaultComparator);
+		} finally {
+			slr.close();
+		}
+	}
+}
@@ -0,0 +1,382 @@
+package org.archive.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.archive.format.gzip.zipnum.ZipNumCluster;
+import org.archive.format.warc.WARCConstants;
+import org.archive.format.warc.WARCConstants.WARCRecordType;
+import org.archive.io.arc.ARCWriter;
+import org.archive.io.arc.WriterPoolSettingsData;
+import org.archive.io.warc.WARCRecordInfo;
+import org.archive.io.warc.WARCWriter;
+import org.archive.io.warc.WARCWriterPoolSettingsData;
+import org.archive.uid.UUIDGenerator;
+import org.archive.url.WaybackURLKeyMaker;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Synthetic, reproducible fixtures for the benchmarks: URLs, HTTP headers,
+ * HTML pages, and WARC, ARC, CDX and ZipNum files written to a temporary
+ * directory. The same seed gives the same fixtures.
+ */
+public class Fixtures {
+
+	private final static String[] HOSTS = {
+		"example.com", "www.example.com", "archive.org", "web.archive.org",
+		"en.wikipedia.org", "news.bbc.co.uk", "www.gov.uk", "blog.example.net:8080",
+		"WWW.Example.ORG", "sub.domain.example.co.jp", "192.168.1.20", "xn--bcher-kva.example"
+	};
+
+	private final static String[] WORDS = {
+		"index", "news", "article", "2019", "images", "static", "css", "js",
+		"about", "contact", "search", "category", "Tag", "page", "user", "wiki"
+	};
+
+	private final static String[] MIMES = {
+		"text/html", "text/html", "text/html", "image/jpeg", "text/css",
+		"application/javascript", "application/pdf", "image/png"
+	};
+
+	private final static AtomicInteger SERIAL_NO = new AtomicInteger();
+
+	protected final Random random;
+
+	public Fixtures(long seed) {
+		this.random = new Random(seed);
+	}
+
+	public String url() {
+		StringBuilder sb = new StringBuilder(random.nextInt(10) == 0 ? "https://" : "http://");
+		sb.append(HOSTS[random.nextInt(HOSTS.length)]);
+		int depth = random.nextInt(5);
+		for (int i = 0; i < depth; i++) {
+			sb.append('/').append(WORDS[random.nextInt(WORDS.length)]);
+			if (random.nextInt(4) == 0) {
+				sb.append(random.nextInt(10000));
+			}
+		}
+		sb.append((depth == 0 || random.nextBoolean()) ? "/" : ".html");
+		if (random.nextInt(3) == 0) {
+			sb.append("?id=").append(random.nextInt(100000));
+			if (random.nextBoolean()) {
+				sb.append("&sessionid=").append(Long.toHexString(random.nextLong()));
+			}
+			sb.append("&q=").append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		if (random.nextInt(20) == 0) {
+			sb.append("#top");
+		}
+		return sb.toString();
+	}
+
+	public String[] urls(int count) {
+		String[] urls = new String[count];
+		for (int i = 0; i < count; i++) {
+			urls[i] = url();
+		}
+		return urls;
+	}
+
+	public String timestamp() {
+		return String.format(Locale.ROOT, "20%02d%02d%02d%02d%02d%02d", 10 + random.nextInt(15),
+				1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24),
+				random.nextInt(60), random.nextInt(60));
+	}
+
+	/**
+	 * @return the header block of an HTTP response, with the status line
+	 */
+	public String httpResponseHeaders(int contentLength) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(random.nextInt(5) == 0 ? "HTTP/1.1 301 Moved Permanently\r\n" : "HTTP/1.1 200 OK\r\n");
+		sb.append("Date: Mon, 04 Mar 2019 05:06:07 GMT\r\n");
+		sb.append("Server: Apache/2.4.29 (Ubuntu)\r\n");
+		sb.append("Content-Type: text/html; charset=UTF-8\r\n");
+		sb.append("Content-Length: ").append(contentLength).append("\r\n");
+		sb.append("Last-Modified: Sat, 02 Mar 2019 10:11:12 GMT\r\n");
+		sb.append("ETag: \"").append(Long.toHexString(random.nextLong())).append("\"\r\n");
+		sb.append("Cache-Control: max-age=").append(random.nextInt(86400)).append(", public\r\n");
+		sb.append("Vary: Accept-Encoding,\r\n\tCookie\r\n");
+		int cookies = random.nextInt(3);
+		for (int i = 0; i < cookies; i++) {
+			sb.append("Set-Cookie: c").append(i).append('=').append(Long.toHexString(random.nextLong()))
+				.append("; Path=/; HttpOnly\r\n");
+		}
+		sb.append("X-Robots-Tag: noarchive\r\n");
+		sb.append("Connection: close\r\n");
+		sb.append("\r\n");
+		return sb.toString();
+	}
+
+	/**
+	 * @return a page with about links anchors, with the head, scripts,
+	 * styles, forms and text of a typical page
+	 */
+	public String htmlPage(int links) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<!DOCTYPE html>\n<html lang=\"en\"><head>\n");
+		sb.append("<meta charset=\"utf-8\">\n");
+		sb.append("<title>").append(WORDS[random.nextInt(WORDS.length)]).append(" page</title>\n");
+		sb.append("<meta name=\"description\" content=\"A synthetic page for benchmarks\">\n");
+		sb.append("<meta name=\"robots\" content=\"index, follow\">\n");
+		sb.append("<link rel=\"stylesheet\" href=\"/static/main.css\">\n");
+		sb.append("<link rel=\"canonical\" href=\"").append(url()).append("\">\n");
+		sb.append("<style>body { background: url('/images/bg.png'); } .logo { background-image: url(\"/images/logo.svg\"); }</style>\n");
+		sb.append("<script src=\"/static/app.js\"></script>\n");
+		sb.append("<script>var config = {\"a\": \"<b>\", url: '/api/v1'}; if (a < b && b > c) { run(); }</script>\n");
+		sb.append("</head><body class=\"home\">\n<!-- navigation -->\n<div id=\"nav\"><ul>\n");
+		for (int i = 0; i < links; i++) {
+			switch (random.nextInt(6)) {
+			case 0:
+				sb.append("<li><img src=\"/images/").append(i).append(".jpg\" alt=\"image ").append(i).append("\"></li>\n");
+				break;
+			case 1:
+				sb.append("<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore &amp; dolore magna aliqua.</p>\n");
+				break;
+			default:
+				sb.append("<li><a href=\"").append(random.nextBoolean() ? url() : "/" + WORDS[random.nextInt(WORDS.length)] + "/" + i)
+					.append("\" title=\"link ").append(i).append("\">").append(WORDS[random.nextInt(WORDS.length)])
+					.append(" &raquo;</a></li>\n");
+			}
+		}
+		sb.append("</ul></div>\n");
+		sb.append("<form action=\"/search\" method=\"get\"><input type=\"text\" name=\"q\"><input type=\"submit\" value=\"Go\"></form>\n");
+		sb.append("<iframe src=\"/embed/video\"></iframe>\n");
+		sb.append("</body></html>\n");
+		return sb.toString();
+	}
+
+	/**
+	 * @return lines sorted CDX lines of fetches of random URLs
+	 */
+	public List<String> cdxLines(int lines) throws URISyntaxException {
+		WaybackURLKeyMaker keyMaker = new WaybackURLKeyMaker();
+		List<String> result = new ArrayList<String>(lines);
+		while (result.size() < lines) {
+			String url = url();
+			String key = keyMaker.makeKey(url);
+			if (key == null || key.isEmpty() || key.indexOf(' ') >= 0) {
+				continue;
+			}
+			result.add(String.format(Locale.ROOT, "%s %s %s %s %d %s - - %d %d crawl-%05d.warc.gz",
+					key, timestamp(), url, MIMES[random.nextInt(MIMES.length)],
+					random.nextInt(10) == 0 ? 301 : 200, sha1(), 500 + random.nextInt(50000),
+					random.nextInt(1000000000), random.nextInt(100)));
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	private String sha1() {
+		char[] digest = new char[32];
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+		for (int i = 0; i < digest.length; i++) {
+			digest[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+		}
+		return new String(digest);
+	}
+
+	public static File writeLines(File file, List<String> lines) throws IOException {
+		PrintWriter pw = new PrintWriter(file, UTF_8.name());
+		for (String line : lines) {
+			pw.print(line);
+			pw.print('\n');
+		}
+		pw.close();
+		return file;
+	}
+
+	/**
+	 * Write a ZipNum cluster of sorted lines: parts of blocksPerPart gzip
+	 * members of linesPerBlock lines, with ALL.summary and ALL.loc.
+	 *
+	 * @return the cluster, initialized
+	 */
+	public static ZipNumCluster writeZipNum(File dir, List<String> lines, int linesPerBlock,
+			int blocksPerPart) throws IOException {
+		PrintWriter summary = new PrintWriter(new File(dir, "ALL.summary"), UTF_8.name());
+		PrintWriter loc = new PrintWriter(new File(dir, "ALL.loc"), UTF_8.name());
+		OutputStream part = null;
+		String partId = null;
+		long offset = 0;
+		int block = 0;
+
+		for (int start = 0; start < lines.size(); start += linesPerBlock, block++) {
+			if (block % blocksPerPart == 0) {
+				if (part != null) {
+					part.close();
+				}
+				partId = String.format(Locale.ROOT, "part-%05d", block / blocksPerPart);
+				File partFile = new File(dir, partId + ".gz");
+				part = new FileOutputStream(partFile);
+				offset = 0;
+				loc.print(partId + "\t" + partFile.getAbsolutePath() + "\n");
+			}
+			ByteArrayOutputStream member = new ByteArrayOutputStream();
+			GZIPOutputStream gzos = new GZIPOutputStream(member);
+			int end = Math.min(start + linesPerBlock, lines.size());
+			for (int i = start; i < end; i++) {
+				gzos.write((lines.get(i) + "\n").getBytes(UTF_8));
+			}
+			gzos.close();
+			member.writeTo(part);
+
+			String first = lines.get(start);
+			String key = first.substring(0, first.indexOf(' ', first.indexOf(' ') + 1));
+			summary.print(key + "\t" + partId + "\t" + offset + "\t" + member.size() + "\t" + block + "\n");
+			offset += member.size();
+		}
+		if (part != null) {
+			part.close();
+		}
+		summary.close();
+		loc.close();
+
+		ZipNumCluster cluster = new ZipNumCluster();
+		cluster.setSummaryFile(new File(dir, "ALL.summary").getAbsolutePath());
+		cluster.setLocFile(new File(dir, "ALL.loc").getAbsolutePath());
+		cluster.setCheckInterval(0);
+		cluster.setCdxLinesPerBlock(linesPerBlock);
+		cluster.init();
+		return cluster;
+	}
+
+	/**
+	 * @return a WARC with a response record, with an HTML page, for each of
+	 * records random URLs
+	 */
+	public File writeWARC(File dir, int records, boolean compress) throws IOException {
+		UUIDGenerator generator = new UUIDGenerator();
+		WARCWriter w = new WARCWriter(SERIAL_NO, new WARCWriterPoolSettingsData(
+				"fixture", "${prefix}", Long.MAX_VALUE, compress, Arrays.asList(dir),
+				Collections.<String>emptyList(), generator));
+		for (int i = 0; i < records; i++) {
+			byte[] content = httpResponse(20 + random.nextInt(100));
+			WARCRecordInfo recordInfo = new WARCRecordInfo();
+			recordInfo.setType(WARCRecordType.response);
+			recordInfo.setUrl(url());
+			recordInfo.setCreate14DigitDate(timestamp());
+			recordInfo.setMimetype(WARCConstants.HTTP_RESPONSE_MIMETYPE);
+			recordInfo.setRecordId(generator.getRecordID());
+			recordInfo.setContentLength(content.length);
+			recordInfo.setContentStream(new ByteArrayInputStream(content));
+			recordInfo.setEnforceLength(true);
+			w.writeRecord(recordInfo);
+		}
+		w.close();
+		return w.getFile();
+	}
+
+	/**
+	 * @return an ARC with a record, with an HTML page, for each of records
+	 * random URLs
+	 */
+	public File writeARC(File dir, int records, boolean compress) throws IOException {
+		ARCWriter w = new ARCWriter(SERIAL_NO, new WriterPoolSettingsData(
+				"fixture", "${prefix}", Long.MAX_VALUE, compress, Arrays.asList(dir),
+				Collections.<String>emptyList()));
+		for (int i = 0; i < records; i++) {
+			byte[] content = httpResponse(20 + random.nextInt(100));
+			w.write(url(), "text/html", "192.168.1.20", System.currentTimeMillis(),
+					content.length, new ByteArrayInputStream(content));
+		}
+		w.close();
+		return w.getFile();
+	}
+
+	/**
+	 * @return an HTTP response, headers and HTML page
+	 */
+	public byte[] httpResponse(int links) {
+		byte[] page = htmlPage(links).getBytes(UTF_8);
+		byte[] headers = httpResponseHeaders(page.length).getBytes(ISO_8859_1);
+		byte[] response = Arrays.copyOf(headers, headers.length + page.length);
+		System.arraycopy(page, 0, response, headers.length, page.length);
+		return response;
+	}
+
+	/**
+	 * Serve the file, and single byte ranges of it, at /data on the loopback
+	 * address, from memory.
+	 *
+	 * @return the server, started, to be stopped by the caller
+	 */
+	public static HttpServer serve(File file) throws IOException {
+		final byte[] data = Files.readAllBytes(file.toPath());
+		HttpServer server = ServerBootstrap.bootstrap()
+				.setLocalAddress(InetAddress.getLoopbackAddress())
+				.setListenerPort(0)
+				.registerHandler("/data", new HttpRequestHandler() {
+					@Override
+					public void handle(HttpRequest request, HttpResponse response, HttpContext context) {
+						if (request.getFirstHeader("Range") == null) {
+							response.setEntity(new ByteArrayEntity(data));
+							return;
+						}
+						String range = request.getFirstHeader("Range").getValue();
+						String[] startEnd = range.substring("bytes=".length()).split("-", -1);
+						int start = Integer.parseInt(startEnd[0]);
+						int end = startEnd[1].isEmpty() ? data.length - 1
+								: Math.min(Integer.parseInt(startEnd[1]), data.length - 1);
+						if (start >= data.length) {
+							response.setStatusCode(416);
+							response.setHeader("Content-Range", "bytes */" + data.length);
+							return;
+						}
+						response.setStatusCode(206);
+						response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+						response.setEntity(new ByteArrayEntity(Arrays.copyOfRange(data, start, end + 1)));
+					}
+				})
+				.create();
+		server.start();
+		return server;
+	}
+
+	/**
+	 * @return the URL of the file served by {@link #serve(File)}
+	 */
+	public static String url(HttpServer server) {
+		return "http://localhost:" + server.getLocalPort() + "/data";
+	}
+
+	public static File createTempDir() throws IOException {
+		return Files.createTempDirectory("ia-web-commons-benchmarks").toFile();
+	}
+
+	public static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
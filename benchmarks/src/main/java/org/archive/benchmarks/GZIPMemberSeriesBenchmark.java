@@ -0,0 +1,100 @@
+package org.archive.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.format.gzip.GZIPMagicScanner;
+import org.archive.format.gzip.GZIPMemberSeries;
+import org.archive.format.gzip.GZIPSeriesMember;
+import org.archive.streamcontext.SimpleStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Iterates over the gzip members of a WARC or ARC file held in memory,
+ * skipping (inflating) each member, or reading it through, and scans it for
+ * gzip magic bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GZIPMemberSeriesBenchmark {
+
+	@Param({"warc", "arc"})
+	public String format;
+
+	@Param({"1000"})
+	public int records;
+
+	private byte[] data;
+	private final byte[] buffer = new byte[8192];
+
+	@Setup
+	public void setup() throws IOException {
+		File dir = Fixtures.createTempDir();
+		try {
+			Fixtures fixtures = new Fixtures(18);
+			File file = format.equals("arc") ? fixtures.writeARC(dir, records, true)
+					: fixtures.writeWARC(dir, records, true);
+			data = Files.readAllBytes(file.toPath());
+		} finally {
+			Fixtures.delete(dir);
+		}
+	}
+
+	@Benchmark
+	public int skipMembers() throws IOException {
+		GZIPMemberSeries series = new GZIPMemberSeries(
+				new SimpleStream(new ByteArrayInputStream(data)), format, 0);
+		int count = 0;
+		GZIPSeriesMember member;
+		while ((member = series.getNextMember()) != null) {
+			member.skipMember();
+			count++;
+		}
+		series.close();
+		return count;
+	}
+
+	@Benchmark
+	public long readMembers() throws IOException {
+		GZIPMemberSeries series = new GZIPMemberSeries(
+				new SimpleStream(new ByteArrayInputStream(data)), format, 0);
+		long total = 0;
+		GZIPSeriesMember member;
+		while ((member = series.getNextMember()) != null) {
+			int read;
+			while ((read = member.read(buffer, 0, buffer.length)) != -1) {
+				total += read;
+			}
+		}
+		series.close();
+		return total;
+	}
+
+	@Benchmark
+	public int scanMagic() {
+		int count = 0;
+		int i = GZIPMagicScanner.indexOfMagic(data, 0, data.length);
+		while (i <= data.length - 3) {
+			count++;
+			i = GZIPMagicScanner.indexOfMagic(data, i + 1, data.length);
+		}
+		return count;
+	}
+}
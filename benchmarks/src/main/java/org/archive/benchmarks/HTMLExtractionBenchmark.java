@@ -0,0 +1,61 @@
+package org.archive.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.format.text.html.CDATALexer;
+import org.archive.format.text.html.LexParser;
+import org.archive.resource.MetaData;
+import org.archive.resource.html.ExtractingParseObserver;
+import org.archive.resource.html.HTMLMetaData;
+import org.htmlparser.lexer.Page;
+import org.htmlparser.util.ParserException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Extracts the links and metadata of HTML pages with
+ * {@link ExtractingParseObserver} driven by {@link LexParser}, as
+ * HTMLResourceFactory does for WAT extraction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HTMLExtractionBenchmark {
+
+	/** elements in the body of a page, most of them links */
+	@Param({"50", "500"})
+	public int links;
+
+	private byte[] page;
+
+	@Setup
+	public void setup() {
+		page = new Fixtures(18).htmlPage(links).getBytes(UTF_8);
+	}
+
+	@Benchmark
+	public HTMLMetaData extract() throws IOException, ParserException {
+		HTMLMetaData md = new HTMLMetaData(new MetaData());
+		LexParser parser = new LexParser(new ExtractingParseObserver(md));
+		CDATALexer lex = new CDATALexer();
+		lex.setPage(new Page(new ByteArrayInputStream(page), UTF_8.name()));
+		parser.doParse(lex);
+		return md;
+	}
+}
@@ -0,0 +1,67 @@
+package org.archive.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.format.http.HttpHeaderParser;
+import org.archive.format.http.HttpHeaders;
+import org.archive.format.http.HttpParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * Parses the header blocks of HTTP responses, from byte arrays and from
+ * buffered streams, after their status line, as the WARC and ARC readers do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpHeaderParserBenchmark {
+
+	private final static int NUM_HEADERS = 100;
+
+	private byte[][] headers;
+	private final HttpHeaderParser parser = new HttpHeaderParser();
+
+	@Setup
+	public void setup() {
+		Fixtures fixtures = new Fixtures(18);
+		headers = new byte[NUM_HEADERS][];
+		for (int i = 0; i < NUM_HEADERS; i++) {
+			String response = fixtures.httpResponseHeaders(1000 + i);
+			headers[i] = response.substring(response.indexOf('\n') + 1).getBytes(ISO_8859_1);
+		}
+	}
+
+	@Benchmark
+	public void parseBytes(Blackhole bh) throws HttpParseException {
+		for (byte[] h : headers) {
+			bh.consume(parser.parseHeaders(h, 0, h.length));
+		}
+	}
+
+	@Benchmark
+	public void parseStream(Blackhole bh) throws IOException {
+		for (byte[] h : headers) {
+			HttpHeaders parsed = parser.parseHeaders(
+					new BufferedInputStream(new ByteArrayInputStream(h)));
+			bh.consume(parsed);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package org.archive.benchmarks;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.util.iterator.AbstractPeekableIterator;
+import org.archive.util.iterator.PeekableIterator;
+import org.archive.util.iterator.SortedCompositeIterator;
+import org.archive.util.iterator.StringPrefixComparator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Merges sorted CDX lines from 2 to 1024 iterators with
+ * {@link SortedCompositeIterator}, with a plain comparator and with
+ * {@link StringPrefixComparator}, and with the PriorityQueue merge it
+ * replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SortedMergeBenchmark {
+
+	final static Comparator<String> PLAIN = new Comparator<String>() {
+		public int compare(String s1, String s2) {
+			return s1.compareTo(s2);
+		}
+	};
+
+	/**
+	 * The merge SortedCompositeIterator did before the loser tree: polls and
+	 * re-inserts the iterator of each element taken.
+	 */
+	static class PriorityQueueMerge<E> implements Iterator<E> {
+		final PriorityQueue<PeekableIterator<E>> q;
+
+		PriorityQueueMerge(int capacity, final Comparator<E> comparator) {
+			q = new PriorityQueue<PeekableIterator<E>>(capacity, new Comparator<PeekableIterator<E>>() {
+				public int compare(PeekableIterator<E> o1, PeekableIterator<E> o2) {
+					return comparator.compare(o1.peek(), o2.peek());
+				}
+			});
+		}
+
+		void addIterator(Iterator<E> itr) {
+			PeekableIterator<E> i = AbstractPeekableIterator.wrap(itr);
+			if (i.hasNext()) {
+				q.add(i);
+			}
+		}
+
+		public boolean hasNext() {
+			return (q.peek() != null);
+		}
+
+		public E next() {
+			PeekableIterator<E> i = q.poll();
+			E tmp = i.next();
+			if (i.hasNext()) {
+				q.add(i);
+			}
+			return tmp;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	@Param({"2", "16", "256", "1024"})
+	public int inputs;
+
+	@Param({"100000"})
+	public int lines;
+
+	private String[][] data;
+
+	@Setup
+	public void setup() throws URISyntaxException {
+		List<String> cdx = new Fixtures(18).cdxLines(lines);
+		Random random = new Random(inputs);
+		List<List<String>> lists = new ArrayList<List<String>>();
+		for (int i = 0; i < inputs; i++) {
+			lists.add(new ArrayList<String>());
+		}
+		// still sorted in each input
+		for (String line : cdx) {
+			lists.get(random.nextInt(inputs)).add(line);
+		}
+		data = new String[inputs][];
+		for (int i = 0; i < inputs; i++) {
+			data[i] = lists.get(i).toArray(new String[0]);
+		}
+	}
+
+	private static int drain(Iterator<String> itr) {
+		int count = 0;
+		while (itr.hasNext()) {
+			itr.next();
+			count++;
+		}
+		return count;
+	}
+
+	@Benchmark
+	public int priorityQueue() {
+		PriorityQueueMerge<String> merge = new PriorityQueueMerge<String>(inputs, PLAIN);
+		for (String[] input : data) {
+			merge.addIterator(Arrays.asList(input).iterator());
+		}
+		return drain(merge);
+	}
+
+	@Benchmark
+	public int loserTree() {
+		SortedCompositeIterator<String> merge = new SortedCompositeIterator<String>(inputs, PLAIN);
+		for (String[] input : data) {
+			merge.addIterator(Arrays.asList(input).iterator());
+		}
+		return drain(merge);
+	}
+
+	@Benchmark
+	public int loserTreePrefix() {
+		SortedCompositeIterator<String> merge = new SortedCompositeIterator<String>(inputs,
+				StringPrefixComparator.NATURAL);
+		for (String[] input : data) {
+			merge.addIterator(Arrays.asList(input).iterator());
+		}
+		return drain(merge);
+	}
+}
@@ -0,0 +1,52 @@
+package org.archive.benchmarks;
+
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.url.WaybackURLKeyMaker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Makes the SURT keys of URLs with {@link WaybackURLKeyMaker}, as done for
+ * each line when indexing and for each lookup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class URLKeyMakerBenchmark {
+
+	private final static int NUM_URLS = 1000;
+
+	@Param({"false", "true"})
+	public boolean surtMode;
+
+	private String[] urls;
+	private WaybackURLKeyMaker keyMaker;
+
+	@Setup
+	public void setup() {
+		urls = new Fixtures(18).urls(NUM_URLS);
+		keyMaker = new WaybackURLKeyMaker(surtMode);
+	}
+
+	@Benchmark
+	public void makeKeys(Blackhole bh) throws URISyntaxException {
+		for (String url : urls) {
+			bh.consume(keyMaker.makeKey(url));
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package org.archive.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.archive.format.warc.WARCConstants;
+import org.archive.format.warc.WARCConstants.WARCRecordType;
+import org.archive.io.warc.WARCRecordInfo;
+import org.archive.io.warc.WARCWriter;
+import org.archive.io.warc.WARCWriterPoolSettingsData;
+import org.archive.uid.UUIDGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * Writes response records with {@link WARCWriter#writeRecord(WARCRecordInfo)}
+ * to a stream discarding the bytes: formats the headers, digests and
+ * (optionally) compresses each record, without disk I/O.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WARCWriterBenchmark {
+
+	@Param({"true", "false"})
+	public boolean compress;
+
+	/** elements in the HTML page of each record, most of them links */
+	@Param({"20", "1000"})
+	public int links;
+
+	private final UUIDGenerator generator = new UUIDGenerator();
+	private CountingOutputStream out;
+	private WARCWriter writer;
+	private byte[] content;
+	private String url;
+
+	@Setup
+	public void setup() throws IOException {
+		Fixtures fixtures = new Fixtures(18);
+		content = fixtures.httpResponse(links);
+		url = fixtures.url();
+		out = new CountingOutputStream(ByteStreams.nullOutputStream());
+		writer = new WARCWriter(new AtomicInteger(), out, new File("benchmark.warc"),
+				new WARCWriterPoolSettingsData("benchmark", "${prefix}", Long.MAX_VALUE, compress,
+						Arrays.asList(new File(".")), Collections.<String>emptyList(), generator));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		writer.close();
+	}
+
+	@Benchmark
+	public long writeRecord() throws IOException {
+		WARCRecordInfo recordInfo = new WARCRecordInfo();
+		recordInfo.setType(WARCRecordType.response);
+		recordInfo.setUrl(url);
+		recordInfo.setCreate14DigitDate("2019-03-04T05:06:07Z");
+		recordInfo.setMimetype(WARCConstants.HTTP_RESPONSE_MIMETYPE);
+		recordInfo.setRecordId(generator.getRecordID());
+		recordInfo.setContentLength(content.length);
+		recordInfo.setContentStream(new ByteArrayInputStream(content));
+		recordInfo.setEnforceLength(true);
+		writer.writeRecord(recordInfo);
+		return out.getCount();
+	}
+}
@@ -0,0 +1,82 @@
+package org.archive.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.format.json.UTF8JSONWriter;
+import org.archive.format.text.html.CDATALexer;
+import org.archive.format.text.html.LexParser;
+import org.archive.resource.MetaData;
+import org.archive.resource.html.ExtractingParseObserver;
+import org.archive.resource.html.HTMLMetaData;
+import org.htmlparser.lexer.Page;
+import org.htmlparser.util.ParserException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.openjson.JSONException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Serializes the metadata of link heavy pages to the UTF-8 JSON of WAT
+ * records: as WATExtractorOutput did, through a String, a Writer and a
+ * byte array, and with the reused buffer of a {@link UTF8JSONWriter}. Run
+ * with -prof gc to compare the allocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WATSerializationBenchmark {
+
+	/** elements in the body of a page, most of them links */
+	@Param({"500", "20000"})
+	public int links;
+
+	private MetaData metaData;
+	private UTF8JSONWriter writer;
+
+	@Setup
+	public void setup() throws IOException, ParserException {
+		byte[] page = new Fixtures(24).htmlPage(links).getBytes(UTF_8);
+		metaData = new MetaData();
+		HTMLMetaData md = new HTMLMetaData(metaData);
+		LexParser parser = new LexParser(new ExtractingParseObserver(md));
+		CDATALexer lex = new CDATALexer();
+		lex.setPage(new Page(new ByteArrayInputStream(page), UTF_8.name()));
+		parser.doParse(lex);
+		writer = new UTF8JSONWriter();
+	}
+
+	@Benchmark
+	public byte[] viaString() throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		OutputStreamWriter osw = new OutputStreamWriter(bos, UTF_8);
+		String contents = metaData.toString();
+		osw.write(contents, 0, contents.length());
+		osw.flush();
+		return bos.toByteArray();
+	}
+
+	@Benchmark
+	public int utf8Writer() throws JSONException {
+		writer.reset();
+		writer.write(metaData);
+		return writer.getLength();
+	}
+}
@@ -0,0 +1,93 @@
+package org.archive.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.format.gzip.zipnum.ZipNumCluster;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Contention of {@link ZipNumCluster#getLocations(String)}, the lookup done
+ * by every block load, against the same lookup under a lock as it was done
+ * before the locations were published as immutable snapshots. Run with
+ * {@code -t} to compare thread counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ZipNumClusterLocationBenchmark {
+
+	@Param({"300"})
+	public int parts;
+
+	private File dir;
+	private ZipNumCluster cluster;
+	private String[] partIds;
+	private Map<String, String[]> lockedMap;
+	private final Object lock = new Object();
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next = 0;
+	}
+
+	@Setup
+	public void setup() throws IOException, URISyntaxException {
+		dir = Fixtures.createTempDir();
+		cluster = Fixtures.writeZipNum(dir, new Fixtures(18).cdxLines(parts * 10), 10, 1);
+
+		partIds = new String[parts];
+		lockedMap = new HashMap<String, String[]>();
+		for (int i = 0; i < parts; i++) {
+			partIds[i] = String.format(Locale.ROOT, "part-%05d", i);
+			lockedMap.put(partIds[i], cluster.getLocations(partIds[i]));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		Fixtures.delete(dir);
+	}
+
+	private String nextPartId(Cursor cursor) {
+		int i = cursor.next++;
+		if (cursor.next == parts) {
+			cursor.next = 0;
+		}
+		return partIds[i];
+	}
+
+	@Benchmark
+	public String[] snapshot(Cursor cursor) {
+		return cluster.getLocations(nextPartId(cursor));
+	}
+
+	@Benchmark
+	public String[] locked(Cursor cursor) {
+		String partId = nextPartId(cursor);
+		synchronized (lock) {
+			return lockedMap.get(partId);
+		}
+	}
+}
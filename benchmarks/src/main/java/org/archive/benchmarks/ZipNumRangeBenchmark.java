@@ -0,0 +1,97 @@
+package org.archive.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.format.gzip.zipnum.ZipNumCluster;
+import org.archive.format.gzip.zipnum.ZipNumParams;
+import org.archive.util.iterator.CloseableIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Range queries on a local ZipNum cluster: finds the blocks of a range of
+ * keys in the summary, loads and inflates them, and iterates over the CDX
+ * lines of the range.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZipNumRangeBenchmark {
+
+	private final static int NUM_RANGES = 256;
+
+	/** number of lines in each range */
+	@Param({"10", "1000", "10000"})
+	public int rangeLines;
+
+	@Param({"3000"})
+	public int linesPerBlock;
+
+	@Param({"200000"})
+	public int lines;
+
+	private File dir;
+	private ZipNumCluster cluster;
+	private String[] starts;
+	private String[] ends;
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next = 0;
+	}
+
+	@Setup
+	public void setup() throws IOException, URISyntaxException {
+		dir = Fixtures.createTempDir();
+		List<String> cdx = new Fixtures(18).cdxLines(lines);
+		cluster = Fixtures.writeZipNum(dir, cdx, linesPerBlock, 10);
+
+		Random random = new Random(18);
+		starts = new String[NUM_RANGES];
+		ends = new String[NUM_RANGES];
+		for (int i = 0; i < NUM_RANGES; i++) {
+			int start = random.nextInt(cdx.size() - rangeLines);
+			starts[i] = cdx.get(start);
+			ends[i] = cdx.get(start + rangeLines);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		Fixtures.delete(dir);
+	}
+
+	@Benchmark
+	public int range(Cursor cursor) throws IOException {
+		int i = cursor.next++ & (NUM_RANGES - 1);
+		CloseableIterator<String> iter = cluster.getCDXIterator(starts[i], starts[i], ends[i], new ZipNumParams());
+		int count = 0;
+		try {
+			while (iter.hasNext()) {
+				iter.next();
+				count++;
+			}
+		} finally {
+			iter.close();
+		}
+		return count;
+	}
+}
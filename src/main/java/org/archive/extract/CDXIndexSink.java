@@ -0,0 +1,195 @@
+package org.archive.extract;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.archive.format.http.HttpHeaders;
+import org.archive.format.warc.WARCConstants;
+import org.archive.format.warc.WARCConstants.WARCRecordType;
+import org.archive.io.warc.WARCIndexSink;
+import org.archive.io.warc.WARCRecordInfo;
+import org.archive.io.warc.WARCRecordScan;
+import org.archive.url.URLKeyMaker;
+import org.archive.url.WaybackURLKeyMaker;
+import org.archive.util.IAUtils;
+import com.github.openjson.JSONArray;
+import com.github.openjson.JSONObject;
+
+/**
+ * Writes the CDX lines of the records written by a WARCWriter, the same
+ * lines as {@link RealCDXExtractorOutput} when reading the WARC files
+ * later with a {@link CDXResourceFactoryMapper}, but with the block digest
+ * of non-HTTP records, see
+ * {@link org.archive.io.warc.WARCWriter#setIndexSink(WARCIndexSink)}.
+ *
+ * In sorted mode, lines are kept until {@link #flush()}, which writes them
+ * as one sorted run, in the order of their UTF-8 bytes as sorted with
+ * LC_ALL=C, as input for a merge sort into a ZipNum cluster.
+ */
+public class CDXIndexSink implements WARCIndexSink {
+
+	/**
+	 * Order of the UTF-8 bytes, that is of the code points: unlike
+	 * String.compareTo, supplementary characters sort after all others.
+	 */
+	static final Comparator<String> UTF8_ORDER = new Comparator<String>() {
+		@Override
+		public int compare(String a, String b) {
+			int n = Math.min(a.length(), b.length());
+			for(int i = 0; i < n; i++) {
+				char ca = a.charAt(i);
+				char cb = b.charAt(i);
+				if(ca != cb) {
+					boolean sa = Character.isSurrogate(ca);
+					if(sa != Character.isSurrogate(cb)) {
+						return sa ? 1 : -1;
+					}
+					return ca - cb;
+				}
+			}
+			return a.length() - b.length();
+		}
+	};
+
+	private PrintWriter out;
+	private URLKeyMaker keyMaker;
+	private RealCDXExtractorOutput cdx;
+	private boolean sorted;
+	private List<String> lines = new ArrayList<String>();
+
+	public CDXIndexSink(PrintWriter out) {
+		this(out, new WaybackURLKeyMaker(), false);
+	}
+
+	/**
+	 * @param out where to write the CDX header and lines
+	 * @param keyMaker makes the canonicalized URL keys
+	 * @param sorted if true, lines are kept and written sorted on
+	 * {@link #flush()}
+	 */
+	public CDXIndexSink(PrintWriter out, URLKeyMaker keyMaker, boolean sorted) {
+		this.out = out;
+		this.keyMaker = keyMaker;
+		this.sorted = sorted;
+		// writes the CDX header
+		cdx = new RealCDXExtractorOutput(out, keyMaker);
+	}
+
+	public synchronized void indexRecord(WARCRecordInfo recordInfo,
+			WARCRecordScan scan, long length) throws IOException {
+		String filename = recordInfo.getWARCFilename();
+		String origUrl = recordInfo.getUrl();
+		String date = cdx.normalizeWARCDate(recordInfo.getCreate14DigitDate());
+		String mime = "-";
+		String httpCode = "-";
+		String digest = scan.getBlockDigest();
+		String meta = "-";
+		String redir = "-";
+
+		WARCRecordType type = recordInfo.getType();
+		if(type == WARCRecordType.warcinfo) {
+			origUrl = "warcinfo:/" + filename + "/" + IAUtils.COMMONS_VERSION.replaceAll(" ", "_");
+			mime = "warc-info";
+		} else if(type == WARCRecordType.request) {
+			mime = "warc/request";
+		} else if(type == WARCRecordType.metadata) {
+			mime = "warc/metadata";
+		} else if(type == WARCRecordType.revisit) {
+			mime = "warc/revisit";
+			digest = getPayloadDigest(recordInfo);
+		} else if(scan.isHttpResponse()) {
+			httpCode = Integer.toString(scan.getHttpStatus());
+			digest = scan.getPayloadDigest();
+			HttpHeaders headers = scan.getHttpHeaders();
+			mime = cdx.normalizeHTTPMime(getHeader(headers, "content-type", "unk"));
+			redir = getHeader(headers, "location", "-");
+			meta = getHeader(headers, RealCDXExtractorOutput.X_ROBOTS_HTTP_HEADER, null);
+			if(meta != null) {
+				meta = cdx.parseRobotInstructions(meta);
+			} else {
+				meta = "-";
+			}
+			if(mime.toLowerCase(Locale.ROOT).contains("html")) {
+				JSONArray htmlMetas = new JSONArray();
+				for(Map<String,String> attrs : scan.getHtmlMetas()) {
+					htmlMetas.put(new JSONObject(attrs));
+				}
+				if(redir.equals("-")) {
+					redir = cdx.extractHTMLMetaRefresh(origUrl, htmlMetas);
+				}
+				if(meta.equals("-")) {
+					meta = cdx.extractHTMLRobots(htmlMetas);
+				}
+			}
+		} else if(recordInfo.getMimetype() != null) {
+			mime = cdx.normalizeHTTPMime(recordInfo.getMimetype());
+		}
+		if(!redir.equals("-")) {
+			redir = RealCDXExtractorOutput.resolve(origUrl, redir);
+		}
+		String canUrl;
+		try {
+			canUrl = keyMaker.makeKey(origUrl);
+		} catch (URISyntaxException e) {
+			throw new IOException(e);
+		}
+		String line = String.format(Locale.ROOT,
+				"%s %s %s %s %s %s %s %s %s %s %s",
+				canUrl,
+				date,
+				origUrl,
+				mime,
+				httpCode,
+				digest,
+				redir,
+				meta,
+				(length < 0) ? "-" : String.valueOf(length),
+				recordInfo.getWARCFileOffset(),
+				filename);
+		if(sorted) {
+			lines.add(line);
+		} else {
+			out.println(line);
+		}
+	}
+
+	/**
+	 * Write the lines kept in sorted mode, sorted, and flush the output.
+	 */
+	public synchronized void flush() {
+		if(!lines.isEmpty()) {
+			Collections.sort(lines, UTF8_ORDER);
+			for(String line : lines) {
+				out.println(line);
+			}
+			lines.clear();
+		}
+		out.flush();
+	}
+
+	public boolean isSorted() {
+		return sorted;
+	}
+
+	private String getPayloadDigest(WARCRecordInfo recordInfo) {
+		if(recordInfo.getExtraHeaders() != null) {
+			String digest = recordInfo.getExtraHeaders().asMap().get(
+					WARCConstants.HEADER_KEY_PAYLOAD_DIGEST);
+			if(digest != null) {
+				return cdx.normalizeSHA1(digest);
+			}
+		}
+		return "-";
+	}
+
+	private String getHeader(HttpHeaders headers, String name, String defaultVal) {
+		return RealCDXExtractorOutput.scanHeadersLC(headers, name, defaultVal);
+	}
+}
@@ -0,0 +1,31 @@
+package org.archive.extract;
+
+import org.archive.resource.Resource;
+import org.archive.resource.ResourceFactory;
+import org.archive.resource.http.HTTPResponseResource;
+import org.archive.resource.http.HTTPResponseResourceFactory;
+
+/**
+ * ResourceFactoryMapper for CDX indexing: only the HTTP status line and
+ * headers of responses are parsed. Other WARC/ARC payloads (requests,
+ * metadata, warcinfo, DNS) are left unparsed and the HTML of responses is
+ * not parsed, their digests are computed as the record is read.
+ *
+ * Use with a {@link RealCDXExtractorOutput} with
+ * {@link RealCDXExtractorOutput#setHTMLScanLimit(int)} set, to still find
+ * robots and refresh meta tags.
+ */
+public class CDXResourceFactoryMapper extends ExtractingResourceFactoryMapper {
+
+	@Override
+	public ResourceFactory mapResourceToFactory(Resource resource) {
+		if(resource instanceof HTTPResponseResource) {
+			return null;
+		}
+		ResourceFactory f = super.mapResourceToFactory(resource);
+		if(f instanceof HTTPResponseResourceFactory) {
+			return f;
+		}
+		return null;
+	}
+}
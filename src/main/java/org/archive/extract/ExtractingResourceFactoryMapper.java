@@ -5,10 +5,10 @@ import java.util.Locale;
 import java.util.logging.Logger;
 
 import org.archive.format.arc.ARCConstants;
-import org.archive.format.json.SimpleJSONPathSpec;
 import org.archive.format.warc.WARCConstants;
 import org.archive.format.warc.WARCConstants.WARCRecordType;
 import org.archive.resource.MetaData;
+import org.archive.resource.RecordMetaData;
 import org.archive.resource.Resource;
 import org.archive.resource.ResourceFactory;
 import org.archive.resource.arc.ARCResource;
@@ -25,6 +25,8 @@ import org.archive.resource.warc.record.WARCMetaDataResourceFactory;
 import com.github.openjson.JSONException;
 import com.github.openjson.JSONObject;
 
+import static org.archive.extract.MetaDataPaths.*;
+
 public class ExtractingResourceFactoryMapper implements ResourceFactoryMapper {
 
 	private static final Logger LOG =
@@ -52,41 +54,16 @@ public class ExtractingResourceFactoryMapper implements ResourceFactoryMapper {
 	private FiledescResourceFactory filedescF = 
 		new FiledescResourceFactory();
 
-	private String getChildField(MetaData m, String child, String key) {
-		try {
-			if(m.has(child)) {
-				JSONObject c = m.getJSONObject(child);
-				if(c.has(key)) {
-					return c.getString(key);
-				}
-			}
-		} catch (JSONException e) {
-			LOG.warning(e.getMessage());
-		}
-		return null;
-	}
-
-	private boolean childFieldStartsWith(MetaData m, String child,
-			String key, String search) {
-		String val = getChildField(m,child,key);
+	private static boolean startsWithIgnoreCase(String val, String search) {
 		return val == null ? false : 
 			val.toLowerCase(Locale.ROOT).startsWith(search.toLowerCase(Locale.ROOT));
 	}
 
-	private boolean childFieldContains(MetaData m, String child,
-			String key, String search) {
-		String val = getChildField(m,child,key);
+	private static boolean containsIgnoreCase(String val, String search) {
 		return val == null ? false : 
 			val.toLowerCase(Locale.ROOT).contains(search.toLowerCase(Locale.ROOT));
 	}
 
-	private boolean childFieldEquals(MetaData m, String child,
-			String key, String search) {
-		String val = getChildField(m,child,key);
-		return val == null ? false : 
-			val.equals(search);
-	}
-
 	private String caseInsensitiveKeyScan(MetaData m, String child, String k) {
 		try {
 			if(m.has(child)) {
@@ -110,29 +87,25 @@ public class ExtractingResourceFactoryMapper implements ResourceFactoryMapper {
 		return null;
 	}
 
-	private boolean isFileDescARCResource(MetaData envelope) {
-		return childFieldStartsWith(envelope, ARC_HEADER_METADATA,
-				ARCConstants.URL_KEY, ARCConstants.FILEDESC_SCHEME);
+	private boolean isFileDescARCResource(String url) {
+		return startsWithIgnoreCase(url, ARCConstants.FILEDESC_SCHEME);
 	}
-	private boolean isDNSARCResource(MetaData envelope) {
-		return childFieldContains(envelope, ARC_HEADER_METADATA,
-				ARCConstants.MIME_KEY, ARCConstants.DNS_MIME);
+	private boolean isDNSARCResource(String mime) {
+		return containsIgnoreCase(mime, ARCConstants.DNS_MIME);
 	}
-	private boolean isDATARCResource(MetaData envelope) {
-		return childFieldContains(envelope, ARC_HEADER_METADATA,
-				ARCConstants.MIME_KEY, ARCConstants.ALEXA_DAT_MIME);
+	private boolean isDATARCResource(String mime) {
+		return containsIgnoreCase(mime, ARCConstants.ALEXA_DAT_MIME);
 	}
-	private boolean isHTTPARCResource(MetaData envelope) {
-		return childFieldStartsWith(envelope, ARC_HEADER_METADATA,
-				ARCConstants.URL_KEY, "http");
+	private boolean isHTTPARCResource(String url) {
+		return startsWithIgnoreCase(url, "http");
 	}
 
 	private boolean isHTMLHttpResource(MetaData m, HTTPResponseResource r) {
-		SimpleJSONPathSpec warcIdentifiedPayloadType = new SimpleJSONPathSpec(
-				"Envelope.WARC-Header-Metadata.WARC-Identified-Payload-Type");
-		String type = WARCMetadataRecordExtractorOutput
-				.unwrapFirst(warcIdentifiedPayloadType.extract(m.getTopMetaData()), null);
-		if (type != null) {
+		RecordMetaData record = m.getRecordMetaData();
+		String type = record.hasWARC()
+				? record.getWARCHeader(WARC_IDENTIFIED_PAYLOAD_TYPE_PATH.getName())
+				: WARC_IDENTIFIED_PAYLOAD_TYPE_PATH.getString(m.getTopMetaData());
+		if (type != null && !type.isEmpty()) {
 			switch (type) {
 			case "text/html":
 			case "application/xhtml+xml":
@@ -140,81 +113,81 @@ public class ExtractingResourceFactoryMapper implements ResourceFactoryMapper {
 			}
 			return false;
 		}
-		type = caseInsensitiveKeyScan(m, HTTP_HEADERS_LIST, "Content-Type");
+		if(record.hasHTTPResponse()) {
+			type = RecordMetaData.getValueIgnoreCase(record.getHTTPHeaders(), "Content-Type");
+		} else {
+			type = caseInsensitiveKeyScan(m, HTTP_HEADERS_LIST, "Content-Type");
+		}
 		return type == null ? false : type.toLowerCase(Locale.ROOT).contains("html");
 	}
 
-	private boolean isWARCType(MetaData envelope, WARCRecordType type) {
-		return childFieldEquals(envelope,WARC_HEADER_METADATA, 
-				WARCConstants.HEADER_KEY_TYPE,type.toString());
+	private boolean isWARCType(String type, WARCRecordType search) {
+		return search.toString().equals(type);
 	}
-	private boolean isWARCRevisitResource(MetaData envelope) {
-		return isWARCType(envelope, WARCRecordType.revisit);
+	private boolean isWARCRevisitResource(String type) {
+		return isWARCType(type, WARCRecordType.revisit);
 	}
-	private boolean isWARCResponseResource(MetaData envelope) {
-		return isWARCType(envelope, WARCRecordType.response);
+	private boolean isWARCResponseResource(String type) {
+		return isWARCType(type, WARCRecordType.response);
 	}
-	private boolean isWARCRequestResource(MetaData envelope) {
-		return isWARCType(envelope, WARCRecordType.request);
+	private boolean isWARCRequestResource(String type) {
+		return isWARCType(type, WARCRecordType.request);
 	}
-	private boolean isWARCMetaDataResource(MetaData envelope) {
-		return isWARCType(envelope, WARCRecordType.metadata);
+	private boolean isWARCMetaDataResource(String type) {
+		return isWARCType(type, WARCRecordType.metadata);
 	}
-	private boolean isWARCInfoResource(MetaData envelope) {
-		return isWARCType(envelope, WARCRecordType.warcinfo);
+	private boolean isWARCInfoResource(String type) {
+		return isWARCType(type, WARCRecordType.warcinfo);
 	}
-	private boolean isHTTPResponseWARCResource(MetaData envelope) {
-		return childFieldEquals(envelope,WARC_HEADER_METADATA,
-				WARCConstants.CONTENT_TYPE,
-				WARCConstants.HTTP_RESPONSE_MIMETYPE)
-			|| childFieldEquals(envelope,WARC_HEADER_METADATA,
-				WARCConstants.CONTENT_TYPE,
-				WARCConstants.HTTP_RESPONSE_MIMETYPE_NS);
+	private boolean isHTTPResponseWARCResource(String contentType) {
+		return WARCConstants.HTTP_RESPONSE_MIMETYPE.equals(contentType)
+			|| WARCConstants.HTTP_RESPONSE_MIMETYPE_NS.equals(contentType);
 	}
-	private boolean isWARCJSONResource(MetaData envelope) {
-		return childFieldEquals(envelope,WARC_HEADER_METADATA,
-				WARCConstants.CONTENT_TYPE,
-				"application/json");
+	private boolean isWARCJSONResource(String contentType) {
+		return "application/json".equals(contentType);
 	}
-	private boolean isDNSResponseWARCResource(MetaData envelope) {
-		return childFieldEquals(envelope,WARC_HEADER_METADATA,
-				WARCConstants.CONTENT_TYPE,PAYLOAD_TYPE_DNS);
+	private boolean isDNSResponseWARCResource(String contentType) {
+		return PAYLOAD_TYPE_DNS.equals(contentType);
 	}
 	
 	@Override
 	public ResourceFactory mapResourceToFactory(Resource resource) {
 		if(resource instanceof WARCResource) {
 			WARCResource wr = (WARCResource) resource;
-			MetaData envelope = wr.getEnvelopeMetaData();
-			if(isWARCMetaDataResource(envelope)) {
-				if(isWARCJSONResource(envelope)) {
+			RecordMetaData record = wr.getEnvelopeMetaData().getRecordMetaData();
+			String type = record.getWARCHeader(WARCConstants.HEADER_KEY_TYPE);
+			String contentType = record.getWARCHeader(WARCConstants.CONTENT_TYPE);
+			if(isWARCMetaDataResource(type)) {
+				if(isWARCJSONResource(contentType)) {
 					return warcjsonF;
 				} else {
 					return warcmetaF;
 				}
-			} else if(isWARCRequestResource(envelope)) {
+			} else if(isWARCRequestResource(type)) {
 				return httpRequestF;
-			} else if(isWARCInfoResource(envelope)) {
+			} else if(isWARCInfoResource(type)) {
 				return warcinfoF;
-			} else if(isWARCResponseResource(envelope)) {
-				if(isHTTPResponseWARCResource(envelope)) {
+			} else if(isWARCResponseResource(type)) {
+				if(isHTTPResponseWARCResource(contentType)) {
 					return httpResponseF;
-				} else if(isDNSResponseWARCResource(envelope)) {
+				} else if(isDNSResponseWARCResource(contentType)) {
 					return dnsF;
 				}
-			} else if(isWARCRevisitResource(envelope)) {
+			} else if(isWARCRevisitResource(type)) {
 				return httpResponseF;
 			}
 		} else if(resource instanceof ARCResource) {
 			ARCResource ar = (ARCResource) resource;
-			MetaData envelope = ar.getEnvelopeMetaData();
-			if(isFileDescARCResource( envelope)) {
+			JSONObject arcHeaders = ARC_HEADERS_PATH.getObject(ar.getEnvelopeMetaData(), ENVELOPE_PATH);
+			String url = ARC_TARGET_URI_PATH.getString(arcHeaders, ARC_HEADERS_PATH);
+			String mime = ARC_MIME_PATH.getString(arcHeaders, ARC_HEADERS_PATH);
+			if(isFileDescARCResource(url)) {
 				return filedescF;
-			} else if(isDNSARCResource(envelope)) {
+			} else if(isDNSARCResource(mime)) {
 				return dnsF;
-			} else if(isDATARCResource(envelope)) {
+			} else if(isDATARCResource(mime)) {
 				// TODO:
-			} else if(isHTTPARCResource(envelope)) {
+			} else if(isHTTPARCResource(url)) {
 				return httpResponseF;
 			} else {
 				// TODO: ftp? what else?
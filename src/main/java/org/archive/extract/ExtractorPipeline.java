@@ -0,0 +1,549 @@
+package org.archive.extract;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.archive.RecoverableRecordFormatException;
+import org.archive.format.gzip.GZIPMagicScanner;
+import org.archive.format.gzip.GZIPMemberSeries;
+import org.archive.resource.AbstractResource;
+import org.archive.resource.MetaData;
+import org.archive.resource.Resource;
+import org.archive.resource.ResourceContainer;
+import org.archive.resource.ResourceFactory;
+import org.archive.resource.ResourceParseException;
+import org.archive.resource.gzip.GZIPResourceContainer;
+import org.archive.streamcontext.ByteArrayWrappedStream;
+import org.archive.streamcontext.Stream;
+
+import com.google.common.base.Supplier;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Record-parallel extraction of a compressed WARC, ARC or WAT file, the
+ * multi-threaded counterpart of the loop in {@link ResourceExtractor}.
+ *
+ * A reader thread splits the compressed file into ranges at each GZIP magic
+ * found by {@link GZIPMagicScanner}, without inflating it. A pool of
+ * workers inflates each range as a {@link GZIPMemberSeries} and parses its
+ * record (envelope, HTTP, HTML, digests) in parallel. The ordered writer
+ * stage runs in the calling thread and passes the records to the
+ * ExtractorOutput in their original order.
+ *
+ * A range holds exactly one member unless the magic bytes also occur inside
+ * compressed data, a member is corrupt, or bytes lie between members. Then
+ * the worker fails, and the writer streams the members from the start of
+ * that range, as the sequential loop does, until it is aligned on a range
+ * the workers parsed again. Ranges, members or payloads larger than the
+ * max buffered size are streamed the same way, so a queued record holds at
+ * most twice that size: its compressed range and its payload.
+ *
+ * Each worker has its own envelope factory and ResourceFactoryMapper.
+ */
+public class ExtractorPipeline {
+	private static final Logger LOG =
+		Logger.getLogger(ExtractorPipeline.class.getName());
+
+	/** default queue size, per worker */
+	public final static int DEFAULT_QUEUE_PER_WORKER = 4;
+
+	/** default max size of a compressed range or payload held in memory */
+	public final static int DEFAULT_MAX_BUFFERED_BYTES = 4 * 1024 * 1024;
+
+	private final static int READ_SIZE = 64 * 1024;
+
+	private String path;
+	private String name;
+	private Supplier<ResourceFactoryMapper> mappers;
+	private int workers;
+	private int queueSize;
+	private int maxBufferedBytes = DEFAULT_MAX_BUFFERED_BYTES;
+
+	private final static Pending END = new Pending(null, -1, null);
+
+	/**
+	 * Range of the compressed file starting at a GZIP magic. Its record is
+	 * null if it has to be streamed by the writer.
+	 */
+	private static class Pending {
+		final String context;
+		final long start;
+		final Future<Resource> resource;
+
+		Pending(String context, long start, Future<Resource> resource) {
+			this.context = context;
+			this.start = start;
+			this.resource = resource;
+		}
+	}
+
+	/**
+	 * Inflated GZIP member, or parsed record whose remaining payload is held
+	 * in memory and whose MetaData is complete
+	 */
+	private static class BufferedResource extends AbstractResource {
+		private byte[] bytes;
+
+		BufferedResource(MetaData metaData, ResourceContainer container, byte[] bytes) {
+			super(metaData, container);
+			this.bytes = bytes;
+		}
+
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(bytes);
+		}
+	}
+
+	/**
+	 * @param path local path, HTTP or HDFS URL to a .warc.gz, .arc.gz or .wat.gz
+	 * @param mappers creates the ResourceFactoryMapper of each worker
+	 * @param workers number of worker threads
+	 */
+	public ExtractorPipeline(String path, Supplier<ResourceFactoryMapper> mappers, int workers) {
+		this.path = path;
+		this.name = new File(path).getName();
+		this.mappers = mappers;
+		this.workers = workers;
+		this.queueSize = workers * DEFAULT_QUEUE_PER_WORKER;
+	}
+
+	/**
+	 * @return true if path can be extracted by the pipeline, ie. is a GZIP
+	 * compressed file
+	 */
+	public static boolean isSupported(String path) {
+		return path.endsWith(".gz");
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	/**
+	 * @param queueSize max number of records read or parsed ahead of the
+	 * writer stage
+	 */
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	public int getMaxBufferedBytes() {
+		return maxBufferedBytes;
+	}
+
+	/**
+	 * @param maxBufferedBytes max size of a compressed range, or of the
+	 * payload of its record, held in memory. Larger records are streamed by
+	 * the writer stage.
+	 */
+	public void setMaxBufferedBytes(int maxBufferedBytes) {
+		this.maxBufferedBytes = maxBufferedBytes;
+	}
+
+	/**
+	 * Extract up to max records to out
+	 *
+	 * @return number of records extracted, or -1 if path could not be read
+	 */
+	public int run(final ExtractorOutput out, final int max)
+	throws IOException, ResourceParseException {
+		final Stream stream = ProducerUtils.getGZStream(path, 0);
+		if(stream == null) {
+			return -1;
+		}
+		final BlockingQueue<Pending> queue = new ArrayBlockingQueue<Pending>(Math.max(1, queueSize));
+		final ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+			private AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "ExtractorPipelineWorker-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		final ThreadLocal<ResourceFactory> envelopeFactory = new ThreadLocal<ResourceFactory>() {
+			@Override
+			protected ResourceFactory initialValue() {
+				return ProducerUtils.getEnvelopeFactory(path);
+			}
+		};
+		final ThreadLocal<ResourceFactoryMapper> mapper = new ThreadLocal<ResourceFactoryMapper>() {
+			@Override
+			protected ResourceFactoryMapper initialValue() {
+				return mappers.get();
+			}
+		};
+
+		Thread reader = new Thread("ExtractorPipelineReader") {
+			@Override
+			public void run() {
+				try {
+					read(stream, queue, executor, envelopeFactory, mapper);
+				} catch (InterruptedException e) {
+					// closed by the writer
+				} finally {
+					try {
+						queue.put(END);
+					} catch (InterruptedException e) {
+						queue.clear();
+						queue.offer(END);
+					}
+				}
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+
+		try {
+			return new Writer(queue, out, max).run();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		} finally {
+			reader.interrupt();
+			executor.shutdownNow();
+			stream.close();
+		}
+	}
+
+	private String getContext(long offset) {
+		return String.format(Locale.ROOT, "Context(%s)(%d)", name, offset);
+	}
+
+	/**
+	 * Reader stage: split the compressed file at each GZIP magic, then queue
+	 * the parsing of each range
+	 */
+	private void read(Stream stream, BlockingQueue<Pending> queue,
+			ExecutorService executor, ThreadLocal<ResourceFactory> envelopeFactory,
+			ThreadLocal<ResourceFactoryMapper> mapper) throws InterruptedException {
+		byte[] buf = new byte[2 * READ_SIZE];
+		int len = 0;
+		// file offset of buf[0]
+		long bufStart = 0;
+		// start of the current range, in buf if buffering
+		long rangeStart = 0;
+		int rangeIndex = 0;
+		boolean buffering = true;
+		int scanFrom = 1;
+		try {
+			while(true) {
+				if(Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				if(buf.length - len < READ_SIZE) {
+					// drop the bytes not needed anymore, then grow if still full
+					int keep = buffering ? rangeIndex : scanFrom;
+					System.arraycopy(buf, keep, buf, 0, len - keep);
+					len -= keep;
+					bufStart += keep;
+					scanFrom -= keep;
+					rangeIndex -= keep;
+					if(buf.length - len < READ_SIZE) {
+						buf = Arrays.copyOf(buf, Math.max(2 * buf.length, len + READ_SIZE));
+					}
+				}
+				int read = stream.read(buf, len, READ_SIZE);
+				if(read < 0) {
+					break;
+				}
+				len += read;
+				while(true) {
+					int magic = GZIPMagicScanner.indexOfMagic(buf, scanFrom, len);
+					if(magic > len - 3) {
+						// none, or cut by the end of the bytes read
+						scanFrom = magic;
+						break;
+					}
+					scanFrom = magic + 1;
+					if(bufStart + magic == rangeStart) {
+						continue;
+					}
+					queueRange(queue, executor, rangeStart,
+							buffering ? Arrays.copyOfRange(buf, rangeIndex, magic) : null,
+							envelopeFactory, mapper);
+					rangeStart = bufStart + magic;
+					rangeIndex = magic;
+					buffering = true;
+				}
+				if(buffering && (bufStart + len - rangeStart > maxBufferedBytes)) {
+					buffering = false;
+				}
+			}
+			if(bufStart + len > rangeStart) {
+				queueRange(queue, executor, rangeStart,
+						buffering ? Arrays.copyOfRange(buf, rangeIndex, len) : null,
+						envelopeFactory, mapper);
+			}
+		} catch(IOException e) {
+			queue.put(new Pending(getContext(bufStart + len), Long.MAX_VALUE,
+					Futures.<Resource>immediateFailedFuture(e)));
+		}
+	}
+
+	/**
+	 * @param range compressed bytes of the range, or null if it is streamed
+	 * by the writer
+	 */
+	private void queueRange(BlockingQueue<Pending> queue, ExecutorService executor,
+			final long start, final byte[] range,
+			final ThreadLocal<ResourceFactory> envelopeFactory,
+			final ThreadLocal<ResourceFactoryMapper> mapper) throws InterruptedException {
+		Future<Resource> parsed = null;
+		if(range != null) {
+			parsed = executor.submit(new Callable<Resource>() {
+				@Override
+				public Resource call() {
+					return parseRange(range, start, envelopeFactory.get(), mapper.get());
+				}
+			});
+		}
+		queue.put(new Pending(getContext(start), start, parsed));
+	}
+
+	/**
+	 * Worker stage: inflate the range, with the same extraction as
+	 * {@link ExtractingResourceProducer}, then read the result to EOF to
+	 * complete its MetaData
+	 *
+	 * @return the record, or null if the range does not hold exactly one
+	 * valid member, or its payload is too large to buffer
+	 */
+	private Resource parseRange(byte[] range, long start, ResourceFactory envelopeFactory,
+			ResourceFactoryMapper mapper) {
+		GZIPMemberSeries series =
+				new GZIPMemberSeries(new ByteArrayWrappedStream(range), name, start, true);
+		GZIPResourceContainer members = new GZIPResourceContainer(series);
+		try {
+			Resource member = members.getNext();
+			if(member == null) {
+				return null;
+			}
+			// reading to EOF completes the Gzip-Metadata
+			byte[] inflated = readAtMost(member.getInputStream(), maxBufferedBytes);
+			if((inflated == null) || (members.getNext() != null)) {
+				return null;
+			}
+			Resource current = parse(new BufferedResource(member.getMetaData(),
+					member.getContainer(), inflated), envelopeFactory, mapper);
+			byte[] payload = readAtMost(current.getInputStream(), maxBufferedBytes);
+			if(payload == null) {
+				return null;
+			}
+			return new BufferedResource(current.getMetaData(), current.getContainer(), payload);
+		} catch(IOException e) {
+			// errors are reported by the writer, streaming the range
+			return null;
+		} catch(ResourceParseException e) {
+			return null;
+		} catch(RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the bytes up to EOF, or null if there are more than max
+	 */
+	private static byte[] readAtMost(InputStream is, int max) throws IOException {
+		byte[] bytes = ByteStreams.toByteArray(ByteStreams.limit(is, max + 1L));
+		return (bytes.length > max) ? null : bytes;
+	}
+
+	/**
+	 * Parse the envelope and the nested resources of a GZIP member
+	 */
+	private static Resource parse(Resource current, ResourceFactory envelopeFactory,
+			ResourceFactoryMapper mapper) throws ResourceParseException, IOException {
+		if(envelopeFactory != null) {
+			current = envelopeFactory.getResource(current.getInputStream(),
+					current.getMetaData(), current.getContainer());
+		}
+		while(true) {
+			ResourceFactory f = mapper.mapResourceToFactory(current);
+			if(f == null) {
+				break;
+			}
+			current = f.getResource(current.getInputStream(),
+					current.getMetaData(), current.getContainer());
+		}
+		return current;
+	}
+
+	/**
+	 * @return true unless the range is streamed by the writer
+	 */
+	private static boolean isParsed(Pending pending) throws InterruptedException {
+		if(pending.resource == null) {
+			return false;
+		}
+		try {
+			return pending.resource.get() != null;
+		} catch (ExecutionException e) {
+			// reported by the writer loop
+			return true;
+		}
+	}
+
+	/**
+	 * Writer stage: output the records of the ranges in order, streaming the
+	 * members of the ranges the workers did not parse
+	 */
+	private class Writer {
+		private final BlockingQueue<Pending> queue;
+		private final ExtractorOutput out;
+		private final int max;
+		private int count = 0;
+		private ResourceFactory envelopeFactory = null;
+		private ResourceFactoryMapper mapper = null;
+
+		Writer(BlockingQueue<Pending> queue, ExtractorOutput out, int max) {
+			this.queue = queue;
+			this.out = out;
+			this.max = max;
+		}
+
+		int run() throws IOException, ResourceParseException, InterruptedException {
+			Pending pending = queue.take();
+			while((pending != END) && (count < max)) {
+				if(!isParsed(pending)) {
+					pending = stream(pending);
+					continue;
+				}
+				Resource r;
+				try {
+					r = pending.resource.get();
+				} catch (ExecutionException e) {
+					handleError(pending.context, e.getCause());
+					pending = queue.take();
+					continue;
+				}
+				count++;
+				output(pending.context, r);
+				pending = queue.take();
+			}
+			return count;
+		}
+
+		/**
+		 * Write the record, handling its format errors as ResourceExtractor
+		 * does
+		 */
+		private void output(String context, Resource r)
+		throws IOException, ResourceParseException {
+			try {
+				out.output(r);
+			} catch(RecoverableRecordFormatException e) {
+				handleError(context, e);
+			}
+		}
+
+		/**
+		 * Stream the members from the start of a range, as the sequential
+		 * loop does, until a member starts at a range parsed by the workers
+		 *
+		 * @return that range, or END
+		 */
+		private Pending stream(Pending from)
+		throws IOException, ResourceParseException, InterruptedException {
+			if(envelopeFactory == null) {
+				envelopeFactory = ProducerUtils.getEnvelopeFactory(path);
+				mapper = mappers.get();
+			}
+			Stream stream = ProducerUtils.getGZStream(path, from.start);
+			if(stream == null) {
+				throw new IOException(path + ": not readable");
+			}
+			GZIPMemberSeries series =
+					new GZIPMemberSeries(stream, name, from.start, ProducerUtils.STRICT_GZ);
+			GZIPResourceContainer members = new GZIPResourceContainer(series);
+			Pending next = queue.take();
+			try {
+				while(count < max) {
+					Resource r;
+					try {
+						Resource member = members.getNext();
+						if(member == null) {
+							// the ranges left were streamed
+							while(next != END) {
+								next = queue.take();
+							}
+							return END;
+						}
+						long start = series.getCurrentMemberStartOffset();
+						while((next != END) && (next.start < start)) {
+							next = queue.take();
+						}
+						if((next != END) && (next.start == start) && isParsed(next)) {
+							return next;
+						}
+						r = parse(member, envelopeFactory, mapper);
+					} catch(IOException e) {
+						handleError(members.getContext(), e);
+						continue;
+					} catch(ResourceParseException e) {
+						handleError(members.getContext(), e);
+						continue;
+					}
+					count++;
+					output(members.getContext(), r);
+				}
+				return next;
+			} finally {
+				members.close();
+			}
+		}
+	}
+
+	private static boolean isRecoverable(Throwable e) {
+		return (e instanceof RecoverableRecordFormatException)
+				|| (e instanceof ResourceParseException);
+	}
+
+	/**
+	 * Log recoverable errors like ResourceExtractor, rethrow the others
+	 */
+	private static void handleError(String context, Throwable e)
+	throws IOException, ResourceParseException {
+		if(isRecoverable(e)) {
+			LOG.severe(String.format(Locale.ROOT, "%s: %s", context, e.getMessage()));
+			System.err.format(Locale.ROOT, "%s: %s", context, e.getMessage());
+			if(ProducerUtils.STRICT_GZ) {
+				if(e instanceof ResourceParseException) {
+					throw (ResourceParseException) e;
+				}
+				throw (IOException) e;
+			}
+			e.printStackTrace();
+			return;
+		}
+		if(e instanceof IOException) {
+			throw (IOException) e;
+		}
+		if(e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		}
+		if(e instanceof Error) {
+			throw (Error) e;
+		}
+		throw new IOException(e);
+	}
+}
@@ -0,0 +1,38 @@
+package org.archive.extract;
+
+import org.archive.format.arc.ARCConstants;
+import org.archive.format.json.JSONPath;
+import org.archive.format.warc.WARCConstants;
+import org.archive.resource.ResourceConstants;
+
+/**
+ * Compiled paths, from the top MetaData, to the fields read by the
+ * extractor outputs for each record
+ */
+class MetaDataPaths implements ResourceConstants {
+
+	static final JSONPath CONTAINER_PATH = JSONPath.compile(CONTAINER);
+	static final JSONPath CONTAINER_FILENAME_PATH = CONTAINER_PATH.child(CONTAINER_FILENAME);
+	static final JSONPath CONTAINER_OFFSET_PATH = CONTAINER_PATH.child(CONTAINER_OFFSET);
+
+	static final JSONPath ENVELOPE_PATH = JSONPath.compile(ENVELOPE);
+	static final JSONPath ENVELOPE_FORMAT_PATH = ENVELOPE_PATH.child(ENVELOPE_FORMAT);
+
+	static final JSONPath WARC_HEADERS_PATH = ENVELOPE_PATH.child(WARC_HEADER_METADATA);
+	static final JSONPath WARC_TYPE_PATH = WARC_HEADERS_PATH.child(WARCConstants.HEADER_KEY_TYPE);
+	static final JSONPath WARC_IDENTIFIED_PAYLOAD_TYPE_PATH =
+		WARC_HEADERS_PATH.child("WARC-Identified-Payload-Type");
+
+	static final JSONPath ARC_HEADERS_PATH = ENVELOPE_PATH.child(ARC_HEADER_METADATA);
+	static final JSONPath ARC_TARGET_URI_PATH = ARC_HEADERS_PATH.child(ARCConstants.URL_KEY);
+	static final JSONPath ARC_MIME_PATH = ARC_HEADERS_PATH.child(ARCConstants.MIME_KEY);
+	static final JSONPath ARC_DATE_PATH = ARC_HEADERS_PATH.child("Date");
+
+	static final JSONPath PAYLOAD_PATH = ENVELOPE_PATH.child(PAYLOAD_METADATA);
+	static final JSONPath WARCINFO_PATH = PAYLOAD_PATH.child(WARCINFO_METADATA);
+	static final JSONPath HTTP_RESPONSE_PATH = PAYLOAD_PATH.child(HTTP_RESPONSE_METADATA);
+	static final JSONPath HTTP_RESPONSE_HEADERS_PATH = HTTP_RESPONSE_PATH.child(HTTP_HEADERS_LIST);
+	static final JSONPath HTML_METADATA_PATH = HTTP_RESPONSE_PATH.child(HTML_METADATA);
+	static final JSONPath HTML_TEXT_PATH = HTML_METADATA_PATH.child("Text");
+	static final JSONPath HTML_METAS_PATH = HTML_METADATA_PATH.child("Head").child("Metas");
+}
@@ -0,0 +1,77 @@
+package org.archive.extract;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.archive.resource.AbstractEmptyResource;
+import org.archive.resource.Resource;
+import org.archive.util.StreamCopy;
+
+/**
+ * Feeds each Resource to several ExtractorOutputs, so that multiple
+ * derivatives (eg. CDX, WAT and WET) are produced in a single pass over the
+ * input, each written to its own destination.
+ *
+ * The Resource is read to EOF once, which completes its MetaData, and the
+ * outputs then receive, in order, a view of it whose InputStream is empty:
+ * a Resource InputStream may only be used once. If an output fails, the
+ * remaining outputs still receive the Resource and the first exception is
+ * rethrown.
+ */
+public class MultiExtractorOutput implements ExtractorOutput {
+	private List<ExtractorOutput> outputs;
+
+	public MultiExtractorOutput(ExtractorOutput... outputs) {
+		this(Arrays.asList(outputs));
+	}
+
+	public MultiExtractorOutput(List<ExtractorOutput> outputs) {
+		this.outputs = new ArrayList<ExtractorOutput>(outputs);
+	}
+
+	public void addOutput(ExtractorOutput output) {
+		outputs.add(output);
+	}
+
+	public List<ExtractorOutput> getOutputs() {
+		return Collections.unmodifiableList(outputs);
+	}
+
+	public void output(Resource resource) throws IOException {
+		StreamCopy.readToEOF(resource.getInputStream());
+		Resource consumed = new ConsumedResource(resource);
+
+		IOException failure = null;
+		RuntimeException runtimeFailure = null;
+
+		for (ExtractorOutput output : outputs) {
+			try {
+				output.output(consumed);
+			} catch (IOException e) {
+				if ((failure == null) && (runtimeFailure == null)) {
+					failure = e;
+				}
+			} catch (RuntimeException e) {
+				if ((failure == null) && (runtimeFailure == null)) {
+					runtimeFailure = e;
+				}
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+		if (runtimeFailure != null) {
+			throw runtimeFailure;
+		}
+	}
+
+	private static class ConsumedResource extends AbstractEmptyResource {
+		public ConsumedResource(Resource resource) {
+			super(resource.getMetaData(), resource.getContainer());
+		}
+	}
+}
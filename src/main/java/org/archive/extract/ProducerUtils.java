@@ -8,10 +8,17 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.archive.resource.ResourceFactory;
 import org.archive.resource.ResourceProducer;
+import org.archive.resource.arc.ARCResourceFactory;
 import org.archive.resource.producer.ARCFile;
 import org.archive.resource.producer.EnvelopedResourceFile;
 import org.archive.resource.producer.WARCFile;
+import org.archive.resource.warc.WARCResourceFactory;
+import org.archive.streamcontext.HDFSStream;
+import org.archive.streamcontext.HTTP11Stream;
+import org.archive.streamcontext.RandomAccessFileStream;
+import org.archive.streamcontext.Stream;
 
 public class ProducerUtils {
 	public static boolean STRICT_GZ = false;
@@ -91,4 +98,50 @@ public class ProducerUtils {
 	    }
 	    return producer;
 	}
+
+	/**
+	 * @return the compressed bytes of a .gz file, from offset, or null if
+	 * path is not a .gz file or cannot be read
+	 */
+	public static Stream getGZStream(String path, long offset) throws IOException {
+		if(!path.endsWith(".gz")) {
+			return null;
+		}
+		File file = new File(path);
+		Stream stream;
+
+		if(path.startsWith("hdfs://") || path.startsWith("s3a://")) {
+			Path fsPath = new Path(path);
+			FileSystem fs = fsPath.getFileSystem(new Configuration());
+			stream = new HDFSStream(fs.open(fsPath));
+		} else if(path.startsWith("http://")) {
+			stream = new HTTP11Stream(new URL(path));
+		} else {
+			if(path.startsWith("file:/")) {
+				file = new File(new URL(path).getPath());
+			}
+			if(!file.exists() || !file.canRead()) {
+				System.err.println(path + ": file not found or not readable.");
+				return null;
+			}
+			stream = new RandomAccessFileStream(file);
+		}
+		if(offset > 0) {
+			stream.setOffset(offset);
+		}
+		return stream;
+	}
+
+	/**
+	 * @return a new factory for the envelope of the GZIP members of path:
+	 * WARC for .warc.gz and .wat.gz, ARC for .arc.gz, else null
+	 */
+	public static ResourceFactory getEnvelopeFactory(String path) {
+		if(path.endsWith(".warc.gz") || path.endsWith(".wat.gz")) {
+			return new WARCResourceFactory();
+		} else if(path.endsWith(".arc.gz")) {
+			return new ARCResourceFactory();
+		}
+		return null;
+	}
 }
@@ -1,6 +1,7 @@
 package org.archive.extract;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.MalformedURLException;
@@ -8,16 +9,21 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.List;
+import java.util.Map;
 import java.util.Locale;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.archive.format.gzip.GZIPFormatException;
-import org.archive.format.json.JSONUtils;
+import org.archive.format.http.HttpHeader;
+import org.archive.format.http.HttpHeaders;
 import org.archive.format.json.SimpleJSONPathSpec;
+import org.archive.format.warc.WARCConstants;
 import org.archive.resource.MetaData;
+import org.archive.resource.RecordMetaData;
 import org.archive.resource.Resource;
+import org.archive.resource.html.HTMLMetaTagScanner;
 import org.archive.url.URLKeyMaker;
 import org.archive.url.WaybackURLKeyMaker;
 import org.archive.util.IAUtils;
@@ -29,10 +35,14 @@ import com.github.openjson.JSONObject;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.CountingOutputStream;
 
+import static org.archive.extract.MetaDataPaths.*;
+
 public class RealCDXExtractorOutput implements ExtractorOutput {
 	private static final Logger LOG = 
 		Logger.getLogger(RealCDXExtractorOutput.class.getName());
 	public final static String X_ROBOTS_HTTP_HEADER = "X-Robots-Tag";
+	/** default number of payload bytes scanned for meta tags in fast CDX mode */
+	public final static int DEFAULT_HTML_SCAN_LIMIT = 64 * 1024;
 
 	private PrintWriter out;
 	SimpleJSONPathSpec filenameSpec = new SimpleJSONPathSpec("Container.Filename");
@@ -44,13 +54,7 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 	SimpleJSONPathSpec arcDate = new SimpleJSONPathSpec("Envelope.ARC-Header-Metadata.Date");
 	SimpleJSONPathSpec arcContentType = new SimpleJSONPathSpec("Envelope.ARC-Header-Metadata.Content-Type");
 
-	SimpleJSONPathSpec warcURL = new SimpleJSONPathSpec("Envelope.WARC-Header-Metadata.WARC-Target-URI");
-	SimpleJSONPathSpec warcDate = new SimpleJSONPathSpec("Envelope.WARC-Header-Metadata.WARC-Date");
-	SimpleJSONPathSpec warcType = new SimpleJSONPathSpec("Envelope.WARC-Header-Metadata.WARC-Type");
-	SimpleJSONPathSpec warcContentType = new SimpleJSONPathSpec("Envelope.WARC-Header-Metadata.Content-Type");
-
 	SimpleJSONPathSpec envBlockDigest = new SimpleJSONPathSpec("Envelope.Block-Digest");
-	SimpleJSONPathSpec warcPayloadDigest = new SimpleJSONPathSpec("Envelope.WARC-Header-Metadata.WARC-Payload-Digest");
 	
 	SimpleJSONPathSpec httpResponseCode = new SimpleJSONPathSpec("Envelope.Payload-Metadata.HTTP-Response-Metadata.Response-Message.Status");
 	SimpleJSONPathSpec httpEntityDigest = new SimpleJSONPathSpec("Envelope.Payload-Metadata.HTTP-Response-Metadata.Entity-Digest");
@@ -60,6 +64,8 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 		Pattern.compile("^\\d+\\s*;\\s*url\\s*=\\s*(.+?)\\s*$",
 				Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
 	private boolean dumpJSON = false;
+	private int htmlScanLimit = 0;
+	private byte[] htmlScanBuffer = null;
 	private URLKeyMaker keyMaker;
 
 	public RealCDXExtractorOutput(PrintWriter out, URLKeyMaker keyMaker) {
@@ -72,29 +78,61 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 	public RealCDXExtractorOutput(PrintWriter out) {
 		this(out,new WaybackURLKeyMaker());
 	}
+
+	/**
+	 * Scan the first bytes of HTML payloads which were not parsed, as when
+	 * using a {@link CDXResourceFactoryMapper}, for robots and refresh meta
+	 * tags.
+	 *
+	 * @param htmlScanLimit max number of payload bytes scanned, 0 to disable
+	 */
+	public void setHTMLScanLimit(int htmlScanLimit) {
+		this.htmlScanLimit = htmlScanLimit;
+	}
+
+	public int getHTMLScanLimit() {
+		return htmlScanLimit;
+	}
+
 //	SimpleJSONPathSpec gzFooterLengthSpec = new SimpleJSONPathSpec("Container.Gzip-Metadata.Footer-Length");
 //	SimpleJSONPathSpec gzHeaderLengthSpec = new SimpleJSONPathSpec("Container.Gzip-Metadata.Header-Length");
 	public void output(Resource resource) throws IOException {
 		OutputStream nullo = ByteStreams.nullOutputStream();
 		CountingOutputStream co = new CountingOutputStream(nullo);
+		byte[] htmlPrefix = null;
+		int htmlPrefixLength = 0;
 		try {
-			StreamCopy.copy(resource.getInputStream(), co);
+			InputStream is = resource.getInputStream();
+			if(htmlScanLimit > 0) {
+				// keep the start of the payload to scan for meta tags if HTML was not parsed
+				if((htmlScanBuffer == null) || (htmlScanBuffer.length != htmlScanLimit)) {
+					htmlScanBuffer = new byte[htmlScanLimit];
+				}
+				htmlPrefix = htmlScanBuffer;
+				htmlPrefixLength = ByteStreams.read(is, htmlPrefix, 0, htmlScanLimit);
+				co.write(htmlPrefix, 0, htmlPrefixLength);
+			}
+			StreamCopy.copy(is, co);
 		} catch(GZIPFormatException e) {
 			e.printStackTrace();
 			return;
 		}
 		long bytes = co.getCount();
-		if(bytes > 0) {
+		// in fast mode payloads are not parsed, all are left unconsumed
+		if((bytes > 0) && (htmlScanLimit <= 0)) {
 			LOG.info(bytes + " unconsumed bytes in Resource InputStream.");
 		}
 		try {
 			MetaData m = resource.getMetaData().getTopMetaData();
+			// WARC and HTTP fields are read typed, the JSON of their headers
+			// is not built
+			RecordMetaData record = m.getRecordMetaData();
 			// URL DATE OURL MIME HTTP-CODE SHA1 META REDIR OFFSET LENGTH FILE
 
 			String filename = getContainerFilename(m);
 			String offset = getContainerOffset(m);
 			String gzLen = getGZLength(m);
-			String format = getEnvelopeFormat(m);
+			String format = record.hasWARC() ? record.getEnvelopeFormat() : getEnvelopeFormat(m);
 			String origUrl = "TBD";
 			String date = "TBD";
 			String canUrl = "TBD";
@@ -106,12 +144,12 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 			String redir = "TBD";
 			
 			if(format.startsWith("WARC")) {
-				origUrl = getWARCURL(m);
-				date = getWARCDate(m);
-				String type = getWARCType(m);
+				origUrl = getWARCHeader(record, WARCConstants.HEADER_KEY_URI);
+				date = normalizeWARCDate(getWARCHeader(record, WARCConstants.HEADER_KEY_DATE));
+				String type = getWARCHeader(record, WARCConstants.HEADER_KEY_TYPE);
 				if(type.equals("response")) {
 					// is it http or DNS:
-					String recType = getWARCContentType(m);
+					String recType = getWARCHeader(record, WARCConstants.CONTENT_TYPE);
 					if(recType.equals("text/dns")) {
 						// hrmm..
 						redir = "-";
@@ -121,25 +159,25 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 						digest = getEnvelopeBlockDigest(m);
 
 					} else if(recType.equals("application/http; msgtype=response")) {
-						httpCode = getHTTPStatus(m);
+						httpCode = getHTTPStatus(record, m);
 						digest = getHTTPEntityDigest(m);
-						JSONObject headers = JSONUtils.extractObject(m, "Envelope.Payload-Metadata.HTTP-Response-Metadata.Headers");
-						mime = normalizeHTTPMime(scanHeadersLC(headers, "content-type", "unk"));
-						redir = scanHeadersLC(headers, "location", "-");
-						meta = scanHeadersLC(headers, X_ROBOTS_HTTP_HEADER, null);
+						mime = normalizeHTTPMime(scanHTTPHeadersLC(record, m, "content-type", "unk"));
+						redir = scanHTTPHeadersLC(record, m, "location", "-");
+						meta = scanHTTPHeadersLC(record, m, X_ROBOTS_HTTP_HEADER, null);
 						if(meta != null) {
 							meta = parseRobotInstructions(meta);
 						} else {
 							meta = "-";
 						}
 						if(mime.toLowerCase(Locale.ROOT).contains("html")) {
+							JSONArray htmlMetas = getHTMLMetas(m, htmlPrefix, htmlPrefixLength);
 							if(redir.equals("-")) {
 								// maybe an obvious meta-refresh?
-								redir = extractHTMLMetaRefresh(origUrl,m);
+								redir = extractHTMLMetaRefresh(origUrl,htmlMetas);
 							}
 							if(meta.equals("-")) {
 								// see if there are HTML robot instructions:
-								meta = extractHTMLRobots(m);
+								meta = extractHTMLRobots(htmlMetas);
 							}
 						}
 					}
@@ -169,7 +207,7 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 					redir = "-";
 					meta = "-";
 					httpCode = "-";
-					digest = getWARCPayloadDigest(m);
+					digest = normalizeSHA1(getWARCHeader(record, WARCConstants.HEADER_KEY_PAYLOAD_DIGEST));
 				}
 			} else if(format.equals("ARC")) {
 				origUrl = getARCURL(m);
@@ -192,25 +230,25 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 						digest = getEnvelopeBlockDigest(m);
 					} else {
 
-						httpCode = getHTTPStatus(m);
+						httpCode = getHTTPStatus(record, m);
 						digest = getHTTPEntityDigest(m);
-						JSONObject headers = JSONUtils.extractObject(m, "Envelope.Payload-Metadata.HTTP-Response-Metadata.Headers");
-						mime = normalizeHTTPMime(scanHeadersLC(headers, "content-type", "unk"));
-						redir = scanHeadersLC(headers, "location", "-");
-						meta = scanHeadersLC(headers, X_ROBOTS_HTTP_HEADER, null);
+						mime = normalizeHTTPMime(scanHTTPHeadersLC(record, m, "content-type", "unk"));
+						redir = scanHTTPHeadersLC(record, m, "location", "-");
+						meta = scanHTTPHeadersLC(record, m, X_ROBOTS_HTTP_HEADER, null);
 						if(meta != null) {
 							meta = parseRobotInstructions(meta);
 						} else {
 							meta = "-";
 						}
 						if(mime.toLowerCase(Locale.ROOT).contains("html")) {
+							JSONArray htmlMetas = getHTMLMetas(m, htmlPrefix, htmlPrefixLength);
 							if(redir.equals("-")) {
 								// maybe an obvious meta-refresh?
-								redir = extractHTMLMetaRefresh(origUrl,m);
+								redir = extractHTMLMetaRefresh(origUrl,htmlMetas);
 							}
 							if(meta.equals("-")) {
 								// see if there are HTML robot instructions:
-								meta = extractHTMLRobots(m);
+								meta = extractHTMLRobots(htmlMetas);
 							}
 						}
 
@@ -263,8 +301,22 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 	}
 
 	
-	private String extractHTMLRobots(MetaData m) {
-		JSONArray metas = JSONUtils.extractArray(m, "Envelope.Payload-Metadata.HTTP-Response-Metadata.HTML-Metadata.Head.Metas");
+	private JSONArray getHTMLMetas(MetaData m, byte[] htmlPrefix, int htmlPrefixLength) {
+		JSONObject htmlMetaData = HTML_METADATA_PATH.getObject(m);
+		if(htmlMetaData != null) {
+			return HTML_METAS_PATH.getArray(htmlMetaData, HTML_METADATA_PATH);
+		}
+		if(htmlPrefix == null) {
+			return null;
+		}
+		JSONArray metas = new JSONArray();
+		for(Map<String,String> attrs : HTMLMetaTagScanner.scan(htmlPrefix, htmlPrefixLength)) {
+			metas.put(new JSONObject(attrs));
+		}
+		return metas;
+	}
+
+	String extractHTMLRobots(JSONArray metas) {
 		if(metas != null) {
 			int count = metas.length();
 			for(int i = 0; i < count; i++) {
@@ -285,8 +337,7 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 		}
 		return "-";
 	}
-	private String extractHTMLMetaRefresh(String origUrl, MetaData m) {
-		JSONArray metas = JSONUtils.extractArray(m, "Envelope.Payload-Metadata.HTTP-Response-Metadata.HTML-Metadata.Head.Metas");
+	String extractHTMLMetaRefresh(String origUrl, JSONArray metas) {
 		if(metas != null) {
 			int count = metas.length();
 			for(int i = 0; i < count; i++) {
@@ -333,7 +384,7 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 			if(o.length() == 0) {
 				return defaultVal;
 			}
-			String lc = match.toLowerCase(Locale.ROOT).trim();
+			String lc = toHeaderKey(match);
 //			try {
 //				System.err.println("REC:" + o.toString(1));
 //			} catch (JSONException e1) {
@@ -341,7 +392,7 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 //				e1.printStackTrace();
 //			}
 			for(String key : JSONObject.getNames(o)) {
-				if(lc.equals(key.toLowerCase(Locale.ROOT).trim())) {
+				if(lc.equals(toHeaderKey(key))) {
 					try {
 						return o.getString(key).trim();
 					} catch (JSONException e) {
@@ -353,6 +404,31 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 		}
 		return defaultVal;
 	}
+	/**
+	 * @return name, lower case and trimmed, as header names are matched
+	 */
+	private static String toHeaderKey(String name) {
+		return name.toLowerCase(Locale.ROOT).trim();
+	}
+	private String scanHTTPHeadersLC(RecordMetaData record, MetaData m, String match, String defaultVal) {
+		if(!record.hasHTTPResponse()) {
+			return scanHeadersLC(HTTP_RESPONSE_HEADERS_PATH.getObject(m), match, defaultVal);
+		}
+		return scanHeadersLC(record.getHTTPHeaders(), match, defaultVal);
+	}
+	/**
+	 * As scanHeadersLC on the JSON of the headers: a repeated header is the
+	 * JSON array of its values.
+	 */
+	static String scanHeadersLC(HttpHeaders headers, String match, String defaultVal) {
+		String lc = toHeaderKey(match);
+		for(HttpHeader h : headers) {
+			if(lc.equals(toHeaderKey(h.getName()))) {
+				return RecordMetaData.getValue(headers, h.getName()).trim();
+			}
+		}
+		return defaultVal;
+	}
 	private String getContainerFilename(MetaData m) {
 		return unwrapFirst(filenameSpec.extract(m),"-");
 	}
@@ -365,25 +441,17 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 	private String getEnvelopeFormat(MetaData m) {
 		return unwrapFirst(formatSpec.extract(m),"-");
 	}
-	private String getWARCURL(MetaData m) {
-		return unwrapFirst(warcURL.extract(m),"-");
-	}
-	private String getWARCDate(MetaData m) {
-		return normalizeWARCDate(unwrapFirst(warcDate.extract(m),"-"));
-	}
-	private String getWARCType(MetaData m) {
-		return unwrapFirst(warcType.extract(m),"-");
+	private String getWARCHeader(RecordMetaData record, String name) {
+		String value = record.getWARCHeader(name);
+		return (value == null || value.isEmpty()) ? "-" : value;
 	}
-	private String getWARCPayloadDigest(MetaData m) {
-		return normalizeSHA1(unwrapFirst(warcPayloadDigest.extract(m),"-"));
-	}
-	private String getHTTPStatus(MetaData m) {
+	private String getHTTPStatus(RecordMetaData record, MetaData m) {
+		if(record.hasHTTPResponse()) {
+			return String.valueOf(record.getHTTPStatus());
+		}
 		return unwrapFirst(httpResponseCode.extract(m),"-");
 	}
 	
-	private String getWARCContentType(MetaData m) {
-		return unwrapFirst(warcContentType.extract(m),"-");
-	}
 	private String getEnvelopeBlockDigest(MetaData m) {
 		return normalizeSHA1(unwrapFirst(envBlockDigest.extract(m),"-"));
 	}
@@ -471,7 +539,7 @@ public class RealCDXExtractorOutput implements ExtractorOutput {
 	private static String NO_FOLLOW_MATCH = "NOFOLLOW";
 	private static String NO_INDEX_MATCH = "NOINDEX";
 	private static String NO_ARCHIVE_MATCH = "NOARCHIVE";
-	private String parseRobotInstructions(String input) {
+	String parseRobotInstructions(String input) {
 		if(input == null) {
 			return "-";
 		}
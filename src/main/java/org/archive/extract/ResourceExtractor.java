@@ -1,5 +1,6 @@
 package org.archive.extract;
 
+import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -8,6 +9,8 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -23,6 +26,8 @@ import org.archive.resource.ResourceParseException;
 import org.archive.resource.ResourceProducer;
 import org.archive.url.WaybackURLKeyMaker;
 
+import com.google.common.base.Supplier;
+
 public class ResourceExtractor implements ResourceConstants, Tool {
 	
 	private final static Logger LOG =
@@ -45,16 +50,25 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 	
 	private static int USAGE(int exitCode) {
 		System.err.println("Usage:\n");
-		System.err.println("extractor [OPT] SRC");
+		System.err.println("extractor [-strict] [-threads N] [OPT] SRC");
+		System.err.println("\t-threads N\tparse the records of a compressed SRC with N worker threads,");
+		System.err.println("\t\t\toutput stays in the order of the records");
 		System.err.println("\tSRC is the local path, HTTP or HDFS URL to an " +
 				"arc, warc, arc.gz, or warc.gz.");
 		System.err.println("\tOPT can be one of:");		
 		System.err.println("\t\t-cdxURL\tProduce output in old URL Wayback CDX format");
 		System.err.println("\t\t-cdx\tProduce output in NEW-SURT-Wayback CDX format");
 		System.err.println("\t\t\t (note that column 1 is NOT standard Wayback canonicalized)\n");
+		System.err.println("\t\t-cdxFast\tProduce the same CDX format, without parsing HTML");
+		System.err.println("\t\t\t (robots and refresh meta tags are only found in the first");
+		System.err.println("\t\t\t " + RealCDXExtractorOutput.DEFAULT_HTML_SCAN_LIMIT + " bytes of the payload)\n");
 		System.err.println("\t\t-wat\tembed JSON output in a compressed WARC" +
 				"wrapper, for storage, or sharing.");
 		System.err.println("\t\t-wet\tembed text extracts in a compressed WARC" + "wrapper, for storage, or sharing.");
+		System.err.println("\nextractor [-strict] [-threads N] -multi SRC OUTPUT...");
+		System.err.println("\tProduce several outputs in a single pass over SRC.");
+		System.err.println("\tOUTPUT is FORMAT:PATH, with FORMAT one of cdx, cdxURL, wat or wet,");
+		System.err.println("\teg. cdx:out.cdx wat:out.warc.wat.gz wet:out.warc.wet.gz");
 		return exitCode;
 	}
 
@@ -69,6 +83,49 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 		return new PrintWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
 	}
 
+	/**
+	 * @param spec FORMAT:PATH output specification for -multi
+	 * @param opened the writer or file opened is added to, to close it
+	 * @return output writing to a new file at PATH, or null if spec is invalid
+	 */
+	private ExtractorOutput makeOutput(String spec, List<Closeable> opened)
+	throws FileNotFoundException {
+		int colon = spec.indexOf(':');
+		if(colon < 1 || colon == spec.length() - 1) {
+			return null;
+		}
+		String format = spec.substring(0, colon);
+		String outputFile = spec.substring(colon + 1);
+		if(!format.equals("cdx") && !format.equals("cdxURL")
+				&& !format.equals("wat") && !format.equals("wet")) {
+			return null;
+		}
+		OutputStream os = new FileOutputStream(outputFile);
+		if(format.equals("cdx") || format.equals("cdxURL")) {
+			PrintWriter pw = makePrintWriter(os);
+			opened.add(pw);
+			if(format.equals("cdx")) {
+				return new RealCDXExtractorOutput(pw);
+			}
+			return new RealCDXExtractorOutput(pw, new WaybackURLKeyMaker(false));
+		}
+		opened.add(os);
+		if(format.equals("wat")) {
+			return new WATExtractorOutput(os, outputFile);
+		}
+		return new WETExtractorOutput(os);
+	}
+
+	private static void closeOutputs(List<Closeable> opened) {
+		for(Closeable os : opened) {
+			try {
+				os.close();
+			} catch(IOException e) {
+				LOG.warning(e.toString());
+			}
+		}
+	}
+
 	public int run(String[] args) 
 	throws IndexOutOfBoundsException, FileNotFoundException, IOException,
 	ResourceParseException, URISyntaxException {
@@ -76,13 +133,11 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 		if(args.length < 1) {
 			return USAGE(1);
 		}
-		if(args.length > 4) {
-			return USAGE(1);
-		}
 		int max = Integer.MAX_VALUE;
 		OutputStream os = this.out == null ? System.out : this.out;
 	    Logger.getLogger("org.archive").setLevel(Level.WARNING);
 	    ExtractorOutput out;
+	    ResourceFactoryMapper mapper = new ExtractingResourceFactoryMapper();
 	    int arg = 0;
 	    if(args.length > 0) {
 	    	if(args[0].equals("-strict")) {
@@ -90,9 +145,46 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 	    		arg++;
 	    	}	   
 	    }
+	    int threads = 0;
+	    if(args.length > arg + 1 && args[arg].equals("-threads")) {
+	    	try {
+	    		threads = Integer.parseInt(args[arg+1]);
+	    	} catch(NumberFormatException e) {
+	    		return USAGE(1);
+	    	}
+	    	arg += 2;
+	    }
+	    if(args.length <= arg) {
+	    	return USAGE(1);
+	    }
+	    if(args.length > arg + 3 && !args[arg].equals("-multi")) {
+	    	return USAGE(1);
+	    }
 	    String path = args[arg];
 	    String outputFile = null;
-	    if(args.length >= arg + 2) {
+	    // files of the -multi outputs, closed when done
+	    List<Closeable> opened = new ArrayList<Closeable>();
+	    if(args[arg].equals("-multi")) {
+	    	if(args.length < arg + 3) {
+	    		return USAGE(1);
+	    	}
+	    	path = args[arg+1];
+	    	MultiExtractorOutput multi = new MultiExtractorOutput();
+	    	try {
+	    		for(int i = arg + 2; i < args.length; i++) {
+	    			ExtractorOutput output = makeOutput(args[i], opened);
+	    			if(output == null) {
+	    				closeOutputs(opened);
+	    				return USAGE(1);
+	    			}
+	    			multi.addOutput(output);
+	    		}
+	    	} catch(FileNotFoundException e) {
+	    		closeOutputs(opened);
+	    		throw e;
+	    	}
+	    	out = multi;
+	    } else if(args.length >= arg + 2) {
 	        //if a output file is specified in the command line
 	        if(args.length == arg + 3) {
 	            outputFile = args[arg+2];
@@ -103,6 +195,13 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 	    		path = args[arg+1];
 	    		out = new RealCDXExtractorOutput(makePrintWriter(os));
 	    		
+	    	} else if(args[arg].equals("-cdxFast")) {
+	    		path = args[arg+1];
+	    		RealCDXExtractorOutput cdxOut = new RealCDXExtractorOutput(makePrintWriter(os));
+	    		cdxOut.setHTMLScanLimit(RealCDXExtractorOutput.DEFAULT_HTML_SCAN_LIMIT);
+	    		out = cdxOut;
+	    		mapper = new CDXResourceFactoryMapper();
+
 	    	} else if(args[arg].equals("-cdxURL")) {
 	    		path = args[arg+1];
 	    		out = new RealCDXExtractorOutput(makePrintWriter(os), new WaybackURLKeyMaker(false));
@@ -120,11 +219,32 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 	    } else {
 	    	out = new DumpingExtractorOutput(os);
 	    }
+	    try {
+	    	return extract(path, out, mapper, threads, max);
+	    } finally {
+	    	closeOutputs(opened);
+	    }
+	}
+
+	private int extract(String path, ExtractorOutput out, ResourceFactoryMapper mapper,
+			int threads, int max) throws IOException, ResourceParseException {
+	    if(threads > 0 && ExtractorPipeline.isSupported(path)) {
+	    	final boolean cdxMapper = (mapper instanceof CDXResourceFactoryMapper);
+	    	ExtractorPipeline pipeline = new ExtractorPipeline(path, new Supplier<ResourceFactoryMapper>() {
+	    		@Override
+	    		public ResourceFactoryMapper get() {
+	    			return cdxMapper ? new CDXResourceFactoryMapper() : new ExtractingResourceFactoryMapper();
+	    		}
+	    	}, threads);
+	    	if(pipeline.run(out, max) < 0) {
+	    		return USAGE(1);
+	    	}
+	    	return 0;
+	    }
 	    ResourceProducer producer = ProducerUtils.getProducer(path);
 	    if(producer == null) {
 	    	return USAGE(1);
 	    }
-	    ResourceFactoryMapper mapper = new ExtractingResourceFactoryMapper();
 	    ExtractingResourceProducer exProducer = 
 	    	new ExtractingResourceProducer(producer, mapper);
 
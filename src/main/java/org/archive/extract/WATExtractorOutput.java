@@ -4,7 +4,6 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.text.ParseException;
 import java.net.UnknownHostException;
 import java.util.Date;
@@ -13,22 +12,26 @@ import java.util.Locale;
 import org.archive.format.gzip.GZIPMemberWriter;
 import org.archive.format.gzip.GZIPMemberWriterCommittedOutputStream;
 import org.archive.format.http.HttpHeaders;
-import org.archive.format.json.JSONUtils;
+import org.archive.format.json.JSONPath;
+import org.archive.format.json.UTF8JSONWriter;
+import org.archive.format.warc.WARCConstants;
 import org.archive.format.warc.WARCRecordWriter;
 import org.archive.resource.MetaData;
+import org.archive.resource.RecordMetaData;
 import org.archive.resource.Resource;
 import org.archive.util.IAUtils;
 import org.archive.util.DateUtils;
 import org.archive.util.StreamCopy;
 import org.archive.util.io.CommitedOutputStream;
 
+import com.github.openjson.JSONException;
 import com.github.openjson.JSONObject;
 
 import java.net.InetAddress;
 
 import java.util.logging.Logger;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.archive.extract.MetaDataPaths.*;
 
 public class WATExtractorOutput implements ExtractorOutput {
 	WARCRecordWriter recW;
@@ -37,6 +40,8 @@ public class WATExtractorOutput implements ExtractorOutput {
 	private static int DEFAULT_BUFFER_RAM = 1024 * 1024;
 	private int bufferRAM = DEFAULT_BUFFER_RAM;
 	private String outputFile;
+	/** JSON of the current record, reused */
+	private UTF8JSONWriter json = new UTF8JSONWriter();
 	
 	private static final Logger LOG = Logger.getLogger(WATExtractorOutput.class.getName());
 	
@@ -66,7 +71,9 @@ public class WATExtractorOutput implements ExtractorOutput {
 			cos.commit();
 			wroteFirst = true;
 		}
-		String envelopeFormat = JSONUtils.extractSingle(top, "Envelope.Format");
+		RecordMetaData record = top.getRecordMetaData();
+		String envelopeFormat = record.hasWARC() ? record.getEnvelopeFormat()
+				: ENVELOPE_FORMAT_PATH.getString(top);
 		if(envelopeFormat == null) {
 			// hrm...
 			throw new IOException("Missing Envelope.Format");
@@ -74,7 +81,7 @@ public class WATExtractorOutput implements ExtractorOutput {
 
 		// remove the text extracts if it exists
 		String textExtract = null;
-		JSONObject htmlMeta = JSONUtils.extractObject(top, "Envelope.Payload-Metadata.HTTP-Response-Metadata.HTML-Metadata");
+		JSONObject htmlMeta = HTML_METADATA_PATH.getObject(top);
 		if (htmlMeta != null && htmlMeta.has("Text")) {
 			textExtract = htmlMeta.getString("Text");
 			htmlMeta.remove("Text");
@@ -84,7 +91,7 @@ public class WATExtractorOutput implements ExtractorOutput {
 		if(envelopeFormat.startsWith("ARC")) {
 			writeARC(cos,top);
 		} else if(envelopeFormat.startsWith("WARC")) {
-			writeWARC(cos,top);
+			writeWARC(cos,top,record);
 		} else {
 			// hrm...
 			throw new IOException("Unknown Envelope.Format");
@@ -102,7 +109,7 @@ public class WATExtractorOutput implements ExtractorOutput {
 		String filename = outputFile;
 		if (filename == null || filename.length() == 0) {
 			// if no filename by command line, we construct a default filename base on container filename
-			filename = JSONUtils.extractSingle(md, "Container.Filename");
+			filename = CONTAINER_FILENAME_PATH.getString(md);
 			if (filename == null) {
 				throw new IOException("No Container.Filename...");
 			}
@@ -148,8 +155,9 @@ public class WATExtractorOutput implements ExtractorOutput {
                 recW.writeWARCInfoRecord(recOut,filename,baos.toByteArray());
 	}
 
-	private String extractOrIO(MetaData md, String path) throws IOException {
-		String value = JSONUtils.extractSingle(md, path);
+	private String extractOrIO(JSONObject json, JSONPath path, JSONPath base)
+			throws IOException {
+		String value = path.getString(json, base);
 		if(value == null) {
 			throw new IOException("No "+path+" found.");
 		}
@@ -157,25 +165,39 @@ public class WATExtractorOutput implements ExtractorOutput {
 	}
 
 	private void writeARC(OutputStream recOut, MetaData md) throws IOException {
-		String targetURI = extractOrIO(md, "Envelope.ARC-Header-Metadata.Target-URI");
-		String capDateString = extractOrIO(md, "Envelope.ARC-Header-Metadata.Date");
-		String filename = extractOrIO(md, "Container.Filename");
-		String offset = extractOrIO(md, "Container.Offset");
+		JSONObject arcHeaders = ARC_HEADERS_PATH.getObject(md);
+		String targetURI = extractOrIO(arcHeaders, ARC_TARGET_URI_PATH, ARC_HEADERS_PATH);
+		String capDateString = extractOrIO(arcHeaders, ARC_DATE_PATH, ARC_HEADERS_PATH);
+		JSONObject container = CONTAINER_PATH.getObject(md);
+		String filename = extractOrIO(container, CONTAINER_FILENAME_PATH, CONTAINER_PATH);
+		String offset = extractOrIO(container, CONTAINER_OFFSET_PATH, CONTAINER_PATH);
 		String recId = String.format(Locale.ROOT, "<urn:arc:%s:%s>",filename,offset);
 		writeWARCMDRecord(recOut,md,targetURI,capDateString,recId);
 	}
 
-	private void writeWARC(OutputStream recOut, MetaData md) throws IOException {
-		String warcType = extractOrIO(md, "Envelope.WARC-Header-Metadata.WARC-Type");
+	private String extractOrIO(RecordMetaData record, String name)
+			throws IOException {
+		String value = record.getWARCHeader(name);
+		if(value == null) {
+			throw new IOException("No "+WARC_HEADERS_PATH.child(name)+" found.");
+		}
+		return value;
+	}
+
+	private void writeWARC(OutputStream recOut, MetaData md, RecordMetaData record)
+			throws IOException {
+		// read from the typed headers, not to build the JSON of the headers
+		// before it is written
+		String warcType = extractOrIO(record, WARCConstants.HEADER_KEY_TYPE);
 		String targetURI;
 		if(warcType.equals("warcinfo")) {
-			targetURI = JSONUtils.extractSingle(md, "Envelope.WARC-Header-Metadata.WARC-Filename");
+			targetURI = record.getWARCHeader(WARCConstants.HEADER_KEY_FILENAME);
 		} else {
-			targetURI = extractOrIO(md, "Envelope.WARC-Header-Metadata.WARC-Target-URI");
+			targetURI = extractOrIO(record, WARCConstants.HEADER_KEY_URI);
 		}
 		// handle date of generation in WARC format
 		Date date = new Date();
-		String recId = extractOrIO(md, "Envelope.WARC-Header-Metadata.WARC-Record-ID");
+		String recId = extractOrIO(record, WARCConstants.HEADER_KEY_ID);
 		writeWARCMDRecord(recOut,md,targetURI,date,recId);
 	}
 
@@ -183,14 +205,14 @@ public class WATExtractorOutput implements ExtractorOutput {
 			String targetURI, Date capDate, String recId)
 	throws IOException {
 
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-
-		OutputStreamWriter osw = new OutputStreamWriter(bos, UTF_8);
-		String contents = md.toString();
-		osw.write(contents, 0, contents.length());
-		osw.flush();
+		json.reset();
+		try {
+			json.write(md);
+		} catch (JSONException e) {
+			throw new IOException(e);
+		}
 
-		recW.writeJSONMetadataRecord(recOut, bos.toByteArray(),
+		recW.writeJSONMetadataRecord(recOut, json.getBuffer(), 0, json.getLength(),
 				targetURI, capDate, recId);
 	}
 
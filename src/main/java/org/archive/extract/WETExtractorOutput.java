@@ -3,9 +3,11 @@ package org.archive.extract;
 import org.archive.format.gzip.GZIPMemberWriter;
 import org.archive.format.gzip.GZIPMemberWriterCommittedOutputStream;
 import org.archive.format.http.HttpHeaders;
-import org.archive.format.json.JSONUtils;
+import org.archive.format.json.JSONPath;
+import org.archive.format.warc.WARCConstants;
 import org.archive.format.warc.WARCRecordWriter;
 import org.archive.resource.MetaData;
+import org.archive.resource.RecordMetaData;
 import org.archive.resource.Resource;
 import org.archive.util.IAUtils;
 import org.archive.util.StreamCopy;
@@ -16,6 +18,10 @@ import com.github.openjson.JSONObject;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
@@ -25,6 +31,8 @@ import java.util.Date;
 import java.util.Map;
 import java.util.TreeMap;
 
+import static org.archive.extract.MetaDataPaths.*;
+
 /**
  * This is for generating a WARC Encapsulated Text file
  *
@@ -39,6 +47,23 @@ public class WETExtractorOutput implements ExtractorOutput {
   private int bufferRAM = DEFAULT_BUFFER_RAM;
   private String outFilename;
 
+  // UTF-8 text of the current record, reused across records up to a size
+  private static final int INITIAL_TEXT_BYTES = 64 * 1024;
+  private static final int MAX_RETAINED_TEXT_BYTES = 8 * 1024 * 1024;
+  private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private ByteBuffer textBytes = ByteBuffer.allocate(INITIAL_TEXT_BYTES);
+
+  // Dup out some useful headers from the incoming warcinfo
+  private static final JSONPath[] USEFUL_WARCINFO_HEADERS = {
+    WARCINFO_PATH.child("robots"),
+    WARCINFO_PATH.child("isPartOf"),
+    WARCINFO_PATH.child("operator"),
+    WARCINFO_PATH.child("description"),
+    WARCINFO_PATH.child("publisher")
+  };
+
   public WETExtractorOutput(OutputStream out) {
     this(out, null);
   }
@@ -66,22 +91,25 @@ public class WETExtractorOutput implements ExtractorOutput {
       cos.commit();
       wroteFirst = true;
     }
-    String envelopeFormat = JSONUtils.extractSingle(top, "Envelope.Format");
+    RecordMetaData record = top.getRecordMetaData();
+    String envelopeFormat = record.hasWARC() ? record.getEnvelopeFormat()
+        : ENVELOPE_FORMAT_PATH.getString(top);
     if (envelopeFormat == null) {
       throw new IOException("Missing Envelope.Format");
     }
 
-    String warctype = JSONUtils.extractSingle(top, "Envelope.WARC-Header-Metadata.WARC-Type");
+    String warctype = record.hasWARC() ? record.getWARCHeader(WARCConstants.HEADER_KEY_TYPE)
+        : WARC_TYPE_PATH.getString(top);
     if (warctype == null)
       return;
 
     if (warctype.equals("response")) {
-      String textExtract = JSONUtils.extractSingle(top, "Envelope.Payload-Metadata.HTTP-Response-Metadata.HTML-Metadata.Text");
+      String textExtract = HTML_TEXT_PATH.getString(top);
 
       if (textExtract != null) {
         cos = getOutput();
         if (envelopeFormat.startsWith("WARC")) {
-          writeWARC(cos, top, textExtract);
+          writeWARC(cos, record, textExtract);
         } else {
           // hrm...
           throw new IOException("Unknown Envelope.Format");
@@ -95,7 +123,7 @@ public class WETExtractorOutput implements ExtractorOutput {
     String filename = outFilename;
 
     if (filename == null) {
-      filename = JSONUtils.extractSingle(md, "Container.Filename");
+      filename = CONTAINER_FILENAME_PATH.getString(md);
 
       if (filename == null) {
         throw new IOException("No Container.Filename...");
@@ -107,14 +135,13 @@ public class WETExtractorOutput implements ExtractorOutput {
     headers.addDateHeader("Extracted-Date", new Date());
 
     // Dup out some useful headers from the incoming warcinfo
-    String warctype = JSONUtils.extractSingle(md, "Envelope.WARC-Header-Metadata.WARC-Type");
+    String warctype = WARC_TYPE_PATH.getString(md);
     if (warctype != null && warctype.equals("warcinfo")) {
-      final String[] usefulHeaders = {"robots", "isPartOf", "operator", "description", "publisher"};
-
-      for (String header : usefulHeaders) {
-        String value = JSONUtils.extractSingle(md, "Envelope.Payload-Metadata.WARC-Info-Metadata." + header);
+      JSONObject warcinfo = WARCINFO_PATH.getObject(md);
+      for (JSONPath header : USEFUL_WARCINFO_HEADERS) {
+        String value = header.getString(warcinfo, WARCINFO_PATH);
         if (value != null) {
-          headers.add(header, value);
+          headers.add(header.getName(), value);
         }
       }
     }
@@ -125,15 +152,15 @@ public class WETExtractorOutput implements ExtractorOutput {
     recW.writeWARCInfoRecord(recOut, filename, baos.toByteArray());
   }
 
-  private void writeWARC(OutputStream recOut, MetaData md, String textExtract) throws IOException {
-    JSONObject headers = JSONUtils.extractObject(md, "Envelope.WARC-Header-Metadata");
-    String targetURI = headers.getString("WARC-Target-URI");
-    String capDateString = headers.getString("WARC-Date");
-    String recId = headers.getString("WARC-Record-ID");
+  private void writeWARC(OutputStream recOut, RecordMetaData record, String textExtract) throws IOException {
+    String targetURI = record.getWARCHeader(WARCConstants.HEADER_KEY_URI);
+    String capDateString = record.getWARCHeader(WARCConstants.HEADER_KEY_DATE);
+    String recId = record.getWARCHeader(WARCConstants.HEADER_KEY_ID);
     Map<String, String> addHeaders = null;
-    if (headers.has("WARC-Identified-Content-Language")) {
+    String language = record.getWARCHeader("WARC-Identified-Content-Language");
+    if (language != null) {
       addHeaders = new TreeMap<String, String>();
-      addHeaders.put("WARC-Identified-Content-Language", headers.getString("WARC-Identified-Content-Language"));
+      addHeaders.put("WARC-Identified-Content-Language", language);
     }
     writeWARCMDRecord(recOut, targetURI, parseWarcDate(capDateString), recId, textExtract, addHeaders);
   }
@@ -149,7 +176,43 @@ public class WETExtractorOutput implements ExtractorOutput {
   private void writeWARCMDRecord(OutputStream recOut, String targetURI, Date capDate, String recId,
                                  String textExtract, Map<String,String> addHeaders)
       throws IOException {
-    recW.writeTextConversionRecord(recOut, textExtract.getBytes(StandardCharsets.UTF_8), targetURI, capDate, recId, addHeaders);
+    encodeText(textExtract);
+    recW.writeTextConversionRecord(recOut, textBytes.array(), 0, textBytes.position(),
+        targetURI, capDate, recId, addHeaders);
+    if (textBytes.capacity() > MAX_RETAINED_TEXT_BYTES) {
+      textBytes = ByteBuffer.allocate(INITIAL_TEXT_BYTES);
+    }
+  }
+
+  /**
+   * Encode text as UTF-8 into textBytes, growing it if needed. Unpaired
+   * surrogates are replaced by '?', as String.getBytes() does.
+   */
+  private void encodeText(CharSequence text) {
+    if (textBytes.capacity() < text.length()) {
+      // at least one byte a char
+      textBytes = ByteBuffer.allocate(text.length());
+    }
+    textBytes.clear();
+    utf8.reset();
+    CharBuffer chars = CharBuffer.wrap(text);
+    while (utf8.encode(chars, textBytes, true).isOverflow()) {
+      growText();
+    }
+    while (utf8.flush(textBytes).isOverflow()) {
+      growText();
+    }
+  }
+
+  private void growText() {
+    int capacity = textBytes.capacity();
+    if (capacity >= Integer.MAX_VALUE - 8) {
+      throw new OutOfMemoryError("Text too large: " + capacity + " bytes");
+    }
+    ByteBuffer grown = ByteBuffer.allocate((int) Math.min(2L * capacity, Integer.MAX_VALUE - 8));
+    textBytes.flip();
+    grown.put(textBytes);
+    textBytes = grown;
   }
 
 }
@@ -6,6 +6,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.logging.Logger;
 
 import org.archive.format.gzip.zipnum.ZipNumIndex;
 import org.archive.format.gzip.zipnum.ZipNumParams;
@@ -14,13 +15,17 @@ import org.archive.streamcontext.StreamWrappedInputStream;
 import org.archive.util.GeneralURIStreamFactory;
 import org.archive.util.binsearch.SeekableLineReaderFactory;
 import org.archive.util.binsearch.SortedTextFile;
+import org.archive.util.binsearch.impl.GZIPIndexedSeekableLineReaderFactory;
 import org.archive.util.binsearch.impl.RandomAccessFileSeekableLineReaderFactory;
 import org.archive.util.iterator.CloseableIterator;
+import org.archive.util.zip.GZIPSeekIndex;
 import org.archive.util.zip.OpenJDK7GZIPInputStream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class CDXFile extends SortedTextFile implements CDXInputSource {
+	
+	private static final Logger LOGGER = Logger.getLogger(CDXFile.class.getName());
 
 	public CDXFile(String uri) throws IOException {
 		super(getUriFactory(uri, false));
@@ -42,15 +47,47 @@ public class CDXFile extends SortedTextFile implements CDXInputSource {
 		return ZipNumIndex.wrapPrefix(getRecordIterator(key), prefix, exact);
 	}
 	
+	/**
+	 * @param decodeToTemp if the uri is gzipped: read through its
+	 * {@link GZIPSeekIndex} if a local file with one next to it, or else
+	 * decoded to a temporary file
+	 */
 	public static SeekableLineReaderFactory getUriFactory(String uri, boolean decodeToTemp) throws IOException
 	{
 		if (decodeToTemp) {
+			SeekableLineReaderFactory indexed = getIndexedFactory(uri);
+			
+			if (indexed != null) {
+				return indexed;
+			}
+			
 			return new RandomAccessFileSeekableLineReaderFactory(decodeGZToTemp(uri));
 		}
 		
 		return GeneralURIStreamFactory.createSeekableStreamFactory(uri, false);
 	}
 	
+	// Indexed gzipped cdx, if a local file with a sidecar index
+	protected static SeekableLineReaderFactory getIndexedFactory(String uri) {
+		if (GeneralURIStreamFactory.isHttp(uri) || GeneralURIStreamFactory.isHdfs(uri)) {
+			return null;
+		}
+		
+		File file = new File(uri);
+		File indexFile = GZIPSeekIndex.getIndexFile(file);
+		
+		if (!indexFile.isFile()) {
+			return null;
+		}
+		
+		try {
+			return new GZIPIndexedSeekableLineReaderFactory(file, indexFile);
+		} catch (IOException e) {
+			LOGGER.warning("Ignoring index " + indexFile + ": " + e);
+			return null;
+		}
+	}
+	
 	// Decode gzipped cdx to a temporary file	
 	public static File decodeGZToTemp(String uriGZ) throws IOException {
 		final int BUFFER_SIZE = 8192;
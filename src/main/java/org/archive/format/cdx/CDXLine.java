@@ -1,5 +1,6 @@
 package org.archive.format.cdx;
 
+import java.util.List;
 
 public class CDXLine extends FieldSplitLine implements CDXFieldConstants {
 
@@ -12,6 +13,11 @@ public class CDXLine extends FieldSplitLine implements CDXFieldConstants {
 		super(line.selectValues(selectNames), selectNames);
 	}
 
+	protected CDXLine(String line, List<String> fields, FieldSplitFormat names)
+	{
+		super(line, fields, names);
+	}
+
 	public String getUrlKey() {
 		return super.getField(CDXLine.urlkey);
 	}
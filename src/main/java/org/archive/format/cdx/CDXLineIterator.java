@@ -0,0 +1,47 @@
+package org.archive.format.cdx;
+
+import java.io.IOException;
+
+import org.archive.util.iterator.AbstractPeekableIterator;
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Iterates over the lines of a String iterator, as from a ZipNum cluster,
+ * as CDXLines made by a {@link CDXLineFactory}: with a lazy
+ * {@link StandardCDXLineFactory}, lines are not split until their fields
+ * are read.
+ */
+public class CDXLineIterator extends AbstractPeekableIterator<CDXLine> {
+
+	protected CloseableIterator<String> inner;
+	protected CDXLineFactory factory;
+	protected FieldSplitFormat format;
+
+	public CDXLineIterator(CloseableIterator<String> inner, CDXLineFactory factory)
+	{
+		this(inner, factory, factory.getParseFormat());
+	}
+
+	public CDXLineIterator(CloseableIterator<String> inner, CDXLineFactory factory, FieldSplitFormat format)
+	{
+		this.inner = inner;
+		this.factory = factory;
+		this.format = format;
+	}
+
+	@Override
+	public CDXLine getNextInner() {
+		if (inner == null || !inner.hasNext()) {
+			return null;
+		}
+		return factory.createStandardCDXLine(inner.next(), format);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (inner != null) {
+			inner.close();
+			inner = null;
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package org.archive.format.cdx;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * CDX line split into fields without copying them: keeps the line and the
+ * offsets of its fields, and makes field Strings only when asked for, once.
+ * Fields can also be read as {@link CharSequence} views of the line, and
+ * lines compared by urlkey and timestamp in place, see
+ * {@link #URLKEY_TIMESTAMP_ORDER}.
+ *
+ * Fields are split as by {@link FieldSplitLine#FieldSplitLine(String, char, FieldSplitFormat)}.
+ * Setting a field splits the line into a list of Strings, as a plain
+ * {@link CDXLine}.
+ */
+public class LazyCDXLine extends CDXLine {
+
+	/**
+	 * Orders lines by urlkey, then by timestamp, as comparing the lines
+	 * themselves would, without making field Strings.
+	 */
+	public final static Comparator<LazyCDXLine> URLKEY_TIMESTAMP_ORDER = new Comparator<LazyCDXLine>() {
+		public int compare(LazyCDXLine a, LazyCDXLine b) {
+			int cmp = a.compareField(0, b);
+			if (cmp != 0) {
+				return cmp;
+			}
+			return a.compareField(1, b);
+		}
+	};
+
+	/** start of field i at i, end at i + 1 (past the separator) */
+	protected final int[] offsets;
+	protected final int numFields;
+	protected String[] values = null;
+
+	public LazyCDXLine(String line, FieldSplitFormat names) {
+		this(line, ' ', names);
+	}
+
+	public LazyCDXLine(String line, char splitchar, FieldSplitFormat names) {
+		super(line, null, names);
+		if (line == null) {
+			this.offsets = null;
+			this.numFields = 0;
+			return;
+		}
+
+		// a separator at 0 does not split, as in FieldSplitLine
+		int first = line.indexOf(splitchar);
+		if (first == 0) {
+			first = -1;
+		}
+		int count = 1;
+		for (int i = first; i > 0; i = line.indexOf(splitchar, i + 1)) {
+			count++;
+		}
+		this.numFields = count;
+		this.offsets = new int[count + 1];
+		int field = 1;
+		for (int i = first; i > 0; i = line.indexOf(splitchar, i + 1)) {
+			offsets[field++] = i + 1;
+		}
+		offsets[count] = line.length() + 1;
+	}
+
+	/**
+	 * @return the fields split into a list, as in a CDXLine, now modifiable
+	 */
+	protected List<String> getFields() {
+		if (fields == null && fullLine != null) {
+			int size = getNumFields();
+			List<String> split = new ArrayList<String>(size);
+			for (int i = 0; i < size; i++) {
+				split.add(getField(i));
+			}
+			fields = split;
+		}
+		return fields;
+	}
+
+	@Override
+	public boolean isInRange(int index) {
+		return ((index >= 0) && (index < getNumFields()));
+	}
+
+	@Override
+	public int getNumFields() {
+		if (fields != null) {
+			return fields.size();
+		}
+		if (names != null) {
+			return Math.max(numFields, names.getLength());
+		}
+		return numFields;
+	}
+
+	@Override
+	public String getField(String name, String defaultVal) {
+		int index = getFieldIndex(name);
+		return (isInRange(index) ? getField(index) : defaultVal);
+	}
+
+	@Override
+	public String getField(int index) {
+		if (fields != null) {
+			return fields.get(index);
+		}
+		if (index >= numFields) {
+			if (index < getNumFields()) {
+				return EMPTY_VALUE;
+			}
+			throw new IndexOutOfBoundsException("Field " + index + " of " + getNumFields());
+		}
+		if (values == null) {
+			values = new String[numFields];
+		}
+		String value = values[index];
+		if (value == null) {
+			value = fullLine.substring(offsets[index], offsets[index + 1] - 1);
+			values[index] = value;
+		}
+		return value;
+	}
+
+	/**
+	 * @return a view of the field in the line, without copy
+	 */
+	public CharSequence getFieldSequence(int index) {
+		if (fields != null || index >= numFields) {
+			return getField(index);
+		}
+		return CharBuffer.wrap(fullLine, offsets[index], offsets[index + 1] - 1);
+	}
+
+	/**
+	 * Compare a field of this line with the same field of other, as
+	 * comparing their Strings would, without making them.
+	 */
+	public int compareField(int index, LazyCDXLine other) {
+		if (fields != null || other.fields != null
+				|| index >= numFields || index >= other.numFields) {
+			return getField(index).compareTo(other.getField(index));
+		}
+		String a = fullLine;
+		String b = other.fullLine;
+		int ai = offsets[index];
+		int aEnd = offsets[index + 1] - 1;
+		int bi = other.offsets[index];
+		int bEnd = other.offsets[index + 1] - 1;
+		while (ai < aEnd && bi < bEnd) {
+			char ca = a.charAt(ai++);
+			char cb = b.charAt(bi++);
+			if (ca != cb) {
+				return ca - cb;
+			}
+		}
+		return (aEnd - ai) - (bEnd - bi);
+	}
+
+	@Override
+	public String setField(int index, String value) {
+		String old = getFields().set(index, value);
+		fullLine = null;
+		return old;
+	}
+
+	@Override
+	public void setField(String fieldName, String value) {
+		getFields();
+		super.setField(fieldName, value);
+	}
+
+	@Override
+	public List<String> selectValues(FieldSplitFormat otherNames) {
+		List<String> selected = new ArrayList<String>(otherNames.getLength());
+
+		for (int i = 0; i < otherNames.getLength(); i++) {
+			int index = names.getFieldIndex(otherNames.getName(i));
+			if (isInRange(index)) {
+				selected.add(getField(index));
+			} else {
+				selected.add(EMPTY_VALUE);
+			}
+		}
+
+		return selected;
+	}
+}
@@ -11,6 +11,7 @@ import org.archive.format.gzip.zipnum.ZipNumParams;
 import org.archive.util.iterator.CloseableCompositeIterator;
 import org.archive.util.iterator.CloseableIterator;
 import org.archive.util.iterator.SortedCompositeIterator;
+import org.archive.util.iterator.StringPrefixComparator;
 
 public class MultiCDXInputSource implements CDXInputSource {
 
@@ -41,17 +42,9 @@ public class MultiCDXInputSource implements CDXInputSource {
 	}
 
 
-	public final static Comparator<String> defaultComparator = new Comparator<String>() {
-		public int compare(String s1, String s2) {
-			return s1.compareTo(s2);
-		}
-	};
+	public final static Comparator<String> defaultComparator = StringPrefixComparator.NATURAL;
 	
-	public final static Comparator<String> defaultReverseComparator = new Comparator<String>() {
-		public int compare(String s1, String s2) {
-			return -s1.compareTo(s2);
-		}
-	};
+	public final static Comparator<String> defaultReverseComparator = StringPrefixComparator.REVERSE;
 	
 	protected Comparator<String> comparator = defaultComparator;
 	protected Comparator<String> reverseComparator = defaultReverseComparator;	
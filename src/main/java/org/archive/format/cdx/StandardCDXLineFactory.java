@@ -18,8 +18,22 @@ public class StandardCDXLineFactory implements CDXLineFactory, CDXFieldConstants
 
 	protected final FieldSplitFormat parseFormat;
 	
+	/** If lines are created as {@link LazyCDXLine} */
+	protected boolean lazy = false;
+	
 	public StandardCDXLineFactory(String formatName)
 	{
+		this(formatName, false);
+	}
+	
+	/**
+	 * @param formatName "cdx11", else cdx09
+	 * @param lazy if true, create {@link LazyCDXLine}s, which split fields
+	 * on demand, instead of CDX11Line or CDX09Line
+	 */
+	public StandardCDXLineFactory(String formatName, boolean lazy)
+	{
+		this.lazy = lazy;
 		if (formatName == null) {
 			parseFormat = cdx09;
 		} else if (formatName.equals("cdx11")) {
@@ -39,9 +53,16 @@ public class StandardCDXLineFactory implements CDXLineFactory, CDXFieldConstants
 		return parseFormat;
 	}
 	
+	public boolean isLazy()
+	{
+		return lazy;
+	}
+	
 	public CDXLine createStandardCDXLine(String input)
 	{
-		if (parseFormat == cdx11) {
+		if (lazy) {
+			return new LazyCDXLine(input, parseFormat);
+		} else if (parseFormat == cdx11) {
 			return new CDX11Line(input, parseFormat);
 		} else if (parseFormat == cdx09) {
 			return new CDX09Line(input, parseFormat);
@@ -52,7 +73,9 @@ public class StandardCDXLineFactory implements CDXLineFactory, CDXFieldConstants
 	
 	public CDXLine createStandardCDXLine(String input, FieldSplitFormat exFormat)
 	{
-		if (parseFormat == cdx11) {
+		if (lazy) {
+			return new LazyCDXLine(input, exFormat);
+		} else if (parseFormat == cdx11) {
 			return new CDX11Line(input, exFormat);
 		} else if (parseFormat == cdx09) {
 			return new CDX09Line(input, exFormat);
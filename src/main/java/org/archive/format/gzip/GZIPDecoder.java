@@ -38,9 +38,14 @@ public class GZIPDecoder implements GZIPConstants {
 	 * case, if the stream was at EOF when the method is called, returns
 	 * GZIPHeaderParser.SEARCH_EOF_AT_START (which is Long.MIN_VALUE)
 	 * 
+	 * A GZIPMemberSeries is scanned in bulk, over its buffer.
+	 * 
 	 * @throws IOException
 	 */
 	public long alignOnMagic3(InputStream is) throws IOException {
+		if(is instanceof GZIPMemberSeries) {
+			return ((GZIPMemberSeries) is).alignOnMagic3();
+		}
 		
 		long bytesSkipped = 0;
 		byte lookahead[] = new byte[3];
@@ -0,0 +1,55 @@
+package org.archive.format.gzip;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds the gzip magic, 1f 8b 08, in a buffer a word at a time: each 8 byte
+ * word is tested for a 0x1f byte with SWAR bit operations, and the bytes
+ * following a 0x1f are only compared for words which have one.
+ */
+public class GZIPMagicScanner implements GZIPConstants {
+	private final static long ONES = 0x0101010101010101L;
+	private final static long HIGHS = 0x8080808080808080L;
+	private final static long MAGIC_ONE_BYTES = GZIP_MAGIC_ONE * ONES;
+
+	/**
+	 * Find the first gzip magic in b, from index from up to index to. A magic
+	 * cut by to is found as well, so the caller can keep its bytes and scan
+	 * again with more data.
+	 *
+	 * @return index of the first magic, complete if the index is at most
+	 * to - 3, or else cut at to; to if there is none
+	 */
+	public static int indexOfMagic(byte[] b, int from, int to) {
+		int i = from;
+		if(to - from >= 8) {
+			ByteBuffer words = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+			for(; i <= to - 8; i += 8) {
+				// high bit set on each byte equal to 0x1f, and possibly on
+				// 0x1e bytes after one: those are checked below
+				long v = words.getLong(i) ^ MAGIC_ONE_BYTES;
+				long found = (v - ONES) & ~v & HIGHS;
+				while(found != 0) {
+					int j = i + (Long.numberOfTrailingZeros(found) >>> 3);
+					if(isMagicAt(b, j, to)) {
+						return j;
+					}
+					found &= found - 1;
+				}
+			}
+		}
+		for(; i < to; i++) {
+			if(isMagicAt(b, i, to)) {
+				return i;
+			}
+		}
+		return to;
+	}
+
+	private static boolean isMagicAt(byte[] b, int i, int to) {
+		return ((b[i] & 0xff) == GZIP_MAGIC_ONE)
+			&& ((i + 1 >= to) || ((b[i + 1] & 0xff) == GZIP_MAGIC_TWO))
+			&& ((i + 2 >= to) || GZIPHeader.isValidCompressionMethod(b[i + 2] & 0xff));
+	}
+}
@@ -0,0 +1,95 @@
+package org.archive.format.gzip;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import org.archive.streamcontext.RandomAccessFileStream;
+import org.archive.streamcontext.Stream;
+
+/**
+ * Lists the valid members of a series of gzip members, with their offset and
+ * compressed length. A member is valid if it inflates up to a footer with a
+ * matching CRC and length: invalid members, and bytes between members, are
+ * skipped, scanning for the next gzip magic.
+ *
+ * Run as a tool, prints one line per member of a file: offset and length,
+ * tab separated.
+ */
+public class GZIPMemberLister implements Closeable {
+	private final static int READ_SIZE = 1024 * 1024;
+
+	private GZIPMemberSeries series;
+	private long offset = -1;
+	private long length = -1;
+
+	public GZIPMemberLister(Stream stream, String context) {
+		series = new GZIPMemberSeries(stream, context, 0, false);
+	}
+
+	/**
+	 * Move to the next valid member.
+	 *
+	 * @return false if there are no more members
+	 * @throws IOException on errors of the underlying Stream
+	 */
+	public boolean next() throws IOException {
+		while(true) {
+			GZIPSeriesMember member = series.getNextMember();
+			if(member == null) {
+				offset = -1;
+				length = -1;
+				return false;
+			}
+			try {
+				member.skipMember();
+			} catch(GZIPFormatException e) {
+				// the series scans for the next member
+				continue;
+			}
+			if(member.gotEOR() && !member.gotGZipError()) {
+				offset = series.getCurrentMemberStartOffset();
+				length = series.getOffset() - offset;
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @return offset of the current member
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return compressed length of the current member, header and footer
+	 * included
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	public void close() throws IOException {
+		series.close();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length != 1) {
+			System.err.println("USAGE: GZIPMemberLister FILE");
+			System.err.println("\tprints offset and compressed length of each valid gzip member in FILE");
+			System.exit(1);
+		}
+		File file = new File(args[0]);
+		GZIPMemberLister lister = new GZIPMemberLister(
+				new RandomAccessFileStream(file, 0L, READ_SIZE), file.getName());
+		try {
+			while(lister.next()) {
+				System.out.println(lister.getOffset() + "\t" + lister.getLength());
+			}
+		} finally {
+			lister.close();
+		}
+		System.out.flush();
+	}
+}
@@ -0,0 +1,114 @@
+package org.archive.format.gzip;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.streamcontext.Stream;
+import org.archive.streamcontext.StreamWrappedInputStream;
+import org.archive.util.StreamCopy;
+
+import com.google.common.base.Predicate;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Finds the start of the next valid gzip member at or after an arbitrary
+ * offset of a series of gzip members, eg. at the start of a split of a
+ * .warc.gz file.
+ *
+ * The gzip magic bytes may also occur inside compressed data, so each
+ * candidate found by scanning for the magic is validated: its header must
+ * parse, the member must inflate up to a valid footer, and the start of the
+ * inflated data must be accepted by a caller supplied check, eg. a WARC or
+ * ARC record header.
+ */
+public class GZIPMemberLocator implements GZIPConstants {
+	private static final Logger LOG =
+		Logger.getLogger(GZIPMemberLocator.class.getName());
+
+	private final static int SCAN_BUFFER_SIZE = 64 * 1024;
+
+	private Stream stream;
+	private String context;
+	private int prefixLength;
+	private Predicate<byte[]> prefixCheck;
+
+	/**
+	 * @param prefixLength number of inflated bytes passed to prefixCheck, less
+	 * if the member is shorter
+	 * @param prefixCheck returns true if the inflated data starts like a
+	 * valid record
+	 */
+	public GZIPMemberLocator(Stream stream, String context, int prefixLength,
+			Predicate<byte[]> prefixCheck) {
+		this.stream = stream;
+		this.context = context;
+		this.prefixLength = prefixLength;
+		this.prefixCheck = prefixCheck;
+	}
+
+	/**
+	 * Find the first valid member starting at or after start, and before
+	 * limit. The Stream is left at an unspecified offset.
+	 *
+	 * @return offset of the member, or -1 if there is none before limit
+	 */
+	public long findMember(long start, long limit) throws IOException {
+		byte[] buf = new byte[SCAN_BUFFER_SIZE];
+		long pos = start;
+
+		while(pos < limit) {
+			stream.setOffset(pos);
+			int len = ByteStreams.read(new StreamWrappedInputStream(stream), buf, 0, buf.length);
+			if(len < 3) {
+				return -1;
+			}
+			int i = GZIPMagicScanner.indexOfMagic(buf, 0, len);
+			if(i > len - 3) {
+				// none, or the start of a magic cut at the end of buf
+				pos += i;
+				continue;
+			}
+			long candidate = pos + i;
+			if(candidate >= limit) {
+				return -1;
+			}
+			if(isValidMember(candidate)) {
+				return candidate;
+			}
+			// stream moved, rescan after the candidate
+			pos = candidate + 1;
+		}
+		return -1;
+	}
+
+	protected boolean isValidMember(long offset) {
+		try {
+			stream.setOffset(offset);
+			GZIPMemberSeries series = new GZIPMemberSeries(stream, context, offset, true);
+			GZIPSeriesMember member = series.getNextMember();
+			if((member == null) || (series.getCurrentMemberStartOffset() != offset)) {
+				return false;
+			}
+			byte[] prefix = new byte[prefixLength];
+			int len = ByteStreams.read(member, prefix, 0, prefixLength);
+			if(len < prefixLength) {
+				byte[] shorter = new byte[len];
+				System.arraycopy(prefix, 0, shorter, 0, len);
+				prefix = shorter;
+			}
+			if(!prefixCheck.apply(prefix)) {
+				return false;
+			}
+			// inflate to the footer, which checks the CRC and length
+			StreamCopy.readToEOF(member);
+			return member.gotEOR();
+		} catch(IOException e) {
+			if(LOG.isLoggable(Level.FINE)) {
+				LOG.fine(String.format(Locale.ROOT, "No valid member at %d in %s: %s", offset, context, e));
+			}
+			return false;
+		}
+	}
+}
@@ -317,9 +317,50 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 		return amtWritten;
 	}
 
+	/**
+	 * Skip bytes until the gzip magic, scanning the buffer in bulk, and leave
+	 * the series after it.
+	 *
+	 * @return as {@link GZIPDecoder#alignOnMagic3(InputStream)}
+	 * @throws IOException
+	 */
+	long alignOnMagic3() throws IOException {
+		long bytesSkipped = 0;
+		while(true) {
+			int end = bufferPos + bufferSize;
+			int found = GZIPMagicScanner.indexOfMagic(buffer, bufferPos, end);
+			int amtToSkip = found - bufferPos;
+			bufferPos += amtToSkip;
+			bufferSize -= amtToSkip;
+			offset += amtToSkip;
+			bytesSkipped += amtToSkip;
+			if(found + 3 <= end) {
+				bufferPos += 3;
+				bufferSize -= 3;
+				offset += 3;
+				return bytesSkipped;
+			}
+			// none, or the start of a magic: keep it and read more
+			if(!fillBuffer()) {
+				long skippedBeforeEOF = bytesSkipped + bufferSize;
+				bufferPos += bufferSize;
+				offset += bufferSize;
+				bufferSize = 0;
+				if(skippedBeforeEOF == 0) {
+					return GZIPDecoder.SEARCH_EOF_AT_START;
+				}
+				return -1 * skippedBeforeEOF;
+			}
+		}
+	}
+
 	private boolean fillBuffer() throws IOException {
 		try {
-			int amtRead = stream.read(buffer,0,buffer.length);
+			if((bufferSize > 0) && (bufferPos > 0)) {
+				// keep unread bytes
+				System.arraycopy(buffer, bufferPos, buffer, 0, bufferSize);
+			}
+			int amtRead = stream.read(buffer,bufferSize,buffer.length - bufferSize);
 			if(LOG.isLoggable(Level.FINE)) {
 				LOG.fine("Underlying Stream read("+amtRead+") bytes");
 			}
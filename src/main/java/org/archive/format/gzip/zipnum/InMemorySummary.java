@@ -0,0 +1,471 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.logging.Logger;
+
+import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.iterator.AbstractPeekableIterator;
+import org.archive.util.iterator.CloseableIterator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * In-memory copy of a ZipNum summary (ALL.summary), for servers that would
+ * rather keep the whole summary in memory than binary search it on disk or
+ * over HTTP.
+ *
+ * Each summary line is <code>key\tpart\toffset\tlength[\tlinecount]</code>.
+ * The keys are stored back to back as UTF-8 in a single byte array, the other
+ * fields in primitive arrays, and part ids are interned in a table. Lookups
+ * are binary searches over the key bytes which perform no I/O and do not
+ * allocate.
+ *
+ * Key comparisons behave like comparing the full summary line against the
+ * search key, as {@link org.archive.util.binsearch.SortedTextFile} does,
+ * except that the byte order of UTF-8 is used, which only differs from
+ * {@link String#compareTo(String)} for supplementary characters.
+ *
+ * Instances are immutable once loaded and may be shared between threads.
+ */
+public class InMemorySummary {
+
+	final static Logger LOGGER = Logger.getLogger(InMemorySummary.class.getName());
+
+	private final static byte FIELD_SEP = '\t';
+
+	protected final byte[] keys;
+	protected final int[] keyStarts;
+	protected final int[] parts;
+	protected final String[] partIds;
+	protected final long[] offsets;
+	protected final int[] lengths;
+	protected final int[] lineCounts;
+	protected final int size;
+	protected final long modTime;
+
+	protected InMemorySummary(Builder builder, long modTime)
+	{
+		this.size = builder.size;
+		this.keys = Arrays.copyOf(builder.keys, builder.keysLength);
+		this.keyStarts = Arrays.copyOf(builder.keyStarts, size + 1);
+		this.parts = Arrays.copyOf(builder.parts, size);
+		this.partIds = builder.partIdList.toArray(new String[builder.partIdList.size()]);
+		this.offsets = Arrays.copyOf(builder.offsets, size);
+		this.lengths = Arrays.copyOf(builder.lengths, size);
+		this.lineCounts = Arrays.copyOf(builder.lineCounts, size);
+		this.modTime = modTime;
+	}
+
+	/**
+	 * Accumulates summary lines, which must be added in sorted order
+	 */
+	public static class Builder
+	{
+		byte[] keys = new byte[64 * 1024];
+		int keysLength = 0;
+		int[] keyStarts = new int[1024 + 1];
+		int[] parts = new int[1024];
+		long[] offsets = new long[1024];
+		int[] lengths = new int[1024];
+		int[] lineCounts = new int[1024];
+		int size = 0;
+
+		HashMap<String, Integer> partIdMap = new HashMap<String, Integer>();
+		ArrayList<String> partIdList = new ArrayList<String>();
+
+		/**
+		 * @return false if the line is not a valid summary line and was skipped
+		 */
+		public boolean addLine(String line) throws IOException
+		{
+			String[] fields = line.split("\t");
+
+			if (fields.length < 4) {
+				return false;
+			}
+
+			long offset;
+			int length;
+			int lineCount = -1;
+
+			try {
+				offset = Long.parseLong(fields[2]);
+				length = Integer.parseInt(fields[3]);
+
+				if (fields.length > 4) {
+					lineCount = Integer.parseInt(fields[4]);
+				}
+			} catch (NumberFormatException n) {
+				return false;
+			}
+
+			add(fields[0], fields[1], offset, length, lineCount);
+			return true;
+		}
+
+		public void add(String key, String partId, long offset, int length, int lineCount) throws IOException
+		{
+			byte[] keyBytes = key.getBytes(UTF_8);
+
+			if (((long)keysLength + keyBytes.length) > (Integer.MAX_VALUE - 8)) {
+				throw new IOException("Summary keys exceed 2GB, too large to load in memory");
+			}
+
+			if (keysLength + keyBytes.length > keys.length) {
+				int newLength = (int)Math.min(Integer.MAX_VALUE - 8,
+						Math.max((long)keys.length * 2, (long)keysLength + keyBytes.length));
+				keys = Arrays.copyOf(keys, newLength);
+			}
+
+			if (size == parts.length) {
+				int newSize = size * 2;
+				keyStarts = Arrays.copyOf(keyStarts, newSize + 1);
+				parts = Arrays.copyOf(parts, newSize);
+				offsets = Arrays.copyOf(offsets, newSize);
+				lengths = Arrays.copyOf(lengths, newSize);
+				lineCounts = Arrays.copyOf(lineCounts, newSize);
+			}
+
+			Integer partIndex = partIdMap.get(partId);
+
+			if (partIndex == null) {
+				partIndex = partIdList.size();
+				partIdList.add(partId);
+				partIdMap.put(partId, partIndex);
+			}
+
+			System.arraycopy(keyBytes, 0, keys, keysLength, keyBytes.length);
+			keyStarts[size] = keysLength;
+			keysLength += keyBytes.length;
+			keyStarts[size + 1] = keysLength;
+
+			parts[size] = partIndex;
+			offsets[size] = offset;
+			lengths[size] = length;
+			lineCounts[size] = lineCount;
+			size++;
+		}
+
+		public InMemorySummary build(long modTime)
+		{
+			return new InMemorySummary(this, modTime);
+		}
+	}
+
+	/**
+	 * Read all lines of a summary from the start of slr. The reader is
+	 * not closed.
+	 *
+	 * @param modTime modification time of the summary file, for reference
+	 */
+	public static InMemorySummary load(SeekableLineReader slr, long modTime) throws IOException
+	{
+		Builder builder = new Builder();
+
+		slr.seek(0);
+
+		String line = null;
+
+		while ((line = slr.readLine()) != null) {
+			if (line.isEmpty()) {
+				continue;
+			}
+
+			if (!builder.addLine(line)) {
+				LOGGER.warning("Bad summary line(" + line + ") -- skipping");
+			}
+		}
+
+		return builder.build(modTime);
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public long getModTime()
+	{
+		return modTime;
+	}
+
+	/**
+	 * @return approximate number of bytes used by the key arena and arrays
+	 */
+	public long getMemoryUsage()
+	{
+		return keys.length + (4L * keyStarts.length) + (4L * parts.length) +
+				(8L * offsets.length) + (4L * lengths.length) + (4L * lineCounts.length);
+	}
+
+	public String getKey(int index)
+	{
+		return new String(keys, keyStarts[index], keyStarts[index + 1] - keyStarts[index], UTF_8);
+	}
+
+	public String getPartId(int index)
+	{
+		return partIds[parts[index]];
+	}
+
+	public long getOffset(int index)
+	{
+		return offsets[index];
+	}
+
+	public int getLength(int index)
+	{
+		return lengths[index];
+	}
+
+	/**
+	 * @return the line count field, or -1 if the summary has none
+	 */
+	public int getLineCount(int index)
+	{
+		return lineCounts[index];
+	}
+
+	/**
+	 * @return the summary line at index, in the same format as read from the
+	 * summary file, or null if index is out of range
+	 */
+	public String getLine(int index)
+	{
+		if ((index < 0) || (index >= size)) {
+			return null;
+		}
+
+		StringBuilder sb = new StringBuilder(keyStarts[index + 1] - keyStarts[index] + 48);
+		sb.append(getKey(index));
+		sb.append('\t');
+		sb.append(getPartId(index));
+		sb.append('\t');
+		sb.append(offsets[index]);
+		sb.append('\t');
+		sb.append(lengths[index]);
+
+		if (lineCounts[index] >= 0) {
+			sb.append('\t');
+			sb.append(lineCounts[index]);
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Compare the summary line at index against an encoded search key
+	 */
+	protected int compareLine(int index, byte[] key)
+	{
+		int start = keyStarts[index];
+		int lineKeyLength = keyStarts[index + 1] - start;
+		int len = Math.min(lineKeyLength, key.length);
+
+		for (int i = 0; i < len; i++) {
+			int a = keys[start + i] & 0xff;
+			int b = key[i] & 0xff;
+
+			if (a != b) {
+				return a - b;
+			}
+		}
+
+		if (lineKeyLength > key.length) {
+			return 1;
+		}
+
+		if (lineKeyLength == key.length) {
+			// The rest of the line follows the key
+			return 1;
+		}
+
+		// The full line continues with a tab after the key
+		int cmp = FIELD_SEP - (key[lineKeyLength] & 0xff);
+
+		if (cmp != 0) {
+			return cmp;
+		}
+
+		// Search key has more fields, eg. a full summary line: compare the rest
+		return compareBytes(getLine(index).getBytes(UTF_8), key);
+	}
+
+	protected static int compareBytes(byte[] a, byte[] b)
+	{
+		int len = Math.min(a.length, b.length);
+
+		for (int i = 0; i < len; i++) {
+			int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+
+		return a.length - b.length;
+	}
+
+	/**
+	 * @return index of the first line which is &gt;= key, or size() if none
+	 */
+	public int findFirstGE(String key)
+	{
+		return findFirstGE(key.getBytes(UTF_8));
+	}
+
+	public int findFirstGE(byte[] key)
+	{
+		int low = 0;
+		int high = size;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (compareLine(mid, key) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * @return index of the first line whose line count is &gt;= lineNumber,
+	 * or size() if none
+	 */
+	public int findLineCount(long lineNumber)
+	{
+		int low = 0;
+		int high = size;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (lineCounts[mid] < lineNumber) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Same as {@link org.archive.util.binsearch.SortedTextFile#getRecordIterator(String, boolean)}
+	 *
+	 * @param lessThan if true, start with the line before the first line &gt;= key
+	 */
+	public CloseableIterator<String> getRecordIterator(String key, boolean lessThan)
+	{
+		int index = findFirstGE(key);
+
+		if (lessThan && (index > 0)) {
+			index--;
+		}
+
+		return new SummaryLineIterator(index);
+	}
+
+	public CloseableIterator<String> getRecordIteratorLT(String key)
+	{
+		return getRecordIterator(key, true);
+	}
+
+	/**
+	 * Same as {@link org.archive.util.binsearch.SortedTextFile#getRange(String, String)}
+	 */
+	public String[] getRange(String start, String end)
+	{
+		String startLine = (start.isEmpty() ? getLine(0) : getLine(findLT(start)));
+		String endLine = (end.isEmpty() ? getLine(size - 1) : getLine(findLT(end)));
+		return new String[]{startLine, endLine};
+	}
+
+	/**
+	 * @return the index of the line before the first line &gt;= key, or the
+	 * first line if it is &gt;= key
+	 */
+	protected int findLT(String key)
+	{
+		int index = findFirstGE(key);
+		return (index > 0 ? index - 1 : index);
+	}
+
+	/**
+	 * Number of CDX lines in the blocks which may contain keys from start
+	 * (inclusive) to end (exclusive), from the block before the first line
+	 * &gt;= start up to the first line &gt;= end, or the last line.
+	 * An empty start or end means the start or end of the summary.
+	 *
+	 * The file based {@link ZipNumIndex#getNumLines(String, String)} may be
+	 * off by one block on either side, depending on where the lines fall
+	 * relative to the binary search blocks.
+	 */
+	public int getNumLines(String start, String end)
+	{
+		if (size == 0) {
+			return 0;
+		}
+
+		int startIndex = 0;
+		int endIndex = size - 1;
+
+		if ((start != null) && !start.isEmpty()) {
+			startIndex = findLT(start);
+		}
+
+		if ((end != null) && !end.isEmpty()) {
+			endIndex = Math.min(findFirstGE(end), size - 1);
+		}
+
+		int startCount = (startIndex > 0 ? lineCounts[startIndex] : 0);
+		int endCount = lineCounts[endIndex];
+
+		return endCount - startCount;
+	}
+
+	/**
+	 * @return first line with a line count &gt;= lineNumber, or the last line
+	 */
+	public String getNthLine(long lineNumber)
+	{
+		int index = findLineCount(lineNumber);
+
+		if (index >= size) {
+			index = size - 1;
+		}
+
+		return getLine(index);
+	}
+
+	protected class SummaryLineIterator extends AbstractPeekableIterator<String>
+	{
+		protected int index;
+
+		protected SummaryLineIterator(int index)
+		{
+			this.index = index;
+		}
+
+		@Override
+		public String getNextInner() {
+			if (index >= size) {
+				return null;
+			}
+
+			return getLine(index++);
+		}
+
+		@Override
+		public void close() throws IOException {
+			index = size;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package org.archive.format.gzip.zipnum;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Load latency of one replica location of a ZipNum part: an exponentially
+ * weighted moving average, the number of loads in progress, success and
+ * failure counts and a histogram of the load durations.
+ *
+ * Used by {@link ZipNumCluster} to pick the replica to load a block from,
+ * and exposed by {@link ZipNumCluster#getReplicaStats()} to find degraded
+ * nodes.
+ */
+public class ReplicaStats {
+
+	/** Upper bounds, in milliseconds, of the histogram buckets. The last bucket counts the longer loads */
+	public final static long[] HISTOGRAM_BOUNDS_MILLIS =
+		{1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+	// Weight of the latest load in the moving average
+	final static double ALPHA = 0.25;
+
+	protected final String location;
+
+	protected final AtomicInteger outstanding = new AtomicInteger();
+	protected final AtomicLong successCount = new AtomicLong();
+	protected final AtomicLong failureCount = new AtomicLong();
+	protected final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BOUNDS_MILLIS.length + 1);
+
+	protected volatile double ewmaMillis = 0;
+	protected volatile long lastUpdate = 0;
+
+	public ReplicaStats(String location)
+	{
+		this.location = location;
+	}
+
+	void loadStarted()
+	{
+		outstanding.incrementAndGet();
+	}
+
+	/**
+	 * @param millis duration of the load, for a failed load the penalty
+	 * added to the moving average
+	 */
+	void loadFinished(long millis, boolean success)
+	{
+		outstanding.decrementAndGet();
+
+		if (success) {
+			successCount.incrementAndGet();
+			histogram.incrementAndGet(bucket(millis));
+		} else {
+			failureCount.incrementAndGet();
+		}
+
+		synchronized (this) {
+			ewmaMillis = (lastUpdate == 0) ? millis : (ALPHA * millis) + ((1 - ALPHA) * ewmaMillis);
+			lastUpdate = System.currentTimeMillis();
+		}
+	}
+
+	static int bucket(long millis)
+	{
+		int i = 0;
+		while ((i < HISTOGRAM_BOUNDS_MILLIS.length) && (millis > HISTOGRAM_BOUNDS_MILLIS[i])) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Expected cost of a new load from this replica, lower is better. A
+	 * replica with no load completed in the last staleMillis scores 0, so it
+	 * is probed again after it has recovered.
+	 */
+	double getScore(long now, long staleMillis)
+	{
+		if ((staleMillis > 0) && ((now - lastUpdate) > staleMillis)) {
+			return 0;
+		}
+		return ewmaMillis * (outstanding.get() + 1);
+	}
+
+	public String getLocation()
+	{
+		return location;
+	}
+
+	public double getEwmaMillis()
+	{
+		return ewmaMillis;
+	}
+
+	public int getOutstanding()
+	{
+		return outstanding.get();
+	}
+
+	public long getSuccessCount()
+	{
+		return successCount.get();
+	}
+
+	public long getFailureCount()
+	{
+		return failureCount.get();
+	}
+
+	/**
+	 * @return the number of successful loads in each bucket of
+	 * {@link #HISTOGRAM_BOUNDS_MILLIS}, plus one for the longer loads
+	 */
+	public long[] getHistogram()
+	{
+		long[] counts = new long[histogram.length()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = histogram.get(i);
+		}
+		return counts;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.ROOT, "%s ewma=%.1fms outstanding=%d ok=%d failed=%d",
+				location, ewmaMillis, outstanding.get(), successCount.get(), failureCount.get()));
+
+		long[] counts = getHistogram();
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == 0) {
+				continue;
+			}
+			sb.append(' ');
+			if (i < HISTOGRAM_BOUNDS_MILLIS.length) {
+				sb.append("<=").append(HISTOGRAM_BOUNDS_MILLIS[i]);
+			} else {
+				sb.append('>').append(HISTOGRAM_BOUNDS_MILLIS[i - 1]);
+			}
+			sb.append("ms:").append(counts[i]);
+		}
+		return sb.toString();
+	}
+}
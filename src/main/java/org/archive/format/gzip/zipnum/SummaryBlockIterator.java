@@ -1,6 +1,14 @@
 package org.archive.format.gzip.zipnum;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -9,6 +17,11 @@ import org.archive.util.binsearch.SeekableLineReaderIterator;
 import org.archive.util.io.RuntimeIOException;
 import org.archive.util.iterator.AbstractPeekableIterator;
 import org.archive.util.iterator.CloseableIterator;
+import org.archive.util.iterator.LineReadingIterator;
+
+import com.google.common.io.ByteStreams;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class SummaryBlockIterator extends AbstractPeekableIterator<CloseableIterator<String>>
 {
@@ -45,9 +58,56 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<CloseableIter
 		}
 	}
 	
-	@Override
-	public CloseableIterator<String> getNextInner() {
-					
+	/**
+	 * One ranged read covering one or more adjacent blocks of a part
+	 */
+	protected static class BlockRange
+	{
+		final String partId;
+		final long startOffset;
+		final int totalLength;
+		final int numBlocks;
+		
+		BlockRange(String partId, long startOffset, int totalLength, int numBlocks)
+		{
+			this.partId = partId;
+			this.startOffset = startOffset;
+			this.totalLength = totalLength;
+			this.numBlocks = numBlocks;
+		}
+	}
+	
+	protected static class PendingBlock
+	{
+		final BlockRange range;
+		final Future<byte[]> future;
+		
+		PendingBlock(BlockRange range, Future<byte[]> future)
+		{
+			this.range = range;
+			this.future = future;
+		}
+	}
+	
+	protected ArrayDeque<PendingBlock> pending = null;
+	protected BlockRange heldRange = null;
+	protected long pendingBytes = 0;
+	protected int plannedBlocks = 0;
+	
+	// Compressed and inflated sizes of the blocks loaded so far
+	protected long loadedCompressed = 0;
+	protected long loadedInflated = 0;
+	
+	/**
+	 * Read summary lines until the next range to load is complete
+	 * 
+	 * @param maxAggregateBlocks max blocks to combine, &lt;= 0 for no limit
+	 * @param maxBytes max bytes to combine, &lt;= 0 for no limit
+	 * @param loadedBlocks blocks already loaded, checked against maxBlocks
+	 * @return the next range to load, or null if none
+	 */
+	protected BlockRange nextRange(int maxAggregateBlocks, long maxBytes, int loadedBlocks)
+	{
 		if (isFirst) {
 			if (summaryIterator.hasNext()) {
 				nextLine = new SummaryLine(summaryIterator.next());
@@ -59,12 +119,11 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<CloseableIter
 			return null;
 		}
 		
-		if ((params.getMaxBlocks() > 0) && (totalBlocks >= params.getMaxBlocks())) {
+		if ((params.getMaxBlocks() > 0) && (loadedBlocks >= params.getMaxBlocks())) {
 			return null;
 		}
 			
 		int numBlocks = 0;
-		int maxAggregateBlocks = params.getMaxAggregateBlocks();
 		
 		long startOffset = nextLine.offset;
 		String currPartId = nextLine.partId;
@@ -107,34 +166,209 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<CloseableIter
 			numBlocks++;
 			
 		} while (((maxAggregateBlocks <= 0) || (numBlocks < maxAggregateBlocks)) && 
-				  ((params.getMaxBlocks() <= 0) || (totalBlocks + numBlocks) < params.getMaxBlocks()) 
-				  && currLine.isContinuous(nextLine));
+				  ((params.getMaxBlocks() <= 0) || (loadedBlocks + numBlocks) < params.getMaxBlocks()) 
+				  && currLine.isContinuous(nextLine)
+				  && ((maxBytes <= 0) || ((long)totalLength + nextLine.length) <= maxBytes));
 		
 		if (LOGGER.isLoggable(Level.FINE)) {
 			LOGGER.fine("Loading " + numBlocks + " blocks - " + startOffset + ":" + totalLength + " from " + currPartId);
 		}
 		
+		return new BlockRange(currPartId, startOffset, totalLength, numBlocks);
+	}
+	
+	@Override
+	public CloseableIterator<String> getNextInner() {
+		
+		if (params.getPrefetchDepth() > 0) {
+			return getNextPrefetched();
+		}
+		
+		BlockRange range = nextRange(params.getMaxAggregateBlocks(), 0, totalBlocks);
+		
+		if (range == null) {
+			return null;
+		}
+					
 		//currReader = initReader(currPartId);
 		//currReader = zipnumIndex.createReader(currPartId);
 		//currReader.seekWithMaxRead(startOffset, true, totalLength);
-		SeekableLineReader currReader = zipnumIndex.doBlockLoad(currPartId, startOffset, totalLength);
+		SeekableLineReader currReader = zipnumIndex.loadBlock(range.partId, range.startOffset, range.totalLength);
 		
 		if ((currReader == null) && zipnumIndex.isRequired()) {
-			throw new RuntimeIOException("Failed to load shards for: " + currPartId);
+			throw new RuntimeIOException("Failed to load shards for: " + range.partId);
 		}
 		
 		if (currReader != null) {
-			totalBlocks += numBlocks;
+			totalBlocks += range.numBlocks;
 		}	
 		
 		CloseableIterator<String> slrIter = new SeekableLineReaderIterator(currReader, zipnumIndex.isRequired());
 		
+		return wrapBlockIterator(slrIter);
+	}
+	
+	protected CloseableIterator<String> wrapBlockIterator(CloseableIterator<String> slrIter)
+	{
 		if (params.isReverse()) {
 			slrIter = new LineBufferingIterator(slrIter, zipnumIndex.getCdxLinesPerBlock(), true);
 		}
 		
 		return slrIter;
 	}
+	
+	/**
+	 * Pipelined mode: up to prefetchDepth ranged reads, each covering one or
+	 * more adjacent blocks, are loaded and inflated on the block loader's
+	 * prefetch executor while the consumer reads the current block. Blocks
+	 * are returned in summary order. New reads are only issued while the
+	 * inflated bytes in flight, estimated from the compression ratio of the
+	 * blocks loaded so far, stay within the prefetch window. Until a block has
+	 * been loaded the ratio is unknown, and a single read is in flight.
+	 */
+	protected CloseableIterator<String> getNextPrefetched() {
+		
+		if (pending == null) {
+			pending = new ArrayDeque<PendingBlock>();
+		}
+		
+		fillPrefetch();
+		
+		PendingBlock head = pending.poll();
+		
+		if (head == null) {
+			return null;
+		}
+		
+		pendingBytes -= head.range.totalLength;
+		
+		byte[] block = null;
+		
+		try {
+			block = head.future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeIOException(e.toString());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			
+			throw new RuntimeIOException(String.valueOf(cause));
+		}
+		
+		if ((block == null) && zipnumIndex.isRequired()) {
+			throw new RuntimeIOException("Failed to load shards for: " + head.range.partId);
+		}
+		
+		if (block != null) {
+			totalBlocks += head.range.numBlocks;
+			loadedCompressed += head.range.totalLength;
+			loadedInflated += block.length;
+		}
+		
+		// Keep the pipeline full while this block is consumed
+		fillPrefetch();
+		
+		if (block == null) {
+			return new SeekableLineReaderIterator(null);
+		}
+		
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(block), UTF_8));
+		return wrapBlockIterator(new LineReadingIterator(reader));
+	}
+	
+	protected void fillPrefetch()
+	{
+		int depth = params.getPrefetchDepth();
+		long window = params.getPrefetchWindowBytes();
+		
+		// Combine adjacent blocks up to an even share of the window, inflated
+		long maxBytes = 0;
+		
+		if (window > 0) {
+			maxBytes = Math.max(window / depth, 1);
+			
+			if (loadedInflated > 0) {
+				maxBytes = Math.max((long)((double)maxBytes * loadedCompressed / loadedInflated), 1);
+			}
+		}
+		
+		while (pending.size() < depth) {
+			BlockRange range = heldRange;
+			heldRange = null;
+			
+			if (range == null) {
+				range = nextRange(params.getMaxAggregateBlocks(), maxBytes, plannedBlocks);
+			}
+			
+			if (range == null) {
+				return;
+			}
+			
+			if (!pending.isEmpty() && (window > 0)) {
+				long inflated = estimateInflated(pendingBytes + range.totalLength);
+				
+				if ((inflated < 0) || (inflated > window)) {
+					heldRange = range;
+					return;
+				}
+			}
+			
+			plannedBlocks += range.numBlocks;
+			pendingBytes += range.totalLength;
+			pending.add(new PendingBlock(range, submitLoad(range)));
+		}
+	}
+	
+	/**
+	 * @return inflated size of the compressed bytes, at the compression ratio
+	 * of the blocks loaded so far, or -1 if none has been loaded
+	 */
+	protected long estimateInflated(long compressedBytes)
+	{
+		if (loadedCompressed <= 0) {
+			return -1;
+		}
+		
+		return (long)((double)compressedBytes * loadedInflated / loadedCompressed);
+	}
+	
+	protected Future<byte[]> submitLoad(final BlockRange range)
+	{
+		Callable<byte[]> task = new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				SeekableLineReader reader = zipnumIndex.loadBlock(range.partId, range.startOffset, range.totalLength);
+				
+				if (reader == null) {
+					return null;
+				}
+				
+				try {
+					InputStream is = reader.getInputStream();
+					
+					try {
+						return ByteStreams.toByteArray(is);
+					} finally {
+						is.close();
+					}
+				} catch (IOException io) {
+					if (zipnumIndex.isRequired()) {
+						throw new RuntimeIOException(io.toString());
+					}
+					LOGGER.warning(io.toString());
+					return null;
+				} finally {
+					reader.close();
+				}
+			}
+		};
+		
+		return zipnumIndex.getBlockLoader().getPrefetchExecutor().submit(task);
+	}
 		
 //	protected SeekableLineReader initReader(String partId) throws IOException
 //	{
@@ -181,6 +415,14 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<CloseableIter
 	@Override
 	public void close() throws IOException
 	{
+		if (pending != null) {
+			for (PendingBlock block : pending) {
+				block.future.cancel(true);
+			}
+			pending.clear();
+			pendingBytes = 0;
+		}
+		
 		if (summaryIterator != null) {
 			summaryIterator.close();
 			summaryIterator = null;
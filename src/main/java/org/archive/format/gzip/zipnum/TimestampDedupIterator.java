@@ -17,10 +17,34 @@ public class TimestampDedupIterator extends AbstractPeekableIterator<String> {
 	
 	protected String nextStamp = null;
 	
+	/**
+	 * If match keys are compared in place, without making Strings: only
+	 * when isSame() is not overridden.
+	 */
+	private final boolean compareInPlace;
+	
 	public TimestampDedupIterator(CloseableIterator<String> inner, int timestampDedupLength)
 	{
 		this.inner = inner;
 		this.timestampDedupLength = timestampDedupLength;
+		this.compareInPlace = (getClass() == TimestampDedupIterator.class);
+	}
+	
+	/**
+	 * @return length of the match key at the start of line, or -1
+	 */
+	protected int matchKeyLength(String line)
+	{
+		if (line == null || timestampDedupLength <= 0) {
+			return -1;
+		}
+		
+		int space = line.indexOf(' ');
+		if (space >= 0) {
+			return Math.min(space + 1 + timestampDedupLength, line.length());
+		} else {
+			return line.length();
+		}
 	}
 	
 	protected String extractMatchKey(String line)
@@ -53,6 +77,10 @@ public class TimestampDedupIterator extends AbstractPeekableIterator<String> {
 	@Override
 	public String getNextInner() {
 		
+		if (compareInPlace) {
+			return getNextInPlace();
+		}
+		
 		if (isFirst) {
 			if (inner.hasNext()) {
 				nextLine = inner.next();
@@ -77,6 +105,34 @@ public class TimestampDedupIterator extends AbstractPeekableIterator<String> {
 		return currLine;
 	}
 	
+	private String getNextInPlace() {
+		
+		if (isFirst) {
+			if (inner.hasNext()) {
+				nextLine = inner.next();
+			}
+			isFirst = false;
+		}
+		
+		// the last line of the lines with the same key, as getNextInner()
+		String currLine = null;
+		int currLength = -1;
+		int nextLength = matchKeyLength(nextLine);
+		
+		do {
+			currLine = nextLine;
+			currLength = nextLength;
+			
+			nextLine = (inner.hasNext() ? inner.next() : null);
+			nextLength = matchKeyLength(nextLine);
+			
+		} while ((nextLine != null) && (currLength >= 0)
+				&& (nextLength == currLength)
+				&& nextLine.regionMatches(0, currLine, 0, currLength));
+		
+		return currLine;
+	}
+	
 	protected String getNthField(String source, int start, int num, int ch)
 	{
 		int lastIndex = -1;
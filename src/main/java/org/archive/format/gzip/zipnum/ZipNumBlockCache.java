@@ -0,0 +1,347 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.archive.util.binsearch.ByteBufferInputStream;
+import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.binsearch.impl.MappedSeekableLineReader;
+import org.archive.util.io.RuntimeIOException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Cache of decompressed ZipNum blocks, keyed by part location, generation,
+ * offset and length of the ranged read, and bounded by the total size of the
+ * cached blocks.
+ *
+ * An index takes a new generation, see {@link #newGeneration()}, when it
+ * reloads, so that blocks of parts rewritten under the same name are not
+ * served from the cache. Blocks of older generations are no longer hit and
+ * are evicted as the cache fills.
+ *
+ * Concurrent requests for the same block are deduplicated: only one thread
+ * reads and inflates it, the others wait for the result. Blocks which fail
+ * to load are not cached.
+ *
+ * The cache may be shared by several indexes and clusters, see
+ * {@link #getShared()}. Optionally, blocks are kept in direct buffers
+ * outside of the java heap.
+ *
+ * Eviction is approximately least recently used, within each of the
+ * segments of the underlying Guava cache, so entries may be evicted before
+ * the total size reaches the limit.
+ */
+public class ZipNumBlockCache {
+
+	private final static Logger LOGGER = Logger.getLogger(ZipNumBlockCache.class.getName());
+
+	public final static long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+	/** System property with the size in bytes of the shared cache */
+	public final static String SHARED_MAX_BYTES_PROPERTY = "org.archive.format.gzip.zipnum.blockCacheMaxBytes";
+
+	/** System property, if true the shared cache stores blocks off-heap */
+	public final static String SHARED_OFF_HEAP_PROPERTY = "org.archive.format.gzip.zipnum.blockCacheOffHeap";
+
+	// Approximate per entry overhead, added to the block size
+	private final static int ENTRY_OVERHEAD = 128;
+
+	private static ZipNumBlockCache shared = null;
+
+	private final static AtomicLong generations = new AtomicLong();
+
+	protected static class BlockKey
+	{
+		final String location;
+		final long generation;
+		final long offset;
+		final int length;
+
+		BlockKey(String location, long generation, long offset, int length)
+		{
+			this.location = location;
+			this.generation = generation;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int hash = location.hashCode();
+			hash = (31 * hash) + (int)(generation ^ (generation >>> 32));
+			hash = (31 * hash) + (int)(offset ^ (offset >>> 32));
+			hash = (31 * hash) + length;
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof BlockKey)) {
+				return false;
+			}
+
+			BlockKey other = (BlockKey)obj;
+			return (offset == other.offset) && (length == other.length) &&
+					(generation == other.generation) && location.equals(other.location);
+		}
+	}
+
+	/**
+	 * Thrown by the loader when a block could not be loaded and was not
+	 * required, so that nothing is cached
+	 */
+	protected static class BlockNotLoadedException extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	protected final Cache<BlockKey, ByteBuffer> cache;
+	protected final long maxBytes;
+	protected final boolean offHeap;
+
+	protected final AtomicLong cachedBytes = new AtomicLong();
+	protected final AtomicLong compressedBytesSaved = new AtomicLong();
+	protected final AtomicLong inflatedBytesSaved = new AtomicLong();
+
+	public ZipNumBlockCache()
+	{
+		this(DEFAULT_MAX_BYTES, false);
+	}
+
+	public ZipNumBlockCache(long maxBytes)
+	{
+		this(maxBytes, false);
+	}
+
+	/**
+	 * @param maxBytes max total size of the cached blocks, after inflation
+	 * @param offHeap store blocks in direct buffers
+	 */
+	public ZipNumBlockCache(long maxBytes, boolean offHeap)
+	{
+		this.maxBytes = maxBytes;
+		this.offHeap = offHeap;
+
+		this.cache = CacheBuilder.newBuilder()
+				.maximumWeight(maxBytes)
+				.weigher(new Weigher<BlockKey, ByteBuffer>() {
+					@Override
+					public int weigh(BlockKey key, ByteBuffer value) {
+						return value.capacity() + ENTRY_OVERHEAD;
+					}
+				})
+				.removalListener(new RemovalListener<BlockKey, ByteBuffer>() {
+					@Override
+					public void onRemoval(RemovalNotification<BlockKey, ByteBuffer> notification) {
+						cachedBytes.addAndGet(-notification.getValue().capacity());
+					}
+				})
+				.concurrencyLevel(16)
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * @return the process-wide cache, created on first use with a size from
+	 * the {@value #SHARED_MAX_BYTES_PROPERTY} system property
+	 */
+	public static synchronized ZipNumBlockCache getShared()
+	{
+		if (shared == null) {
+			long maxBytes = DEFAULT_MAX_BYTES;
+			String maxBytesProp = System.getProperty(SHARED_MAX_BYTES_PROPERTY);
+
+			if (maxBytesProp != null) {
+				try {
+					maxBytes = Long.parseLong(maxBytesProp);
+				} catch (NumberFormatException n) {
+					LOGGER.warning("Bad " + SHARED_MAX_BYTES_PROPERTY + ": " + maxBytesProp);
+				}
+			}
+
+			shared = new ZipNumBlockCache(maxBytes, Boolean.getBoolean(SHARED_OFF_HEAP_PROPERTY));
+		}
+
+		return shared;
+	}
+
+	/**
+	 * @return a generation, distinct from all others of this process, for
+	 * the blocks of an index loaded from now on
+	 */
+	public static long newGeneration()
+	{
+		return generations.incrementAndGet();
+	}
+
+	/**
+	 * Get a reader over the decompressed block of generation 0
+	 *
+	 * @see #getBlock(String, long, long, int, Callable)
+	 */
+	public SeekableLineReader getBlock(String location, long offset, int length,
+			Callable<SeekableLineReader> loader)
+	{
+		return getBlock(location, 0, offset, length, loader);
+	}
+
+	/**
+	 * Get a reader over the decompressed block, loading and caching it on a
+	 * miss.
+	 *
+	 * @param generation generation of the index loading the block, see
+	 * {@link #newGeneration()}
+	 * @param loader loads the block, returning a reader positioned at the start
+	 * of the decompressed data, or null if the block could not be loaded
+	 * @return reader over the decompressed block, or null if not loaded
+	 */
+	public SeekableLineReader getBlock(String location, long generation, long offset, int length,
+			final Callable<SeekableLineReader> loader)
+	{
+		BlockKey key = new BlockKey(location, generation, offset, length);
+		final boolean[] loaded = new boolean[1];
+		ByteBuffer block = null;
+
+		try {
+			block = cache.get(key, new Callable<ByteBuffer>() {
+				@Override
+				public ByteBuffer call() throws Exception {
+					loaded[0] = true;
+					return loadBlock(loader);
+				}
+			});
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof BlockNotLoadedException) {
+				return null;
+			}
+			throw new RuntimeIOException(String.valueOf(e.getCause()));
+		} catch (UncheckedExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			throw e;
+		}
+
+		if (!loaded[0]) {
+			compressedBytesSaved.addAndGet(length);
+			inflatedBytesSaved.addAndGet(block.capacity());
+		}
+
+		try {
+			MappedSeekableLineReader reader = new MappedSeekableLineReader(new ByteBufferInputStream(block.duplicate()), 8192);
+			reader.seek(0);
+			return reader;
+		} catch (IOException e) {
+			throw new RuntimeIOException(e.toString());
+		}
+	}
+
+	protected ByteBuffer loadBlock(Callable<SeekableLineReader> loader) throws Exception
+	{
+		SeekableLineReader reader = loader.call();
+
+		if (reader == null) {
+			throw new BlockNotLoadedException();
+		}
+
+		byte[] inflated;
+		InputStream is = reader.getInputStream();
+
+		try {
+			inflated = ByteStreams.toByteArray(is);
+		} finally {
+			is.close();
+		}
+
+		ByteBuffer block;
+
+		if (offHeap) {
+			block = ByteBuffer.allocateDirect(inflated.length);
+			block.put(inflated);
+			block.flip();
+		} else {
+			block = ByteBuffer.wrap(inflated);
+		}
+
+		cachedBytes.addAndGet(inflated.length);
+		return block;
+	}
+
+	public void invalidateAll()
+	{
+		cache.invalidateAll();
+	}
+
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	public boolean isOffHeap()
+	{
+		return offHeap;
+	}
+
+	public long size()
+	{
+		return cache.size();
+	}
+
+	/**
+	 * @return total size of the decompressed blocks currently cached
+	 */
+	public long getCachedBytes()
+	{
+		return cachedBytes.get();
+	}
+
+	public long getHitCount()
+	{
+		return cache.stats().hitCount();
+	}
+
+	public long getMissCount()
+	{
+		return cache.stats().missCount();
+	}
+
+	public double getHitRate()
+	{
+		return cache.stats().hitRate();
+	}
+
+	public long getEvictionCount()
+	{
+		return cache.stats().evictionCount();
+	}
+
+	/**
+	 * @return compressed bytes not read thanks to cache hits
+	 */
+	public long getCompressedBytesSaved()
+	{
+		return compressedBytesSaved.get();
+	}
+
+	/**
+	 * @return decompressed bytes not inflated thanks to cache hits
+	 */
+	public long getInflatedBytesSaved()
+	{
+		return inflatedBytesSaved.get();
+	}
+}
@@ -5,6 +5,12 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,6 +40,7 @@ public class ZipNumBlockLoader {
 	protected String httpLib = HttpLibs.APACHE_43.name();
 	
 	protected boolean bufferFully = true;
+	// set to false with APACHE_43_POOLED, to reuse connections across blocks
 	protected boolean noKeepAlive = true;
 	protected String cookie = null;
 	
@@ -46,6 +53,11 @@ public class ZipNumBlockLoader {
 	protected int numRetries = -1;
 	
 	protected boolean staleChecking = false;
+	
+	// Block prefetching
+	protected int prefetchThreads = 32;
+	protected int prefetchQueueSize = 1024;
+	protected ExecutorService prefetchExecutor = null;
 
 	
 	public ZipNumBlockLoader()
@@ -189,6 +201,36 @@ public class ZipNumBlockLoader {
 		return currReader;
 	}
 	
+	/**
+	 * Bounded executor used to load blocks ahead of the consumer, see
+	 * {@link ZipNumParams#setPrefetchDepth(int)}. Created on first use. When
+	 * all threads are busy and the queue is full, the caller loads the block
+	 * itself.
+	 */
+	public synchronized ExecutorService getPrefetchExecutor()
+	{
+		if (prefetchExecutor == null) {
+			final AtomicInteger threadCount = new AtomicInteger();
+			
+			ThreadFactory factory = new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "ZipNumBlockPrefetch-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			};
+			
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(prefetchThreads, prefetchThreads,
+					60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(prefetchQueueSize),
+					factory, new ThreadPoolExecutor.CallerRunsPolicy());
+			executor.allowCoreThreadTimeOut(true);
+			prefetchExecutor = executor;
+		}
+		
+		return prefetchExecutor;
+	}
+	
 	public void closeFileFactory(String filename) throws IOException
 	{
 		if (fileFactoryMap == null) {
@@ -215,6 +257,13 @@ public class ZipNumBlockLoader {
 			httpFactory.close();
 			httpFactory = null;
 		}
+		
+		synchronized (this) {
+			if (prefetchExecutor != null) {
+				prefetchExecutor.shutdownNow();
+				prefetchExecutor = null;
+			}
+		}
 	}
 
 	public boolean isUseNio() {
@@ -291,6 +340,22 @@ public class ZipNumBlockLoader {
 		return this.staleChecking;
 	}
 
+	public int getPrefetchThreads() {
+		return prefetchThreads;
+	}
+
+	public void setPrefetchThreads(int prefetchThreads) {
+		this.prefetchThreads = prefetchThreads;
+	}
+
+	public int getPrefetchQueueSize() {
+		return prefetchQueueSize;
+	}
+
+	public void setPrefetchQueueSize(int prefetchQueueSize) {
+		this.prefetchQueueSize = prefetchQueueSize;
+	}
+
 	public String getHttpLib() {
 		return httpLib;
 	}
@@ -18,13 +18,26 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,6 +47,7 @@ import org.archive.util.binsearch.SeekableLineReader;
 import org.archive.util.binsearch.SeekableLineReaderFactory;
 import org.archive.util.binsearch.SeekableLineReaderIterator;
 import org.archive.util.binsearch.impl.HTTPSeekableLineReader;
+import org.archive.util.io.RuntimeIOException;
 import org.archive.util.iterator.CloseableIterator;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -78,9 +92,7 @@ public class ZipNumCluster extends ZipNumIndex {
 						
 						Thread.sleep(checkInterval);
 						
-						if (summary != null) {
-							summary.reloadFactory();
-						}
+						reloadSummary();
 					}
 					
 					Thread.sleep(checkInterval);
@@ -91,7 +103,11 @@ public class ZipNumCluster extends ZipNumIndex {
 		}
 	}
 	
-	protected HashMap<String, String[]> locMap = null;
+	/**
+	 * Immutable snapshot of the part locations, replaced on reload: readers
+	 * do not lock
+	 */
+	protected volatile Map<String, String[]> locMap = Collections.emptyMap();
 	protected SeekableLineReaderFactory locReaderFactory = null;
 	protected String locFile;
 	
@@ -136,6 +152,17 @@ public class ZipNumCluster extends ZipNumIndex {
 	
 	protected int locCacheMaxDuration = 1000;
 	
+	// Latency aware replica selection, see loadCachedBalancedReader()
+	protected ConcurrentHashMap<String, ReplicaStats> replicaStatsMap = new ConcurrentHashMap<String, ReplicaStats>();
+	
+	protected int replicaStatsStaleMillis = 30000;
+	
+	protected int hedgeDelayMillis = 0;
+	
+	protected int hedgeThreads = 32;
+	
+	protected ExecutorService hedgeExecutor = null;
+	
 	class LocCacheEntry
 	{
 		String loc;
@@ -172,8 +199,6 @@ public class ZipNumCluster extends ZipNumIndex {
 		
 		this.blockSizesFile = locFile.replaceAll(".loc", ".lastblocks");
 		
-		locMap = new HashMap<String, String[]>();
-		
 		if (cacheRemoteLoc) {
 			locCacheMap = new ConcurrentHashMap<String, LocCacheEntry>();
 		}
@@ -182,7 +207,9 @@ public class ZipNumCluster extends ZipNumIndex {
 			locReaderFactory = GeneralURIStreamFactory.createSeekableStreamFactory(locFile, false);
 			lastModTime = locReaderFactory.getModTime();
 		
-			loadPartLocations(locMap);
+			HashMap<String, String[]> destMap = new HashMap<String, String[]>();
+			loadPartLocations(destMap);
+			locMap = Collections.unmodifiableMap(destMap);
 
 		} catch (IOException io) {
 			LOGGER.warning("Exception on Load -- Disabling Cluster! " + io.toString());
@@ -228,8 +255,12 @@ public class ZipNumCluster extends ZipNumIndex {
 		ArrayList<String[]> filesToClose = new ArrayList<String[]>();
 		
 		synchronized (this) {
+			// parts missing from the new file are kept: the summary still
+			// refers to them until it is reloaded
+			HashMap<String, String[]> newMap = new HashMap<String, String[]>(locMap);
+			
 			for (Entry<String, String[]> files : destMap.entrySet()) {
-				String[] existingFiles = locMap.get(files.getKey());
+				String[] existingFiles = newMap.get(files.getKey());
 				
 				String[] newFiles = files.getValue();
 				
@@ -237,10 +268,10 @@ public class ZipNumCluster extends ZipNumIndex {
 					filesToClose.add(existingFiles);
 				}
 				
-				locMap.put(files.getKey(), newFiles);
+				newMap.put(files.getKey(), newFiles);
 			}
 			
-			//locMap.putAll(destMap);
+			locMap = Collections.unmodifiableMap(newMap);
 			
 			startDate = newStartDate;
 			endDate = newEndDate;
@@ -254,6 +285,9 @@ public class ZipNumCluster extends ZipNumIndex {
 			locCacheMap.clear();
 		}
 		
+		// parts may have been rewritten in place
+		invalidateBlocks();
+		
 		closeExistingFiles(filesToClose);
 		
 		lastModTime = newModTime;
@@ -271,7 +305,7 @@ public class ZipNumCluster extends ZipNumIndex {
 		}
 	}
 
-	public synchronized String[] getLocations(String key)
+	public String[] getLocations(String key)
 	{
 		return locMap.get(key);
 	}
@@ -315,6 +349,66 @@ public class ZipNumCluster extends ZipNumIndex {
 		this.cacheRemoteLoc = cacheRemoteLoc;
 	}
 
+	public int getHedgeDelayMillis() {
+		return hedgeDelayMillis;
+	}
+
+	/**
+	 * If positive, when a replica has not answered a balanced http block
+	 * load within this delay, the same ranged read is sent to the next
+	 * replica and the first answer is used. 0 (the default) disables hedging.
+	 */
+	public void setHedgeDelayMillis(int hedgeDelayMillis) {
+		this.hedgeDelayMillis = hedgeDelayMillis;
+	}
+
+	public int getHedgeThreads() {
+		return hedgeThreads;
+	}
+
+	/**
+	 * Maximum number of concurrent hedged loads. When all are busy, the
+	 * first load of a block runs in the calling thread, and hedges to
+	 * further replicas are skipped until a thread is free.
+	 */
+	public void setHedgeThreads(int hedgeThreads) {
+		this.hedgeThreads = hedgeThreads;
+	}
+
+	public int getReplicaStatsStaleMillis() {
+		return replicaStatsStaleMillis;
+	}
+
+	/**
+	 * Replicas without a completed load for this long are considered
+	 * recovered and chosen again, whatever their past latency.
+	 */
+	public void setReplicaStatsStaleMillis(int replicaStatsStaleMillis) {
+		this.replicaStatsStaleMillis = replicaStatsStaleMillis;
+	}
+
+	/**
+	 * @return the load latency of each replica location used so far by
+	 * balanced http block loads
+	 */
+	public Collection<ReplicaStats> getReplicaStats() {
+		return Collections.unmodifiableCollection(replicaStatsMap.values());
+	}
+
+	protected ReplicaStats getReplicaStats(String location) {
+		ReplicaStats stats = replicaStatsMap.get(location);
+		
+		if (stats == null) {
+			stats = new ReplicaStats(location);
+			ReplicaStats existing = replicaStatsMap.putIfAbsent(location, stats);
+			if (existing != null) {
+				stats = existing;
+			}
+		}
+		
+		return stats;
+	}
+
 	protected Date parseDate(String date)
 	{
 		try {
@@ -498,7 +592,7 @@ public class ZipNumCluster extends ZipNumIndex {
 		long numLines = 0;
 		
 		try {
-			numLines = this.getNumLines(summary.getRange("", ""));
+			numLines = this.getNumLines(getSummaryRange("", ""));
 		} catch (IOException e) {
 			LOGGER.warning(e.toString());
 			return 0;
@@ -533,6 +627,17 @@ public class ZipNumCluster extends ZipNumIndex {
 		return this.disabled;
 	}
 		
+	@Override
+	String getBlockLocation(String partId) {
+		String[] locations = getLocations(partId);
+		
+		if ((locations == null) || (locations.length == 0)) {
+			return null;
+		}
+		
+		return locations[0];
+	}
+		
 	@Override
 	SeekableLineReader doBlockLoad(String partId, long startOffset, int totalLength) {
 		
@@ -582,6 +687,11 @@ public class ZipNumCluster extends ZipNumIndex {
 		locCacheMap.putIfAbsent(key, new LocCacheEntry(loc, System.currentTimeMillis() + locCacheExpireMillis));
 	}
 	
+	/**
+	 * Load the block from the replica which answered last, if that was fast
+	 * enough, or else from the replicas ordered by {@link #orderReplicas},
+	 * hedging slow loads if hedgeDelayMillis is set.
+	 */
 	SeekableLineReader loadCachedBalancedReader(String partId, String[] locations, long offset, int length)
 	{
 		SeekableLineReader reader = null;
@@ -589,60 +699,288 @@ public class ZipNumCluster extends ZipNumIndex {
 		String cachedUrl = locCacheGet(partId);
 		
 		if (cachedUrl != null) {
-			long start = System.currentTimeMillis();
+			ReplicaLoad cached = new ReplicaLoad(cachedUrl, offset, length, false);
+			cached.run();
 			
-			reader = blockLoader.attemptLoadBlock(cachedUrl, offset, length, true, false);
-		
-			long duration = System.currentTimeMillis() - start;
-			
-			if ((reader == null) || (duration > locCacheMaxDuration)) {
+			if ((cached.reader == null) || (cached.duration > locCacheMaxDuration)) {
 				locCacheMap.remove(partId, cachedUrl);
 			}
 			
-			if (reader != null) {
-				return reader;
+			if (cached.reader != null) {
+				return cached.reader;
 			}
 		}
 		
-		ArrayList<Integer> indexs = new ArrayList<Integer>();
+		// Skip failed cached url
+		String[] ordered = orderReplicas(locations, cachedUrl);
 		
-		for (int i = 0; i < locations.length; i++) {
-			indexs.add(i);
+		ReplicaLoad load = null;
+		
+		if ((hedgeDelayMillis > 0) && (ordered.length > 1)) {
+			load = loadHedged(ordered, offset, length);
+		} else {
+			for (int i = 0; i < ordered.length; i++) {
+				boolean required = (isRequired() && (i == (ordered.length - 1)));
+				load = new ReplicaLoad(ordered[i], offset, length, required);
+				load.run();
+				if (load.reader != null) {
+					break;
+				}
+			}
 		}
-		if (locations.length > 1) {
-			Collections.shuffle(indexs);
+		
+		if ((load == null) || (load.reader == null)) {
+			return null;
 		}
 		
-		final int lastIndex = locations.length - 1;
+		reader = load.reader;
 		
-		for (int i = 0; i < indexs.size(); i++) {
-			
-			int index = indexs.get(i);
+		if (reader instanceof HTTPSeekableLineReader) {
+			String connectedUrl = ((HTTPSeekableLineReader)reader).getConnectedUrl();
 			
-			// Skip failed cached url
-			if ((cachedUrl != null) && locations[index].equals(cachedUrl)) {
-				continue;
+			if ((load.duration < locCacheMaxDuration) && (connectedUrl != null)) {
+				locCachePut(partId, connectedUrl);
 			}
+		}
+		
+		return reader;
+	}
+	
+	/**
+	 * Order the replica locations to try, without skipLocation: the first
+	 * is the better of two random replicas (power of two choices), by
+	 * {@link ReplicaStats} score, the others follow by increasing score.
+	 */
+	String[] orderReplicas(String[] locations, String skipLocation)
+	{
+		List<String> candidates = new ArrayList<String>(locations.length);
+		
+		for (String location : locations) {
+			if (!location.equals(skipLocation)) {
+				candidates.add(location);
+			}
+		}
+		
+		int n = candidates.size();
+		
+		if (n > 1) {
+			Collections.shuffle(candidates, ThreadLocalRandom.current());
+		}
+		
+		String[] ordered = candidates.toArray(new String[n]);
+		
+		if (n < 2) {
+			return ordered;
+		}
+		
+		long now = System.currentTimeMillis();
+		double[] scores = new double[n];
+		
+		for (int i = 0; i < n; i++) {
+			scores[i] = getReplicaStats(ordered[i]).getScore(now, replicaStatsStaleMillis);
+		}
+		
+		// Candidates are shuffled: the first two are the random choices
+		if (scores[1] < scores[0]) {
+			swap(ordered, scores, 0, 1);
+		}
+		
+		// Stable insertion sort of the fallbacks
+		for (int i = 2; i < n; i++) {
+			for (int j = i; (j > 1) && (scores[j] < scores[j - 1]); j--) {
+				swap(ordered, scores, j, j - 1);
+			}
+		}
+		
+		return ordered;
+	}
+	
+	private static void swap(String[] locations, double[] scores, int i, int j)
+	{
+		String location = locations[i];
+		locations[i] = locations[j];
+		locations[j] = location;
+		
+		double score = scores[i];
+		scores[i] = scores[j];
+		scores[j] = score;
+	}
+	
+	/**
+	 * Load from the first replica, and from the next one each time
+	 * hedgeDelayMillis passes without an answer, or right away when all
+	 * pending loads failed. The first successful load is returned, the
+	 * readers of the later ones are closed. When the hedge executor is
+	 * saturated, a hedge is skipped and retried after the next delay.
+	 */
+	ReplicaLoad loadHedged(String[] ordered, long offset, int length)
+	{
+		final BlockingQueue<ReplicaLoad> completed = new LinkedBlockingQueue<ReplicaLoad>();
+		final AtomicBoolean finished = new AtomicBoolean(false);
+		
+		ExecutorService executor = getHedgeExecutor();
+		
+		ReplicaLoad winner = null;
+		int next = 0;
+		int pending = 0;
+		
+		try {
+			while (winner == null) {
+				if (pending == 0) {
+					if (next == ordered.length) {
+						break;
+					}
+					ReplicaLoad first = new ReplicaLoad(ordered[next++], offset, length, false);
+					if (!submitLoad(executor, first, completed, finished)) {
+						first.run();
+						completed.add(first);
+					}
+					pending++;
+				}
+				
+				ReplicaLoad load;
+				
+				if (next < ordered.length) {
+					load = completed.poll(hedgeDelayMillis, TimeUnit.MILLISECONDS);
+				} else {
+					load = completed.take();
+				}
+				
+				if (load == null) {
+					if (submitLoad(executor, new ReplicaLoad(ordered[next], offset, length, false), completed, finished)) {
+						next++;
+						pending++;
+					}
+					continue;
+				}
+				
+				pending--;
+				
+				if (load.reader != null) {
+					winner = load;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			finished.set(true);
+			closeLoads(completed);
+		}
+		
+		if ((winner == null) && isRequired()) {
+			throw new RuntimeIOException("No replica could load -r " + offset + "-" + (offset + length - 1) + " " + Arrays.toString(ordered));
+		}
+		
+		return winner;
+	}
+	
+	/**
+	 * @return false if the executor is saturated and the load was not started
+	 */
+	private static boolean submitLoad(ExecutorService executor, final ReplicaLoad load,
+			final BlockingQueue<ReplicaLoad> completed, final AtomicBoolean finished)
+	{
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					load.run();
+					completed.add(load);
+					
+					// Lost the race, the caller may have drained the queue already
+					if (finished.get()) {
+						closeLoads(completed);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+		
+		return true;
+	}
+	
+	private static void closeLoads(BlockingQueue<ReplicaLoad> completed)
+	{
+		ReplicaLoad load;
+		
+		while ((load = completed.poll()) != null) {
+			if (load.reader != null) {
+				try {
+					load.reader.close();
+				} catch (IOException e) {
+					LOGGER.warning(e.toString());
+				}
+			}
+		}
+	}
+	
+	protected synchronized ExecutorService getHedgeExecutor()
+	{
+		if (hedgeExecutor == null) {
+			final AtomicInteger threadCount = new AtomicInteger();
 			
-			long start = System.currentTimeMillis();
-			
-			boolean required = (isRequired() && (i == lastIndex));
+			ThreadFactory factory = new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "ZipNumHedgedLoad-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			};
 			
-			reader = blockLoader.attemptLoadBlock(locations[index], offset, length, true, required);
+			// No queue: a hedge which can't start right away is skipped
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(hedgeThreads, hedgeThreads,
+					60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+					factory, new ThreadPoolExecutor.AbortPolicy());
+			executor.allowCoreThreadTimeOut(true);
+			hedgeExecutor = executor;
+		}
+		
+		return hedgeExecutor;
+	}
+	
+	/**
+	 * One block load from a replica, recorded in its {@link ReplicaStats}.
+	 * Failed loads count as taking at least the read timeout.
+	 */
+	class ReplicaLoad implements Runnable
+	{
+		final String location;
+		final long offset;
+		final int length;
+		final boolean required;
+		
+		volatile SeekableLineReader reader;
+		volatile long duration;
+		
+		ReplicaLoad(String location, long offset, int length, boolean required)
+		{
+			this.location = location;
+			this.offset = offset;
+			this.length = length;
+			this.required = required;
+		}
+		
+		@Override
+		public void run()
+		{
+			ReplicaStats stats = getReplicaStats(location);
+			long start = System.currentTimeMillis();
 			
-			long duration = System.currentTimeMillis() - start;
+			stats.loadStarted();
 			
-			if (reader != null) {
-				String connectedUrl = ((HTTPSeekableLineReader)reader).getConnectedUrl();
+			try {
+				reader = blockLoader.attemptLoadBlock(location, offset, length, true, required);
+			} finally {
+				duration = System.currentTimeMillis() - start;
 				
-				if ((duration < locCacheMaxDuration) && (connectedUrl != null)) {
-					locCachePut(partId, connectedUrl);
+				if (reader != null) {
+					stats.loadFinished(duration, true);
+				} else {
+					stats.loadFinished(Math.max(duration, blockLoader.getReadTimeoutMS()), false);
 				}
-				
-				return reader;
 			}
 		}
-
-		return reader;
 	}
 }
@@ -1,11 +1,14 @@
 package org.archive.format.gzip.zipnum;
 
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.archive.format.cdx.CDXInputSource;
 import org.archive.util.GeneralURIStreamFactory;
 import org.archive.util.binsearch.FieldExtractingSLR;
+import org.archive.util.binsearch.MidpointCache;
 import org.archive.util.binsearch.SeekableLineReader;
 import org.archive.util.binsearch.SortedTextFile;
 import org.archive.util.iterator.BoundedStringIterator;
@@ -20,12 +23,22 @@ public class ZipNumIndex implements CDXInputSource {
 	protected String summaryFile;
 	protected int binsearchBlockSize = 8192;
 	protected int readaheadSize = 512;
+	protected int midpointCacheSize = MidpointCache.DEFAULT_MAX_ENTRIES;
 	protected SortedTextFile summary;
 	
+	protected boolean inMemorySummary = false;
+	protected volatile InMemorySummary memSummary = null;
+	
 	protected boolean required = true;
 	
 	protected ZipNumBlockLoader blockLoader;
 	
+	protected ZipNumBlockCache blockCache = null;
+	
+	// Generation of the cached blocks, and summary mod time it was taken for
+	protected volatile long blockGeneration = ZipNumBlockCache.newGeneration();
+	protected long blockSummaryModTime = 0;
+	
 	// Used only for reference / user info
 	protected int cdxLinesPerBlock = 3000;
 	
@@ -50,6 +63,16 @@ public class ZipNumIndex implements CDXInputSource {
 		if (summaryFile != null) {
 			this.summary = new SortedTextFile(GeneralURIStreamFactory.createSeekableStreamFactory(summaryFile, readaheadSize, useNio));
 			this.summary.setBinsearchBlockSize(binsearchBlockSize);
+			
+			if (midpointCacheSize > 0) {
+				this.summary.setMidpointCache(new MidpointCache(midpointCacheSize));
+			}
+			
+			blockSummaryModTime = summary.getModTime();
+			
+			if (inMemorySummary) {
+				loadMemorySummary();
+			}
 		}
 						
 		if (blockLoader == null) {
@@ -57,6 +80,93 @@ public class ZipNumIndex implements CDXInputSource {
 		}
 	}
 	
+	/**
+	 * Load the summary into memory and atomically replace the current
+	 * in-memory summary, if any. On failure, the current one is kept.
+	 */
+	protected void loadMemorySummary() throws IOException
+	{
+		SeekableLineReader slr = null;
+		
+		try {
+			long modTime = summary.getModTime();
+			slr = summary.getSLR();
+			InMemorySummary newSummary = InMemorySummary.load(slr, modTime);
+			
+			if (LOGGER.isLoggable(Level.INFO)) {
+				LOGGER.info("Loaded " + newSummary.size() + " summary lines (" + 
+						newSummary.getMemoryUsage() + " bytes) from " + summaryFile);
+			}
+			
+			memSummary = newSummary;
+		} finally {
+			if (slr != null) {
+				slr.close();
+			}
+		}
+	}
+	
+	/**
+	 * Reload the summary file after it has changed. When the summary is held
+	 * in memory, it is rebuilt and swapped in if the file modification time
+	 * differs, or is unknown. In that case the cached blocks of the index are
+	 * not served anymore either.
+	 */
+	public void reloadSummary()
+	{
+		if (summary == null) {
+			return;
+		}
+		
+		summary.reloadFactory();
+		
+		long modTime = summary.getModTime();
+		
+		// Parts are rewritten along with the summary
+		if ((modTime == 0) || (modTime != blockSummaryModTime)) {
+			invalidateBlocks();
+			blockSummaryModTime = modTime;
+		}
+		
+		if (!inMemorySummary) {
+			return;
+		}
+		
+		InMemorySummary curr = memSummary;
+		
+		if ((curr != null) && (modTime != 0) && (curr.getModTime() == modTime)) {
+			return;
+		}
+		
+		try {
+			loadMemorySummary();
+		} catch (IOException e) {
+			LOGGER.warning("Keeping previous in-memory summary: " + e.toString());
+		}
+	}
+	
+	protected CloseableIterator<String> getSummaryIterator(String key, boolean lessThan) throws IOException
+	{
+		InMemorySummary mem = memSummary;
+		
+		if (mem != null) {
+			return mem.getRecordIterator(key, lessThan);
+		}
+		
+		return summary.getRecordIterator(key, lessThan);
+	}
+	
+	public String[] getSummaryRange(String start, String end) throws IOException
+	{
+		InMemorySummary mem = memSummary;
+		
+		if (mem != null) {
+			return mem.getRange(start, end);
+		}
+		
+		return summary.getRange(start, end);
+	}
+	
 	public static ZipNumIndex createIndexWithSummaryPath(String summaryFile) throws IOException
 	{
 		ZipNumIndex zipIndex = new ZipNumIndex();
@@ -133,6 +243,12 @@ public class ZipNumIndex implements CDXInputSource {
 	
 	public int getNumLines(String start, String end) throws IOException
 	{
+		InMemorySummary mem = memSummary;
+		
+		if (mem != null) {
+			return mem.getNumLines(start, end);
+		}
+		
 		SeekableLineReader slr = null;
 		String startLine = null;
 		String endLine = null;
@@ -195,7 +311,7 @@ public class ZipNumIndex implements CDXInputSource {
 	
 	public PageResult getNthPage(String[] startEnd, int page, int pageSize, boolean numPagesOnly) throws IOException
 	{
-		String startEndIdx[] = getSummary().getRange(startEnd[0], startEnd[1]);
+		String startEndIdx[] = getSummaryRange(startEnd[0], startEnd[1]);
 		
 		int firstLineNumber = extractLineCount(startEndIdx[0]);
 		int endLineNumber = extractLineCount(startEndIdx[1]) + 1;
@@ -236,6 +352,12 @@ public class ZipNumIndex implements CDXInputSource {
 	
 	public String getNthLine(String lineNumber, int lineField) throws IOException
 	{
+		InMemorySummary mem = memSummary;
+		
+		if ((mem != null) && (lineField == LINE_COUNT_FIELD)) {
+			return mem.getNthLine(Long.parseLong(lineNumber));
+		}
+		
 		SeekableLineReader slr = null;
 		
 		try {
@@ -309,7 +431,7 @@ public class ZipNumIndex implements CDXInputSource {
 	public CloseableIterator<String> getClusterRange(String start, String end, boolean inclusive, boolean includePrevLine) throws IOException
 	{
 		CloseableIterator<String> iter = null;
-		iter = summary.getRecordIterator(start, includePrevLine);
+		iter = getSummaryIterator(start, includePrevLine);
 		return wrapEndIterator(iter, end, inclusive);
 		//return wrapStartEndIterator(iter, start, end, inclusive);
 	}
@@ -367,7 +489,7 @@ public class ZipNumIndex implements CDXInputSource {
 	
 	public CloseableIterator<String> getLastBlockCDXLineIterator(String key) throws IOException {
 		// the next line after last key<space> is key! so this will return last key<space> block
-		CloseableIterator<String> summaryIter = summary.getRecordIteratorLT(endKey(key));
+		CloseableIterator<String> summaryIter = getSummaryIterator(endKey(key), true);
 		
 		return wrapStartIterator(getCDXIterator(summaryIter), key);
 	}
@@ -382,7 +504,7 @@ public class ZipNumIndex implements CDXInputSource {
 	}
 	
 	public CloseableIterator<String> getCDXIterator(String key, String start, String end, ZipNumParams params) throws IOException {	
-		CloseableIterator<String> summaryIter = summary.getRecordIteratorLT(key);
+		CloseableIterator<String> summaryIter = getSummaryIterator(key, true);
 		
 		if (params.getTimestampDedupLength() > 0) {
 			summaryIter = new TimestampDedupIterator(summaryIter, params.getTimestampDedupLength());
@@ -409,7 +531,7 @@ public class ZipNumIndex implements CDXInputSource {
 	//TODO: replace with matchType version
 	public CloseableIterator<String> getCDXIterator(String key, String start, boolean exact, ZipNumParams params) throws IOException {
 		
-		CloseableIterator<String> summaryIter = summary.getRecordIteratorLT(key);
+		CloseableIterator<String> summaryIter = getSummaryIterator(key, true);
 		
 		if (params.getTimestampDedupLength() > 0) {
 			summaryIter = new TimestampDedupIterator(summaryIter, params.getTimestampDedupLength());
@@ -428,7 +550,7 @@ public class ZipNumIndex implements CDXInputSource {
 	
 	public CloseableIterator<String> getCDXIterator(String key, ZipNumParams params) throws IOException {
 		
-		CloseableIterator<String> summaryIter = summary.getRecordIteratorLT(key);		
+		CloseableIterator<String> summaryIter = getSummaryIterator(key, true);		
 		return wrapStartIterator(getCDXIterator(summaryIter, params), key);
 	}
 	
@@ -456,6 +578,53 @@ public class ZipNumIndex implements CDXInputSource {
 	{
 		return summary;
 	}
+	
+	/**
+	 * @return the in-memory summary, or null if not in in-memory mode
+	 */
+	public InMemorySummary getMemorySummary()
+	{
+		return memSummary;
+	}
+
+	public ZipNumBlockCache getBlockCache() {
+		return blockCache;
+	}
+
+	/**
+	 * @param blockCache cache for decompressed blocks, which may be shared
+	 * with other indexes. null to disable
+	 */
+	public void setBlockCache(ZipNumBlockCache blockCache) {
+		this.blockCache = blockCache;
+	}
+	
+	/**
+	 * Stop serving the blocks of this index cached so far, after its parts
+	 * may have been rewritten
+	 */
+	public void invalidateBlocks() {
+		blockGeneration = ZipNumBlockCache.newGeneration();
+	}
+	
+	/**
+	 * @param useShared if true, use the process-wide {@link ZipNumBlockCache#getShared()}
+	 */
+	public void setUseSharedBlockCache(boolean useShared) {
+		this.blockCache = (useShared ? ZipNumBlockCache.getShared() : null);
+	}
+
+	public boolean isInMemorySummary() {
+		return inMemorySummary;
+	}
+
+	/**
+	 * @param inMemorySummary if true, load the whole summary into memory on
+	 * init() and serve summary lookups from it. Must be set before init()
+	 */
+	public void setInMemorySummary(boolean inMemorySummary) {
+		this.inMemorySummary = inMemorySummary;
+	}
 
 	public ZipNumBlockLoader getBlockLoader() {
 		return blockLoader;
@@ -469,6 +638,20 @@ public class ZipNumIndex implements CDXInputSource {
         this.binsearchBlockSize = binsearchBlockSize;
     }
 
+	public int getMidpointCacheSize() {
+		return midpointCacheSize;
+	}
+
+	/**
+	 * @param midpointCacheSize max number of summary binary search probe lines
+	 * to cache, 0 to disable. Must be set before init(). Only used for http
+	 * and hdfs summaries, and local ones read without nio: memory mapped
+	 * summaries are searched on their bytes, in place, instead.
+	 */
+	public void setMidpointCacheSize(int midpointCacheSize) {
+		this.midpointCacheSize = midpointCacheSize;
+	}
+
     public int getReadaheadSize() {
 		return readaheadSize;
 	}
@@ -511,6 +694,32 @@ public class ZipNumIndex implements CDXInputSource {
 		return gzFile;
 	}
 	
+	/**
+	 * Load a block range through the block cache, if any
+	 */
+	SeekableLineReader loadBlock(final String partId, final long startOffset, final int totalLength) {
+		ZipNumBlockCache cache = blockCache;
+		String location = (cache != null ? getBlockLocation(partId) : null);
+		
+		if (location == null) {
+			return doBlockLoad(partId, startOffset, totalLength);
+		}
+		
+		return cache.getBlock(location, blockGeneration, startOffset, totalLength, new Callable<SeekableLineReader>() {
+			@Override
+			public SeekableLineReader call() {
+				return doBlockLoad(partId, startOffset, totalLength);
+			}
+		});
+	}
+	
+	/**
+	 * @return location identifying the part in the block cache
+	 */
+	String getBlockLocation(String partId) {
+		return getReaderPath(partId);
+	}
+	
 	SeekableLineReader doBlockLoad(String partId, long startOffset, int totalLength) {
 		String path = getReaderPath(partId);
 		return blockLoader.attemptLoadBlock(path, startOffset, totalLength, true, this.isRequired());
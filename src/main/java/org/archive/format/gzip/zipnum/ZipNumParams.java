@@ -8,6 +8,11 @@ public class ZipNumParams
 	private boolean reverse = false;
 	private boolean sequential = false;
 	
+	public final static int DEFAULT_PREFETCH_WINDOW_BYTES = 16 * 1024 * 1024;
+	
+	protected int prefetchDepth = 0;
+	protected int prefetchWindowBytes = DEFAULT_PREFETCH_WINDOW_BYTES;
+	
 	public ZipNumParams()
 	{
 	    
@@ -16,6 +21,8 @@ public class ZipNumParams
 	public ZipNumParams(ZipNumParams defaults)
 	{
 		this(defaults.maxAggregateBlocks, defaults.maxBlocks, defaults.timestampDedupLength, defaults.reverse);
+		this.prefetchDepth = defaults.prefetchDepth;
+		this.prefetchWindowBytes = defaults.prefetchWindowBytes;
 	}
 	
 	public ZipNumParams(int maxAggregateBlocks, int maxBlocks, int timestampDedupLength, boolean reverse)
@@ -65,4 +72,29 @@ public class ZipNumParams
 	public void setSequential(boolean sequential) {
 		this.sequential = sequential;
 	}
-}
\ No newline at end of file
+
+	public int getPrefetchDepth() {
+		return prefetchDepth;
+	}
+
+	/**
+	 * @param prefetchDepth number of block reads to issue ahead of the
+	 * consumer, 0 to load blocks one at a time when needed
+	 */
+	public void setPrefetchDepth(int prefetchDepth) {
+		this.prefetchDepth = prefetchDepth;
+	}
+
+	public int getPrefetchWindowBytes() {
+		return prefetchWindowBytes;
+	}
+
+	/**
+	 * @param prefetchWindowBytes max inflated bytes read ahead and not yet
+	 * consumed when prefetching, estimated from the compression ratio of the
+	 * blocks loaded so far
+	 */
+	public void setPrefetchWindowBytes(int prefetchWindowBytes) {
+		this.prefetchWindowBytes = prefetchWindowBytes;
+	}
+}
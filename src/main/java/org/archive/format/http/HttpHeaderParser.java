@@ -1,39 +1,69 @@
 package org.archive.format.http;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
+import com.google.common.io.ByteStreams;
+
+/**
+ * Lax (by default) parser of HTTP, or HTTP-like (WARC), headers, up to and
+ * including the blank line ending them.
+ *
+ * Headers already held in memory can be parsed in bulk, with
+ * {@link #doParse(byte[], int, int, HttpHeaderObserver)} or
+ * {@link #doParse(ByteBuffer, HttpHeaderObserver)}: names, values and
+ * corrupt lines are then scanned in tight loops up to the next delimiter.
+ * In-memory and buffered streams (ByteArrayInputStream, BufferedInputStream)
+ * are parsed the same way, a window at a time, then reset to just after the
+ * headers. Other streams are read a byte at a time, so that no byte after
+ * the headers is consumed: filter streams (digests, counts) may delegate
+ * mark/reset without undoing their own side effects. All modes produce the
+ * same result.
+ */
 public class HttpHeaderParser implements HttpConstants {
 	private static final int DEFAULT_MAX_NAME_LENGTH = 1024 * 100;
 	private static final int DEFAULT_MAX_VALUE_LENGTH = 1024 * 1024 * 10;
+	private static final int INITIAL_NAME_LENGTH = 128;
+	private static final int INITIAL_VALUE_LENGTH = 1024;
+	private static final int WINDOW_SIZE = 8 * 1024;
+
+	private static final int START_STATE = 0;
+	private static final int END_STATE = 1;
+	private static final int LINE_START_STATE = 2;
+	private static final int NAME_STATE = 3;
+	private static final int POST_NAME_STATE = 4;
+	private static final int POST_COLON_STATE = 5;
+	private static final int VALUE_STATE = 6;
+	private static final int VALUE_POST_LWSP_STATE = 7;
+	private static final int VALUE_POST_CR_STATE = 8;
+	private static final int POST_BLANK_CR_STATE = 9;
+	private static final int LAX_LINE_EAT_STATE = 10;
+
 	private HttpHeaderObserver obs = null;
-	private ParseState state = null;
+	private int state = START_STATE;
 	public boolean isStrict = false;
-	
+
 	private int nameStartIdx = 0;
 	private int nameLength = 0;
 	private byte name[] = null;
+	private int maxNameLength;
 
 	private int valueStartIdx = 0;
 	private int valueLength = 0;
 	private byte value[] = null;
-	
+	private int maxValueLength;
+
 	private int bufferIdx = 0;
-	
-	private ParseState startState = new StartParseState();
-	private ParseState endState = new EndParseState();
-	private ParseState lineStartState = new LineStartParseState();
-	private ParseState nameState = new NameParseState();
-	private ParseState postNameState = new PostNameParseState();
-	private ParseState postColonState = new PostColonParseState();
-	private ParseState valueState = new ValueParseState();
-	private ParseState valuePostLWSPState = new ValuePostLWSPParseState();
-	private ParseState valuePostCRState = new ValuePostCRParseState();
-	private ParseState postBlankCRState = new PostBlankCRParseState();
-	private ParseState laxLineEatParseState = new LAXLineEatParseState();
-	private ParseState valuePreCRState = null;
-	
+
+	// state to return to on LWSP after CR, a corrupt line continues there
+	private int valuePreCRState = LAX_LINE_EAT_STATE;
+
+	private byte window[] = null;
+
 	public HttpHeaderParser() {
 		this(null,DEFAULT_MAX_NAME_LENGTH, DEFAULT_MAX_VALUE_LENGTH);
 	}
@@ -41,10 +71,17 @@ public class HttpHeaderParser implements HttpConstants {
 	public HttpHeaderParser(HttpHeaderObserver obs) {
 		this(obs,DEFAULT_MAX_NAME_LENGTH, DEFAULT_MAX_VALUE_LENGTH);
 	}
-	
+
+	/**
+	 * @param maxName max length of a header name
+	 * @param maxValue max length of a header value, the name and value
+	 * buffers grow on demand up to these lengths
+	 */
 	public HttpHeaderParser(HttpHeaderObserver obs, int maxName, int maxValue) {
-		name = new byte[maxName];
-		value = new byte[maxValue];
+		maxNameLength = maxName;
+		maxValueLength = maxValue;
+		name = new byte[Math.min(maxName, INITIAL_NAME_LENGTH)];
+		value = new byte[Math.min(maxValue, INITIAL_VALUE_LENGTH)];
 		this.obs = obs;
 		reset();
 	}
@@ -52,23 +89,25 @@ public class HttpHeaderParser implements HttpConstants {
 		this.obs = obs;
 	}
 	private void reset() {
-		state = startState;
+		state = START_STATE;
 		bufferIdx = 0;
 
 		nameStartIdx = 0;
 		nameLength = 0;
-		
+
 		valueStartIdx = 0;
 		valueLength = 0;
+
+		valuePreCRState = LAX_LINE_EAT_STATE;
 	}
-	
-	public int doParse(InputStream is, HttpHeaderObserver obs) 
+
+	public int doParse(InputStream is, HttpHeaderObserver obs)
 	throws HttpParseException, IOException {
 		this.obs = obs;
 		return doParse(is);
 	}
-	
-	public HttpHeaders parseHeaders(InputStream is) 
+
+	public HttpHeaders parseHeaders(InputStream is)
 	throws HttpParseException, IOException {
 		HttpHeaders headers = new HttpHeaders();
 		obs = headers;
@@ -76,27 +115,33 @@ public class HttpHeaderParser implements HttpConstants {
 		return headers;
 	}
 
-	public int doParse(InputStream is) 
+	public HttpHeaders parseHeaders(byte buf[], int offset, int length)
+	throws HttpParseException {
+		HttpHeaders headers = new HttpHeaders();
+		doParse(buf, offset, length, headers);
+		return headers;
+	}
+
+	public int doParse(InputStream is)
 		throws HttpParseException, IOException {
 
+		if((is instanceof ByteArrayInputStream)
+				|| (is instanceof BufferedInputStream)) {
+			return doParseWindows(is);
+		}
+
 		int bytesRead = 0;
 
 		reset();
 		while(!isDone()) {
 			int i = is.read();
 			if(i == -1) {
-				if(isStrict) {
-					throw new HttpParseException("EOF before CRLFCRLF");
-				}
-				headersCorrupted();
+				endOfInput();
 				return bytesRead;
 			}
 			bytesRead++;
 			if(i > 127) {
-				if(isStrict) {
-					throw new HttpParseException("Non ASCII byte in headers");
-				}
-				headersCorrupted();
+				nonASCIIByte();
 				continue;
 			}
 			byte b = (byte) (i & 0xff);
@@ -105,16 +150,159 @@ public class HttpHeaderParser implements HttpConstants {
 
 		return bytesRead;
 	}
-	
+
+	/**
+	 * Parse the headers at the start of buf[offset, offset+length)
+	 *
+	 * @return number of bytes of buf used by the headers, or length if the
+	 * headers are not complete, which is then reported to obs as corrupt
+	 */
+	public int doParse(byte buf[], int offset, int length, HttpHeaderObserver obs)
+	throws HttpParseException {
+		this.obs = obs;
+		reset();
+		int used = parseBytes(buf, offset, length);
+		if(!isDone()) {
+			endOfInput();
+		}
+		return used;
+	}
+
+	/**
+	 * Parse the headers at the position of buf, which is moved after them
+	 *
+	 * @return number of bytes used by the headers
+	 */
+	public int doParse(ByteBuffer buf, HttpHeaderObserver obs)
+	throws HttpParseException {
+		int used;
+		if(buf.hasArray()) {
+			used = doParse(buf.array(), buf.arrayOffset() + buf.position(),
+					buf.remaining(), obs);
+		} else {
+			this.obs = obs;
+			reset();
+			byte chunk[] = getWindow();
+			used = 0;
+			ByteBuffer view = buf.duplicate();
+			while(!isDone() && view.hasRemaining()) {
+				int len = Math.min(chunk.length, view.remaining());
+				view.get(chunk, 0, len);
+				used += parseBytes(chunk, 0, len);
+			}
+			if(!isDone()) {
+				endOfInput();
+			}
+		}
+		buf.position(buf.position() + used);
+		return used;
+	}
+
+	/**
+	 * Parse a window at a time from a buffered stream, then rewind it to the
+	 * end of the headers
+	 */
+	private int doParseWindows(InputStream is)
+	throws HttpParseException, IOException {
+		byte buf[] = getWindow();
+		int bytesRead = 0;
+
+		reset();
+		while(!isDone()) {
+			is.mark(buf.length);
+			int len = is.read(buf, 0, buf.length);
+			if(len == -1) {
+				endOfInput();
+				return bytesRead;
+			}
+			int used = parseBytes(buf, 0, len);
+			bytesRead += used;
+			if(used < len) {
+				is.reset();
+				ByteStreams.skipFully(is, used);
+			}
+		}
+		return bytesRead;
+	}
+
+	private byte[] getWindow() {
+		if(window == null) {
+			window = new byte[WINDOW_SIZE];
+		}
+		return window;
+	}
+
 	public boolean isDone() {
-		return state instanceof EndParseState;
+		return state == END_STATE;
 	}
 
 	public void parseByte(byte b) throws HttpParseException {
-		state = state.handleByte(b,this);
+		state = handleByte(b);
 		bufferIdx++;
 	}
 
+	/**
+	 * Parse bytes of buf until the end of the headers: runs of name, value
+	 * and ignored bytes are consumed without going through handleByte()
+	 *
+	 * @return number of bytes used
+	 */
+	private int parseBytes(byte buf[], int offset, int length)
+	throws HttpParseException {
+		int idx = offset;
+		int end = offset + length;
+		while((idx < end) && (state != END_STATE)) {
+			byte b = buf[idx];
+			if(b < 0) {
+				nonASCIIByte();
+				idx++;
+				continue;
+			}
+			int run = 0;
+			if(state == VALUE_STATE) {
+				while((idx + run < end) && isPlainValueByte(buf[idx + run])) {
+					run++;
+				}
+				if(run > 0) {
+					addValueBytes(buf, idx, run);
+				}
+			} else if(state == NAME_STATE) {
+				while((idx + run < end) && isLegalNameByte(buf[idx + run])) {
+					run++;
+				}
+				if(run > 0) {
+					addNameBytes(buf, idx, run);
+				}
+			} else if(state == LAX_LINE_EAT_STATE) {
+				while((idx + run < end) && isPlainLineByte(buf[idx + run])) {
+					run++;
+				}
+			}
+			if(run > 0) {
+				idx += run;
+				bufferIdx += run;
+				continue;
+			}
+			parseByte(b);
+			idx++;
+		}
+		return idx - offset;
+	}
+
+	private void endOfInput() throws HttpParseException {
+		if(isStrict) {
+			throw new HttpParseException("EOF before CRLFCRLF");
+		}
+		headersCorrupted();
+	}
+
+	private void nonASCIIByte() throws HttpParseException {
+		if(isStrict) {
+			throw new HttpParseException("Non ASCII byte in headers");
+		}
+		headersCorrupted();
+	}
+
 	private void headerFinished() {
 		// skip empty:
 		if(nameLength == 0) {
@@ -126,7 +314,7 @@ public class HttpHeaderParser implements HttpConstants {
 			}
 		}
 		if(obs != null) {
-			obs.headerParsed(name, nameStartIdx, nameLength, 
+			obs.headerParsed(name, nameStartIdx, nameLength,
 					value, valueStartIdx, valueLength);
 		}
 	}
@@ -148,13 +336,28 @@ public class HttpHeaderParser implements HttpConstants {
 	}
 
 	private void addNameByte(byte b) throws HttpParseException {
-		if(nameLength >= name.length) {
+		if(nameLength >= maxNameLength) {
 			throw new HttpParseException("Name too long");
 		}
+		if(nameLength == name.length) {
+			name = grow(name, nameLength + 1, maxNameLength);
+		}
 		name[nameLength] = b;
 		nameLength++;
 	}
 
+	private void addNameBytes(byte buf[], int offset, int length)
+	throws HttpParseException {
+		if(nameLength + length > maxNameLength) {
+			throw new HttpParseException("Name too long");
+		}
+		if(nameLength + length > name.length) {
+			name = grow(name, nameLength + length, maxNameLength);
+		}
+		System.arraycopy(buf, offset, name, nameLength, length);
+		nameLength += length;
+	}
+
 	private void setValueStartIdx() {
 		valueStartIdx = bufferIdx;
 		valueLength = 0;
@@ -170,223 +373,209 @@ public class HttpHeaderParser implements HttpConstants {
 				return;
 			}
 		}
-		if(valueLength >= value.length) {
+		if(valueLength >= maxValueLength) {
 			throw new HttpParseException("Value too long");
 		}
+		if(valueLength == value.length) {
+			value = grow(value, valueLength + 1, maxValueLength);
+		}
 		value[valueLength] = b;
 		valueLength++;
 	}
 
-	private interface ParseState {
-		public ParseState handleByte(byte b, HttpHeaderParser parser)
-		throws HttpParseException;
+	/**
+	 * Add a run of bytes for which {@link #isPlainValueByte(byte)} is true
+	 */
+	private void addValueBytes(byte buf[], int offset, int length)
+	throws HttpParseException {
+		if(valueLength + length > maxValueLength) {
+			throw new HttpParseException("Value too long");
+		}
+		if(valueLength + length > value.length) {
+			value = grow(value, valueLength + length, maxValueLength);
+		}
+		System.arraycopy(buf, offset, value, valueLength, length);
+		valueLength += length;
 	}
 
-	private class EndParseState implements ParseState {
-		public ParseState handleByte(byte b, HttpHeaderParser parser)
-		throws HttpParseException {
-			throw new HttpParseException("Parse already completed");
-		}
+	private static byte[] grow(byte buf[], int minLength, int maxLength) {
+		int length = (int) Math.min(Math.max((long) buf.length * 2, minLength), maxLength);
+		byte grown[] = new byte[length];
+		System.arraycopy(buf, 0, grown, 0, buf.length);
+		return grown;
 	}
 
-	private class StartParseState implements ParseState {
-		public ParseState handleByte(byte b, HttpHeaderParser parser)
-		throws HttpParseException {
+	private int handleByte(byte b) throws HttpParseException {
+		switch(state) {
+
+		case START_STATE:
 			if(isLWSP(b)) {
-				if(parser.isStrict) {
+				if(isStrict) {
 					throw new HttpParseException("Space at start of headers");
 				}
 				// skip i guess...
-				parser.headersCorrupted();
-				return parser.startState;
+				headersCorrupted();
+				return START_STATE;
 			}
 			if(isLegalNameByte(b)) {
-				parser.setNameStartPos();
-				parser.addNameByte(b);
-				return parser.nameState;
+				setNameStartPos();
+				addNameByte(b);
+				return NAME_STATE;
 			}
-			if(parser.isStrict) {
+			if(isStrict) {
 				throw new HttpParseException("Bad character at start of headers");
 			}
-			parser.headersCorrupted();
-			return parser.laxLineEatParseState;
-		}
-	}
+			headersCorrupted();
+			return LAX_LINE_EAT_STATE;
 
-	private class LineStartParseState implements ParseState {
-		public ParseState handleByte(byte b, HttpHeaderParser parser)
-		throws HttpParseException {
+		case LINE_START_STATE:
 			if(isLWSP(b)) {
-				parser.addValueByte(SP);
-				return parser.valuePostLWSPState;
+				addValueByte(SP);
+				return VALUE_POST_LWSP_STATE;
 			}
 			if(isLegalNameByte(b)) {
-				parser.headerFinished();
-				parser.setNameStartPos();
-				parser.addNameByte(b);
-				return parser.nameState;
+				headerFinished();
+				setNameStartPos();
+				addNameByte(b);
+				return NAME_STATE;
 			}
 			if(b == CR) {
-				return parser.postBlankCRState;
+				return POST_BLANK_CR_STATE;
 			}
 			if(b == LF) {
 				// TODO: this is lax, is LFLF an OK terminator?
 				// that's all folks!
-				parser.headerFinished();
-				parser.parseFinished();
-				return parser.endState;
+				headerFinished();
+				parseFinished();
+				return END_STATE;
 			}
-			if(parser.isStrict) {
+			if(isStrict) {
 				throw new HttpParseException("Bad character at start of line");
 			}
-			parser.headersCorrupted();
-			return parser.laxLineEatParseState;
-		}
-	}
-	
-	private class LAXLineEatParseState implements ParseState {
-		public ParseState handleByte(byte b, HttpHeaderParser parser)
-		throws HttpParseException {
+			headersCorrupted();
+			return LAX_LINE_EAT_STATE;
+
+		case LAX_LINE_EAT_STATE:
 			if(b == CR) {
-				return parser.valuePostCRState;
+				return VALUE_POST_CR_STATE;
 			}
 			if(b == LF) {
-				return parser.lineStartState;
+				return LINE_START_STATE;
 			}
-			return parser.laxLineEatParseState;
-		}
-	}
+			return LAX_LINE_EAT_STATE;
 
-	private class NameParseState implements ParseState {
-		public ParseState handleByte(byte b, HttpHeaderParser parser)
-		throws HttpParseException {
+		case NAME_STATE:
 			if(isLegalNameByte(b)) {
-				parser.addNameByte(b);
-				return this;
+				addNameByte(b);
+				return NAME_STATE;
 			}
 			if(isLWSP(b)) {
-				return parser.postNameState;
+				return POST_NAME_STATE;
 			}
 			if(b == COLON) {
-				return parser.postColonState;
+				return POST_COLON_STATE;
 			}
-			if(parser.isStrict) {
+			if(isStrict) {
 				throw new HttpParseException("Illegal name char");
 			}
-			parser.headersCorrupted();
-			return parser.laxLineEatParseState;
-		}
-	}
-	
-	private class PostNameParseState implements ParseState {
-		public ParseState handleByte(byte b, HttpHeaderParser parser)
-		throws HttpParseException {
+			headersCorrupted();
+			return LAX_LINE_EAT_STATE;
+
+		case POST_NAME_STATE:
 			if(isLWSP(b)) {
 				// ignore more spaces..
-				return parser.postNameState;
+				return POST_NAME_STATE;
 			}
 			if(b == COLON) {
-				return parser.postColonState;
+				return POST_COLON_STATE;
 			}
-			if(parser.isStrict) {
+			if(isStrict) {
 				throw new HttpParseException("Illegal char after name("
 						+ new String(name, 0, nameLength, StandardCharsets.ISO_8859_1) + ")");
 			}
-			parser.headersCorrupted();
-			return parser.laxLineEatParseState;
-		}
-	}
-	
+			headersCorrupted();
+			return LAX_LINE_EAT_STATE;
 
-	private class PostColonParseState implements ParseState {
-		public ParseState handleByte(byte b, HttpHeaderParser parser) throws HttpParseException {
+		case POST_COLON_STATE:
 			if(isLWSP(b)) {
-				return parser.postColonState;
+				return POST_COLON_STATE;
 			}
 			// reset previous value also in case the header value is empty
-			parser.setValueStartIdx();
+			setValueStartIdx();
 			if(b == CR) {
-				parser.valuePreCRState = parser.postColonState;
-				return parser.valuePostCRState;
+				valuePreCRState = POST_COLON_STATE;
+				return VALUE_POST_CR_STATE;
 			}
 			if(b == LF) {
 				// TODO: this is lax, is LFLF an OK terminator?
-				return parser.lineStartState;
+				return LINE_START_STATE;
 			}
-			parser.addValueByte(b);
-			return parser.valueState;
-		}
-	}
-	
-	private class ValueParseState implements ParseState {
-		public ParseState handleByte(byte b, HttpHeaderParser parser) throws HttpParseException {
+			addValueByte(b);
+			return VALUE_STATE;
+
+		case VALUE_STATE:
 			if(isLWSP(b)) {
-				parser.addValueByte(SP);
-				return parser.valuePostLWSPState;
+				addValueByte(SP);
+				return VALUE_POST_LWSP_STATE;
 			}
 			if(b == CR) {
-				parser.valuePreCRState = this;
-				return parser.valuePostCRState;
+				valuePreCRState = VALUE_STATE;
+				return VALUE_POST_CR_STATE;
 			}
 			if(b == LF) {
 				// TODO: this is lax, is LFLF an OK terminator?
-				return parser.lineStartState;
+				return LINE_START_STATE;
 			}
-			parser.addValueByte(b);
-			return this;
-		}
-	}
-	
-	private class ValuePostLWSPParseState implements ParseState {
-		public ParseState handleByte(byte b, HttpHeaderParser parser) throws HttpParseException {
+			addValueByte(b);
+			return VALUE_STATE;
+
+		case VALUE_POST_LWSP_STATE:
 			if(isLWSP(b)) {
 				// skip, already added a space:
-				return parser.valuePostLWSPState;
+				return VALUE_POST_LWSP_STATE;
 			}
 			if(b == CR) {
-				parser.valuePreCRState = this;
-				return parser.valuePostCRState;
+				valuePreCRState = VALUE_POST_LWSP_STATE;
+				return VALUE_POST_CR_STATE;
 			}
 			if(b == LF) {
 				// TODO: this is lax, is LFLF an OK terminator?
-				return parser.lineStartState;
+				return LINE_START_STATE;
 			}
-			parser.addValueByte(b);
-			return parser.valueState;
-		}
-	}
-	
-	private class ValuePostCRParseState implements ParseState {
-		public ParseState handleByte(byte b, HttpHeaderParser parser) throws HttpParseException {
+			addValueByte(b);
+			return VALUE_STATE;
+
+		case VALUE_POST_CR_STATE:
 			if(isLWSP(b)) {
 				// ignore last CR. lax?
-				return parser.valuePreCRState;
+				return valuePreCRState;
 			}
 			if(b == CR) {
 				// TODO: this is lax, is LFLF an OK terminator?
-				return parser.valuePostCRState;
+				return VALUE_POST_CR_STATE;
 			}
 			if(b == LF) {
-				return parser.lineStartState;
+				return LINE_START_STATE;
 			}
-			parser.addValueByte(b);
-			return parser.valueState;
-		}
-	}
-	private class PostBlankCRParseState implements ParseState {
-		public ParseState handleByte(byte b, HttpHeaderParser parser) throws HttpParseException {
+			addValueByte(b);
+			return VALUE_STATE;
+
+		case POST_BLANK_CR_STATE:
 			if(b == LF) {
-				parser.headerFinished();
+				headerFinished();
 				// that's all folks!
-				parser.parseFinished();
-				return parser.endState;
+				parseFinished();
+				return END_STATE;
 			}
-			if(parser.isStrict) {
+			if(isStrict) {
 				throw new HttpParseException("NON LF after blank CR");
 			}
-			parser.headersCorrupted();
+			headersCorrupted();
 			// TODO: is this the right state?
-			return parser.laxLineEatParseState;
+			return LAX_LINE_EAT_STATE;
+
+		default:
+			throw new HttpParseException("Parse already completed");
 		}
 	}
 
@@ -400,13 +589,13 @@ public class HttpHeaderParser implements HttpConstants {
 //		}
 //		return (b == 13);
 //	}
-	
-	
+
+
 	private static boolean isLWSP(byte b) {
 		return (b == SP) || (b == HTAB);
 	}
 	/**
-	 * any CHAR, excluding CTLs, SPACE, and ":" 
+	 * any CHAR, excluding CTLs, SPACE, and ":"
 	 * @param b
 	 * @return
 	 */
@@ -418,4 +607,18 @@ public class HttpHeaderParser implements HttpConstants {
 		}
 		return false;
 	}
+
+	/**
+	 * ASCII byte which VALUE_STATE appends to the value as is
+	 */
+	private static boolean isPlainValueByte(byte b) {
+		return (b >= 0) && (b != SP) && (b != HTAB) && (b != CR) && (b != LF);
+	}
+
+	/**
+	 * ASCII byte which LAX_LINE_EAT_STATE skips
+	 */
+	private static boolean isPlainLineByte(byte b) {
+		return (b >= 0) && (b != CR) && (b != LF);
+	}
 }
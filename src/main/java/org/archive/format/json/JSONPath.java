@@ -0,0 +1,164 @@
+package org.archive.format.json;
+
+import java.util.logging.Logger;
+
+import com.github.openjson.JSONArray;
+import com.github.openjson.JSONException;
+import com.github.openjson.JSONObject;
+
+/**
+ * A compiled, dot separated path into a JSONObject, like
+ * "Envelope.WARC-Header-Metadata.WARC-Type", with the semantics of
+ * {@link JSONUtils#extractSingle(JSONObject, String)},
+ * {@link JSONUtils#extractObject(JSONObject, String)} and
+ * {@link JSONUtils#extractArray(JSONObject, String)}.
+ *
+ * The path is split once, lookups then walk the tree without allocating.
+ * Paths created with {@link #child(String)} share their parent's prefix:
+ * when several fields below a common object are needed, resolve the parent
+ * once and pass it, with the parent path, to the lookups of the children:
+ * <pre>
+ * JSONObject headers = WARC_HEADERS.getObject(top);
+ * String type = WARC_TYPE.getString(headers, WARC_HEADERS);
+ * </pre>
+ *
+ * Instances are immutable and may be shared between threads.
+ */
+public class JSONPath {
+	private static final Logger LOG =
+		Logger.getLogger(JSONPath.class.getName());
+
+	private final String path;
+	private final String parts[];
+
+	private JSONPath(String path, String parts[]) {
+		this.path = path;
+		this.parts = parts;
+	}
+
+	public static JSONPath compile(String path) {
+		return new JSONPath(path, path.split("\\."));
+	}
+
+	/**
+	 * @return the path of the field name below this path
+	 */
+	public JSONPath child(String name) {
+		String childParts[] = new String[parts.length + 1];
+		System.arraycopy(parts, 0, childParts, 0, parts.length);
+		childParts[parts.length] = name;
+		return new JSONPath(path + "." + name, childParts);
+	}
+
+	/**
+	 * @return the last field name of the path
+	 */
+	public String getName() {
+		return parts[parts.length - 1];
+	}
+
+	/**
+	 * @return true if prefix is this path or one of its ancestors
+	 */
+	public boolean startsWith(JSONPath prefix) {
+		if(prefix.parts.length > parts.length) {
+			return false;
+		}
+		for(int i = 0; i < prefix.parts.length; i++) {
+			if(!prefix.parts[i].equals(parts[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the JSONObject at this path, or null
+	 */
+	public JSONObject getObject(JSONObject json) {
+		return walk(json, 0, parts.length);
+	}
+
+	/**
+	 * @param json the JSONObject at the path base, as returned by
+	 * base.getObject()
+	 * @return the JSONObject at this path, or null
+	 */
+	public JSONObject getObject(JSONObject json, JSONPath base) {
+		return walk(json, baseLength(base), parts.length);
+	}
+
+	/**
+	 * @return the JSONArray at this path, or null
+	 */
+	public JSONArray getArray(JSONObject json) {
+		return getArray(json, 0);
+	}
+
+	public JSONArray getArray(JSONObject json, JSONPath base) {
+		return getArray(json, baseLength(base));
+	}
+
+	/**
+	 * @return String value of the field at this path, or null
+	 */
+	public String getString(JSONObject json) {
+		return getString(json, 0);
+	}
+
+	public String getString(JSONObject json, JSONPath base) {
+		return getString(json, baseLength(base));
+	}
+
+	public String toString() {
+		return path;
+	}
+
+	private int baseLength(JSONPath base) {
+		if(!startsWith(base)) {
+			throw new IllegalArgumentException(base + " is not a prefix of " + path);
+		}
+		return base.parts.length;
+	}
+
+	private JSONArray getArray(JSONObject json, int start) {
+		JSONObject cur = walk(json, start, parts.length - 1);
+		if(cur == null) {
+			return null;
+		}
+		return cur.optJSONArray(parts[parts.length - 1]);
+	}
+
+	private String getString(JSONObject json, int start) {
+		JSONObject cur = walk(json, start, parts.length - 1);
+		if(cur == null) {
+			return null;
+		}
+		Object value = cur.opt(parts[parts.length - 1]);
+		return value == null ? null : value.toString();
+	}
+
+	private JSONObject walk(JSONObject json, int start, int end) {
+		JSONObject cur = json;
+		for(int i = start; (i < end) && (cur != null); i++) {
+			cur = getChild(cur, parts[i]);
+		}
+		return cur;
+	}
+
+	private static JSONObject getChild(JSONObject m, String child) {
+		Object value = m.opt(child);
+		if(value instanceof JSONObject) {
+			return (JSONObject) value;
+		}
+		if(value != null) {
+			try {
+				// not an object: report like JSONObject.getJSONObject()
+				m.getJSONObject(child);
+			} catch (JSONException e) {
+				LOG.warning(e.getMessage());
+			}
+		}
+		return null;
+	}
+}
@@ -12,66 +12,22 @@ public class JSONUtils {
 	private static final Logger LOG =
 		Logger.getLogger(JSONUtils.class.getName());
 	
-	private static JSONObject getChild(JSONObject m, String child) {
-		try {
-			if(m.has(child)) {
-				return m.getJSONObject(child);
-			}
-		} catch (JSONException e) {
-			LOG.warning(e.getMessage());
-		}
-		return null;
-	}
+	/**
+	 * For repeated lookups of the same path, use a {@link JSONPath} compiled
+	 * once instead
+	 */
 	public static JSONObject extractObject(JSONObject json, String path) {
-		String parts[] = path.split("\\.");
-		JSONObject cur = json;
-		for(int i = 0; i < parts.length; i++) {
-			cur = getChild(cur,parts[i]);
-			if(cur == null) {
-				break;
-			}
-		}
-		return cur;
+		return JSONPath.compile(path).getObject(json);
 	}
 
 	public static JSONArray extractArray(JSONObject json, String path) {
-		String parts[] = path.split("\\.");
-		JSONObject cur = json;
-		for(int i = 0; i < parts.length - 1; i++) {
-			cur = getChild(cur,parts[i]);
-			if(cur == null) {
-				break;
-			}
-		}
-		if(cur != null) {
-			return cur.optJSONArray(parts[parts.length-1]);
-		}
-		return null;
+		return JSONPath.compile(path).getArray(json);
 	}
 
 	public static String extractSingle(JSONObject json, String path) {
-		String result = null;
-		String parts[] = path.split("\\.");
-		JSONObject cur = json;
-		for(int i = 0; i < parts.length-1; i++) {
-			cur = getChild(cur,parts[i]);
-			if(cur == null) {
-				break;
-			}
-		}
-		if(cur != null) {
-			String last = parts[parts.length-1];
-			if(cur.has(last)) {
-				try {
-					result = cur.get(last).toString();
-				} catch (JSONException e) {
-					LOG.warning(e.getMessage());
-				}
-			}
-		}
-		
-		return result;
+		return JSONPath.compile(path).getString(json);
 	}
+
 	public static List<String> extractFancy(JSONObject json, String path) {
 		ArrayList<String> matches = new ArrayList<String>();
 		String parts[] = path.split("\\.");
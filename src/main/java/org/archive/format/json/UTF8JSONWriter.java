@@ -0,0 +1,303 @@
+package org.archive.format.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.github.openjson.JSONArray;
+import com.github.openjson.JSONException;
+import com.github.openjson.JSONObject;
+import com.github.openjson.JSONString;
+
+/**
+ * Serializes a {@link JSONObject} straight to UTF-8 bytes, into a buffer
+ * reused from one object to the next. The bytes are those of
+ * {@link JSONObject#toString()} encoded as UTF-8, with unpaired surrogates
+ * replaced by '?', but without building the String.
+ */
+public class UTF8JSONWriter {
+	private final static int DEFAULT_INITIAL_SIZE = 64 * 1024;
+	/** larger buffers are released on {@link #reset()} */
+	private final static int DEFAULT_MAX_RETAINED_SIZE = 8 * 1024 * 1024;
+
+	private final static byte[] HEX = {
+		'0', '1', '2', '3', '4', '5', '6', '7',
+		'8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+	};
+
+	/**
+	 * An object which writes its JSON itself, as members of an object
+	 * through {@link UTF8JSONWriter#member(String, Object)} and
+	 * {@link UTF8JSONWriter#key(String)}, rather than being iterated as a
+	 * {@link JSONObject}.
+	 */
+	public interface Writable {
+		void writeJSON(UTF8JSONWriter writer) throws JSONException;
+	}
+
+	private final int initialSize;
+	private final int maxRetainedSize;
+	private byte[] buffer;
+	private int length = 0;
+	/** whether the object open at each depth has members written */
+	private boolean[] hasMembers = new boolean[16];
+	private int depth = 0;
+
+	public UTF8JSONWriter() {
+		this(DEFAULT_INITIAL_SIZE, DEFAULT_MAX_RETAINED_SIZE);
+	}
+
+	public UTF8JSONWriter(int initialSize, int maxRetainedSize) {
+		this.initialSize = initialSize;
+		this.maxRetainedSize = maxRetainedSize;
+		buffer = new byte[initialSize];
+	}
+
+	/**
+	 * Discard the bytes written so far.
+	 */
+	public void reset() {
+		if (buffer.length > maxRetainedSize) {
+			buffer = new byte[initialSize];
+		}
+		length = 0;
+		depth = 0;
+	}
+
+	/**
+	 * @return the buffer, holding {@link #getLength()} bytes, valid until
+	 * the next write or reset
+	 */
+	public byte[] getBuffer() {
+		return buffer;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(buffer, 0, length);
+	}
+
+	/**
+	 * Append the JSON of an object.
+	 *
+	 * @throws JSONException on numbers JSON cannot represent
+	 */
+	public UTF8JSONWriter write(JSONObject object) throws JSONException {
+		writeValue(object);
+		return this;
+	}
+
+	/**
+	 * Append the JSON of an object from its members, even if it is
+	 * {@link Writable}.
+	 */
+	public void writeObject(JSONObject object) throws JSONException {
+		startObject();
+		Iterator<String> keys = object.keys();
+		while (keys.hasNext()) {
+			String key = keys.next();
+			member(key, object.opt(key));
+		}
+		endObject();
+	}
+
+	public void startObject() {
+		append('{');
+		depth++;
+		if (depth == hasMembers.length) {
+			hasMembers = Arrays.copyOf(hasMembers, depth * 2);
+		}
+		hasMembers[depth] = false;
+	}
+
+	public void endObject() {
+		depth--;
+		append('}');
+	}
+
+	/**
+	 * Append a member to the open object, unless its value is null, as
+	 * JSONStringer does.
+	 */
+	public void member(String key, Object value) throws JSONException {
+		if (value == null || JSONObject.NULL.equals(value)) {
+			return;
+		}
+		key(key);
+		writeValue(value);
+	}
+
+	/**
+	 * Start a member of the open object, its value to be written next, e.g.
+	 * by {@link #startObject()}.
+	 */
+	public void key(String key) {
+		if (hasMembers[depth]) {
+			append(',');
+		}
+		hasMembers[depth] = true;
+		writeString(key);
+		append(':');
+	}
+
+	private void writeArray(JSONArray array) throws JSONException {
+		append('[');
+		for (int i = 0; i < array.length(); i++) {
+			if (i > 0) {
+				append(',');
+			}
+			writeValue(array.opt(i));
+		}
+		append(']');
+	}
+
+	private void writeValue(Object value) throws JSONException {
+		if (value instanceof Writable) {
+			((Writable) value).writeJSON(this);
+		} else if (value instanceof JSONArray) {
+			writeArray((JSONArray) value);
+		} else if (value instanceof JSONObject) {
+			writeObject((JSONObject) value);
+		} else if (value instanceof JSONString) {
+			writeRaw(((JSONString) value).toJSONString());
+		} else if (value == null || value instanceof Boolean || value == JSONObject.NULL) {
+			writeRaw(String.valueOf(value));
+		} else if (value instanceof Number) {
+			writeRaw(JSONObject.numberToString((Number) value));
+		} else if (value.getClass().getName().contains("JSONFunction")) {
+			writeRaw(value.toString());
+		} else {
+			writeString(value.toString());
+		}
+	}
+
+	/**
+	 * Append a JSON string, escaped as JSONStringer does
+	 */
+	private void writeString(String s) {
+		ensure(s.length() * 6 + 2);
+		byte[] b = buffer;
+		int pos = length;
+		b[pos++] = '"';
+		char previous = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= 0x20 && c < 0x80) {
+				if (c == '"' || c == '\\' || (c == '/' && previous == '<')) {
+					b[pos++] = '\\';
+				}
+				b[pos++] = (byte) c;
+			} else if (c < 0x20) {
+				b[pos++] = '\\';
+				switch (c) {
+				case '\t':
+					b[pos++] = 't';
+					break;
+				case '\b':
+					b[pos++] = 'b';
+					break;
+				case '\n':
+					b[pos++] = 'n';
+					break;
+				case '\r':
+					b[pos++] = 'r';
+					break;
+				case '\f':
+					b[pos++] = 'f';
+					break;
+				default:
+					b[pos++] = 'u';
+					b[pos++] = '0';
+					b[pos++] = '0';
+					b[pos++] = HEX[c >>> 4];
+					b[pos++] = HEX[c & 0xf];
+				}
+			} else {
+				pos = encode(s, i, c, b, pos);
+				if (Character.isHighSurrogate(c)
+						&& (i + 1 < s.length()) && Character.isLowSurrogate(s.charAt(i + 1))) {
+					i++;
+					c = s.charAt(i);
+				}
+			}
+			previous = c;
+		}
+		b[pos++] = '"';
+		length = pos;
+	}
+
+	/**
+	 * Append a string, as is, encoded as UTF-8
+	 */
+	private void writeRaw(String s) {
+		ensure(s.length() * 3);
+		byte[] b = buffer;
+		int pos = length;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				b[pos++] = (byte) c;
+			} else {
+				pos = encode(s, i, c, b, pos);
+				if (Character.isHighSurrogate(c)
+						&& (i + 1 < s.length()) && Character.isLowSurrogate(s.charAt(i + 1))) {
+					i++;
+				}
+			}
+		}
+		length = pos;
+	}
+
+	/**
+	 * Encode the non-ASCII char c at index i of s, with the following low
+	 * surrogate if c is a high one.
+	 *
+	 * @return the position after the bytes written
+	 */
+	private static int encode(String s, int i, char c, byte[] b, int pos) {
+		if (c < 0x800) {
+			b[pos++] = (byte) (0xc0 | (c >>> 6));
+			b[pos++] = (byte) (0x80 | (c & 0x3f));
+		} else if (!Character.isSurrogate(c)) {
+			b[pos++] = (byte) (0xe0 | (c >>> 12));
+			b[pos++] = (byte) (0x80 | ((c >>> 6) & 0x3f));
+			b[pos++] = (byte) (0x80 | (c & 0x3f));
+		} else if (Character.isHighSurrogate(c) && (i + 1 < s.length())
+				&& Character.isLowSurrogate(s.charAt(i + 1))) {
+			int cp = Character.toCodePoint(c, s.charAt(i + 1));
+			b[pos++] = (byte) (0xf0 | (cp >>> 18));
+			b[pos++] = (byte) (0x80 | ((cp >>> 12) & 0x3f));
+			b[pos++] = (byte) (0x80 | ((cp >>> 6) & 0x3f));
+			b[pos++] = (byte) (0x80 | (cp & 0x3f));
+		} else {
+			// unpaired surrogate
+			b[pos++] = '?';
+		}
+		return pos;
+	}
+
+	private void append(char c) {
+		ensure(1);
+		buffer[length++] = (byte) c;
+	}
+
+	private void ensure(int more) {
+		long needed = (long) length + more;
+		if (needed > buffer.length) {
+			long size = Math.max(needed, 2L * buffer.length);
+			if (size > Integer.MAX_VALUE - 8) {
+				if (needed > Integer.MAX_VALUE - 8) {
+					throw new OutOfMemoryError("JSON too large: " + needed + " bytes");
+				}
+				size = needed;
+			}
+			byte[] grown = new byte[(int) size];
+			System.arraycopy(buffer, 0, grown, 0, length);
+			buffer = grown;
+		}
+	}
+}
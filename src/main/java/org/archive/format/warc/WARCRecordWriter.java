@@ -44,12 +44,21 @@ public class WARCRecordWriter implements WARCConstants, HttpConstants {
   {
     if ( contents == null ) 
       {
-        headers.add(CONTENT_LENGTH, "0");
+        writeRecord(out, headers, null, 0, 0);
       }
     else
       {
-        headers.add(CONTENT_LENGTH,String.valueOf(contents.length));
+        writeRecord(out, headers, contents, 0, contents.length);
       }
+  }
+
+  private void writeRecord( OutputStream out, 
+                            HttpHeaders headers, 
+                            byte[] contents,
+                            int offset,
+                            int length) throws IOException
+  {
+    headers.add(CONTENT_LENGTH,String.valueOf(length));
     
     out.write(WARC_ID.getBytes(DEFAULT_ENCODING));
     out.write(CR);
@@ -61,7 +70,7 @@ public class WARCRecordWriter implements WARCConstants, HttpConstants {
   
     if ( contents != null ) 
       {
-        out.write( contents );
+        out.write( contents, offset, length );
       }
 
     // Emit the 2 trailing CRLF sequences.
@@ -97,6 +106,22 @@ public class WARCRecordWriter implements WARCConstants, HttpConstants {
                                        String targetURI,
                                        Date originalDate,
                                        String origRecordId ) throws IOException
+  {
+    writeJSONMetadataRecord(out, contents, 0, contents.length, targetURI,
+        originalDate, origRecordId);
+  }
+
+  /**
+   * Write a metadata record of the JSON in contents, from offset, of
+   * length bytes, so that callers can reuse their buffer.
+   */
+  public void writeJSONMetadataRecord( OutputStream out,
+                                       byte[] contents,
+                                       int offset,
+                                       int length,
+                                       String targetURI,
+                                       Date originalDate,
+                                       String origRecordId ) throws IOException
   {
     HttpHeaders headers = new HttpHeaders();
     headers.add(HEADER_KEY_TYPE, WARCRecordType.metadata.name());
@@ -109,11 +134,28 @@ public class WARCRecordWriter implements WARCConstants, HttpConstants {
     headers.add(HEADER_KEY_REFERS_TO, origRecordId);
     
     headers.add(CONTENT_TYPE,"application/json");
-    writeRecord(out, headers, contents);
+    writeRecord(out, headers, contents, offset, length);
+  }
+
+  public void writeTextConversionRecord(OutputStream out,
+                                       byte[] contents,
+                                       String targetURI,
+                                       Date originalDate,
+                                       String origRecordId,
+                                       Map<String,String> addHeaders) throws IOException
+  {
+    writeTextConversionRecord(out, contents, 0, contents.length, targetURI,
+        originalDate, origRecordId, addHeaders);
   }
 
+  /**
+   * Write a conversion record of the text in contents, from offset, of
+   * length bytes, so that callers can reuse their buffer.
+   */
   public void writeTextConversionRecord(OutputStream out,
                                        byte[] contents,
+                                       int offset,
+                                       int length,
                                        String targetURI,
                                        Date originalDate,
                                        String origRecordId,
@@ -125,19 +167,20 @@ public class WARCRecordWriter implements WARCConstants, HttpConstants {
     headers.add(HEADER_KEY_DATE, DateUtils.getLog14Date(originalDate));
     headers.add(HEADER_KEY_ID, makeRecordId());
     headers.add(HEADER_KEY_REFERS_TO, origRecordId);
-    headers.add(HEADER_KEY_BLOCK_DIGEST, contentHash(contents));
+    headers.add(HEADER_KEY_BLOCK_DIGEST, contentHash(contents, offset, length));
     if (addHeaders != null) {
       for (Map.Entry<String, String> e : addHeaders.entrySet()) {
         headers.add(e.getKey(), e.getValue());
       }
     }
     headers.add(CONTENT_TYPE, "text/plain");
-    writeRecord(out, headers, contents);
+    writeRecord(out, headers, contents, offset, length);
   }
 
-  private String contentHash(byte[] content) {
+  private String contentHash(byte[] content, int offset, int length) {
     sha1.reset();
-    return "sha1:" + Base32.encode(sha1.digest(content));
+    sha1.update(content, offset, length);
+    return "sha1:" + Base32.encode(sha1.digest());
   }
 
   private String makeRecordId() 
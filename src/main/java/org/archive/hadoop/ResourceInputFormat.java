@@ -19,12 +19,13 @@ public class ResourceInputFormat extends FileInputFormat<ResourceContext, MetaDa
 		return new ResourceRecordReader();
 	}
 
-	/* (non-Javadoc)
-	 * @see org.apache.hadoop.mapreduce.lib.input.FileInputFormat#isSplitable(org.apache.hadoop.mapreduce.JobContext, org.apache.hadoop.fs.Path)
+	/**
+	 * Compressed WARC and ARC files are splittable: each split reads the
+	 * records whose gzip member starts within the split, see
+	 * {@link ResourceRecordReader}.
 	 */
 	@Override
 	protected boolean isSplitable(JobContext context, Path filename) {
-		// TODO: ensure this works... it should be may be losing records between..
-		return false;
+		return ResourceRecordReader.isSupported(filename.getName());
 	}
 }
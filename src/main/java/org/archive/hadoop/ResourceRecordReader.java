@@ -1,6 +1,7 @@
 package org.archive.hadoop;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Locale;
 import java.util.logging.Logger;
 
@@ -14,6 +15,7 @@ import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.archive.extract.ExtractingResourceFactoryMapper;
 import org.archive.extract.ExtractingResourceProducer;
 import org.archive.extract.ResourceFactoryMapper;
+import org.archive.format.gzip.GZIPMemberLocator;
 import org.archive.format.gzip.GZIPMemberSeries;
 import org.archive.resource.MetaData;
 import org.archive.resource.Resource;
@@ -27,6 +29,8 @@ import org.archive.streamcontext.HDFSStream;
 import org.archive.streamcontext.Stream;
 import org.archive.util.StreamCopy;
 
+import com.google.common.base.Predicate;
+
 public class ResourceRecordReader extends RecordReader<ResourceContext, MetaData>{
 	private final static Logger LOG =
 		Logger.getLogger(ResourceRecordReader.class.getName());
@@ -78,32 +82,124 @@ public class ResourceRecordReader extends RecordReader<ResourceContext, MetaData
 			Path fsPath = fs.getPath();
 	    	FileSystem fSys = fsPath.getFileSystem(context.getConfiguration());
 	    	FSDataInputStream fsdis = fSys.open(fsPath);
-	    	String path = fsPath.getName();
-	    	name = fsPath.getName();
-	    	stream = new HDFSStream(fsdis);
-	    	startOffset = fs.getStart();
-			length = fs.getLength();
-			long endOffset = startOffset + length;
-			stream.setOffset(startOffset);	    	
-	    	series = new GZIPMemberSeries(stream, name, startOffset);
-			GZIPResourceContainer prod = 
-				new GZIPResourceContainer(series,endOffset);
-			ResourceProducer envelope;
-	    	if(path.endsWith(".warc.gz") || path.endsWith(".wat.gz")) {
-	    		envelope = new TransformingResourceProducer(prod,wf);
-			} else if(path.endsWith(".arc.gz")) {
-				envelope = new TransformingResourceProducer(prod,af);
-			} else {
-				throw new IOException("arguments must be arc.gz or warc.gz");
-			}
-	    	ResourceFactoryMapper mapper = new ExtractingResourceFactoryMapper();
-	    	producer = new ExtractingResourceProducer(envelope, mapper);
-
+	    	initialize(new HDFSStream(fsdis), fsPath.getName(), fs.getStart(), fs.getLength());
 		} else {
 			throw new IOException("Need FileSplit input...");
 		}
 	}
 
+	/**
+	 * Read the records whose gzip member starts in the split of stream from
+	 * start to start + length
+	 */
+	void initialize(Stream stream, String name, long start, long length)
+			throws IOException {
+		this.stream = stream;
+		this.name = name;
+		startOffset = start;
+		this.length = length;
+		long endOffset = startOffset + length;
+		if(!isSupported(name)) {
+			throw new IOException("arguments must be arc.gz or warc.gz");
+		}
+		long memberOffset = startOffset;
+		if(startOffset > 0) {
+			// the split starts anywhere: find the first record starting in it
+			memberOffset = findFirstRecord(stream, name, startOffset, endOffset, name.endsWith(".arc.gz"));
+			if(memberOffset < 0) {
+				LOG.info(String.format(Locale.ROOT, "No record starts in split %s (%d-%d)",
+						name, startOffset, endOffset));
+				memberOffset = endOffset;
+			}
+		}
+		stream.setOffset(memberOffset);
+		series = new GZIPMemberSeries(stream, name, memberOffset);
+		GZIPResourceContainer prod = 
+			new GZIPResourceContainer(series,endOffset);
+		ResourceProducer envelope;
+		if(name.endsWith(".arc.gz")) {
+			envelope = new TransformingResourceProducer(prod,af);
+		} else {
+			envelope = new TransformingResourceProducer(prod,wf);
+		}
+		ResourceFactoryMapper mapper = new ExtractingResourceFactoryMapper();
+		producer = new ExtractingResourceProducer(envelope, mapper);
+	}
+
+	/**
+	 * @return true for the files which can be read: .warc.gz, .wat.gz, .arc.gz
+	 */
+	public static boolean isSupported(String name) {
+		return name.endsWith(".warc.gz") || name.endsWith(".wat.gz")
+				|| name.endsWith(".arc.gz");
+	}
+
+	/**
+	 * Find the first gzip member starting in [start, end) which holds a WARC
+	 * or ARC record. Records starting before start belong to the previous
+	 * split, which reads them to their end.
+	 *
+	 * @return offset of the member, or -1 if no record starts in the range
+	 */
+	static long findFirstRecord(Stream stream, String name, long start, long end,
+			final boolean arc) throws IOException {
+		GZIPMemberLocator locator = new GZIPMemberLocator(stream, name,
+				RECORD_PREFIX_LENGTH, new Predicate<byte[]>() {
+					@Override
+					public boolean apply(byte[] prefix) {
+						return arc ? isARCRecordStart(prefix) : isWARCRecordStart(prefix);
+					}
+				});
+		return locator.findMember(start, end);
+	}
+
+	private final static int RECORD_PREFIX_LENGTH = 1024;
+	private final static byte[] WARC_MAGIC = "WARC/".getBytes(StandardCharsets.US_ASCII);
+
+	static boolean isWARCRecordStart(byte[] prefix) {
+		if(prefix.length < WARC_MAGIC.length) {
+			return false;
+		}
+		for(int i = 0; i < WARC_MAGIC.length; i++) {
+			if(prefix[i] != WARC_MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * ARC records start with a header line: URL IP-address date mime length,
+	 * whose last field is the numeric record length
+	 */
+	static boolean isARCRecordStart(byte[] prefix) {
+		int eol = -1;
+		for(int i = 0; i < prefix.length; i++) {
+			if(prefix[i] == '\n') {
+				eol = i;
+				break;
+			}
+		}
+		if(eol <= 0) {
+			return false;
+		}
+		String line = new String(prefix, 0, eol, StandardCharsets.ISO_8859_1).trim();
+		String[] fields = line.split(" ");
+		if(fields.length < 3 || fields[0].indexOf(':') < 0) {
+			return false;
+		}
+		String len = fields[fields.length - 1];
+		if(len.isEmpty()) {
+			return false;
+		}
+		for(int i = 0; i < len.length(); i++) {
+			if(!Character.isDigit(len.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public boolean nextKeyValue() throws IOException, InterruptedException {
 		// TODO: loop while getting resourceparseexceptions:
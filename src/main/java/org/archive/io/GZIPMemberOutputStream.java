@@ -0,0 +1,68 @@
+package org.archive.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes one gzip member, like {@link java.util.zip.GZIPOutputStream}, but
+ * with a Deflater supplied by the caller, so it can be reused for the next
+ * member. {@link #finish()} writes the trailer, the Deflater is neither reset
+ * nor ended, and the wrapped stream is not closed.
+ */
+class GZIPMemberOutputStream extends DeflaterOutputStream {
+
+    /**
+     * No name, no mtime, OS unknown (0xff): the header GZIPOutputStream writes
+     * since Java 16. Earlier versions write an OS byte of 0.
+     */
+    private final static byte[] HEADER = {
+        (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final CRC32 crc = new CRC32();
+
+    private boolean finished = false;
+
+    /**
+     * @param out stream to write the member to
+     * @param deflater a reset Deflater, with nowrap set
+     */
+    GZIPMemberOutputStream(OutputStream out, Deflater deflater)
+    throws IOException {
+        super(out, deflater, 4 * 1024);
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        super.write(b, off, len);
+        crc.update(b, off, len);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        super.finish();
+        writeIntLE(crc.getValue());
+        writeIntLE(def.getBytesRead());
+        finished = true;
+    }
+
+    private void writeIntLE(long value) throws IOException {
+        out.write((int) (value & 0xff));
+        out.write((int) ((value >> 8) & 0xff));
+        out.write((int) ((value >> 16) & 0xff));
+        out.write((int) ((value >> 24) & 0xff));
+    }
+
+    /**
+     * @return Reference to stream being compressed.
+     */
+    OutputStream getWrappedStream() {
+        return this.out;
+    }
+}
@@ -0,0 +1,287 @@
+package org.archive.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Output stream to a file, written by its own I/O thread. Bytes written
+ * are copied into chunks, handed to the I/O thread when full, on
+ * {@link #flush()} or {@link #commit()}, through a bounded queue: writers
+ * only block when the disk falls behind by more than the queue. The I/O
+ * thread writes all the chunks queued at a time with one gathering write
+ * and, if forcing, one fsync for all of them (group commit).
+ *
+ * Not thread safe: one thread writes at a time, as with a
+ * {@link WriterPoolMember}.
+ */
+public class GroupCommitOutputStream extends OutputStream {
+    private static final Logger logger =
+        Logger.getLogger(GroupCommitOutputStream.class.getName());
+
+    /** Default size of the chunks handed to the I/O thread */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    /** Default number of chunks queued before writers block */
+    public static final int DEFAULT_MAX_QUEUED_CHUNKS = 64;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    /** Queued after the last chunk, to stop the I/O thread */
+    private static final Chunk END = new Chunk(null);
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private static class Chunk {
+        final byte[] buf;
+        int length = 0;
+        /** Set if committed: completed with the file length once written */
+        SettableFuture<Long> committed = null;
+
+        Chunk(byte[] buf) {
+            this.buf = buf;
+        }
+    }
+
+    protected final File file;
+    protected final FileChannel channel;
+    protected final int chunkSize;
+    protected final boolean force;
+
+    private final BlockingQueue<Chunk> queue;
+    private final ConcurrentLinkedQueue<byte[]> freeChunks = new ConcurrentLinkedQueue<byte[]>();
+    private final Thread ioThread;
+
+    private Chunk current = null;
+    private boolean closed = false;
+    private volatile IOException failure = null;
+
+    public GroupCommitOutputStream(File file) throws IOException {
+        this(file, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_QUEUED_CHUNKS, false);
+    }
+
+    /**
+     * @param file file to write, truncated
+     * @param chunkSize size of the chunks handed to the I/O thread
+     * @param maxQueuedChunks number of chunks waiting to be written before
+     * writes block
+     * @param force if true, force each group of chunks written to disk
+     * before completing their commits
+     * @throws IOException
+     */
+    @SuppressWarnings("resource")
+    public GroupCommitOutputStream(File file, int chunkSize, int maxQueuedChunks,
+            boolean force) throws IOException {
+        this.file = file;
+        this.chunkSize = chunkSize;
+        this.force = force;
+        this.queue = new ArrayBlockingQueue<Chunk>(maxQueuedChunks);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        this.channel = raf.getChannel();
+        this.ioThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeChunks();
+            }
+        }, "GroupCommitOutputStream-" + threadCount.incrementAndGet());
+        this.ioThread.setDaemon(true);
+        this.ioThread.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (current == null || current.length == current.buf.length) {
+            nextChunk();
+        }
+        current.buf[current.length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (current == null || current.length == current.buf.length) {
+                nextChunk();
+            }
+            int n = Math.min(len, current.buf.length - current.length);
+            System.arraycopy(b, off, current.buf, current.length, n);
+            current.length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void nextChunk() throws IOException {
+        if (current != null) {
+            enqueue(current);
+        }
+        checkOpen();
+        byte[] buf = freeChunks.poll();
+        current = new Chunk((buf != null) ? buf : new byte[chunkSize]);
+    }
+
+    private void enqueue(Chunk chunk) throws IOException {
+        checkOpen();
+        Uninterruptibles.putUninterruptibly(queue, chunk);
+        if (chunk == current) {
+            current = null;
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (failure != null) {
+            throw new IOException("Failed writing " + file, failure);
+        }
+        if (closed) {
+            throw new IOException("Stream closed: " + file);
+        }
+    }
+
+    /**
+     * Hand the bytes written so far to the I/O thread, without waiting.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (current != null && current.length > 0) {
+            enqueue(current);
+        }
+    }
+
+    /**
+     * Hand the bytes written so far to the I/O thread.
+     *
+     * @return completed with the number of bytes in the file once all bytes
+     * written before this call are in the file, and forced to disk if
+     * forcing
+     * @throws IOException
+     */
+    public ListenableFuture<Long> commit() throws IOException {
+        Chunk chunk = current;
+        if (chunk == null) {
+            // already handed off by flush()
+            chunk = new Chunk(EMPTY);
+        }
+        chunk.committed = SettableFuture.create();
+        enqueue(chunk);
+        return chunk.committed;
+    }
+
+    /**
+     * Wait until all bytes written are in the file, and forced to disk if
+     * forcing.
+     *
+     * @throws IOException
+     */
+    public void sync() throws IOException {
+        try {
+            Uninterruptibles.getUninterruptibly(commit());
+        } catch (ExecutionException e) {
+            throw new IOException("Failed writing " + file, e.getCause());
+        }
+    }
+
+    /**
+     * Write the remaining bytes, wait for the I/O thread, force the file to
+     * disk if forcing, and close it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (failure == null) {
+                flush();
+            }
+        } finally {
+            closed = true;
+            Uninterruptibles.putUninterruptibly(queue, END);
+            Uninterruptibles.joinUninterruptibly(ioThread);
+            channel.close();
+        }
+        if (failure != null) {
+            throw new IOException("Failed writing " + file, failure);
+        }
+    }
+
+    /**
+     * Body of the I/O thread: write the chunks queued at a time together,
+     * until END.
+     */
+    private void writeChunks() {
+        List<Chunk> batch = new ArrayList<Chunk>();
+        long position = 0;
+        boolean end = false;
+        while (!end) {
+            batch.clear();
+            batch.add(Uninterruptibles.takeUninterruptibly(queue));
+            queue.drainTo(batch);
+            if (batch.get(batch.size() - 1) == END) {
+                batch.remove(batch.size() - 1);
+                end = true;
+            }
+            if (failure == null) {
+                try {
+                    writeBatch(batch, end);
+                } catch (IOException e) {
+                    logger.log(Level.SEVERE, "Failed writing " + file, e);
+                    failure = e;
+                }
+            }
+            for (Chunk chunk : batch) {
+                position += chunk.length;
+                if (chunk.committed != null) {
+                    if (failure == null) {
+                        chunk.committed.set(position);
+                    } else {
+                        chunk.committed.setException(failure);
+                    }
+                }
+                if (chunk.buf.length == chunkSize) {
+                    freeChunks.offer(chunk.buf);
+                }
+            }
+        }
+    }
+
+    private void writeBatch(List<Chunk> batch, boolean last) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        long length = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            Chunk chunk = batch.get(i);
+            buffers[i] = ByteBuffer.wrap(chunk.buf, 0, chunk.length);
+            length += chunk.length;
+        }
+        long written = 0;
+        while (written < length) {
+            written += channel.write(buffers);
+        }
+        if (force && (length > 0 || last)) {
+            channel.force(false);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isForce() {
+        return force;
+    }
+}
@@ -0,0 +1,177 @@
+package org.archive.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Pool of threads compressing records into gzip members, for
+ * {@link WriterPoolMember#setCompressor(ParallelGZIPCompressor)}. Each
+ * record of a compressed WARC or ARC file is an independent gzip member,
+ * so the records of a writer are compressed concurrently, and appended to
+ * the file in order by the writer.
+ *
+ * Deflaters are pooled and reused from one record to the next. One
+ * compressor may be shared by all the writers of a {@link WriterPool}.
+ */
+public class ParallelGZIPCompressor implements Closeable {
+
+    /** Default largest record compressed in parallel, larger ones are compressed by the writing thread */
+    public static final int DEFAULT_MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    protected final int threads;
+    protected final int level;
+    protected final ExecutorService executor;
+
+    protected final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+
+    protected int maxRecordBytes = DEFAULT_MAX_RECORD_BYTES;
+    protected int maxPendingRecords;
+
+    protected volatile boolean closed = false;
+
+    /**
+     * Compressor with one thread per available processor.
+     */
+    public ParallelGZIPCompressor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelGZIPCompressor(int threads) {
+        this(threads, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param threads number of compression threads
+     * @param level Deflater compression level
+     */
+    public ParallelGZIPCompressor(int threads, int level) {
+        this.threads = threads;
+        this.level = level;
+        this.maxPendingRecords = 2 * threads;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        ThreadFactory factory = new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ParallelGZIPCompressor-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), factory);
+    }
+
+    /**
+     * Compress len bytes of buf into a gzip member. buf must not be
+     * modified until the returned future is done.
+     *
+     * @return the gzip member
+     */
+    public Future<ByteArrayOutputStream> submit(final byte[] buf, final int len) {
+        return executor.submit(new Callable<ByteArrayOutputStream>() {
+            @Override
+            public ByteArrayOutputStream call() throws IOException {
+                return compress(buf, len);
+            }
+        });
+    }
+
+    protected ByteArrayOutputStream compress(byte[] buf, int len) throws IOException {
+        Deflater deflater = getDeflater();
+        try {
+            ByteArrayOutputStream member = new ByteArrayOutputStream((len / 4) + 64);
+            GZIPMemberOutputStream gzip = new GZIPMemberOutputStream(member, deflater);
+            gzip.write(buf, 0, len);
+            gzip.finish();
+            return member;
+        } finally {
+            returnDeflater(deflater);
+        }
+    }
+
+    /**
+     * @return a reset Deflater, with nowrap set, from the pool or new
+     */
+    public Deflater getDeflater() {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+        return deflater;
+    }
+
+    public void returnDeflater(Deflater deflater) {
+        deflater.reset();
+        if (closed) {
+            deflater.end();
+        } else {
+            deflaters.offer(deflater);
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getMaxRecordBytes() {
+        return maxRecordBytes;
+    }
+
+    /**
+     * @param maxRecordBytes largest uncompressed record handed to the
+     * compression threads. Records are buffered in memory until compressed,
+     * larger ones are compressed by the writing thread.
+     */
+    public void setMaxRecordBytes(int maxRecordBytes) {
+        this.maxRecordBytes = maxRecordBytes;
+    }
+
+    public int getMaxPendingRecords() {
+        return maxPendingRecords;
+    }
+
+    /**
+     * @param maxPendingRecords number of records a writer may have waiting
+     * to be compressed or appended before it blocks, 2 per thread by default
+     */
+    public void setMaxPendingRecords(int maxPendingRecords) {
+        this.maxPendingRecords = maxPendingRecords;
+    }
+
+    /**
+     * Stop the compression threads, once the records already submitted are
+     * compressed, and release the pooled Deflaters. Writers using this
+     * compressor should be closed first.
+     */
+    public void close() {
+        closed = true;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+    }
+}
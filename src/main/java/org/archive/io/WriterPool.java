@@ -85,6 +85,12 @@ public abstract class WriterPool {
     protected long lastWriterNeededTime;
     /** system time when writer was last 'rolled over' (imminent creation of new file) */ 
     protected long lastWriterRolloverTime; 
+    /** compression threads shared by the writers, if records are compressed in parallel */
+    protected ParallelGZIPCompressor compressor = null;
+    /** chunks queued to the I/O thread of each file, 0 to write on the writing threads */
+    protected int asyncQueuedChunks = 0;
+    /** if the I/O threads force groups of writes to disk */
+    protected boolean asyncForce = false;
     
     /**
      * Constructor
@@ -149,7 +155,12 @@ public abstract class WriterPool {
         if(currentActive < maxActive) {
             currentActive++;
             lastWriterRolloverTime = now; 
-            return makeWriter(); 
+            WriterPoolMember writer = makeWriter();
+            if (compressor != null) {
+                writer.setCompressor(compressor);
+            }
+            writer.setAsyncOutput(asyncQueuedChunks, asyncForce);
+            return writer;
         }
         return null; 
     }
@@ -251,6 +262,37 @@ public abstract class WriterPool {
         }
     }
 
+    /**
+     * Compress the records of the writers created from now on in parallel,
+     * see {@link WriterPoolMember#setCompressor(ParallelGZIPCompressor)}.
+     * The compressor is not closed with the pool.
+     *
+     * @param compressor compression threads, or null to compress on the
+     * writing threads
+     */
+    public void setCompressor(ParallelGZIPCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    public ParallelGZIPCompressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * Write the files of the writers created from now on with an I/O thread
+     * per file, so that writers are returned to the pool as soon as their
+     * records are copied to memory, see
+     * {@link WriterPoolMember#setAsyncOutput(int, boolean)}.
+     *
+     * @param maxQueuedChunks chunks queued per file before writes block, 0
+     * to write on the writing threads
+     * @param force if true, force groups of writes to disk
+     */
+    public void setAsyncOutput(int maxQueuedChunks, boolean force) {
+        this.asyncQueuedChunks = maxQueuedChunks;
+        this.asyncForce = force;
+    }
+
 	/**
 	 * @return Returns settings.
 	 */
@@ -20,6 +20,7 @@
 package org.archive.io;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -29,18 +30,27 @@ import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
+import java.util.ArrayDeque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Deflater;
 
 import org.archive.util.ArchiveUtils;
 import org.archive.util.FileUtils;
 import org.archive.util.PropertyUtils;
 
+import com.google.common.base.Functions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+
 import static org.archive.format.ArchiveFileConstants.*;
 
 
@@ -124,6 +134,102 @@ public abstract class WriterPoolMember {
      */
     protected final byte [] scratchbuffer = new byte[4 * 1024];
  
+    /**
+     * Deflater reused by the records compressed on the writing thread.
+     */
+    protected Deflater deflater = null;
+
+    /**
+     * Compression threads, if records are compressed in parallel.
+     */
+    protected ParallelGZIPCompressor compressor = null;
+
+    /**
+     * Records handed to the compressor and not yet appended, in file order.
+     */
+    protected final ArrayDeque<PendingRecord> pendingRecords = new ArrayDeque<PendingRecord>();
+
+    /**
+     * Uncompressed length of the pending records, counted by
+     * {@link #getPosition()} as their size on disk is not known yet.
+     */
+    protected volatile long pendingBytes = 0;
+
+    /**
+     * Buffers of appended records, for reuse.
+     */
+    protected final ArrayDeque<RecordBuffer> freeBuffers = new ArrayDeque<RecordBuffer>();
+
+    /** Largest buffer kept for reuse */
+    protected static final int MAX_FREE_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Buffer of the record being written, if compressed in parallel.
+     */
+    protected RecordBuffer recordBuffer = null;
+
+    /**
+     * Position of the record being written, if compressed in place.
+     */
+    protected long recordStartPosition = 0;
+
+    /**
+     * Number of chunks queued to the I/O thread of each file before writes
+     * block, 0 to write files on the writing thread.
+     */
+    protected int asyncQueuedChunks = 0;
+
+    /**
+     * If the I/O thread forces each group of writes to disk.
+     */
+    protected boolean asyncForce = false;
+
+    /**
+     * Output to the current file, if written by an I/O thread.
+     */
+    protected GroupCommitOutputStream groupCommitOut = null;
+
+    /**
+     * Notified when a record is written to the file, with its offset and
+     * size on disk. Records compressed in parallel are appended later, by
+     * the writing thread, in the order they were written.
+     */
+    protected interface RecordAppendListener {
+        void appended(long offset, long sizeOnDisk) throws IOException;
+
+        /** Called instead if the record could not be appended */
+        void failed(IOException e);
+    }
+
+    protected static class PendingRecord {
+        final Future<ByteArrayOutputStream> member;
+        final RecordBuffer buffer;
+        final RecordAppendListener listener;
+
+        PendingRecord(Future<ByteArrayOutputStream> member, RecordBuffer buffer,
+                RecordAppendListener listener) {
+            this.member = member;
+            this.buffer = buffer;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Uncompressed record, handed to the compressor without a copy.
+     */
+    protected static class RecordBuffer extends ByteArrayOutputStream {
+        RecordBuffer(int size) {
+            super(size);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
     
     /**
      * Constructor.
@@ -207,8 +313,14 @@ public abstract class WriterPoolMember {
     protected String createFile(final File file) throws IOException {
     	close();
         this.f = file;
-        FileOutputStream fos = new FileOutputStream(this.f);
-        this.countOut = new MiserOutputStream(new BufferedOutputStream(fos),settings.getFrequentFlushes());
+        if (asyncQueuedChunks > 0) {
+            this.groupCommitOut = new GroupCommitOutputStream(this.f,
+                    GroupCommitOutputStream.DEFAULT_CHUNK_SIZE, asyncQueuedChunks, asyncForce);
+            this.countOut = new MiserOutputStream(this.groupCommitOut, settings.getFrequentFlushes());
+        } else {
+            FileOutputStream fos = new FileOutputStream(this.f);
+            this.countOut = new MiserOutputStream(new BufferedOutputStream(fos),settings.getFrequentFlushes());
+        }
         this.out = this.countOut; 
         logger.fine("Opened " + this.f.getAbsolutePath());
         return this.f.getName();
@@ -317,53 +429,222 @@ public abstract class WriterPoolMember {
     }
 
     /**
-     * Post write tasks.
+     * Compress the records of this writer in parallel, with the threads of
+     * compressor, instead of on the writing thread. Only applies to
+     * compressed files and to records written with a known length, see
+     * {@link #preWriteRecordTasks(long)}.
+     *
+     * <p>Records are buffered until compressed and appended to the file, in
+     * order, by later writes or by {@link #appendPendingRecords(boolean)}:
+     * until then, {@link #getPosition()} counts them at their uncompressed
+     * length, so files may roll over a little before their maximum size.
+     *
+     * @param compressor compression threads, may be shared by several
+     * writers, or null to compress on the writing thread
+     */
+    public void setCompressor(ParallelGZIPCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    public ParallelGZIPCompressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * Write the files opened from now on with an I/O thread per file, see
+     * {@link GroupCommitOutputStream}: the writing thread only copies
+     * records into memory, unless the disk falls behind by more than
+     * maxQueuedChunks chunks of {@link GroupCommitOutputStream#DEFAULT_CHUNK_SIZE}
+     * bytes. Completion is reported by {@link #commitRecord(long)}.
+     *
+     * @param maxQueuedChunks chunks queued before writes block, 0 to write
+     * on the writing thread
+     * @param force if true, force groups of writes to disk before reporting
+     * them complete
+     */
+    public void setAsyncOutput(int maxQueuedChunks, boolean force) {
+        this.asyncQueuedChunks = maxQueuedChunks;
+        this.asyncForce = force;
+    }
+
+    public boolean isAsyncOutput() {
+        return asyncQueuedChunks > 0;
+    }
+
+    /**
+     * Commit the records appended so far, the last one at offset.
+     *
+     * @param offset offset of the last record appended
+     * @return completed with offset once the record is in the file, and on
+     * disk if forcing; already completed unless the file is written by an
+     * I/O thread
+     * @throws IOException
+     */
+    protected ListenableFuture<Long> commitRecord(long offset) throws IOException {
+        if (groupCommitOut == null) {
+            return Futures.immediateFuture(offset);
+        }
+        return Futures.transform(groupCommitOut.commit(),
+                Functions.constant(offset), MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Pre write tasks, for a record of unknown length.
+     *
+     * @exception IOException
+     */
+    protected void preWriteRecordTasks()
+    throws IOException {
+        preWriteRecordTasks(-1);
+    }
+
+    /**
+     * Pre write tasks.
      * 
      * Has side effects.  Will open new file if we're at the upper bound.
      * If we're writing compressed files, it will wrap output stream with a
      * GZIP writer with side effect that GZIP header is written out on the
-     * stream.
+     * stream, or, if a compressor is set and the record is not larger than
+     * its maximum, with a buffer to be compressed in parallel.
      *
+     * @param recordLength uncompressed length of the record, or -1 if unknown
      * @exception IOException
      */
-    protected void preWriteRecordTasks()
+    protected void preWriteRecordTasks(long recordLength)
     throws IOException {
         if (this.out == null) {
             createFile();
         }
         if (settings.getCompress()) {
+            if (compressor != null && recordLength >= 0
+                    && recordLength <= compressor.getMaxRecordBytes()) {
+                this.recordBuffer = getRecordBuffer((int) recordLength);
+                this.out = this.recordBuffer;
+                return;
+            }
+            // Written in place, after the records still compressing.
+            appendPendingRecords(true);
+            if (this.deflater == null) {
+                this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            }
+            this.recordStartPosition = getPosition();
             // Wrap stream in GZIP Writer.
             // The below construction immediately writes the GZIP 'default'
             // header out on the underlying stream.
-            this.out = new CompressedStream(this.out);
+            this.out = new GZIPMemberOutputStream(this.out, this.deflater);
+        } else {
+            this.recordStartPosition = getPosition();
         }
     }
 
     /**
      * Post file write tasks.
-     * If compressed, finishes up compression and flushes stream so any
-     * subsequent checks get good reading.
      *
      * @exception IOException
      */
     protected void postWriteRecordTasks()
     throws IOException {
+        postWriteRecordTasks(null);
+    }
+
+    /**
+     * Post file write tasks.
+     * If compressed, finishes up compression and flushes stream so any
+     * subsequent checks get good reading. Records compressed in parallel are
+     * submitted to the compressor instead, and the records already
+     * compressed appended. Blocks while too many records are pending.
+     *
+     * @param listener notified once the record is in the file, may be null
+     * @exception IOException
+     */
+    protected void postWriteRecordTasks(RecordAppendListener listener)
+    throws IOException {
+        if (this.recordBuffer != null) {
+            RecordBuffer buffer = this.recordBuffer;
+            this.recordBuffer = null;
+            this.out = this.countOut;
+            pendingRecords.add(new PendingRecord(
+                    compressor.submit(buffer.getBuffer(), buffer.size()), buffer, listener));
+            pendingBytes += buffer.size();
+            appendPendingRecords(false);
+            while (pendingRecords.size() > compressor.getMaxPendingRecords()) {
+                appendNextPendingRecord();
+            }
+            return;
+        }
         if (settings.getCompress()) {
-            CompressedStream o = (CompressedStream)this.out;
+            GZIPMemberOutputStream o = (GZIPMemberOutputStream)this.out;
             o.finish();
             o.flush();
-            o.end();
+            this.deflater.reset();
             this.out = o.getWrappedStream();
         }
+        if (listener != null) {
+            listener.appended(this.recordStartPosition, getPosition() - this.recordStartPosition);
+        }
+    }
+
+    /**
+     * Append to the file the records compressed in parallel.
+     *
+     * @param wait if true, wait for all pending records, else append only
+     * those at the head of the queue which are already compressed
+     * @exception IOException
+     */
+    public void appendPendingRecords(boolean wait)
+    throws IOException {
+        while (!pendingRecords.isEmpty()
+                && (wait || pendingRecords.peek().member.isDone())) {
+            appendNextPendingRecord();
+        }
+    }
+
+    protected void appendNextPendingRecord()
+    throws IOException {
+        PendingRecord record = pendingRecords.poll();
+        pendingBytes -= record.buffer.size();
+        ByteArrayOutputStream member;
+        try {
+            member = Uninterruptibles.getUninterruptibly(record.member);
+        } catch (ExecutionException e) {
+            IOException ioe = new IOException("Failed compressing record", e.getCause());
+            if (record.listener != null) {
+                record.listener.failed(ioe);
+            }
+            throw ioe;
+        }
+        long offset = this.countOut.getCount();
+        member.writeTo(this.countOut);
+        releaseRecordBuffer(record.buffer);
+        if (record.listener != null) {
+            record.listener.appended(offset, member.size());
+        }
+    }
+
+    protected RecordBuffer getRecordBuffer(int size) {
+        RecordBuffer buffer = freeBuffers.poll();
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = new RecordBuffer(Math.max(size, scratchbuffer.length));
+        }
+        return buffer;
+    }
+
+    protected void releaseRecordBuffer(RecordBuffer buffer) {
+        if (buffer.capacity() <= MAX_FREE_BUFFER_SIZE
+                && freeBuffers.size() < compressor.getMaxPendingRecords()) {
+            buffer.reset();
+            freeBuffers.add(buffer);
+        }
     }
     
 	/**
      * Position in raw output (typically, physical file).
-     * Used making accounting of bytes written.
+     * Used making accounting of bytes written. Includes the records still
+     * compressing in parallel, at their uncompressed length.
 	 * @return Position in final media (assuming all flushing completes)
 	 */
     public long getPosition() {
-        return (countOut==null)? 0L : this.countOut.getCount();
+        return (countOut==null)? 0L : this.countOut.getCount() + pendingBytes;
     }
 
     public boolean isCompressed() {
@@ -375,6 +656,9 @@ public abstract class WriterPoolMember {
     }
     
 	protected void flush() throws IOException {
+		if (this.recordBuffer == null) {
+			appendPendingRecords(true);
+		}
 		this.out.flush();
 	}
 
@@ -425,8 +709,24 @@ public abstract class WriterPoolMember {
         if (this.out == null) {
             return;
         }
-        this.out.close();
-        this.out = null;
+        try {
+            appendPendingRecords(true);
+        } finally {
+            for (PendingRecord record : pendingRecords) {
+                if (record.listener != null) {
+                    record.listener.failed(new IOException("Writer closed"));
+                }
+            }
+            pendingRecords.clear();
+            pendingBytes = 0;
+            if (this.deflater != null) {
+                this.deflater.end();
+                this.deflater = null;
+            }
+            this.out.close();
+            this.out = null;
+            this.groupCommitOut = null;
+        }
         if (this.f != null && this.f.exists()) {
             String path = this.f.getAbsolutePath();
             if (path.endsWith(OCCUPIED_SUFFIX)) {
@@ -449,34 +749,4 @@ public abstract class WriterPoolMember {
     protected OutputStream getOutputStream() {
     	return this.out;
     }
-
-    /**
-     * An override so we get access to underlying output stream.
-     * and offer an end() that does not accompany closing underlying
-     * stream.
-     * @author stack
-     */
-    private class CompressedStream extends GZIPOutputStream {
-        public CompressedStream(OutputStream out)
-        throws IOException {
-            super(out);
-        }
-        
-        /**
-         * @return Reference to stream being compressed.
-         */
-        OutputStream getWrappedStream() {
-            return this.out;
-        }
-        
-        /**
-         * Release the deflater's native process resources,
-         * which otherwise would not occur until either
-         * finalization or DeflaterOutputStream.close() 
-         * (which would also close underlying stream). 
-         */
-        public void end() {
-            def.end();
-        }
-    }
 }
@@ -0,0 +1,27 @@
+package org.archive.io.warc;
+
+import java.io.IOException;
+
+/**
+ * Receives an entry for each record written by a {@link WARCWriter}, to
+ * build an index, like a CDX, while writing instead of reading the WARC
+ * files again. See {@link WARCWriter#setIndexSink(WARCIndexSink)}.
+ *
+ * A sink shared by the writers of a {@link WARCWriterPool} is called
+ * concurrently.
+ */
+public interface WARCIndexSink {
+
+    /**
+     * Called once the record is in the file, in the order of the records
+     * of each file.
+     *
+     * @param recordInfo the record written, with its WARC filename and offset
+     * @param scan digests and HTTP response found in the record content
+     * @param length compressed length of the record in the file, or -1 if
+     * the file is not compressed
+     * @throws IOException
+     */
+    void indexRecord(WARCRecordInfo recordInfo, WARCRecordScan scan, long length)
+    throws IOException;
+}
@@ -0,0 +1,84 @@
+package org.archive.io.warc;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.archive.format.http.HttpHeaders;
+
+/**
+ * What {@link WARCWriter} learned about the content of a record while
+ * writing it, for a {@link WARCIndexSink}: the digest of the block and, for
+ * HTTP responses, the status, headers and digest of the payload following
+ * the headers. The digests are base32 encoded SHA-1, as in the
+ * WARC-Block-Digest and WARC-Payload-Digest headers, without the "sha1:"
+ * prefix.
+ */
+public class WARCRecordScan {
+
+    private final String blockDigest;
+    private final boolean httpResponse;
+    private final int httpStatus;
+    private final HttpHeaders httpHeaders;
+    private final String payloadDigest;
+    private final List<Map<String, String>> htmlMetas;
+
+    WARCRecordScan(String blockDigest) {
+        this(blockDigest, false, -1, null, null, null);
+    }
+
+    WARCRecordScan(String blockDigest, boolean httpResponse, int httpStatus,
+            HttpHeaders httpHeaders, String payloadDigest,
+            List<Map<String, String>> htmlMetas) {
+        this.blockDigest = blockDigest;
+        this.httpResponse = httpResponse;
+        this.httpStatus = httpStatus;
+        this.httpHeaders = httpHeaders;
+        this.payloadDigest = payloadDigest;
+        this.htmlMetas = htmlMetas;
+    }
+
+    public String getBlockDigest() {
+        return blockDigest;
+    }
+
+    /**
+     * @return true if the record is an HTTP response, with a parsed status
+     * line
+     */
+    public boolean isHttpResponse() {
+        return httpResponse;
+    }
+
+    /**
+     * @return the HTTP status, or -1
+     */
+    public int getHttpStatus() {
+        return httpStatus;
+    }
+
+    /**
+     * @return the HTTP response headers, or null
+     */
+    public HttpHeaders getHttpHeaders() {
+        return httpHeaders;
+    }
+
+    /**
+     * @return the digest of the HTTP payload, or null
+     */
+    public String getPayloadDigest() {
+        return payloadDigest;
+    }
+
+    /**
+     * @return the attributes of the meta tags found at the start of an HTML
+     * payload, see {@link org.archive.resource.html.HTMLMetaTagScanner}
+     */
+    public List<Map<String, String>> getHtmlMetas() {
+        if (htmlMetas == null) {
+            return Collections.emptyList();
+        }
+        return htmlMetas;
+    }
+}
@@ -0,0 +1,170 @@
+package org.archive.io.warc;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.archive.format.http.HttpParseException;
+import org.archive.format.http.HttpResponse;
+import org.archive.format.http.HttpResponseParser;
+import org.archive.resource.html.HTMLMetaTagScanner;
+import org.archive.util.Base32;
+
+/**
+ * Looks at the content of a record while {@link WARCWriter} copies it, to
+ * index the record without reading it again: digests the block and, for
+ * HTTP responses, keeps the start of the content until the headers can be
+ * parsed, then digests the payload. The start of HTML payloads is scanned
+ * for meta tags.
+ *
+ * One instance is reused for the records of a writer.
+ */
+class WARCRecordScanner {
+
+    /** Longest HTTP status line and headers parsed, as HttpResponseMessageParser */
+    static final int MAX_HTTP_HEADER_BYTES = 128 * 1024;
+
+    /** Payload bytes scanned for meta tags, as RealCDXExtractorOutput.DEFAULT_HTML_SCAN_LIMIT */
+    static final int HTML_SCAN_LIMIT = 64 * 1024;
+
+    private final MessageDigest blockDigest;
+    private final MessageDigest payloadDigest;
+
+    private final byte[] prefix = new byte[MAX_HTTP_HEADER_BYTES + HTML_SCAN_LIMIT];
+    private int prefixLength;
+
+    private boolean http;
+    private boolean parsed;
+    private HttpResponse response;
+    private long remaining;
+
+    WARCRecordScanner() {
+        try {
+            blockDigest = MessageDigest.getInstance("sha1");
+            payloadDigest = MessageDigest.getInstance("sha1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Start scanning a record.
+     *
+     * @param in the record content
+     * @param length length of the record content, bytes read beyond it are
+     * not scanned
+     * @param httpResponse if the record is an HTTP response
+     * @return the stream to copy the content from
+     */
+    InputStream scan(InputStream in, long length, boolean httpResponse) {
+        blockDigest.reset();
+        payloadDigest.reset();
+        prefixLength = 0;
+        http = httpResponse;
+        parsed = false;
+        response = null;
+        remaining = length;
+
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b != -1) {
+                    update(new byte[] {(byte) b}, 0, 1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = in.read(b, off, len);
+                if (n > 0) {
+                    update(b, off, n);
+                }
+                return n;
+            }
+        };
+    }
+
+    private void update(byte[] b, int off, int n) {
+        int len = (int) Math.min(n, remaining);
+        if (len <= 0) {
+            return;
+        }
+        remaining -= len;
+        blockDigest.update(b, off, len);
+
+        if (!http) {
+            return;
+        }
+        if (!parsed) {
+            int copy = Math.min(len, prefix.length - prefixLength);
+            System.arraycopy(b, off, prefix, prefixLength, copy);
+            prefixLength += copy;
+            off += copy;
+            len -= copy;
+            if (prefixLength < prefix.length) {
+                return;
+            }
+            parsePrefix();
+        }
+        payloadDigest.update(b, off, len);
+    }
+
+    private void parsePrefix() {
+        parsed = true;
+        try {
+            response = new HttpResponseParser().parse(
+                    new ByteArrayInputStream(prefix, 0, prefixLength));
+        } catch (HttpParseException e) {
+            response = null;
+        } catch (IOException e) {
+            response = null;
+        }
+        if (response != null) {
+            int headerBytes = Math.min(response.getHeaderBytes(), prefixLength);
+            payloadDigest.update(prefix, headerBytes, prefixLength - headerBytes);
+        }
+    }
+
+    /**
+     * @return what was learned about the record scanned since the last call
+     * to {@link #scan(InputStream, long, boolean)}
+     */
+    WARCRecordScan finish() {
+        String block = Base32.encode(blockDigest.digest());
+        if (!http) {
+            return new WARCRecordScan(block);
+        }
+        if (!parsed) {
+            parsePrefix();
+        }
+        if (response == null) {
+            return new WARCRecordScan(block);
+        }
+
+        List<Map<String, String>> metas = null;
+        String contentType = response.getHeaders().getValueCaseInsensitive("content-type");
+        if (contentType != null) {
+            int semi = contentType.indexOf(';');
+            if (semi > 0) {
+                contentType = contentType.substring(0, semi);
+            }
+            if (contentType.toLowerCase(Locale.ROOT).contains("html")) {
+                int start = Math.min(response.getHeaderBytes(), prefixLength);
+                int end = (int) Math.min(prefixLength, (long) start + HTML_SCAN_LIMIT);
+                metas = HTMLMetaTagScanner.scan(Arrays.copyOfRange(prefix, start, end), end - start);
+            }
+        }
+
+        return new WARCRecordScan(block, true, response.getMessage().getStatus(),
+                response.getHeaders(), Base32.encode(payloadDigest.digest()), metas);
+    }
+}
@@ -23,6 +23,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.HashMap;
@@ -31,6 +32,7 @@ import java.util.LinkedList;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
@@ -40,8 +42,12 @@ import org.apache.commons.lang3.StringUtils;
 import org.archive.format.ArchiveFileConstants;
 import org.archive.io.WriterPoolMember;
 import org.archive.util.ArchiveUtils;
+import org.archive.util.io.RuntimeIOException;
 import org.archive.util.anvl.Element;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+
 import static org.archive.format.warc.WARCConstants.*;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -92,6 +98,12 @@ public class WARCWriter extends WriterPoolMember {
     /** Temporarily accumulates info on written warc records for use externally. */
     private LinkedList<WARCRecordInfo> tmpRecordLog = new LinkedList<WARCRecordInfo>();
     
+    /** Receives an index entry for each record written, if set. */
+    protected WARCIndexSink indexSink = null;
+    
+    /** Digests and parses record content for the index sink. */
+    private WARCRecordScanner scanner = null;
+    
     /**
      * Constructor.
      * Takes a stream. Use with caution. There is no upperbound check on size.
@@ -122,6 +134,21 @@ public class WARCWriter extends WriterPoolMember {
         return filename;
     }
     
+    /**
+     * Index records while writing them: the content of each record is
+     * digested, and parsed if an HTTP response, as it is copied, and sink
+     * is called with the results once the record is in the file.
+     *
+     * @param sink index sink, or null
+     */
+    public void setIndexSink(WARCIndexSink sink) {
+        this.indexSink = sink;
+    }
+
+    public WARCIndexSink getIndexSink() {
+        return indexSink;
+    }
+
     protected void baseCharacterCheck(final char c, final String parameter)
     throws IllegalArgumentException {
         // TODO: Too strict?  UNICODE control characters?
@@ -206,6 +233,20 @@ public class WARCWriter extends WriterPoolMember {
     }
 
     public void writeRecord(WARCRecordInfo recordInfo)
+    throws IOException {
+        writeRecordAsync(recordInfo);
+    }
+
+    /**
+     * Write a record, without waiting for it to be in the file if the file
+     * is written by an I/O thread (see {@link #setAsyncOutput(int, boolean)})
+     * or the record compressed in parallel.
+     *
+     * @return completed with the offset of the record once it is in the
+     * file, and forced to disk if so configured
+     * @throws IOException
+     */
+    public Future<Long> writeRecordAsync(WARCRecordInfo recordInfo)
     throws IOException {
 
         if (recordInfo.getContentLength() == 0 &&
@@ -221,45 +262,106 @@ public class WARCWriter extends WriterPoolMember {
         } catch (IllegalArgumentException e) {
             logger.log(Level.SEVERE,"could not write record type: " + recordInfo.getType() 
                     + "for URL: " + recordInfo.getUrl(), e);
-            return;
+            return Futures.immediateFailedFuture(e);
         }
 
-        long contentBytes = 0;
-        long totalBytes = 0;
-        long startPosition;
+        // TODO: Revisit encoding of header.
+        byte[] bytes = header.getBytes(WARC_HEADER_ENCODING);
+        long contentLength = (recordInfo.getContentStream() != null)
+                ? Math.max(recordInfo.getContentLength(), 0) : 0;
 
-        startPosition = getPosition();
+        RecordAppended appended = new RecordAppended(recordInfo);
         try {
-            preWriteRecordTasks();
+            preWriteRecordTasks(bytes.length + contentLength + (3 * CRLF_BYTES.length));
 
-            // TODO: Revisit encoding of header.
-            byte[] bytes = header.getBytes(WARC_HEADER_ENCODING);
             write(bytes);
-            totalBytes += bytes.length;
+            appended.totalBytes += bytes.length;
 
             // Write out the header/body separator.
             write(CRLF_BYTES);
-            totalBytes += CRLF_BYTES.length;
+            appended.totalBytes += CRLF_BYTES.length;
+
+            InputStream content = recordInfo.getContentStream();
+            if (indexSink != null) {
+                if (scanner == null) {
+                    scanner = new WARCRecordScanner();
+                }
+                content = scanner.scan(content, contentLength, isHttpResponse(recordInfo));
+            }
 
-            if (recordInfo.getContentStream() != null && recordInfo.getContentLength() > 0) {
-                contentBytes += copyFrom(recordInfo.getContentStream(),
+            if (contentLength > 0) {
+                appended.contentBytes += copyFrom(content,
                         recordInfo.getContentLength(),
                         recordInfo.getEnforceLength());
-                totalBytes += contentBytes;
+                appended.totalBytes += appended.contentBytes;
             }
 
             // Write out the two blank lines at end of all records.
             write(CRLF_BYTES);
             write(CRLF_BYTES);
-            totalBytes += 2 * CRLF_BYTES.length;
+            appended.totalBytes += 2 * CRLF_BYTES.length;
             
             recordInfo.setWARCFilename(getFilenameWithoutOccupiedSuffix());
-            recordInfo.setWARCFileOffset(startPosition);
-            tmpRecordLog.add(recordInfo);
+            if (indexSink != null) {
+                appended.scan = scanner.finish();
+            }
+            appended.complete = true;
         } finally {
-            postWriteRecordTasks();
-            tally(recordInfo.getType(), contentBytes, totalBytes, getPosition() - startPosition);
+            postWriteRecordTasks(appended);
         }
+        return appended.committed;
+    }
+
+    /**
+     * Logs and tallies a record once it is in the file, at its final offset:
+     * records compressed in parallel are appended after writeRecord()
+     * returns.
+     */
+    private class RecordAppended implements RecordAppendListener {
+        final WARCRecordInfo recordInfo;
+        long contentBytes = 0;
+        long totalBytes = 0;
+        boolean complete = false;
+        WARCRecordScan scan = null;
+        final SettableFuture<Long> committed = SettableFuture.create();
+
+        RecordAppended(WARCRecordInfo recordInfo) {
+            this.recordInfo = recordInfo;
+        }
+
+        @Override
+        public void appended(long offset, long sizeOnDisk) throws IOException {
+            if (complete) {
+                recordInfo.setWARCFileOffset(offset);
+                tmpRecordLog.add(recordInfo);
+            }
+            tally(recordInfo.getType(), contentBytes, totalBytes, sizeOnDisk);
+            if (complete && (scan != null)) {
+                indexSink.indexRecord(recordInfo, scan,
+                        isCompressed() ? sizeOnDisk : -1);
+            }
+            if (complete) {
+                try {
+                    committed.setFuture(commitRecord(offset));
+                } catch (IOException e) {
+                    committed.setException(e);
+                    throw e;
+                }
+            } else {
+                committed.setException(new IOException("Record incomplete"));
+            }
+        }
+
+        @Override
+        public void failed(IOException e) {
+            committed.setException(e);
+        }
+    }
+
+    protected static boolean isHttpResponse(WARCRecordInfo recordInfo) {
+        return recordInfo.getType() == WARCRecordType.response
+                && (HTTP_RESPONSE_MIMETYPE.equals(recordInfo.getMimetype())
+                        || HTTP_RESPONSE_MIMETYPE_NS.equals(recordInfo.getMimetype()));
     }
 
     public String getFilenameWithoutOccupiedSuffix() {
@@ -393,7 +495,11 @@ public class WARCWriter extends WriterPoolMember {
         }
     }
 
+    /**
+     * Waits for the records still compressing in parallel, if any.
+     */
     public Map<String, Map<String, Long>> getTmpStats() {
+        appendPendingRecordsForLog();
         return tmpStats;
     }
 
@@ -422,7 +528,23 @@ public class WARCWriter extends WriterPoolMember {
         tmpRecordLog.clear();
     }
 
+    /**
+     * Waits for the records still compressing in parallel, if any, so their
+     * offsets are set.
+     */
     public Iterable<WARCRecordInfo> getTmpRecordLog() {
+        appendPendingRecordsForLog();
         return tmpRecordLog;
     }
+
+    private void appendPendingRecordsForLog() {
+        if (pendingRecords.isEmpty()) {
+            return;
+        }
+        try {
+            appendPendingRecords(true);
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+    }
 }
@@ -31,6 +31,9 @@ import org.archive.io.WriterPoolMember;
  * @version $Revision: 4566 $ $Date: 2006-08-31 09:51:41 -0700 (Thu, 31 Aug 2006) $
  */
 public class WARCWriterPool extends WriterPool {
+    /** Index sink shared by the writers, if any */
+    protected WARCIndexSink indexSink = null;
+
     /**
      * Constructor
      * @param settings Settings for this pool.
@@ -59,6 +62,23 @@ public class WARCWriterPool extends WriterPool {
      * @see org.archive.io.WriterPool#makeWriter()
      */
     protected WriterPoolMember makeWriter() {
-        return new WARCWriter(serialNo, (WARCWriterPoolSettings)settings);
+        WARCWriter writer = new WARCWriter(serialNo, (WARCWriterPoolSettings)settings);
+        writer.setIndexSink(indexSink);
+        return writer;
+    }
+
+    /**
+     * Index the records of the writers created from now on, see
+     * {@link WARCWriter#setIndexSink(WARCIndexSink)}. The sink is shared
+     * by the writers.
+     *
+     * @param sink index sink, or null
+     */
+    public void setIndexSink(WARCIndexSink sink) {
+        this.indexSink = sink;
+    }
+
+    public WARCIndexSink getIndexSink() {
+        return indexSink;
     }
 }
@@ -1,10 +1,17 @@
 package org.archive.resource;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
 
+import org.archive.format.json.UTF8JSONWriter;
+
 import com.github.openjson.JSONArray;
 import com.github.openjson.JSONException;
 import com.github.openjson.JSONObject;
+import com.github.openjson.JSONStringer;
 import com.github.openjson.JSONTokener;
 
 /**
@@ -15,13 +22,31 @@ import com.github.openjson.JSONTokener;
  * MetaData is multi-valued: if a second value is added under the same "key"
  * ("name"), both values are stored in a {@linkplain JSONArray} as value. This
  * allows to hold all values of repeating WARC or HTTP headers.
+ * 
+ * Fields of the record kept typed in its {@link RecordMetaData} are put only
+ * when first read as JSON, at the position they were deferred from: until
+ * then the JSON tree of WARC and HTTP headers is not built, and it is not
+ * built at all when writing the MetaData with a {@link UTF8JSONWriter}.
  */
-public class MetaData extends JSONObject {
+public class MetaData extends JSONObject implements UTF8JSONWriter.Writable {
 
 	private static final Logger LOG = 
 		Logger.getLogger(MetaData.class.getName());
 
+	/**
+	 * Fields put into a MetaData from typed values, when read
+	 */
+	interface DeferredFields {
+		boolean hasField(String key);
+		void putFields(MetaData metaData);
+		void writeFields(UTF8JSONWriter writer) throws JSONException;
+	}
+
 	private MetaData topMetaData;
+	private RecordMetaData recordMetaData;
+	/** deferred fields, with the number of members preceding them */
+	private List<DeferredFields> deferred = null;
+	private List<Integer> deferredPositions = null;
 
 	public MetaData(MetaData parentMetaData, String name) {
 		if(parentMetaData == null) {
@@ -48,6 +73,7 @@ public class MetaData extends JSONObject {
 
 	@Override
 	public Object get(String key) {
+		materialize(key);
 		try {
 			return super.get(key);
 		} catch(JSONException e) {
@@ -135,28 +161,216 @@ public class MetaData extends JSONObject {
 		this.topMetaData = topMetaData;
 	}
 
+	/**
+	 * @return typed metadata of the record, held by the top MetaData and
+	 * created on first call
+	 */
+	public RecordMetaData getRecordMetaData() {
+		MetaData top = getTopMetaData();
+		if(top.recordMetaData == null) {
+			top.recordMetaData = new RecordMetaData();
+		}
+		return top.recordMetaData;
+	}
+
+	/**
+	 * Put fields when first read, after the members present now.
+	 */
+	void defer(DeferredFields fields) {
+		if(deferred == null) {
+			deferred = new ArrayList<DeferredFields>(2);
+			deferredPositions = new ArrayList<Integer>(2);
+		}
+		deferred.add(fields);
+		deferredPositions.add(super.length());
+	}
+
+	/**
+	 * Put the deferred fields, if any, in their position among the members.
+	 */
+	private void materialize() {
+		if(deferred == null) {
+			return;
+		}
+		List<DeferredFields> fields = deferred;
+		List<Integer> positions = deferredPositions;
+		deferred = null;
+		deferredPositions = null;
+
+		int length = super.length();
+		if(positions.get(0) >= length) {
+			// nothing put after them
+			for(DeferredFields f : fields) {
+				f.putFields(this);
+			}
+			return;
+		}
+		List<String> keys = new ArrayList<String>(super.keySet());
+		List<Object> values = new ArrayList<Object>(length);
+		for(String key : keys) {
+			values.add(super.remove(key));
+		}
+		int next = 0;
+		for(int i = 0; i <= length; i++) {
+			while(next < fields.size() && positions.get(next) <= i) {
+				fields.get(next++).putFields(this);
+			}
+			if(i < length) {
+				try {
+					super.put(keys.get(i), values.get(i));
+				} catch(JSONException e) {
+					LOG.severe(e.getMessage());
+				}
+			}
+		}
+	}
+
+	private void materialize(String key) {
+		if(deferred != null) {
+			for(DeferredFields f : deferred) {
+				if(f.hasField(key)) {
+					materialize();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the members, the deferred fields from their typed values.
+	 */
+	@Override
+	public void writeJSON(UTF8JSONWriter writer) throws JSONException {
+		if(deferred == null) {
+			writer.writeObject(this);
+			return;
+		}
+		writer.startObject();
+		int next = 0;
+		int i = 0;
+		Iterator<String> keys = super.keys();
+		while(true) {
+			while(next < deferred.size() && deferredPositions.get(next) <= i) {
+				deferred.get(next++).writeFields(writer);
+			}
+			if(!keys.hasNext()) {
+				break;
+			}
+			String key = keys.next();
+			writer.member(key, super.opt(key));
+			i++;
+		}
+		writer.endObject();
+	}
+
+	@Override
+	protected void encode(JSONStringer stringer) throws JSONException {
+		materialize();
+		super.encode(stringer);
+	}
+
+	@Override
+	public int length() {
+		materialize();
+		return super.length();
+	}
+
+	@Override
+	public Iterator<String> keys() {
+		materialize();
+		return super.keys();
+	}
+
+	@Override
+	public Set<String> keySet() {
+		materialize();
+		return super.keySet();
+	}
+
+	@Override
+	public JSONArray names() {
+		materialize();
+		return super.names();
+	}
+
+	@Override
+	public boolean has(String key) {
+		materialize(key);
+		return super.has(key);
+	}
+
+	@Override
+	public boolean isNull(String key) {
+		materialize(key);
+		return super.isNull(key);
+	}
+
+	@Override
+	public Object opt(String key) {
+		materialize(key);
+		return super.opt(key);
+	}
+
+	@Override
+	public Object remove(String key) {
+		materialize(key);
+		if(deferred != null && super.has(key)) {
+			// deferred fields after the member move up with the rest
+			int index = 0;
+			for(String k : super.keySet()) {
+				if(k.equals(key)) {
+					break;
+				}
+				index++;
+			}
+			for(int i = 0; i < deferredPositions.size(); i++) {
+				if(index < deferredPositions.get(i)) {
+					deferredPositions.set(i, deferredPositions.get(i) - 1);
+				}
+			}
+		}
+		return super.remove(key);
+	}
+
+	@Override
+	public JSONObject accumulate(String key, Object value) throws JSONException {
+		materialize(key);
+		return super.accumulate(key, value);
+	}
+
+	@Override
+	public JSONObject append(String key, Object value) throws JSONException {
+		materialize(key);
+		return super.append(key, value);
+	}
+
 	@Override
 	public JSONObject put(String name, boolean value) throws JSONException {
+		materialize(name);
 		return super.accumulate(name, value);
 	}
 
 	@Override
 	public JSONObject put(String name, double value) throws JSONException {
+		materialize(name);
 		return super.accumulate(name, value);
 	}
 
 	@Override
 	public JSONObject put(String name, int value) throws JSONException {
+		materialize(name);
 		return super.accumulate(name, value);
 	}
 
 	@Override
 	public JSONObject put(String name, long value) throws JSONException {
+		materialize(name);
 		return super.accumulate(name, value);
 	}
 
 	@Override
 	public JSONObject put(String key, Object value) {
+		materialize(key);
 		if (has(key)) {
 			return super.accumulate(key, value);
 		}
@@ -164,6 +378,7 @@ public class MetaData extends JSONObject {
 	}
 
 	public JSONObject putString(String key, String val) {
+		materialize(key);
 		try {
 			return super.accumulate(key,val);
 		} catch(JSONException e) {
@@ -173,6 +388,7 @@ public class MetaData extends JSONObject {
 	}
 
 	public JSONObject putLong(String key, long val) {
+		materialize(key);
 		try {
 			return super.accumulate(key,String.valueOf(val));
 		} catch(JSONException e) {
@@ -182,6 +398,7 @@ public class MetaData extends JSONObject {
 	}
 
 	public JSONObject putBoolean(String key, boolean val) {
+		materialize(key);
 		try {
 			return super.accumulate(key,val);
 		} catch(JSONException e) {
@@ -191,6 +408,7 @@ public class MetaData extends JSONObject {
 	}
 
 	public JSONObject putChild(String key, JSONObject child) {
+		materialize(key);
 		try {
 			return super.put(key,child);
 		} catch(JSONException e) {
@@ -0,0 +1,281 @@
+package org.archive.resource;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.archive.format.http.HttpHeader;
+import org.archive.format.http.HttpHeaders;
+import org.archive.format.http.HttpResponse;
+import org.archive.format.http.HttpResponseMessage;
+import org.archive.format.json.UTF8JSONWriter;
+
+import com.github.openjson.JSONArray;
+import com.github.openjson.JSONException;
+
+/**
+ * Typed metadata of a record: the WARC envelope and HTTP response fields,
+ * with the WARC and HTTP headers kept as parsed, in order.
+ *
+ * These fields are also in the {@link MetaData} tree of the record, in the
+ * same shape and order as if put directly, but only put when the tree is
+ * read as JSON. Outputs which read the fields here, and write the tree with
+ * a {@link UTF8JSONWriter}, never build the JSON objects of the headers.
+ */
+public class RecordMetaData implements ResourceConstants {
+
+	private WARCFields warc = null;
+	private HTTPResponseFields httpResponse = null;
+
+	/**
+	 * Set the fields of a WARC record, deferred in its envelope MetaData.
+	 */
+	public void setWARC(MetaData envelope, String format, HttpResponse response) {
+		warc = new WARCFields(format, response.getHeaderBytes(),
+				response.getHeaders());
+		envelope.defer(warc);
+	}
+
+	/**
+	 * Set the fields of a HTTP response, deferred in its MetaData.
+	 */
+	public void setHTTPResponse(MetaData metaData, HttpResponse response) {
+		httpResponse = new HTTPResponseFields(response.getMessage(),
+				response.getHeaderBytes(), response.getHeaders());
+		metaData.defer(httpResponse);
+	}
+
+	public boolean hasWARC() {
+		return warc != null;
+	}
+
+	public boolean hasHTTPResponse() {
+		return httpResponse != null;
+	}
+
+	/**
+	 * @return Envelope Format, or null if not a WARC record
+	 */
+	public String getEnvelopeFormat() {
+		return warc == null ? null : warc.format;
+	}
+
+	public long getWARCHeaderLength() {
+		return warc == null ? -1 : warc.headerLength;
+	}
+
+	/**
+	 * @return the WARC headers, or null if not a WARC record
+	 */
+	public HttpHeaders getWARCHeaders() {
+		return warc == null ? null : warc.headers;
+	}
+
+	/**
+	 * @return value of the WARC header as in the JSON, see
+	 * {@link #getValue(HttpHeaders, String)}
+	 */
+	public String getWARCHeader(String name) {
+		return warc == null ? null : getValue(warc.headers, name);
+	}
+
+	/**
+	 * @return the HTTP status, or -1 if there is no HTTP response
+	 */
+	public int getHTTPStatus() {
+		return httpResponse == null ? -1 : httpResponse.message.getStatus();
+	}
+
+	public HttpResponseMessage getHTTPResponseMessage() {
+		return httpResponse == null ? null : httpResponse.message;
+	}
+
+	public long getHTTPHeadersLength() {
+		return httpResponse == null ? -1 : httpResponse.headersLength;
+	}
+
+	/**
+	 * @return the HTTP response headers, or null if there is no HTTP response
+	 */
+	public HttpHeaders getHTTPHeaders() {
+		return httpResponse == null ? null : httpResponse.headers;
+	}
+
+	/**
+	 * @return value of the HTTP response header as in the JSON, see
+	 * {@link #getValue(HttpHeaders, String)}
+	 */
+	public String getHTTPHeader(String name) {
+		return httpResponse == null ? null : getValue(httpResponse.headers, name);
+	}
+
+	/**
+	 * @return the value of a header as a String of the JSON value: the
+	 * value, or the JSON array of the values of a repeated header, or null
+	 */
+	public static String getValue(HttpHeaders headers, String name) {
+		String value = null;
+		JSONArray values = null;
+		for(HttpHeader h : headers) {
+			if(h.getName().equals(name)) {
+				if(value == null) {
+					value = h.getValue();
+				} else {
+					if(values == null) {
+						values = new JSONArray();
+						values.put(value);
+					}
+					values.put(h.getValue());
+				}
+			}
+		}
+		return values == null ? value : values.toString();
+	}
+
+	/**
+	 * @return as {@link #getValue(HttpHeaders, String)}, of the first header
+	 * matching the name case-insensitively
+	 */
+	public static String getValueIgnoreCase(HttpHeaders headers, String name) {
+		String lc = name.toLowerCase(Locale.ROOT);
+		for(HttpHeader h : headers) {
+			if(h.getName().toLowerCase(Locale.ROOT).equals(lc)) {
+				return getValue(headers, h.getName());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Write headers as a JSON object, as the MetaData with each header put:
+	 * in the order of the first header of each name, the values of repeated
+	 * headers in an array.
+	 */
+	private static void writeHeaders(UTF8JSONWriter writer, HttpHeaders headers)
+			throws JSONException {
+		writer.startObject();
+		Set<String> repeated = null;
+		int size = headers.size();
+		for(int i = 0; i < size; i++) {
+			HttpHeader h = headers.get(i);
+			String name = h.getName();
+			if(repeated != null && repeated.contains(name)) {
+				// written with the first header of the name
+				continue;
+			}
+			JSONArray values = null;
+			for(int j = i + 1; j < size; j++) {
+				HttpHeader later = headers.get(j);
+				if(later.getName().equals(name)) {
+					if(values == null) {
+						values = new JSONArray();
+						values.put(h.getValue());
+					}
+					values.put(later.getValue());
+				}
+			}
+			if(values == null) {
+				writer.member(name, h.getValue());
+			} else {
+				if(repeated == null) {
+					repeated = new HashSet<String>();
+				}
+				repeated.add(name);
+				writer.member(name, values);
+			}
+		}
+		writer.endObject();
+	}
+
+	private static void putHeaders(MetaData metaData, HttpHeaders headers) {
+		for(HttpHeader h : headers) {
+			metaData.putString(h.getName(), h.getValue());
+		}
+	}
+
+	private static class WARCFields implements MetaData.DeferredFields {
+		final String format;
+		final long headerLength;
+		final HttpHeaders headers;
+
+		WARCFields(String format, long headerLength, HttpHeaders headers) {
+			this.format = format;
+			this.headerLength = headerLength;
+			this.headers = headers;
+		}
+
+		@Override
+		public boolean hasField(String key) {
+			return key.equals(ENVELOPE_FORMAT)
+					|| key.equals(WARC_HEADER_LENGTH)
+					|| key.equals(WARC_HEADER_METADATA);
+		}
+
+		@Override
+		public void putFields(MetaData metaData) {
+			metaData.putString(ENVELOPE_FORMAT, format);
+			metaData.putLong(WARC_HEADER_LENGTH, headerLength);
+			putHeaders(metaData.createChild(WARC_HEADER_METADATA), headers);
+		}
+
+		@Override
+		public void writeFields(UTF8JSONWriter writer) throws JSONException {
+			writer.member(ENVELOPE_FORMAT, format);
+			writer.member(WARC_HEADER_LENGTH, String.valueOf(headerLength));
+			writer.key(WARC_HEADER_METADATA);
+			writeHeaders(writer, headers);
+		}
+	}
+
+	private static class HTTPResponseFields implements MetaData.DeferredFields {
+		final HttpResponseMessage message;
+		final long headersLength;
+		final HttpHeaders headers;
+
+		HTTPResponseFields(HttpResponseMessage message, long headersLength,
+				HttpHeaders headers) {
+			this.message = message;
+			this.headersLength = headersLength;
+			this.headers = headers;
+		}
+
+		@Override
+		public boolean hasField(String key) {
+			return key.equals(HTTP_RESPONSE_MESSAGE)
+					|| key.equals(HTTP_HEADERS_LENGTH)
+					|| key.equals(HTTP_HEADERS_CORRUPT)
+					|| key.equals(HTTP_HEADERS_LIST);
+		}
+
+		@Override
+		public void putFields(MetaData metaData) {
+			MetaData m = metaData.createChild(HTTP_RESPONSE_MESSAGE);
+			m.putLong(HTTP_MESSAGE_STATUS, message.getStatus());
+			m.putString(HTTP_MESSAGE_VERSION, message.getVersionString());
+			m.putString(HTTP_MESSAGE_REASON, message.getReason());
+
+			metaData.putLong(HTTP_HEADERS_LENGTH, headersLength);
+			if(headers.isCorrupt()) {
+				metaData.putBoolean(HTTP_HEADERS_CORRUPT, true);
+			}
+			putHeaders(metaData.createChild(HTTP_HEADERS_LIST), headers);
+		}
+
+		@Override
+		public void writeFields(UTF8JSONWriter writer) throws JSONException {
+			writer.key(HTTP_RESPONSE_MESSAGE);
+			writer.startObject();
+			writer.member(HTTP_MESSAGE_STATUS, String.valueOf(message.getStatus()));
+			writer.member(HTTP_MESSAGE_VERSION, message.getVersionString());
+			writer.member(HTTP_MESSAGE_REASON, message.getReason());
+			writer.endObject();
+
+			writer.member(HTTP_HEADERS_LENGTH, String.valueOf(headersLength));
+			if(headers.isCorrupt()) {
+				writer.member(HTTP_HEADERS_CORRUPT, Boolean.TRUE);
+			}
+			writer.key(HTTP_HEADERS_LIST);
+			writeHeaders(writer, headers);
+		}
+	}
+}
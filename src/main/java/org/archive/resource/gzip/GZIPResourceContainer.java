@@ -36,7 +36,8 @@ public class GZIPResourceContainer implements ResourceContainer, ResourceProduce
 	public Resource getNext() throws ResourceParseException, IOException {
 		if(series.gotEOF()) return null;
 		if(endOffset != UNLIMITED) {
-			if(series.getOffset() > endOffset) {
+			// members starting at or after endOffset belong to the next region
+			if(series.getOffset() >= endOffset) {
 //				System.err.format("At end of region off(%d) - startoff(%d) end(%d)\n",
 //						series.getOffset(), 
 //						series.getCurrentMemberStartOffset(), endOffset);
@@ -47,6 +48,9 @@ public class GZIPResourceContainer implements ResourceContainer, ResourceProduce
 		if(member == null) {
 			return null;
 		}
+		if((endOffset != UNLIMITED) && (member.getRecordStartOffset() >= endOffset)) {
+			return null;
+		}
 		MetaData top = new MetaData();
 		return new GZIPResource(top,this,member);
 	}
@@ -24,6 +24,8 @@ public class ExtractingParseObserver implements ParseObserver {
 	Stack<ArrayList<String>> openAnchors;
 	Stack<StringBuilder> openAnchorTexts;
 	StringBuilder textExtract;
+	/** decoded text of the current text node, reused */
+	private final StringBuilder textBuffer = new StringBuilder(1024);
 	String title = null;
 	boolean inHead = false;
 	boolean inTitle = false;
@@ -137,7 +139,7 @@ public class ExtractingParseObserver implements ParseObserver {
 	public void handleDocumentComplete() {
 		if (textExtract.length() > 0) {
 			data.setTextExtract(textExtract.toString());
-			textExtract = new StringBuilder(8192);
+			textExtract.setLength(0);
 		}
 	}
 
@@ -247,80 +249,23 @@ public class ExtractingParseObserver implements ParseObserver {
 
 	@Override
 	public void handleTextNode(TextNode text) {
-		String txt = text.getText();
-		StringBuilder t = new StringBuilder(8192);
-		txt = decodeCharEnt(txt, false);
+		textBuffer.setLength(0);
+		decodeCharEnt(text.getText(), textBuffer);
+
+		// the text of the node is appended to textExtract from start
+		int start = textExtract.length();
 		if (inPre) {
-			t.append(txt);
+			textExtract.append(textBuffer);
 		} else {
-			char c = ' ';
-			boolean cIsWhiteSpace = true;
-			if (textExtract.length() > 0) {
-				c = textExtract.charAt(textExtract.length() - 1);
-				cIsWhiteSpace = Character.isWhitespace(c);
-			}
-			for (int i = 0; i < txt.length(); i++) {
-				char c2 = txt.charAt(i);
-				switch (c2) {
-				/*
-				 * normalize ASCII control characters, line breaks and some
-				 * Unicode white space for cleaner text and paragraphs
-				 */
-				case '\000':
-				case '\001':
-				case '\002':
-				case '\003':
-				case '\004':
-				case '\005':
-				case '\006':
-				case '\007':
-				case '\010':
-				case '\011':
-				case '\012': // = '\n'
-				case '\013':
-				case '\014':
-				case '\015': // = '\r'
-				case '\016':
-				case '\017':
-				case '\020':
-				case '\021':
-				case '\022':
-				case '\023':
-				case '\024':
-				case '\025':
-				case '\026':
-				case '\027':
-				case '\030':
-				case '\031':
-				case '\032':
-				case '\033':
-				case '\034':
-				case '\035':
-				case '\036':
-				case '\037':
-				case '\177':
-				case '\u00a0': // non-breaking space
-					c2 = ' ';
-				}
-				boolean c2IsWhiteSpace = Character.isWhitespace(c2);
-				if (!cIsWhiteSpace || !c2IsWhiteSpace) {
-					t.append(c2);
-				}
-				c = c2;
-				cIsWhiteSpace = c2IsWhiteSpace;
-			}
+			appendNormalizedWhiteSpace(textBuffer, textExtract);
 		}
 
-		textExtract.append(t);
-
 		if (inTitle || !openAnchorTexts.isEmpty()) {
 
-			if (t.length() > MAX_TEXT_LEN) {
-				t.setLength(MAX_TEXT_LEN);
-			}
+			int end = Math.min(textExtract.length(), start + MAX_TEXT_LEN);
 
 			if (inTitle) {
-				title = t.toString().trim();
+				title = textExtract.substring(start, end).trim();
 
 			} else {
 
@@ -329,22 +274,83 @@ public class ExtractingParseObserver implements ParseObserver {
 						// if we are full, parents enclosing us should be too..
 						break;
 					}
-					String tClipped;
-					if ((s.length() + t.length()) < MAX_TEXT_LEN) {
-						tClipped = t.toString();
-					} else {
-						// only add as much as we can:
-						tClipped = t.substring(0, MAX_TEXT_LEN - s.length());
-					}
-					if (!tClipped.isEmpty() && (s.length() == 0 || s.charAt(s.length() - 1) == ' ') && tClipped.charAt(0) == ' ') {
-						tClipped = tClipped.substring(1);
+					// only add as much as we can:
+					int clipped = Math.min(end, start + MAX_TEXT_LEN - s.length());
+					int from = start;
+					if (from < clipped && (s.length() == 0 || s.charAt(s.length() - 1) == ' ')
+							&& textExtract.charAt(from) == ' ') {
+						from++;
 					}
-					s.append(tClipped);
+					s.append(textExtract, from, clipped);
 				}
 			}
 		}
 	}
 
+	/**
+	 * Append text, collapsing white space, also with white space at the end
+	 * of sb, and normalizing ASCII control characters and non-breaking
+	 * spaces to spaces.
+	 */
+	private static void appendNormalizedWhiteSpace(CharSequence txt, StringBuilder sb) {
+		char c = ' ';
+		boolean cIsWhiteSpace = true;
+		if (sb.length() > 0) {
+			c = sb.charAt(sb.length() - 1);
+			cIsWhiteSpace = Character.isWhitespace(c);
+		}
+		for (int i = 0; i < txt.length(); i++) {
+			char c2 = txt.charAt(i);
+			switch (c2) {
+			/*
+			 * normalize ASCII control characters, line breaks and some
+			 * Unicode white space for cleaner text and paragraphs
+			 */
+			case '\000':
+			case '\001':
+			case '\002':
+			case '\003':
+			case '\004':
+			case '\005':
+			case '\006':
+			case '\007':
+			case '\010':
+			case '\011':
+			case '\012': // = '\n'
+			case '\013':
+			case '\014':
+			case '\015': // = '\r'
+			case '\016':
+			case '\017':
+			case '\020':
+			case '\021':
+			case '\022':
+			case '\023':
+			case '\024':
+			case '\025':
+			case '\026':
+			case '\027':
+			case '\030':
+			case '\031':
+			case '\032':
+			case '\033':
+			case '\034':
+			case '\035':
+			case '\036':
+			case '\037':
+			case '\177':
+			case '\u00a0': // non-breaking space
+				c2 = ' ';
+			}
+			boolean c2IsWhiteSpace = Character.isWhitespace(c2);
+			if (!cIsWhiteSpace || !c2IsWhiteSpace) {
+				sb.append(c2);
+			}
+			c = c2;
+			cIsWhiteSpace = c2IsWhiteSpace;
+		}
+	}
+
 	@Override
 	public void handleScriptNode(TextNode text) {
 		// TODO: Find (semi) obvious URLs in JS:
@@ -777,6 +783,98 @@ public class ExtractingParseObserver implements ParseObserver {
 		}
 	}
 
+	/**
+	 * Append text with character references decoded, as
+	 * {@link #decodeCharEnt(String, boolean)} does outside of attributes.
+	 * The references to the ASCII markup characters, no-break space and
+	 * most code points are decoded in place, others by jsoup.
+	 * 
+	 * @param text
+	 *            text to decode
+	 * @param sb
+	 *            to append the decoded text to
+	 */
+	public static void decodeCharEnt(String text, StringBuilder sb) {
+		int amp = text.indexOf('&');
+		if (amp == -1) {
+			sb.append(text);
+			return;
+		}
+		int start = sb.length();
+		int pos = 0;
+		while (amp != -1) {
+			sb.append(text, pos, amp);
+			pos = decodeCharRef(text, amp, sb);
+			if (pos == -1) {
+				sb.setLength(start);
+				sb.append(decodeCharEnt(text, false));
+				return;
+			}
+			amp = text.indexOf('&', pos);
+		}
+		sb.append(text, pos, text.length());
+	}
+
+	private final static String[] NAMED_REFS = { "amp", "lt", "gt", "quot", "nbsp" };
+	private final static char[] NAMED_REF_CHARS = { '&', '<', '>', '"', '\u00a0' };
+
+	/**
+	 * Decode a character reference terminated by a semicolon, either named
+	 * in {@link #NAMED_REFS}, or numeric with a code point which jsoup takes
+	 * as is.
+	 * 
+	 * @return the index after the reference, or -1 if not such a reference
+	 */
+	private static int decodeCharRef(String text, int amp, StringBuilder sb) {
+		// longest is &#x10FFFF;
+		int semi = text.indexOf(';', amp + 1);
+		if (semi == -1 || semi - amp > 9) {
+			return -1;
+		}
+		int pos = amp + 1;
+		if (pos < semi && text.charAt(pos) == '#') {
+			pos++;
+			int radix = 10;
+			if (pos < semi && (text.charAt(pos) == 'x' || text.charAt(pos) == 'X')) {
+				radix = 16;
+				pos++;
+			}
+			if (pos == semi) {
+				return -1;
+			}
+			int cp = 0;
+			for (; pos < semi; pos++) {
+				char c = text.charAt(pos);
+				int digit;
+				if (c >= '0' && c <= '9') {
+					digit = c - '0';
+				} else if (radix == 16 && c >= 'a' && c <= 'f') {
+					digit = c - 'a' + 10;
+				} else if (radix == 16 && c >= 'A' && c <= 'F') {
+					digit = c - 'A' + 10;
+				} else {
+					return -1;
+				}
+				cp = cp * radix + digit;
+			}
+			// not the replaced control, Windows-1252 or surrogate code points
+			if ((cp >= 0x20 && cp < 0x7f) || (cp >= 0xa0 && cp < 0xd800)
+					|| (cp >= 0xe000 && cp <= 0x10ffff)) {
+				sb.appendCodePoint(cp);
+				return semi + 1;
+			}
+			return -1;
+		}
+		int length = semi - pos;
+		for (int i = 0; i < NAMED_REFS.length; i++) {
+			if (NAMED_REFS[i].length() == length && text.startsWith(NAMED_REFS[i], pos)) {
+				sb.append(NAMED_REF_CHARS[i]);
+				return semi + 1;
+			}
+		}
+		return -1;
+	}
+
 	/**
 	 * Trim data from
 	 * <a href="https://www.rfc-editor.org/rfc/rfc2397#section-2">data URLs</a>.
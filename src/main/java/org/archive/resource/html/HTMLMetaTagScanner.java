@@ -0,0 +1,160 @@
+package org.archive.resource.html;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Lightweight scanner for &lt;meta&gt; tags in the start of an HTML document,
+ * for callers which need only a few meta tags (robots, refresh) and can do
+ * without a full {@link org.archive.format.text.html.LexParser} parse.
+ *
+ * Comments and the content of script and style elements are skipped. The
+ * bytes are decoded as UTF-8, which is sufficient for the ASCII markup
+ * but may garble non-ASCII attribute values in other charsets.
+ */
+public class HTMLMetaTagScanner {
+
+	/**
+	 * @return attributes of each meta tag found in the first len bytes of
+	 * buf, with lower cased attribute names, in document order
+	 */
+	public static List<Map<String, String>> scan(byte[] buf, int len) {
+		return scan(new String(buf, 0, len, UTF_8));
+	}
+
+	public static List<Map<String, String>> scan(String html) {
+		List<Map<String, String>> metas = new ArrayList<Map<String, String>>();
+		int len = html.length();
+		int pos = 0;
+
+		while ((pos = html.indexOf('<', pos)) >= 0) {
+			if (html.startsWith("<!--", pos)) {
+				int end = html.indexOf("-->", pos + 4);
+				if (end < 0) {
+					break;
+				}
+				pos = end + 3;
+				continue;
+			}
+
+			int nameStart = pos + 1;
+			int nameEnd = nameStart;
+			while ((nameEnd < len) && Character.isLetterOrDigit(html.charAt(nameEnd))) {
+				nameEnd++;
+			}
+
+			if (nameEnd == nameStart) {
+				pos = nameStart;
+				continue;
+			}
+
+			String tag = html.substring(nameStart, nameEnd).toLowerCase(Locale.ROOT);
+			Map<String, String> attrs = new LinkedHashMap<String, String>();
+			int tagEnd = parseAttributes(html, nameEnd, attrs);
+
+			if (tagEnd < 0) {
+				// truncated tag
+				break;
+			}
+
+			if (tag.equals("meta")) {
+				metas.add(attrs);
+			} else if (tag.equals("script") || tag.equals("style")) {
+				int close = indexOfIgnoreCase(html, "</" + tag, tagEnd);
+				if (close < 0) {
+					break;
+				}
+				tagEnd = close;
+			}
+
+			pos = tagEnd;
+		}
+
+		return metas;
+	}
+
+	/**
+	 * @return position after the closing '&gt;' of the tag, or -1 if the tag
+	 * is not closed
+	 */
+	protected static int parseAttributes(String html, int pos, Map<String, String> attrs) {
+		int len = html.length();
+
+		while (pos < len) {
+			char c = html.charAt(pos);
+
+			if (c == '>') {
+				return pos + 1;
+			}
+
+			if (Character.isWhitespace(c) || (c == '/')) {
+				pos++;
+				continue;
+			}
+
+			int nameStart = pos;
+			while ((pos < len) && !isAttributeNameEnd(html.charAt(pos))) {
+				pos++;
+			}
+			String name = html.substring(nameStart, pos).toLowerCase(Locale.ROOT);
+
+			while ((pos < len) && Character.isWhitespace(html.charAt(pos))) {
+				pos++;
+			}
+
+			String value = "";
+
+			if ((pos < len) && (html.charAt(pos) == '=')) {
+				pos++;
+				while ((pos < len) && Character.isWhitespace(html.charAt(pos))) {
+					pos++;
+				}
+				if (pos >= len) {
+					return -1;
+				}
+
+				char quote = html.charAt(pos);
+				if ((quote == '"') || (quote == '\'')) {
+					int end = html.indexOf(quote, pos + 1);
+					if (end < 0) {
+						return -1;
+					}
+					value = html.substring(pos + 1, end);
+					pos = end + 1;
+				} else {
+					int valueStart = pos;
+					while ((pos < len) && !Character.isWhitespace(html.charAt(pos))
+							&& (html.charAt(pos) != '>')) {
+						pos++;
+					}
+					value = html.substring(valueStart, pos);
+				}
+			}
+
+			if (!name.isEmpty() && !attrs.containsKey(name)) {
+				attrs.put(name, value);
+			}
+		}
+
+		return -1;
+	}
+
+	private static boolean isAttributeNameEnd(char c) {
+		return Character.isWhitespace(c) || (c == '=') || (c == '>') || (c == '/');
+	}
+
+	private static int indexOfIgnoreCase(String s, String search, int from) {
+		int max = s.length() - search.length();
+		for (int i = from; i <= max; i++) {
+			if (s.regionMatches(true, i, search, 0, search.length())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
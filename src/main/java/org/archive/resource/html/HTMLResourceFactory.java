@@ -8,12 +8,13 @@ import java.nio.charset.StandardCharsets;
 import java.util.logging.Logger;
 
 import org.archive.format.http.HttpHeaders;
-import org.archive.format.json.JSONUtils;
+import org.archive.format.json.JSONPath;
 import org.archive.format.text.charset.CharsetDetector;
 import org.archive.format.text.charset.StandardCharsetDetector;
 import org.archive.format.text.html.CDATALexer;
 import org.archive.format.text.html.LexParser;
 import org.archive.resource.MetaData;
+import org.archive.resource.RecordMetaData;
 import org.archive.resource.Resource;
 import org.archive.resource.ResourceContainer;
 import org.archive.resource.ResourceFactory;
@@ -29,6 +30,7 @@ public class HTMLResourceFactory implements ResourceFactory {
 
 	protected static final int CHARSET_GUESS_CHUNK_SIZE = 8192;
 	protected static final String HTTP_HEADER_PATH = "Envelope.Payload-Metadata.HTTP-Response-Metadata.Headers";
+	private static final JSONPath HTTP_HEADERS = JSONPath.compile(HTTP_HEADER_PATH);
 
 	protected CharsetDetector charSetDetector = new StandardCharsetDetector();
 
@@ -48,12 +50,20 @@ public class HTMLResourceFactory implements ResourceFactory {
 		int chunkSize = is.read(chunk, 0, CHARSET_GUESS_CHUNK_SIZE);
 		is.reset();
 		if (chunkSize > 0) {
-			JSONObject headers = JSONUtils.extractObject(hmd.getTopMetaData(), HTTP_HEADER_PATH);
 			HttpHeaders httpHeaders = new HttpHeaders();
-			if (headers.has("Content-Type")) {
-				try {
-					httpHeaders.add("Content-Type", headers.getString("Content-Type"));
-				} catch (JSONException e) { }
+			RecordMetaData record = hmd.getRecordMetaData();
+			if (record.hasHTTPResponse()) {
+				String contentType = record.getHTTPHeader("Content-Type");
+				if (contentType != null) {
+					httpHeaders.add("Content-Type", contentType);
+				}
+			} else {
+				JSONObject headers = HTTP_HEADERS.getObject(hmd.getTopMetaData());
+				if (headers.has("Content-Type")) {
+					try {
+						httpHeaders.add("Content-Type", headers.getString("Content-Type"));
+					} catch (JSONException e) { }
+				}
 			}
 			try {
 				charset = charSetDetector.getCharset(chunk, chunkSize, httpHeaders);
@@ -7,9 +7,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.logging.Logger;
 
-import org.archive.format.http.HttpHeader;
 import org.archive.format.http.HttpResponse;
-import org.archive.format.http.HttpResponseMessage;
 import org.archive.resource.AbstractResource;
 import org.archive.resource.MetaData;
 import org.archive.resource.ResourceConstants;
@@ -44,25 +42,9 @@ implements ResourceConstants, EOFObserver {
 		super(metaData,container);
 		this.response = response;
 
-		MetaData message = metaData.createChild(HTTP_RESPONSE_MESSAGE);
+		metaData.getRecordMetaData().setHTTPResponse(metaData, response);
 
-		HttpResponseMessage httpMess = response.getMessage();
-
-		message.putLong(HTTP_MESSAGE_STATUS,httpMess.getStatus());
-		message.putString(HTTP_MESSAGE_VERSION,httpMess.getVersionString());
-		message.putString(HTTP_MESSAGE_REASON,httpMess.getReason());
-
-		metaData.putLong(HTTP_HEADERS_LENGTH,response.getHeaderBytes());
-
-		if(response.getHeaders().isCorrupt()) {
-			metaData.putBoolean(HTTP_HEADERS_CORRUPT,true);
-		}
-
-		MetaData headers = metaData.createChild(HTTP_HEADERS_LIST);
 		long length = response.getHeaders().getContentLength();
-		for(HttpHeader h : response.getHeaders()) {
-			headers.putString(h.getName(),h.getValue());
-		}
 		if(forceCheck && (length >= 0)) {
 			InputStream lis = ByteStreams.limit(response, length);
 			countingIS = new CountingInputStream(lis);
@@ -37,13 +37,10 @@ public class WARCResource extends AbstractResource implements EOFObserver, Resou
 		this.response = response;
 
 		long length = -1;
-		metaData.putString(ENVELOPE_FORMAT, ENVELOPE_FORMAT_WARC_1_0);
-		metaData.putLong(WARC_HEADER_LENGTH, response.getHeaderBytes());
-		MetaData fields = metaData.createChild(WARC_HEADER_METADATA);
+		metaData.getRecordMetaData().setWARC(metaData, ENVELOPE_FORMAT_WARC_1_0, response);
 		for(HttpHeader h : response.getHeaders()) {
 			String name = h.getName();
 			String value = h.getValue();
-			fields.putString(name,value);
 			if(name.toLowerCase(Locale.ROOT).equals("content-length")) {
 				// TODO: catch formatexception
 				length = Long.parseLong(value);
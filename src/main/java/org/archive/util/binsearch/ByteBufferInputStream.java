@@ -46,11 +46,14 @@ import java.nio.channels.FileChannel.MapMode;
  */
 
 public class ByteBufferInputStream extends InputStream {
-	private static int CHUNK_SHIFT = 30;
+	private static final int CHUNK_SHIFT = 30;
 	
 	/** The size of a chunk created by {@link #map(FileChannel, FileChannel.MapMode)}. */
 	public static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
 
+	/** Log2 of the capacity of the byte buffers but the last. */
+	private final int chunkShift;
+
 	/** The underlying byte buffers. */
 	private final ByteBuffer[] byteBuffer;
 
@@ -79,7 +82,7 @@ public class ByteBufferInputStream extends InputStream {
 	 */
 	
 	public ByteBufferInputStream( final ByteBuffer byteBuffer ) {
-		this( new ByteBuffer[] { byteBuffer }, byteBuffer.capacity(), 0, new boolean[ 1 ] );
+		this( new ByteBuffer[] { byteBuffer }, byteBuffer.capacity(), 0, new boolean[ 1 ], CHUNK_SHIFT );
 	}
 
 	/** Creates a new byte-buffer input stream.
@@ -93,7 +96,14 @@ public class ByteBufferInputStream extends InputStream {
 	 */
 	
 	protected ByteBufferInputStream( final ByteBuffer[] byteBuffer, final long size, final int curr, final boolean[] readyToUse ) {
+		this( byteBuffer, size, curr, readyToUse, CHUNK_SHIFT );
+	}
+
+	/** Creates a new byte-buffer input stream, with buffers but the last of capacity <code>1 &lt;&lt; chunkShift</code>.
+	 */
+	protected ByteBufferInputStream( final ByteBuffer[] byteBuffer, final long size, final int curr, final boolean[] readyToUse, final int chunkShift ) {
 		this.byteBuffer = byteBuffer;
+		this.chunkShift = chunkShift;
 		this.n = byteBuffer.length;
 		this.curr = curr;
 		this.size = size;
@@ -101,7 +111,7 @@ public class ByteBufferInputStream extends InputStream {
 		
 		mark = -1;
 
-		for( int i = 0; i < n; i++ ) if ( i < n - 1 && byteBuffer[ i ].capacity() != CHUNK_SIZE ) throw new IllegalArgumentException();
+		for( int i = 0; i < n; i++ ) if ( i < n - 1 && byteBuffer[ i ].capacity() != 1L << chunkShift ) throw new IllegalArgumentException();
 		lastBufferCapacity = byteBuffer[ n - 1 ].capacity();
 	}
 
@@ -121,17 +131,25 @@ public class ByteBufferInputStream extends InputStream {
 	 * @return a new byte-buffer input stream over the contents of <code>fileChannel</code>.
 	 */	
 	public static ByteBufferInputStream map( final FileChannel fileChannel, final MapMode mapMode ) throws IOException {
+		return map( fileChannel, mapMode, CHUNK_SHIFT );
+	}
+
+	/** Creates a new byte-buffer input stream by mapping a given file channel in chunks of <code>1 &lt;&lt; chunkShift</code> bytes.
+	 */
+	static ByteBufferInputStream map( final FileChannel fileChannel, final MapMode mapMode, final int chunkShift ) throws IOException {
 		final long size = fileChannel.size();
-		final int chunks = (int)( ( size + ( CHUNK_SIZE - 1 ) ) / CHUNK_SIZE );
+		final long chunkSize = 1L << chunkShift;
+		// an empty file is mapped as one empty chunk
+		final int chunks = Math.max( 1, (int)( ( size + ( chunkSize - 1 ) ) / chunkSize ) );
 		final ByteBuffer[] byteBuffer = new ByteBuffer[ chunks ];
-		for( int i = 0; i < chunks; i++ ) byteBuffer[ i ] = fileChannel.map( mapMode, i * CHUNK_SIZE, Math.min( CHUNK_SIZE, size - i * CHUNK_SIZE ) );
+		for( int i = 0; i < chunks; i++ ) byteBuffer[ i ] = fileChannel.map( mapMode, i * chunkSize, Math.min( chunkSize, size - i * chunkSize ) );
 		byteBuffer[ 0 ].position( 0 );
 		final boolean[] readyToUse = new boolean[ chunks ];
 		//BooleanArrays.fill( readyToUse, true );
 		for (int i = 0; i < readyToUse.length; i++) {
 			readyToUse[i] = true;
 		}
-		return new ByteBufferInputStream( byteBuffer, size, 0, readyToUse );
+		return new ByteBufferInputStream( byteBuffer, size, 0, readyToUse, chunkShift );
 	}
 
 	private ByteBuffer byteBuffer( final int n ) {
@@ -143,7 +161,7 @@ public class ByteBufferInputStream extends InputStream {
 	
 	private long remaining() {
 		return curr == n - 1 ? byteBuffer( curr ).remaining() :
-			byteBuffer( curr ).remaining() + ( (long)( n - 2 - curr ) << CHUNK_SHIFT ) + lastBufferCapacity;
+			byteBuffer( curr ).remaining() + ( (long)( n - 2 - curr ) << chunkShift ) + lastBufferCapacity;
 	}
 	
 	public int available() {
@@ -192,9 +210,13 @@ public class ByteBufferInputStream extends InputStream {
 		int read = 0;
 		while( read < realLength ) {
 			int rem = byteBuffer( curr ).remaining();
-			if ( rem == 0 ) byteBuffer( ++curr ).position( 0 );
-			byteBuffer[ curr ].get( b, offset + read, Math.min( realLength - read, rem ) );
-			read += Math.min( realLength, rem );
+			if ( rem == 0 ) {
+				byteBuffer( ++curr ).position( 0 );
+				continue;
+			}
+			final int toRead = Math.min( realLength - read, rem );
+			byteBuffer[ curr ].get( b, offset + read, toRead );
+			read += toRead;
 		}
 		return realLength;
 	}
@@ -204,22 +226,90 @@ public class ByteBufferInputStream extends InputStream {
 	}
 
 	public long position() {
-		return ( (long)curr << CHUNK_SHIFT ) + byteBuffer( curr ).position();
+		return ( (long)curr << chunkShift ) + byteBuffer( curr ).position();
 	}
 	
 	public void position( long newPosition ) {
-		newPosition = Math.min( newPosition, length() );
+		newPosition = Math.max( 0, Math.min( newPosition, length() ) );
 		if ( newPosition == length() ) {
 			final ByteBuffer buffer = byteBuffer( curr = n - 1 );
 			buffer.position( buffer.capacity() );
 			return;
 		}
 		
-		curr = (int)( newPosition >>> CHUNK_SHIFT );
-		byteBuffer( curr ).position( (int)( newPosition - ( (long)curr << CHUNK_SHIFT ) ) );
+		curr = (int)( newPosition >>> chunkShift );
+		byteBuffer( curr ).position( (int)( newPosition - ( (long)curr << chunkShift ) ) );
 	}
 	
+	/** Creates a new stream over the same bytes, with its own position (and mark).
+	 */
 	public ByteBufferInputStream copy() {
-		return new ByteBufferInputStream( byteBuffer.clone(), size, curr, new boolean[ n ] );
+		return new ByteBufferInputStream( byteBuffer.clone(), size, curr, new boolean[ n ], chunkShift );
+	}
+
+	/* Absolute access, which neither uses nor changes the position, so that
+	 * any number of threads can read from one stream at a time. */
+
+	/** Returns the byte at a given index.
+	 * 
+	 * @param index an index smaller than {@link #length()}.
+	 */
+	public byte get( final long index ) {
+		return byteBuffer[ (int)( index >>> chunkShift ) ].get( (int)( index & ( ( 1L << chunkShift ) - 1 ) ) );
+	}
+
+	/** Copies bytes at a given index to an array.
+	 */
+	public void get( long index, final byte[] b, int offset, int length ) {
+		while( length > 0 ) {
+			final int chunk = (int)( index >>> chunkShift );
+			final int start = (int)( index & ( ( 1L << chunkShift ) - 1 ) );
+			final int toCopy = Math.min( length, byteBuffer[ chunk ].capacity() - start );
+			final ByteBuffer buffer = byteBuffer[ chunk ].duplicate();
+			buffer.position( start );
+			buffer.get( b, offset, toCopy );
+			index += toCopy;
+			offset += toCopy;
+			length -= toCopy;
+		}
+	}
+
+	/** Returns the index of the first occurrence of a byte between two indices, or -1.
+	 * 
+	 * @param b the byte to look for.
+	 * @param from the first index to look at.
+	 * @param to the index after the last to look at.
+	 */
+	public long indexOf( final byte b, long from, final long to ) {
+		while( from < to ) {
+			final int chunk = (int)( from >>> chunkShift );
+			final long chunkStart = (long)chunk << chunkShift;
+			final ByteBuffer buffer = byteBuffer[ chunk ];
+			final int end = (int)( Math.min( to - chunkStart, buffer.capacity() ) );
+			for( int i = (int)( from - chunkStart ); i < end; i++ ) if ( buffer.get( i ) == b ) return chunkStart + i;
+			from = chunkStart + end;
+		}
+		return -1;
+	}
+
+	/** Compares the bytes between two indices with a key, lexicographically, as unsigned bytes.
+	 * 
+	 * @return a negative integer, zero, or a positive integer as the bytes are less than, equal to, or greater than the key.
+	 */
+	public int compare( long from, final long to, final byte[] key ) {
+		int k = 0;
+		while( from < to && k < key.length ) {
+			final int chunk = (int)( from >>> chunkShift );
+			final long chunkStart = (long)chunk << chunkShift;
+			final ByteBuffer buffer = byteBuffer[ chunk ];
+			final int end = (int)( Math.min( to - chunkStart, buffer.capacity() ) );
+			for( int i = (int)( from - chunkStart ); i < end && k < key.length; i++, k++ ) {
+				final int cmp = ( buffer.get( i ) & 0xFF ) - ( key[ k ] & 0xFF );
+				if ( cmp != 0 ) return cmp;
+				from++;
+			}
+		}
+		if ( from < to ) return 1;
+		return k < key.length ? -1 : 0;
 	}
 }
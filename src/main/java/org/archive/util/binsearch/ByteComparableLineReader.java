@@ -0,0 +1,32 @@
+package org.archive.util.binsearch;
+
+import java.io.IOException;
+
+/**
+ * SeekableLineReader which can compare the next line with a key on the
+ * UTF-8 bytes of the line, without decoding it, so that
+ * {@link SortedTextFile} only makes Strings of the lines it returns.
+ *
+ * Lines are compared as unsigned bytes, which orders them by code point:
+ * as sorted with LC_ALL=C, and as by {@link String#compareTo(String)}
+ * unless they differ by a supplementary character.
+ */
+public interface ByteComparableLineReader extends SeekableLineReader {
+
+	/**
+	 * Compare the next line with key, without reading it.
+	 *
+	 * @param key UTF-8 bytes of the key
+	 * @return a negative integer, zero, or a positive integer as the line is
+	 * less than, equal to, or greater than the key; a positive integer if
+	 * there is no next line
+	 * @throws IOException
+	 */
+	public int compareLine(byte[] key) throws IOException;
+
+	/**
+	 * @return offset of the next line
+	 * @throws IOException
+	 */
+	public long getOffset() throws IOException;
+}
@@ -19,6 +19,14 @@ public class FieldExtractingSLR extends WrappedSeekableLineReader {
 		this.sep = sep;
 	}
 
+	public int getFieldIndex() {
+		return fieldIndex;
+	}
+	
+	public String getSeparator() {
+		return sep;
+	}
+
 	@Override
 	public String readLine() throws IOException {
 		String line = super.readLine();
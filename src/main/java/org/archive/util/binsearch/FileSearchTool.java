@@ -2,7 +2,6 @@ package org.archive.util.binsearch;
 
 import java.io.File;
 import java.net.URI;
-import java.util.Comparator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,6 +14,7 @@ import org.archive.util.binsearch.impl.HDFSSeekableLineReaderFactory;
 import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory;
 import org.archive.util.binsearch.impl.RandomAccessFileSeekableLineReaderFactory;
 import org.archive.util.iterator.SortedCompositeIterator;
+import org.archive.util.iterator.StringPrefixComparator;
 
 public class FileSearchTool implements Tool {
 	private final static Logger LOGGER =
@@ -61,13 +61,8 @@ public class FileSearchTool implements Tool {
 			return USAGE(1);
 		}
 
-		Comparator<String> comparator = new Comparator<String>() {
-			public int compare(String s1, String s2) {
-				return s1.compareTo(s2);
-			}
-		};
 		SortedCompositeIterator<String> mergeItr = 
-			new SortedCompositeIterator<String>(comparator);
+			new SortedCompositeIterator<String>(StringPrefixComparator.NATURAL);
 
 		for(int i = arg; i < args.length; i++) {
 			String spec = args[i];
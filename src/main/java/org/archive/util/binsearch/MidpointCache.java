@@ -0,0 +1,219 @@
+package org.archive.util.binsearch;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Bounded, thread-safe cache of the lines read at the binary search probe
+ * points of a {@link SortedTextFile}.
+ *
+ * Every lookup in a sorted file visits the same top log2(N) probe blocks, so
+ * caching the line found at the start of each probe block avoids most of
+ * the seeks and small reads, which are expensive against HTTP and HDFS.
+ *
+ * Entries are keyed by the identity of the reader (usually the
+ * {@link SeekableLineReaderFactory}), the binsearch block size, the block
+ * index and a view name describing how the line was transformed. All entries
+ * for a reader are dropped when the reader is invalidated or when
+ * {@link #validate(Object, long, long)} sees a different size or modification
+ * time.
+ *
+ */
+public class MidpointCache {
+
+	public final static int DEFAULT_MAX_ENTRIES = 4096;
+
+	protected static class ProbeKey
+	{
+		final Object reader;
+		final String view;
+		final int blockSize;
+		final long block;
+
+		ProbeKey(Object reader, String view, int blockSize, long block)
+		{
+			this.reader = reader;
+			this.view = view;
+			this.blockSize = blockSize;
+			this.block = block;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int hash = System.identityHashCode(reader);
+			hash = (31 * hash) + view.hashCode();
+			hash = (31 * hash) + blockSize;
+			hash = (31 * hash) + (int)(block ^ (block >>> 32));
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof ProbeKey)) {
+				return false;
+			}
+
+			ProbeKey other = (ProbeKey)obj;
+			return (reader == other.reader) && (blockSize == other.blockSize) &&
+					(block == other.block) && view.equals(other.view);
+		}
+	}
+
+	protected static class Stamp
+	{
+		final long size;
+		final long modTime;
+
+		Stamp(long size, long modTime)
+		{
+			this.size = size;
+			this.modTime = modTime;
+		}
+	}
+
+	protected final Cache<ProbeKey, String> lines;
+	protected final ConcurrentHashMap<IdentityKey, Stamp> stamps;
+	protected final int maxEntries;
+
+	public MidpointCache()
+	{
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	public MidpointCache(int maxEntries)
+	{
+		this.maxEntries = maxEntries;
+		this.lines = CacheBuilder.newBuilder()
+				.maximumSize(maxEntries)
+				.concurrencyLevel(16)
+				.recordStats()
+				.build();
+		this.stamps = new ConcurrentHashMap<IdentityKey, Stamp>();
+	}
+
+	/**
+	 * @return the cached probe line, or null if not cached
+	 */
+	public String get(Object reader, String view, int blockSize, long block)
+	{
+		return lines.getIfPresent(new ProbeKey(reader, view, blockSize, block));
+	}
+
+	public void put(Object reader, String view, int blockSize, long block, String line)
+	{
+		if (line == null) {
+			return;
+		}
+
+		lines.put(new ProbeKey(reader, view, blockSize, block), line);
+	}
+
+	/**
+	 * Check the current size and modification time of the file behind reader
+	 * against the values seen last time, dropping all cached lines for the
+	 * reader if either changed.
+	 *
+	 * @return true if the cached lines for the reader are still valid
+	 */
+	public boolean validate(Object reader, long size, long modTime)
+	{
+		Stamp curr = new Stamp(size, modTime);
+		Stamp prev = stamps.put(new IdentityKey(reader), curr);
+
+		if ((prev == null) || (prev.size == size && prev.modTime == modTime)) {
+			return true;
+		}
+
+		invalidateLines(reader);
+		return false;
+	}
+
+	/**
+	 * Drop all cached lines for reader
+	 */
+	public void invalidate(Object reader)
+	{
+		stamps.remove(new IdentityKey(reader));
+		invalidateLines(reader);
+	}
+
+	protected void invalidateLines(Object reader)
+	{
+		Iterator<ProbeKey> keys = lines.asMap().keySet().iterator();
+
+		while (keys.hasNext()) {
+			if (keys.next().reader == reader) {
+				keys.remove();
+			}
+		}
+	}
+
+	public void invalidateAll()
+	{
+		stamps.clear();
+		lines.invalidateAll();
+	}
+
+	public long size()
+	{
+		return lines.size();
+	}
+
+	public int getMaxEntries()
+	{
+		return maxEntries;
+	}
+
+	public long getHitCount()
+	{
+		return lines.stats().hitCount();
+	}
+
+	public long getMissCount()
+	{
+		return lines.stats().missCount();
+	}
+
+	public long getEvictionCount()
+	{
+		return lines.stats().evictionCount();
+	}
+
+	public double getHitRate()
+	{
+		return lines.stats().hitRate();
+	}
+
+	public CacheStats getStats()
+	{
+		return lines.stats();
+	}
+
+	protected static class IdentityKey
+	{
+		final Object reader;
+
+		IdentityKey(Object reader)
+		{
+			this.reader = reader;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return System.identityHashCode(reader);
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			return (obj instanceof IdentityKey) && (((IdentityKey)obj).reader == reader);
+		}
+	}
+}
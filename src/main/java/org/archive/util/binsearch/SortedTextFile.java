@@ -1,8 +1,11 @@
 package org.archive.util.binsearch;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Locale;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -46,6 +49,18 @@ public class SortedTextFile {
 	
 	protected SeekableLineReaderFactory factory;
 	protected int binsearchBlockSize = SeekableLineReaderFactory.BINSEARCH_BLOCK_SIZE;
+	protected MidpointCache midpointCache = null;
+	
+	/** default interval between checks of the file mod time by the midpoint cache */
+	public final static long DEFAULT_MOD_TIME_CHECK_INTERVAL_MS = 10000;
+	
+	protected long modTimeCheckIntervalMS = DEFAULT_MOD_TIME_CHECK_INTERVAL_MS;
+	private volatile long modTime = 0;
+	private volatile long modTimeCheckedAt = -1;
+	
+	/** readers got from the factory, whose probe lines may be cached */
+	private final Set<SeekableLineReader> factoryReaders =
+		Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<SeekableLineReader, Boolean>()));
 	
 	public SortedTextFile(SeekableLineReaderFactory factory) {
 		setFactory(factory);
@@ -78,6 +93,16 @@ public class SortedTextFile {
         } catch (IOException e) {
         	LOGGER.warning(e.toString());
         }
+		
+		if (midpointCache != null) {
+			midpointCache.invalidate(factory);
+		}
+		modTimeCheckedAt = -1;
+	}
+
+	public long getModTime()
+	{
+		return factory.getModTime();
 	}
 
 	public int getBinsearchBlockSize() {
@@ -88,6 +113,37 @@ public class SortedTextFile {
         this.binsearchBlockSize = binsearchBlockSize;
     }
 
+	public MidpointCache getMidpointCache() {
+		return midpointCache;
+	}
+
+	/**
+	 * @param midpointCache cache for the lines read at binary search probe
+	 * points, may be shared between files. null disables caching. Not used
+	 * by searches of a {@link ByteComparableLineReader}, which compare the
+	 * probe lines in place.
+	 */
+	public void setMidpointCache(MidpointCache midpointCache) {
+		this.midpointCache = midpointCache;
+	}
+
+	public long getModTimeCheckInterval() {
+		return modTimeCheckIntervalMS;
+	}
+
+	/**
+	 * The midpoint cache is dropped when the size of the file changes, seen
+	 * on each lookup, or its mod time, which may need a request to get (e.g.
+	 * on HDFS) and is checked at most once per interval, and on
+	 * {@link #reloadFactory()}.
+	 *
+	 * @param modTimeCheckIntervalMS min time between mod time checks, 0 to
+	 * check on every lookup
+	 */
+	public void setModTimeCheckInterval(long modTimeCheckIntervalMS) {
+		this.modTimeCheckIntervalMS = modTimeCheckIntervalMS;
+	}
+
     public CloseableIterator<String> getRecordIteratorLT(final String prefix) 
 	throws IOException {
 		return getRecordIterator(prefix, true);
@@ -100,12 +156,18 @@ public class SortedTextFile {
 	
 	public SeekableLineReader getSLR() throws IOException
 	{
-		return factory.get();
+		SeekableLineReader slr = factory.get();
+		
+		if (midpointCache != null) {
+			factoryReaders.add(slr);
+		}
+		
+		return slr;
 	}
 	
 	public CloseableIterator<String> getRecordIterator(final long offset) throws IOException
 	{
-		SeekableLineReader slr = factory.get();
+		SeekableLineReader slr = getSLR();
 		slr.seek(offset);
 		return new SeekableLineReaderIterator(slr);
 	}
@@ -113,7 +175,7 @@ public class SortedTextFile {
 	public CloseableIterator<String> getRecordIterator(final String prefix, 
 			boolean lessThan) throws IOException {
 		
-		SeekableLineReader slr = factory.get();
+		SeekableLineReader slr = getSLR();
 		
 		try {
 			return search(slr, prefix, lessThan, defaultComparator);
@@ -125,6 +187,57 @@ public class SortedTextFile {
 		}
 	}
 	
+	/**
+	 * Name of the transformation slr applies to the lines it returns, used to
+	 * key the midpoint cache, or null if lines read through slr can't be
+	 * cached, e.g. as it was not got from {@link #getSLR()}
+	 */
+	protected String getProbeView(SeekableLineReader slr)
+	{
+		String view = "";
+		
+		if (slr instanceof FieldExtractingSLR) {
+			FieldExtractingSLR fieldSlr = (FieldExtractingSLR)slr;
+			view = "field:" + fieldSlr.getFieldIndex() + ":" + fieldSlr.getSeparator();
+			slr = fieldSlr.slr;
+		}
+		
+		if ((slr instanceof WrappedSeekableLineReader) || !factoryReaders.contains(slr)) {
+			return null;
+		}
+		
+		return view;
+	}
+	
+	/**
+	 * @return slr, if lines can be compared with key on their bytes, as
+	 * comparator compares them, or null
+	 */
+	protected static ByteComparableLineReader getByteComparable(SeekableLineReader slr, Comparator<String> comparator)
+	{
+		if ((slr instanceof ByteComparableLineReader) && (comparator.getClass() == DefaultComparator.class)) {
+			return (ByteComparableLineReader)slr;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * @return mod time of the file, got from the factory at most once per
+	 * check interval
+	 */
+	protected long getCheckedModTime()
+	{
+		long now = System.currentTimeMillis();
+		
+		if ((modTimeCheckedAt < 0) || (now - modTimeCheckedAt >= modTimeCheckIntervalMS)) {
+			modTime = factory.getModTime();
+			modTimeCheckedAt = now;
+		}
+		
+		return modTime;
+	}
+	
 	public long binaryFindOffset(SeekableLineReader slr, final String key, Comparator<String> comparator) throws IOException
 	{
 		int blockSize = binsearchBlockSize;
@@ -134,13 +247,51 @@ public class SortedTextFile {
 		long mid;
 		String line;
 		
-		// TODO: implement a cache of midpoints - will make a HUGE difference
-		//       on both HTTP and HDFS
+		// compare lines in place if possible: cheaper than a cache lookup,
+		// so the midpoint cache is only used for the other readers
+		ByteComparableLineReader bytesSlr = getByteComparable(slr, comparator);
+		byte[] keyBytes = (bytesSlr != null) ? key.getBytes(UTF_8) : null;
+		
+		MidpointCache cache = midpointCache;
+		String view = null;
+		
+		if ((bytesSlr == null) && (cache != null) && (factory != null)) {
+			view = getProbeView(slr);
+			
+			if (view != null) {
+				cache.validate(factory, fileSize, getCheckedModTime());
+			}
+		}
+		
 	    while (max - min > 1) {
 	    	mid = min + (long)((max - min) / 2);
-	    	slr.seek(mid * blockSize);
-	    	if(mid > 0) slr.skipLine(); // probably a partial line
-	    	line = slr.readLine();
+	    	line = null;
+	    	
+	    	if (bytesSlr != null) {
+	    		bytesSlr.seek(mid * blockSize);
+	    		if(mid > 0) bytesSlr.skipLine(); // probably a partial line
+	    		
+	    		if (bytesSlr.compareLine(keyBytes) < 0) {
+	    			min = mid;
+	    		} else {
+	    			max = mid;
+	    		}
+	    		continue;
+	    	}
+	    	
+	    	if (view != null) {
+	    		line = cache.get(factory, view, blockSize, mid);
+	    	}
+	    	
+	    	if (line == null) {
+	    		slr.seek(mid * blockSize);
+	    		if(mid > 0) slr.skipLine(); // probably a partial line
+	    		line = slr.readLine();
+	    		
+	    		if (view != null) {
+	    			cache.put(factory, view, blockSize, mid, line);
+	    		}
+	    	}
 	    	
 	    	if (comparator.compare(key, line) > 0) {
 
@@ -192,7 +343,7 @@ public class SortedTextFile {
 	
 	public CloseableIterator<String> getSplitIterator(String start, String end, int numSplits) throws IOException
 	{
-		SeekableLineReader slr = factory.get();
+		SeekableLineReader slr = getSLR();
 		
 		long[] offsets = getStartEndOffsets(slr, start, end);
 		
@@ -206,7 +357,7 @@ public class SortedTextFile {
 		String endLine = null;		
 		
 		try {
-			slr = factory.get();
+			slr = getSLR();
 			
 			if (start.isEmpty()) {
 				slr.seek(0);
@@ -238,7 +389,7 @@ public class SortedTextFile {
 		String endLine = null;
 		
 		try {
-			slr = factory.get();
+			slr = getSLR();
 			
 			long[] offsets = getStartEndOffsets(slr, start, end);
 			long startOffset = offsets[0];
@@ -284,12 +435,17 @@ public class SortedTextFile {
 		int lastLineLenInc = 400;
 		String endLine = null;
 		
+		long offset;
+		
 		do {
 			
 			lastLineLenTest += lastLineLenInc;
 			
-			slr.seek(slr.getSize() - lastLineLenTest); // TODO: assume larger buffer
-			slr.readLine(); // skip partial line
+			offset = Math.max(0, slr.getSize() - lastLineLenTest);
+			slr.seek(offset); // TODO: assume larger buffer
+			if (offset > 0) {
+				slr.readLine(); // skip partial line
+			}
 			String nextLine = null;
 			endLine = null;
 			
@@ -297,7 +453,7 @@ public class SortedTextFile {
 				endLine = nextLine;
 			}
 			
-		} while (endLine == null);
+		} while ((endLine == null) && (offset > 0));
 		
 		return endLine;
 	}
@@ -370,6 +526,20 @@ public class SortedTextFile {
 	    	slr.skipLine();
 	    }
 	    
+	    ByteComparableLineReader bytesSlr = getByteComparable(slr, comparator);
+	    
+	    if (bytesSlr != null) {
+	    	byte[] keyBytes = key.getBytes(UTF_8);
+	    	long prevOffset = -1;
+	    	
+	    	while (bytesSlr.compareLine(keyBytes) < 0) {
+	    		prevOffset = bytesSlr.getOffset();
+	    		bytesSlr.skipLine();
+	    	}
+	    	
+	    	return (lessThan && (prevOffset >= 0)) ? prevOffset : bytesSlr.getOffset();
+	    }
+	    
 	    String prev = null;
 	    while(true) {
 	    	if (line != null) {
@@ -404,6 +574,28 @@ public class SortedTextFile {
 	    if (min > 0) {
 	    	slr.skipLine();
 	    }
+	    
+	    ByteComparableLineReader bytesSlr = getByteComparable(slr, comparator);
+	    
+	    if (bytesSlr != null) {
+	    	byte[] keyBytes = key.getBytes(UTF_8);
+	    	long prevOffset = -1;
+	    	
+	    	while (bytesSlr.compareLine(keyBytes) < 0) {
+	    		prevOffset = bytesSlr.getOffset();
+	    		bytesSlr.skipLine();
+	    	}
+	    	
+	    	String prev = null;
+	    	
+	    	if (lessThan && (prevOffset >= 0)) {
+	    		bytesSlr.seek(prevOffset);
+	    		prev = bytesSlr.readLine();
+	    	}
+	    	
+	    	return new CachedStringIterator(slr, prev, bytesSlr.readLine());
+	    }
+	    
 	    String prev = null;
 	    while(true) {
 	    	line = slr.readLine();
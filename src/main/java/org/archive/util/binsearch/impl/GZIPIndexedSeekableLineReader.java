@@ -0,0 +1,60 @@
+package org.archive.util.binsearch.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import org.archive.util.binsearch.AbstractSeekableLineReader;
+import org.archive.util.zip.GZIPSeekIndex;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Reads the uncompressed lines of a gzip file, seeking with its
+ * {@link GZIPSeekIndex}. Offsets and size are those of the uncompressed data.
+ */
+public class GZIPIndexedSeekableLineReader extends AbstractSeekableLineReader {
+	
+	private RandomAccessFile raf;
+	private GZIPSeekIndex index;
+	private InputStream current;
+
+	public GZIPIndexedSeekableLineReader(RandomAccessFile raf, GZIPSeekIndex index, int blockSize) {
+		super(blockSize);
+		this.raf = raf;
+		this.index = index;
+	}
+
+	public InputStream doSeekLoad(long offset, int maxLength) throws IOException {
+		closeCurrent();
+		
+		current = index.open(raf, offset);
+		
+		if (maxLength > 0) {
+			return ByteStreams.limit(current, maxLength);
+		} else {
+			return current;
+		}
+	}
+	
+	protected void closeCurrent() throws IOException {
+		// releases the inflater, the file stays open
+		if (current != null) {
+			current.close();
+		}
+		current = null;
+	}
+	
+	public void doClose() throws IOException {
+		closeCurrent();
+		
+		if (raf != null) {
+			raf.close();
+		}
+		raf = null;
+	}
+	
+	public long getSize() throws IOException {
+		return index.getUncompressedSize();
+	}
+}
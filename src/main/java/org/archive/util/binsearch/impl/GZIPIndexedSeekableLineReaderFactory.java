@@ -0,0 +1,69 @@
+package org.archive.util.binsearch.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.binsearch.SeekableLineReaderFactory;
+import org.archive.util.zip.GZIPSeekIndex;
+
+/**
+ * Factory of {@link GZIPIndexedSeekableLineReader} over a gzip file and its
+ * {@link GZIPSeekIndex}, by default the sidecar index next to it.
+ */
+public class GZIPIndexedSeekableLineReaderFactory implements SeekableLineReaderFactory {
+	private final File file;
+	private final File indexFile;
+	private int blockSize = BINSEARCH_BLOCK_SIZE;
+	private GZIPSeekIndex index;
+	private boolean closed = false;
+	
+	public GZIPIndexedSeekableLineReaderFactory(File file) throws IOException {
+		this(file, GZIPSeekIndex.getIndexFile(file));
+	}
+	public GZIPIndexedSeekableLineReaderFactory(File file, File indexFile) throws IOException {
+		this(file, indexFile, BINSEARCH_BLOCK_SIZE);
+	}
+	public GZIPIndexedSeekableLineReaderFactory(File file, File indexFile, int blockSize) throws IOException {
+		this.file = file;
+		this.indexFile = indexFile;
+		this.blockSize = blockSize;
+		reload();
+	}
+	
+	protected synchronized GZIPSeekIndex getIndex() throws IOException {
+		if (closed) {
+			throw new IOException("Factory closed: " + file);
+		}
+		return index;
+	}
+	
+	public SeekableLineReader get() throws IOException {
+		GZIPSeekIndex index = getIndex();
+		return new GZIPIndexedSeekableLineReader(new RandomAccessFile(file, "r"),
+				index, blockSize);
+	}
+	public synchronized void close() throws IOException {
+		this.closed = true;
+		this.index = null;
+	}
+	
+	public long getModTime()
+	{
+		return file.lastModified();
+	}
+	
+	@Override
+    public void reload() throws IOException {
+		GZIPSeekIndex newIndex = GZIPSeekIndex.read(indexFile);
+		
+		if (!newIndex.isIndexOf(file)) {
+			throw new IOException(indexFile + " is not an index of " + file);
+		}
+		
+		synchronized(this) {
+			index = newIndex;
+		}
+    }
+}
@@ -3,6 +3,7 @@ package org.archive.util.binsearch.impl;
 import java.io.IOException;
 
 import org.archive.util.binsearch.SeekableLineReaderFactory;
+import org.archive.util.binsearch.impl.http.ApacheHttp43PooledSLRFactory;
 import org.archive.util.binsearch.impl.http.ApacheHttp43SLRFactory;
 import org.archive.util.binsearch.impl.http.HTTPURLConnSLRFactory;
 
@@ -20,6 +21,7 @@ public abstract class HTTPSeekableLineReaderFactory implements SeekableLineReade
 	public enum HttpLibs
 	{
 		APACHE_43,
+		APACHE_43_POOLED,
 		URLCONN,
 	}
 		
@@ -50,6 +52,10 @@ public abstract class HTTPSeekableLineReaderFactory implements SeekableLineReade
 		case APACHE_43:
 			factory = new ApacheHttp43SLRFactory();
 			break;
+			
+		case APACHE_43_POOLED:
+			factory = new ApacheHttp43PooledSLRFactory();
+			break;
 		}
 		
 		if (factory == null) {
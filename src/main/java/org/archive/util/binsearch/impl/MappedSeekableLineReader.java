@@ -5,47 +5,198 @@ import java.io.InputStream;
 
 import org.archive.util.binsearch.AbstractSeekableLineReader;
 import org.archive.util.binsearch.ByteBufferInputStream;
+import org.archive.util.binsearch.ByteComparableLineReader;
 
 import com.google.common.io.ByteStreams;
 
-public class MappedSeekableLineReader extends AbstractSeekableLineReader {
+/**
+ * SeekableLineReader over a mapped file, or a buffer. Lines are found by
+ * scanning the mapping for '\n', with the absolute reads of
+ * {@link ByteBufferInputStream}: readers share the mapping, each with its
+ * own position, and only lines read are copied and decoded. Lines end at
+ * '\n', without a '\r' before it.
+ *
+ * After a seek with gzip, bytes are read through a stream, as by other
+ * readers.
+ */
+public class MappedSeekableLineReader extends AbstractSeekableLineReader
+        implements ByteComparableLineReader {
 
     private ByteBufferInputStream bbis;
+    private final long size;
+
+    /** Stream of the last gzip seek, null when reading from the mapping */
+    private ByteBufferInputStream stream = null;
+
+    /** Offset of the next line in the mapping */
+    private long position = 0;
+    /** End of the bytes to read since the last seek */
+    private long limit;
+
+    private byte[] lineBuffer = new byte[256];
 
     public MappedSeekableLineReader(ByteBufferInputStream bbis, int blockSize) throws IOException {
         super(blockSize);
         this.bbis = bbis;
+        this.size = bbis.length();
+        this.limit = size;
     }
-    
+
     public long getOffset() throws IOException
     {
         if (closed) {
             return 0;
         }
-        
-        return bbis.position();
+
+        if (stream != null) {
+            return stream.position();
+        }
+
+        return position;
+    }
+
+    @Override
+    public void seekWithMaxRead(long offset, boolean gzip, int maxLength)
+            throws IOException {
+
+        if (gzip) {
+            super.seekWithMaxRead(offset, gzip, maxLength);
+            return;
+        }
+
+        if (closed) {
+            throw new IOException("Seek after close()");
+        }
+
+        // already in memory, no need to buffer fully
+        br = null;
+        is = null;
+        stream = null;
+        position = Math.max(0, Math.min(offset, size));
+        limit = (maxLength > 0) ? Math.min(size, position + maxLength) : size;
     }
-    
+
     @Override
     protected InputStream doSeekLoad(long offset, int maxLength)
             throws IOException {
-        
-        bbis.position(offset);
-        
+
+        stream = bbis.copy();
+        stream.position(offset);
+
         if (maxLength > 0) {
-            return ByteStreams.limit(bbis, maxLength); 
+            return ByteStreams.limit(stream, maxLength);
         } else {
-            return bbis;
+            return stream;
         }
     }
 
+    @Override
+    public InputStream getInputStream()
+    {
+        if ((stream == null) && !closed) {
+            try {
+                long length = limit - position;
+                is = doSeekLoad(position, (limit < size) ? (int) length : -1);
+            } catch (IOException e) {
+                // not thrown by doSeekLoad
+                throw new IllegalStateException(e);
+            }
+        }
+
+        return super.getInputStream();
+    }
+
+    /**
+     * @return the end of the line at from, before its "\r\n" or "\n"
+     */
+    private long lineEnd(long from)
+    {
+        long end = bbis.indexOf((byte) '\n', from, limit);
+
+        if (end < 0) {
+            end = limit;
+        }
+
+        if ((end > from) && (bbis.get(end - 1) == '\r')) {
+            end--;
+        }
+
+        return end;
+    }
+
+    private long nextLine(long from)
+    {
+        long newline = bbis.indexOf((byte) '\n', from, limit);
+        return (newline < 0) ? limit : newline + 1;
+    }
+
+    private void checkOpen() throws IOException
+    {
+        if (closed) {
+            throw new IOException("Read after close()");
+        }
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        if (stream != null) {
+            return super.readLine();
+        }
+
+        checkOpen();
+
+        if (position >= limit) {
+            return null;
+        }
+
+        long end = lineEnd(position);
+        int length = (int) (end - position);
+
+        if (lineBuffer.length < length) {
+            lineBuffer = new byte[Math.max(length, lineBuffer.length * 2)];
+        }
+
+        bbis.get(position, lineBuffer, 0, length);
+        position = nextLine(end);
+        return new String(lineBuffer, 0, length, UTF8);
+    }
+
+    @Override
+    public void skipLine() throws IOException {
+        if (stream != null) {
+            super.skipLine();
+            return;
+        }
+
+        checkOpen();
+
+        if (position < limit) {
+            position = nextLine(position);
+        }
+    }
+
+    public int compareLine(byte[] key) throws IOException {
+        if (stream != null) {
+            throw new IllegalStateException("Reading a gzip stream");
+        }
+
+        checkOpen();
+
+        if (position >= limit) {
+            return 1;
+        }
+
+        return bbis.compare(position, lineEnd(position), key);
+    }
+
     @Override
     public long getSize() throws IOException {
-        return bbis.length();
+        return size;
     }
 
     @Override
     protected void doClose() throws IOException {
         bbis = null;
+        stream = null;
     }
 }
@@ -0,0 +1,319 @@
+package org.archive.util.binsearch.impl.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.archive.util.binsearch.impl.HTTPSeekableLineReader;
+import org.archive.util.binsearch.impl.http.ApacheHttp43PooledSLRFactory.PooledResponse;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * HTTP reader over the pooled connections of an
+ * {@link ApacheHttp43PooledSLRFactory}.
+ *
+ * A seek with a maxLength requests that range. A seek without one requests
+ * ranges of the read ahead size, doubling up to MAX_READ_AHEAD_SIZE, as
+ * they are read, so that each response can be read to the end and its
+ * connection reused. The size of the resource is taken from the
+ * Content-Range of responses, or requested with the first byte.
+ */
+public class ApacheHttp43PooledSLR extends HTTPSeekableLineReader {
+
+	private final static int MAX_REDIRECTS = 5;
+	private final static int MAX_READ_AHEAD_SIZE = 4 * 1024 * 1024;
+
+	private final ApacheHttp43PooledSLRFactory factory;
+	private String urlString;
+
+	private PooledResponse response = null;
+	private RangeInputStream rangeStream = null;
+	private long size = -1;
+
+	public ApacheHttp43PooledSLR(ApacheHttp43PooledSLRFactory factory, String url)
+	{
+		this.factory = factory;
+		this.urlString = url;
+	}
+
+	@Override
+	public String getUrl() {
+		return urlString;
+	}
+
+	/**
+	 * @return size of the resource, requesting its first byte if not known
+	 * from an earlier response
+	 */
+	@Override
+	public long getSize() throws IOException {
+		if (size < 0) {
+			// not kept in response, which stays the one of the last seek
+			PooledResponse probe = requestRange(0, 1);
+			probe.close();
+		}
+
+		return Math.max(size, 0);
+	}
+
+	@Override
+	public String getHeaderValue(String headerName) {
+		if (response == null) {
+			return null;
+		}
+
+		return response.getHeaderValue(headerName);
+	}
+
+	protected static long parseContentRangeSize(String contentRange)
+	{
+		// bytes 0-99/1234, or bytes */1234
+		if (contentRange == null) {
+			return -1;
+		}
+
+		int slash = contentRange.lastIndexOf('/');
+
+		if (slash < 0) {
+			return -1;
+		}
+
+		try {
+			return Long.parseLong(contentRange.substring(slash + 1).trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Request length bytes from offset, and keep the response for
+	 * {@link #getHeaderValue(String)}.
+	 *
+	 * @return the response entity, positioned at offset, or null if offset
+	 * is past the end of the resource
+	 */
+	protected InputStream request(long offset, long length) throws IOException
+	{
+		response = requestRange(offset, length);
+		int code = response.getStatusCode();
+
+		if (code == 206) {
+			return response.getContent();
+		}
+
+		if ((code == 416) || ((size >= 0) && (offset >= size))) {
+			response.close();
+			return null;
+		}
+
+		// ranges not supported: skip to offset
+		InputStream content = response.getContent();
+
+		try {
+			ByteStreams.skipFully(content, offset);
+		} catch (EOFException e) {
+			// size unknown, offset past the end
+			response.close();
+			return null;
+		}
+
+		return content;
+	}
+
+	/**
+	 * Request length bytes from offset, following redirects, and take the
+	 * size of the resource from the response.
+	 *
+	 * @return the response: 206, 200 if ranges are not supported, or 416 if
+	 * offset is past the end of the resource
+	 */
+	protected PooledResponse requestRange(long offset, long length) throws IOException
+	{
+		URL url = new URL((connectedUrl != null) ? connectedUrl : urlString);
+		String rangeHeader = makeRangeHeader(offset, (int) length);
+
+		for (int redirects = 0; ; redirects++) {
+			connectedUrl = url.toString();
+
+			List<String> headers = new ArrayList<String>();
+			headers.add("Range");
+			headers.add(rangeHeader);
+			headers.add("Accept");
+			headers.add("*/*");
+
+			if (this.isNoKeepAlive()) {
+				headers.add("Connection");
+				headers.add("close");
+			}
+
+			if (this.getCookie() != null) {
+				headers.add("Cookie");
+				headers.add(this.getCookie());
+			}
+
+			PooledResponse rangeResponse = factory.execute("GET", url, headers.toArray(new String[headers.size()]));
+
+			int code = rangeResponse.getStatusCode();
+
+			if (code > 300 && code < 400) {
+				String location = rangeResponse.getHeaderValue("Location");
+				rangeResponse.close();
+
+				if (location == null) {
+					throw new BadHttpStatusException(code, connectedUrl + " " + rangeHeader);
+				}
+
+				if (redirects >= MAX_REDIRECTS) {
+					throw new IOException("Too many redirects: " + connectedUrl);
+				}
+
+				url = new URL(url, location);
+				continue;
+			}
+
+			if ((code == 206) || (code == 416)) {
+				size = parseContentRangeSize(rangeResponse.getHeaderValue("Content-Range"));
+				return rangeResponse;
+			}
+
+			if (code == 200) {
+				size = rangeResponse.getResponse().getEntity().getContentLength();
+				return rangeResponse;
+			}
+
+			if (saveErrHeader != null) {
+				errHeader = rangeResponse.getHeaderValue(saveErrHeader);
+			}
+
+			rangeResponse.close();
+			throw new BadHttpStatusException(code, connectedUrl + " " + rangeHeader);
+		}
+	}
+
+	/**
+	 * Bytes from an offset, read over one range request, or successive ones
+	 * when unbounded.
+	 */
+	class RangeInputStream extends InputStream
+	{
+		private long offset;
+		private final long end;
+		private int readAhead;
+		private InputStream current = null;
+		private long currentStart = -1;
+		private boolean atEnd = false;
+
+		RangeInputStream(long offset, int maxLength)
+		{
+			this.offset = offset;
+			this.end = (maxLength > 0) ? (offset + maxLength) : -1;
+			this.readAhead = factory.getReadAheadSize();
+		}
+
+		protected boolean next() throws IOException
+		{
+			if (atEnd || ((end >= 0) && (offset >= end)) || ((size >= 0) && (offset >= size))) {
+				atEnd = true;
+				return false;
+			}
+
+			long length = (end >= 0) ? (end - offset) : readAhead;
+			current = request(offset, length);
+			currentStart = offset;
+
+			if (current == null) {
+				atEnd = true;
+				return false;
+			}
+
+			if (response.getStatusCode() == 200) {
+				// whole resource: no more requests
+				atEnd = true;
+
+				if (end >= 0) {
+					current = ByteStreams.limit(current, end - offset);
+				}
+			}
+
+			if ((end < 0) && (readAhead < MAX_READ_AHEAD_SIZE)) {
+				readAhead = Math.min(readAhead * 2, MAX_READ_AHEAD_SIZE);
+			}
+
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			byte[] b = new byte[1];
+			int amt = read(b, 0, 1);
+			return (amt < 0) ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (len == 0) {
+				return 0;
+			}
+
+			while (true) {
+				if ((current == null) && !next()) {
+					return -1;
+				}
+
+				int amt = current.read(b, off, len);
+
+				if (amt >= 0) {
+					offset += amt;
+					return amt;
+				}
+
+				current.close();
+				current = null;
+
+				if (offset == currentStart) {
+					// no bytes from the last response: would request the same again
+					atEnd = true;
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if (current != null) {
+				current.close();
+				current = null;
+			}
+
+			atEnd = true;
+		}
+	}
+
+	@Override
+	protected InputStream doSeekLoad(long offset, int maxLength)
+			throws IOException {
+
+		doClose();
+
+		rangeStream = new RangeInputStream(offset, maxLength);
+
+		// request now, to fail on the seek
+		rangeStream.next();
+
+		return rangeStream;
+	}
+
+	@Override
+	protected void doClose() throws IOException {
+		if (rangeStream != null) {
+			rangeStream.close();
+			rangeStream = null;
+		}
+	}
+}
@@ -0,0 +1,599 @@
+package org.archive.util.binsearch.impl.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.http.ConnectionReuseStrategy;
+import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.impl.DefaultBHttpClientConnection;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.impl.pool.BasicConnPool;
+import org.apache.http.impl.pool.BasicPoolEntry;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.pool.ConnFactory;
+import org.apache.http.protocol.HttpCoreContext;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.HttpProcessorBuilder;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.apache.http.protocol.RequestConnControl;
+import org.apache.http.protocol.RequestContent;
+import org.apache.http.protocol.RequestTargetHost;
+import org.archive.util.binsearch.impl.HTTPSeekableLineReader;
+import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory;
+
+/**
+ * HTTP factory keeping a pool of keep-alive connections per host, shared by
+ * all its readers: each request leases a connection, and returns it to the
+ * pool once the response is read, so successive seeks, and ZipNum block
+ * loads, reuse open connections instead of connecting for each request.
+ *
+ * Connections idle for longer than the idle timeout are closed, checked
+ * when connections are leased. A request failing on a pooled connection
+ * before its response is retried on a new connection, up to numRetries
+ * times.
+ *
+ * Connection limits and stale checking apply to the pool right away,
+ * timeouts to the connections opened or leased after they are set.
+ */
+public class ApacheHttp43PooledSLRFactory extends HTTPSeekableLineReaderFactory {
+
+	private final static Logger LOGGER =
+		Logger.getLogger(ApacheHttp43PooledSLRFactory.class.getName());
+
+	private final static int BUFF_SIZE = 8192;
+
+	public final static int DEFAULT_READ_AHEAD_SIZE = 64 * 1024;
+
+	/** Remaining response bytes read to keep a connection on early close */
+	private final static int MAX_DRAIN_SIZE = 256 * 1024;
+
+	/** Inactivity after which a pooled connection is checked, with staleChecking */
+	private final static int VALIDATE_AFTER_INACTIVITY_MS = 1000;
+
+	private int readTimeout = 0;
+	private int connectTimeout = 0;
+	private int leaseTimeout = 0;
+	private int idleTimeout = 30000;
+
+	private int maxTotalConnections = 200;
+	private int maxHostConnections = 20;
+
+	private boolean staleChecking = false;
+	private int numRetries = 1;
+
+	private int readAheadSize = DEFAULT_READ_AHEAD_SIZE;
+
+	private HttpHost proxy = null;
+
+	private BasicConnPool pool = null;
+	private volatile long lastEviction = 0;
+
+	private final HttpProcessor httpProcessor = HttpProcessorBuilder.create()
+			.add(new RequestContent())
+			.add(new RequestTargetHost())
+			.add(new RequestConnControl()).build();
+
+	private final HttpRequestExecutor requestExecutor = new HttpRequestExecutor();
+
+	private final ConnectionReuseStrategy reuseStrategy = DefaultConnectionReuseStrategy.INSTANCE;
+
+	public ApacheHttp43PooledSLRFactory()
+	{
+
+	}
+
+	@Override
+	public HTTPSeekableLineReader get(String url) throws IOException {
+		return new ApacheHttp43PooledSLR(this, url);
+	}
+
+	/**
+	 * Opens a connection, with an SSL socket checking the host name for https
+	 */
+	class PoolConnFactory implements ConnFactory<HttpHost, HttpClientConnection>
+	{
+		@Override
+		public HttpClientConnection create(HttpHost host) throws IOException {
+			boolean https = "https".equalsIgnoreCase(host.getSchemeName());
+			int port = host.getPort();
+
+			if (port < 0) {
+				port = https ? 443 : 80;
+			}
+
+			Socket socket = new Socket();
+
+			try {
+				socket.setTcpNoDelay(true);
+				socket.setSoTimeout(readTimeout);
+				socket.connect(new InetSocketAddress(host.getHostName(), port), connectTimeout);
+
+				if (https) {
+					SSLSocketFactory sslFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+					SSLSocket sslSocket = (SSLSocket) sslFactory.createSocket(socket, host.getHostName(), port, true);
+					SSLParameters params = sslSocket.getSSLParameters();
+					params.setEndpointIdentificationAlgorithm("HTTPS");
+					sslSocket.setSSLParameters(params);
+					sslSocket.startHandshake();
+					socket = sslSocket;
+				}
+			} catch (IOException io) {
+				socket.close();
+				throw io;
+			}
+
+			DefaultBHttpClientConnection conn = new DefaultBHttpClientConnection(BUFF_SIZE);
+			conn.bind(socket);
+			return conn;
+		}
+	}
+
+	protected synchronized BasicConnPool getPool() throws IOException
+	{
+		if (pool == null) {
+			pool = new BasicConnPool(new PoolConnFactory());
+			pool.setMaxTotal(maxTotalConnections);
+			pool.setDefaultMaxPerRoute(maxHostConnections);
+			pool.setValidateAfterInactivity(staleChecking ? VALIDATE_AFTER_INACTIVITY_MS : 0);
+		} else if (pool.isShutdown()) {
+			throw new IOException("Factory closed");
+		}
+
+		return pool;
+	}
+
+	protected void closeIdle(BasicConnPool pool)
+	{
+		long now = System.currentTimeMillis();
+
+		if ((idleTimeout > 0) && (now - lastEviction >= (idleTimeout / 2))) {
+			lastEviction = now;
+			pool.closeExpired();
+			pool.closeIdle(idleTimeout, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	protected BasicPoolEntry lease(HttpHost route) throws IOException
+	{
+		BasicConnPool pool = getPool();
+		closeIdle(pool);
+
+		Future<BasicPoolEntry> future = pool.lease(route, null);
+
+		try {
+			if (leaseTimeout > 0) {
+				return future.get(leaseTimeout, TimeUnit.MILLISECONDS);
+			} else {
+				return future.get();
+			}
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for connection to " + route);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			throw new IOException("Timeout waiting for connection to " + route);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	protected void release(BasicPoolEntry entry, boolean reusable)
+	{
+		if (!reusable) {
+			try {
+				entry.getConnection().close();
+			} catch (IOException io) {
+				LOGGER.warning(io.toString());
+			}
+		}
+
+		pool.release(entry, reusable);
+	}
+
+	/**
+	 * Send a request, over a pooled connection.
+	 *
+	 * @param method GET or HEAD
+	 * @param headers headers of the request, name then value
+	 * @return response, with its entity, if any, to read to the end or close
+	 * @throws IOException
+	 */
+	protected PooledResponse execute(String method, URL url, String... headers) throws IOException
+	{
+		HttpHost target = new HttpHost(url.getHost(), url.getPort(), url.getProtocol());
+		HttpHost route = target;
+		String uri = url.getFile();
+
+		if ((proxy != null) && "http".equalsIgnoreCase(url.getProtocol())) {
+			route = proxy;
+			uri = url.toString();
+		}
+
+		if (uri.isEmpty()) {
+			uri = "/";
+		}
+
+		HttpRequest request = new BasicHttpRequest(method, uri, HttpVersion.HTTP_1_1);
+
+		for (int i = 0; i < headers.length; i += 2) {
+			request.setHeader(headers[i], headers[i + 1]);
+		}
+
+		for (int attempt = 0; ; attempt++) {
+			BasicPoolEntry entry = lease(route);
+
+			try {
+				HttpClientConnection conn = entry.getConnection();
+				conn.setSocketTimeout(readTimeout);
+
+				HttpCoreContext context = HttpCoreContext.create();
+				context.setTargetHost(target);
+
+				requestExecutor.preProcess(request, httpProcessor, context);
+				HttpResponse response = requestExecutor.execute(request, conn, context);
+				requestExecutor.postProcess(response, httpProcessor, context);
+
+				return new PooledResponse(entry, response, reuseStrategy.keepAlive(response, context));
+
+			} catch (HttpException e) {
+				release(entry, false);
+				throw new IOException(e);
+
+			} catch (IOException io) {
+				release(entry, false);
+
+				if (attempt >= numRetries) {
+					throw io;
+				}
+
+				if (LOGGER.isLoggable(Level.FINE)) {
+					LOGGER.fine("Retrying " + url + " after " + io);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Response over a leased connection, released to the pool when its
+	 * entity is read to the end, or closed.
+	 */
+	protected class PooledResponse
+	{
+		private final BasicPoolEntry entry;
+		private final HttpResponse response;
+		private final boolean reusable;
+		private boolean released = false;
+		private InputStream content = null;
+
+		PooledResponse(BasicPoolEntry entry, HttpResponse response, boolean reusable) throws IOException
+		{
+			this.entry = entry;
+			this.response = response;
+			this.reusable = reusable;
+
+			HttpEntity entity = response.getEntity();
+
+			if (entity == null) {
+				release(true);
+			} else {
+				content = new ReleasingInputStream(entity.getContent(), entity.getContentLength());
+			}
+		}
+
+		public HttpResponse getResponse()
+		{
+			return response;
+		}
+
+		public int getStatusCode()
+		{
+			return response.getStatusLine().getStatusCode();
+		}
+
+		public String getHeaderValue(String name)
+		{
+			Header header = response.getFirstHeader(name);
+			return (header == null) ? null : header.getValue();
+		}
+
+		/**
+		 * @return the entity, or an empty stream if there is none
+		 */
+		public InputStream getContent()
+		{
+			if (content == null) {
+				return new ReleasingInputStream(null, 0);
+			}
+
+			return content;
+		}
+
+		public void close()
+		{
+			if (content != null) {
+				try {
+					content.close();
+				} catch (IOException io) {
+					LOGGER.warning(io.toString());
+				}
+			}
+
+			release(false);
+		}
+
+		protected synchronized void release(boolean atEnd)
+		{
+			if (released) {
+				return;
+			}
+
+			released = true;
+			ApacheHttp43PooledSLRFactory.this.release(entry, reusable && atEnd);
+		}
+
+		class ReleasingInputStream extends FilterInputStream
+		{
+			private long remaining;
+
+			ReleasingInputStream(InputStream in, long length)
+			{
+				super(in);
+				remaining = length;
+
+				if (remaining == 0) {
+					release(true);
+				}
+			}
+
+			@Override
+			public int read() throws IOException
+			{
+				if (released) {
+					return -1;
+				}
+
+				int b = in.read();
+				done((b < 0) ? -1 : 1);
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException
+			{
+				if (released) {
+					return -1;
+				}
+
+				int amt = in.read(b, off, len);
+				done(amt);
+				return amt;
+			}
+
+			@Override
+			public long skip(long n) throws IOException
+			{
+				if (released) {
+					return 0;
+				}
+
+				long amt = in.skip(n);
+				remaining -= amt;
+
+				if (remaining == 0) {
+					release(true);
+				}
+
+				return amt;
+			}
+
+			@Override
+			public int available() throws IOException
+			{
+				return released ? 0 : in.available();
+			}
+
+			private void done(int amt)
+			{
+				if (amt < 0) {
+					release(true);
+					return;
+				}
+
+				remaining -= amt;
+
+				if (remaining == 0) {
+					release(true);
+				}
+			}
+
+			@Override
+			public void close() throws IOException
+			{
+				if (released) {
+					return;
+				}
+
+				// Keep the connection if the rest of the response is short
+				if ((remaining > 0) && (remaining <= MAX_DRAIN_SIZE)) {
+					try {
+						byte[] buff = new byte[BUFF_SIZE];
+
+						while (!released) {
+							read(buff, 0, buff.length);
+						}
+
+						return;
+					} catch (IOException io) {
+
+					}
+				}
+
+				release(false);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	@Override
+	public void setProxyHostPort(String hostPort) {
+		if (hostPort == null) {
+			proxy = null;
+			return;
+		}
+
+		int colon = hostPort.lastIndexOf(':');
+
+		if (colon < 0) {
+			proxy = new HttpHost(hostPort, 80);
+		} else {
+			proxy = new HttpHost(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1)));
+		}
+	}
+
+	@Override
+	public synchronized void setMaxTotalConnections(int maxTotalConnections) {
+		this.maxTotalConnections = maxTotalConnections;
+
+		if (pool != null) {
+			pool.setMaxTotal(maxTotalConnections);
+		}
+	}
+
+	@Override
+	public int getMaxTotalConnections() {
+		return maxTotalConnections;
+	}
+
+	@Override
+	public synchronized void setMaxHostConnections(int maxHostConnections) {
+		this.maxHostConnections = maxHostConnections;
+
+		if (pool != null) {
+			pool.setDefaultMaxPerRoute(maxHostConnections);
+		}
+	}
+
+	@Override
+	public int getMaxHostConnections() {
+		return maxHostConnections;
+	}
+
+	@Override
+	public int getConnectionTimeoutMS() {
+		return connectTimeout;
+	}
+
+	@Override
+	public void setConnectionTimeoutMS(int connectionTimeoutMS) {
+		connectTimeout = connectionTimeoutMS;
+	}
+
+	@Override
+	public int getSocketTimeoutMS() {
+		return readTimeout;
+	}
+
+	@Override
+	public void setSocketTimeoutMS(int socketTimeoutMS) {
+		readTimeout = socketTimeoutMS;
+	}
+
+	/**
+	 * @return ms to wait for a pooled connection when all are in use, 0 to
+	 * wait without limit
+	 */
+	public int getLeaseTimeoutMS() {
+		return leaseTimeout;
+	}
+
+	public void setLeaseTimeoutMS(int leaseTimeoutMS) {
+		leaseTimeout = leaseTimeoutMS;
+	}
+
+	/**
+	 * @return ms after which idle connections are closed, 0 to keep them
+	 */
+	public int getIdleTimeoutMS() {
+		return idleTimeout;
+	}
+
+	public void setIdleTimeoutMS(int idleTimeoutMS) {
+		idleTimeout = idleTimeoutMS;
+	}
+
+	/**
+	 * @param enabled check pooled connections idle for over a second before
+	 * reusing them
+	 */
+	@Override
+	public synchronized void setStaleChecking(boolean enabled) {
+		staleChecking = enabled;
+
+		if (pool != null) {
+			pool.setValidateAfterInactivity(enabled ? VALIDATE_AFTER_INACTIVITY_MS : 0);
+		}
+	}
+
+	@Override
+	public boolean isStaleChecking() {
+		return staleChecking;
+	}
+
+	/**
+	 * @return size of the range requested at a time, doubling as it is
+	 * read, by a seek without a maxLength
+	 */
+	public int getReadAheadSize() {
+		return readAheadSize;
+	}
+
+	public void setReadAheadSize(int readAheadSize) {
+		this.readAheadSize = readAheadSize;
+	}
+
+	@Override
+	public long getModTime() {
+		return 0;
+	}
+
+	@Override
+	public void setNumRetries(int numRetries) {
+		this.numRetries = numRetries;
+	}
+
+	public int getNumRetries() {
+		return numRetries;
+	}
+}
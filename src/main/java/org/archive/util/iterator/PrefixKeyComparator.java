@@ -0,0 +1,22 @@
+package org.archive.util.iterator;
+
+import java.util.Comparator;
+
+/**
+ * Comparator which can order most elements by a long key computed once
+ * per element, as from the first characters of a String, so that
+ * {@link SortedCompositeIterator} compares the keys of the heads of its
+ * iterators instead of the elements.
+ *
+ * @param <E>
+ */
+public interface PrefixKeyComparator<E> extends Comparator<E> {
+
+	/**
+	 * @return a key such that, if the keys of two elements differ when
+	 * compared as unsigned longs, the elements compare in the same order;
+	 * elements with equal keys are compared with
+	 * {@link #compare(Object, Object)}
+	 */
+	public long prefixKey(E e);
+}
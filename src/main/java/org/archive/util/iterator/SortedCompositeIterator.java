@@ -1,26 +1,54 @@
 package org.archive.util.iterator;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.PriorityQueue;
 import java.util.logging.Logger;
 
-
+/**
+ * Merges sorted iterators into one sorted iterator, with a loser tree: the
+ * heads of the iterators are the leaves of a tournament, each internal node
+ * keeps the loser of the match played there and the overall winner is the
+ * next element. After taking it, only the matches on the path from its
+ * iterator to the root are replayed, one comparison per level.
+ *
+ * With a {@link PrefixKeyComparator}, the prefix key of each head is
+ * computed once, and elements are only compared when their keys are equal.
+ * Elements which compare equal are returned in the order their iterators
+ * were added. Iterators must not return null elements: a null element is
+ * rejected with a NullPointerException.
+ */
 public class SortedCompositeIterator<E> implements CloseableIterator<E> {
-	
+
 	private final static Logger LOGGER = Logger.getLogger(SortedCompositeIterator.class.getName());
 	private static final int DEFAULT_CAPACITY = 10;
-	PriorityQueue<PeekableIterator<E>> q = null;
+
+	private final Comparator<E> comparator;
+	private final PrefixKeyComparator<E> prefixComparator;
+
+	/** iterators added since the tree was built */
+	private List<Iterator<E>> added;
+
+	private Iterator<E>[] iterators;
+	/** head of each iterator, null once exhausted */
+	private Object[] heads;
+	private long[] prefixes;
+	/** tree[0] is the winner, tree[1..k-1] the losers of the internal nodes */
+	private int[] tree;
+	private int k = 0;
 
 	public SortedCompositeIterator(Comparator<E> comparator) {
 		this(DEFAULT_CAPACITY,comparator);
 	}
 	public SortedCompositeIterator(int capacity, Comparator<E> comparator) {
-		q = new PriorityQueue<PeekableIterator<E>>(capacity, 
-				new PeekableIteratorComparator<E>(comparator));
+		this.comparator = comparator;
+		this.prefixComparator = (comparator instanceof PrefixKeyComparator)
+				? (PrefixKeyComparator<E>) comparator : null;
+		this.added = new ArrayList<Iterator<E>>(capacity);
 	}
 	public void addAll(Collection<Iterator<E>> toAdd) {
 		for(Iterator<E> e : toAdd) {
@@ -28,60 +56,161 @@ public class SortedCompositeIterator<E> implements CloseableIterator<E> {
 		}
 	}
 	public void addIterator(Iterator<E> itr) {
-		PeekableIterator<E> i = null;
-		if(itr instanceof PeekableIterator) {
-			i = (PeekableIterator<E>) itr;
-		} else {
-			i = AbstractPeekableIterator.wrap(itr);
-		}
-		if(i.hasNext()) {
-			q.add(i);
+		if(itr.hasNext()) {
+			added.add(itr);
 		}
 	}
 
 	public boolean hasNext() {
-		return (q.peek() != null);
+		if(!added.isEmpty()) {
+			build();
+		}
+		return (k > 0) && (heads[tree[0]] != null);
 	}
 
+	@SuppressWarnings("unchecked")
 	public E next() {
-		PeekableIterator<E> i = q.poll();
-		if(i == null) {
+		if(!hasNext()) {
 			throw new NoSuchElementException("Call hasNext!");
 		}
-		E tmp = i.next();
+		int winner = tree[0];
+		E tmp = (E) heads[winner];
+		advance(winner);
+
+		// replay the matches of the winner's leaf, up to the root
+		for(int node = (winner + k) >> 1; node > 0; node >>= 1) {
+			int loser = tree[node];
+			if(beats(loser, winner)) {
+				tree[node] = winner;
+				winner = loser;
+			}
+		}
+		tree[0] = winner;
+		return tmp;
+	}
+
+	private void advance(int leaf) {
+		Iterator<E> i = iterators[leaf];
 		if(i.hasNext()) {
-			q.add(i);
+			E head = i.next();
+			if(head == null) {
+				throw new NullPointerException("Null element from iterator " + i);
+			}
+			heads[leaf] = head;
+			if(prefixComparator != null) {
+				prefixes[leaf] = prefixComparator.prefixKey(head);
+			}
 		} else {
+			heads[leaf] = null;
 			try {
-				i.close();
+				CloseableIteratorUtil.attemptClose(i);
 			} catch (IOException e) {
 				throw new RuntimeException(e);
 			}
 		}
-		return tmp;
 	}
-	public void remove() {
-		throw new UnsupportedOperationException("No remove");
+
+	/**
+	 * @return true if the head of leaf a comes before the head of leaf b:
+	 * exhausted iterators come last, ties go to the first added
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean beats(int a, int b) {
+		Object ha = heads[a];
+		Object hb = heads[b];
+		if(hb == null) {
+			return (ha != null) || (a < b);
+		}
+		if(ha == null) {
+			return false;
+		}
+		int cmp;
+		if(prefixComparator != null && prefixes[a] != prefixes[b]) {
+			cmp = Long.compareUnsigned(prefixes[a], prefixes[b]);
+		} else {
+			cmp = comparator.compare((E) ha, (E) hb);
+		}
+		return (cmp < 0) || ((cmp == 0) && (a < b));
 	}
-	
-	private class PeekableIteratorComparator<J> implements Comparator<PeekableIterator<J>> {
-		private Comparator<J> comparator = null;
-		public PeekableIteratorComparator(Comparator<J> comparator) {
-			this.comparator = comparator;
+
+	/**
+	 * (Re)build the tree from the iterators not exhausted and the added
+	 * ones, in the order they were added.
+	 */
+	@SuppressWarnings("unchecked")
+	private void build() {
+		List<Iterator<E>> live = new ArrayList<Iterator<E>>(k + added.size());
+		List<Object> liveHeads = new ArrayList<Object>(k + added.size());
+		for(int i = 0; i < k; i++) {
+			if(heads[i] != null) {
+				live.add(iterators[i]);
+				liveHeads.add(heads[i]);
+			}
 		}
+		int kept = live.size();
+		live.addAll(added);
+		added.clear();
 
-		public int compare(PeekableIterator<J> o1, PeekableIterator<J> o2) {
-			return comparator.compare(o1.peek(), o2.peek());
+		k = live.size();
+		iterators = (Iterator<E>[]) live.toArray(new Iterator<?>[k]);
+		heads = new Object[k];
+		prefixes = new long[k];
+		tree = new int[Math.max(k, 1)];
+		for(int i = 0; i < k; i++) {
+			if(i < kept) {
+				heads[i] = liveHeads.get(i);
+				if(prefixComparator != null) {
+					prefixes[i] = prefixComparator.prefixKey((E) heads[i]);
+				}
+			} else {
+				advance(i);
+			}
+		}
+
+		// play each leaf up until the first node not played yet
+		for(int node = 0; node < tree.length; node++) {
+			tree[node] = -1;
+		}
+		for(int leaf = 0; leaf < k; leaf++) {
+			int winner = leaf;
+			int node = (leaf + k) >> 1;
+			for(; node > 0; node >>= 1) {
+				int loser = tree[node];
+				if(loser == -1) {
+					tree[node] = winner;
+					break;
+				}
+				if(beats(loser, winner)) {
+					tree[node] = winner;
+					winner = loser;
+				}
+			}
+			if(node == 0) {
+				tree[0] = winner;
+			}
 		}
 	}
 
+	public void remove() {
+		throw new UnsupportedOperationException("No remove");
+	}
+
 	public void close() throws IOException {
-		for(PeekableIterator<E> i : q) {
-			try {
-				i.close();
-			} catch (IOException io) {
-				LOGGER.warning(io.toString());
+		for(int i = 0; i < k; i++) {
+			if(heads[i] != null) {
+				attemptClose(iterators[i]);
 			}
 		}
-	}	
+		for(Iterator<E> i : added) {
+			attemptClose(i);
+		}
+	}
+
+	private void attemptClose(Iterator<E> i) {
+		try {
+			CloseableIteratorUtil.attemptClose(i);
+		} catch (IOException io) {
+			LOGGER.warning(io.toString());
+		}
+	}
 }
@@ -0,0 +1,37 @@
+package org.archive.util.iterator;
+
+/**
+ * Orders Strings as {@link String#compareTo(String)}, or in reverse, with
+ * their first 4 chars as prefix keys.
+ */
+public class StringPrefixComparator implements PrefixKeyComparator<String> {
+
+	public final static StringPrefixComparator NATURAL = new StringPrefixComparator(false);
+	public final static StringPrefixComparator REVERSE = new StringPrefixComparator(true);
+
+	private final boolean reverse;
+
+	protected StringPrefixComparator(boolean reverse) {
+		this.reverse = reverse;
+	}
+
+	public int compare(String s1, String s2) {
+		return reverse ? -s1.compareTo(s2) : s1.compareTo(s2);
+	}
+
+	public long prefixKey(String s) {
+		int length = Math.min(s.length(), 4);
+		long key = 0;
+		for (int i = 0; i < 4; i++) {
+			key <<= 16;
+			if (i < length) {
+				key |= s.charAt(i);
+			}
+		}
+		return reverse ? ~key : key;
+	}
+
+	public boolean isReverse() {
+		return reverse;
+	}
+}
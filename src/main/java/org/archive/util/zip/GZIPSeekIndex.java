@@ -0,0 +1,443 @@
+package org.archive.util.zip;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Index of inflate checkpoints into a gzip file, to read its uncompressed
+ * data from any offset by inflating from the closest checkpoint before it,
+ * as zran.c of zlib does. The index is built in one pass over the file, and
+ * saved next to it, with the {@link #INDEX_SUFFIX}.
+ *
+ * A checkpoint is either the start of a gzip member, or the start of a
+ * deflate block inside one, at a bit offset, with the 32K window of data
+ * preceding it. As {@link Inflater} cannot start at a bit offset, reading
+ * from a block first inflates a crafted empty block, whose length aligns
+ * the real block on the following bits.
+ */
+public class GZIPSeekIndex {
+    public final static String INDEX_SUFFIX = ".gzidx";
+
+    /** uncompressed bytes between checkpoints */
+    public final static int DEFAULT_SPAN = 1024 * 1024;
+
+    final static int WINDOW_SIZE = 32 * 1024;
+
+    private final static int MAGIC = 0x475a4958; // GZIX
+    private final static int VERSION = 2;
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    static class Checkpoint {
+        final long uncompressedOffset;
+        final long compressedOffset;
+        /** first bit of the block in the byte at compressedOffset, -1 for a member start */
+        final int bit;
+        final byte[] window;
+
+        Checkpoint(long uncompressedOffset, long compressedOffset, int bit, byte[] window) {
+            this.uncompressedOffset = uncompressedOffset;
+            this.compressedOffset = compressedOffset;
+            this.bit = bit;
+            this.window = window;
+        }
+    }
+
+    private final long compressedSize;
+    private final long uncompressedSize;
+    private final long checksum;
+    private final Checkpoint[] checkpoints;
+
+    GZIPSeekIndex(long compressedSize, long uncompressedSize, long checksum,
+            Checkpoint[] checkpoints) {
+        this.compressedSize = compressedSize;
+        this.uncompressedSize = uncompressedSize;
+        this.checksum = checksum;
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * CRC32 of the first and the last WINDOW_SIZE bytes of a gzip file, or
+     * of all of it if shorter, to tell files of the same size apart without
+     * reading them whole.
+     */
+    static long checksum(byte[] head, int headLength, byte[] tail, int tailLength) {
+        CRC32 crc = new CRC32();
+        crc.update(head, 0, headLength);
+        crc.update(tail, 0, tailLength);
+        return crc.getValue();
+    }
+
+    static long checksum(RandomAccessFile raf, long length) throws IOException {
+        int windowLength = (int) Math.min(WINDOW_SIZE, length);
+        byte[] head = new byte[windowLength];
+        byte[] tail = new byte[windowLength];
+        raf.seek(0);
+        raf.readFully(head);
+        raf.seek(length - windowLength);
+        raf.readFully(tail);
+        return checksum(head, windowLength, tail, windowLength);
+    }
+
+    /**
+     * Build the index of a gzip file, of one or more members.
+     *
+     * @param in the gzip file
+     * @param span uncompressed bytes between checkpoints
+     * @throws IOException if the file is not valid gzip
+     */
+    public static GZIPSeekIndex build(InputStream in, int span) throws IOException {
+        return new GZIPSeekIndexBuilder(in, span).build();
+    }
+
+    public static GZIPSeekIndex build(File gzFile, int span) throws IOException {
+        InputStream in = new FileInputStream(gzFile);
+        try {
+            return build(in, span);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static File getIndexFile(File gzFile) {
+        return new File(gzFile.getPath() + INDEX_SUFFIX);
+    }
+
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    public int getCheckpointCount() {
+        return checkpoints.length;
+    }
+
+    /**
+     * @return true if the index may be of gzFile: of the same size, and
+     * with the same first and last {@link #WINDOW_SIZE} bytes
+     */
+    public boolean isIndexOf(File gzFile) {
+        if (gzFile.length() != compressedSize) {
+            return false;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(gzFile, "r");
+            try {
+                return checksum(raf, compressedSize) == checksum;
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void write(File indexFile) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(indexFile)));
+        Deflater deflater = new Deflater();
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(compressedSize);
+            out.writeLong(uncompressedSize);
+            out.writeLong(checksum);
+            out.writeInt(checkpoints.length);
+            byte[] buffer = new byte[WINDOW_SIZE + 1024];
+            for (Checkpoint checkpoint : checkpoints) {
+                out.writeLong(checkpoint.uncompressedOffset);
+                out.writeLong(checkpoint.compressedOffset);
+                out.writeByte(checkpoint.bit);
+                deflater.reset();
+                deflater.setInput(checkpoint.window);
+                deflater.finish();
+                int length = deflater.deflate(buffer);
+                out.writeInt(checkpoint.window.length);
+                out.writeInt(length);
+                out.write(buffer, 0, length);
+            }
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    public static GZIPSeekIndex read(File indexFile) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)));
+        Inflater inflater = new Inflater();
+        try {
+            if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+                throw new IOException("Not a gzip seek index: " + indexFile);
+            }
+            long compressedSize = in.readLong();
+            long uncompressedSize = in.readLong();
+            long checksum = in.readLong();
+            Checkpoint[] checkpoints = new Checkpoint[in.readInt()];
+            byte[] buffer = new byte[WINDOW_SIZE + 1024];
+            for (int i = 0; i < checkpoints.length; i++) {
+                long uncompressedOffset = in.readLong();
+                long compressedOffset = in.readLong();
+                int bit = in.readByte();
+                byte[] window = new byte[in.readInt()];
+                int length = in.readInt();
+                in.readFully(buffer, 0, length);
+                inflater.reset();
+                inflater.setInput(buffer, 0, length);
+                try {
+                    if (inflater.inflate(window) != window.length) {
+                        throw new IOException("Bad window in " + indexFile);
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Bad window in " + indexFile, e);
+                }
+                checkpoints[i] = new Checkpoint(uncompressedOffset, compressedOffset, bit, window);
+            }
+            return new GZIPSeekIndex(compressedSize, uncompressedSize, checksum, checkpoints);
+        } finally {
+            inflater.end();
+            in.close();
+        }
+    }
+
+    /**
+     * @return the last checkpoint at or before offset
+     */
+    Checkpoint find(long offset) {
+        int low = 0;
+        int high = checkpoints.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (checkpoints[mid].uncompressedOffset <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return checkpoints[low];
+    }
+
+    /**
+     * Open the uncompressed data of the indexed file at offset. The stream
+     * reads the file from its current position, moved to the checkpoint, and
+     * shares its file descriptor: closing it does not close the file.
+     *
+     * @param raf the gzip file
+     * @param offset uncompressed offset
+     * @return stream of the uncompressed data from offset
+     */
+    public InputStream open(RandomAccessFile raf, long offset) throws IOException {
+        if (offset >= uncompressedSize) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        Checkpoint checkpoint = find(offset);
+        raf.seek(checkpoint.compressedOffset);
+        // shares the position of raf, without holding on to it until closed
+        InputStream fileIn = new FilterInputStream(Channels.newInputStream(raf.getChannel())) {
+            @Override
+            public void close() {
+                // raf is closed by its owner
+            }
+        };
+        InputStream is;
+        if (checkpoint.bit < 0) {
+            is = new GZIPMembersInputStream(fileIn, BUFFER_SIZE);
+        } else {
+            is = new CheckpointInputStream(fileIn, checkpoint);
+        }
+        ByteStreams.skipFully(is, offset - checkpoint.uncompressedOffset);
+        return is;
+    }
+
+    /**
+     * Writes bits, from the least significant, as deflate does
+     */
+    private static class BitWriter {
+        private final byte[] bytes;
+        private int bitCount = 0;
+
+        BitWriter(int bits) {
+            bytes = new byte[(bits + 7) / 8];
+        }
+
+        void write(int value, int bits) {
+            for (int i = 0; i < bits; i++) {
+                if (((value >>> i) & 1) != 0) {
+                    bytes[bitCount >>> 3] |= 1 << (bitCount & 7);
+                }
+                bitCount++;
+            }
+        }
+    }
+
+    /**
+     * A non-final, empty, dynamic Huffman block of 330 + h bits, with h + 257
+     * literal/length codes. The code length code has codes 0 and 1, each of
+     * 1 bit; the literal/length code only the end of block, of 1 bit; the
+     * distance code none.
+     *
+     * @param bit start of the following block in the last byte
+     * @return the block, with the last byte partial if bit &gt; 0
+     */
+    static byte[] primer(int bit) {
+        int h = (bit + 6) & 7;
+        BitWriter writer = new BitWriter(330 + h);
+        // BFINAL 0, BTYPE 2
+        writer.write(0, 1);
+        writer.write(2, 2);
+        // HLIT, HDIST (1 code), HCLEN (18 codes, up to that of length 1)
+        writer.write(h, 5);
+        writer.write(0, 5);
+        writer.write(14, 4);
+        for (int i = 0; i < 18; i++) {
+            // code length code lengths in order 16, 17, 18, 0, ... 1
+            writer.write(((i == 3) || (i == 17)) ? 1 : 0, 3);
+        }
+        // literal/length code lengths: only 256, then the distance length
+        for (int i = 0; i < 257 + h + 1; i++) {
+            writer.write((i == 256) ? 1 : 0, 1);
+        }
+        // end of block
+        writer.write(0, 1);
+        return writer.bytes;
+    }
+
+    /**
+     * Inflates a member from a block checkpoint, and continues with the
+     * following members, if any.
+     */
+    static class CheckpointInputStream extends InputStream {
+        private final InputStream fileIn;
+        private final Inflater inflater = new Inflater(true);
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private byte[] input;
+        private int inputEnd;
+        private InputStream members = null;
+        private boolean eof = false;
+
+        CheckpointInputStream(InputStream fileIn, Checkpoint checkpoint) throws IOException {
+            this.fileIn = fileIn;
+            if (checkpoint.window.length > 0) {
+                inflater.setDictionary(checkpoint.window);
+            }
+            input = primer(checkpoint.bit);
+            if (checkpoint.bit > 0) {
+                int first = fileIn.read();
+                if (first < 0) {
+                    throw new EOFException("Unexpected end of gzip data");
+                }
+                input[input.length - 1] |= (byte) (first & (0xff << checkpoint.bit));
+            }
+            inputEnd = input.length;
+            inflater.setInput(input, 0, inputEnd);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int amt = read(b, 0, 1);
+            return (amt < 0) ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (members != null) {
+                    return members.read(b, off, len);
+                }
+                if (eof) {
+                    return -1;
+                }
+                int amt;
+                try {
+                    amt = inflater.inflate(b, off, len);
+                } catch (DataFormatException e) {
+                    throw new ZipException(e.getMessage());
+                }
+                if (amt > 0) {
+                    return amt;
+                }
+                if (inflater.finished()) {
+                    nextMembers();
+                } else if (inflater.needsInput()) {
+                    int read = fileIn.read(buffer, 0, buffer.length);
+                    if (read < 0) {
+                        throw new EOFException("Unexpected end of gzip data");
+                    }
+                    input = buffer;
+                    inputEnd = read;
+                    inflater.setInput(buffer, 0, read);
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("Dictionary needed");
+                }
+            }
+        }
+
+        private void nextMembers() throws IOException {
+            int remaining = inflater.getRemaining();
+            InputStream rest = new BufferedInputStream(new SequenceInputStream(
+                    new ByteArrayInputStream(input, inputEnd - remaining, remaining), fileIn));
+            // trailer of this member
+            ByteStreams.skipFully(rest, 8);
+            rest.mark(1);
+            if (rest.read() < 0) {
+                eof = true;
+                return;
+            }
+            rest.reset();
+            members = new GZIPMembersInputStream(rest, BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            if (members != null) {
+                members.close();
+            } else {
+                fileIn.close();
+            }
+        }
+    }
+
+    /**
+     * Build the index of a gzip file, saved next to it
+     */
+    public static void main(String[] args) throws IOException {
+        if ((args.length < 1) || (args.length > 2)) {
+            System.err.println("USAGE: GZIPSeekIndex FILE.gz [SPAN]");
+            System.err.println("\twrites FILE.gz" + INDEX_SUFFIX + ", with a checkpoint every SPAN uncompressed bytes");
+            System.exit(1);
+        }
+        File gzFile = new File(args[0]);
+        int span = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_SPAN;
+        GZIPSeekIndex index = build(gzFile, span);
+        index.write(getIndexFile(gzFile));
+        System.out.println(index.getCheckpointCount() + " checkpoints, "
+                + index.getUncompressedSize() + " bytes");
+    }
+}
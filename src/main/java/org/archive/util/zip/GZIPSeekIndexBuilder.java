@@ -0,0 +1,427 @@
+package org.archive.util.zip;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipException;
+
+import org.archive.util.zip.GZIPSeekIndex.Checkpoint;
+
+/**
+ * Builds a {@link GZIPSeekIndex} in one pass over a gzip file, inflating
+ * it with a decoder which, unlike {@link java.util.zip.Inflater}, gives the
+ * bit offset of each deflate block: checkpoints are taken at the first
+ * block starting at least span bytes after the previous one, with the 32K
+ * window of uncompressed data before it.
+ */
+class GZIPSeekIndexBuilder {
+    private final static int[] LENGTH_BASE = {
+        3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+        35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private final static int[] LENGTH_EXTRA = {
+        0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+        3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private final static int[] DIST_BASE = {
+        1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+        257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145,
+        8193, 12289, 16385, 24577};
+    private final static int[] DIST_EXTRA = {
+        0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+        7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+    private final static int[] CODE_LENGTH_ORDER = {
+        16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private final static int MAX_BITS = 15;
+    private final static int WINDOW_MASK = GZIPSeekIndex.WINDOW_SIZE - 1;
+
+    /**
+     * Canonical Huffman code, decoded with a table indexed by the next
+     * maxLength bits: entries are symbol << 4 | code length, 0 for bits
+     * which are not a code.
+     */
+    static class Huffman {
+        int[] table = new int[1 << MAX_BITS];
+        int maxLength;
+
+        void build(int[] lengths, int off, int count) throws ZipException {
+            int[] lengthCount = new int[MAX_BITS + 1];
+            maxLength = 0;
+            for (int i = 0; i < count; i++) {
+                lengthCount[lengths[off + i]]++;
+                maxLength = Math.max(maxLength, lengths[off + i]);
+            }
+            Arrays.fill(table, 0, 1 << maxLength, 0);
+            lengthCount[0] = 0;
+            int[] nextCode = new int[MAX_BITS + 2];
+            int left = 1;
+            for (int len = 1; len <= MAX_BITS; len++) {
+                left = (left << 1) - lengthCount[len];
+                if (left < 0) {
+                    throw new ZipException("Over-subscribed Huffman code");
+                }
+                nextCode[len + 1] = (nextCode[len] + lengthCount[len]) << 1;
+            }
+            for (int symbol = 0; symbol < count; symbol++) {
+                int len = lengths[off + symbol];
+                if (len == 0) {
+                    continue;
+                }
+                int code = nextCode[len]++;
+                // codes are packed from their most significant bit
+                int reversed = Integer.reverse(code) >>> (32 - len);
+                for (int i = reversed; i < (1 << maxLength); i += (1 << len)) {
+                    table[i] = (symbol << 4) | len;
+                }
+            }
+        }
+    }
+
+    private final InputStream in;
+    private final long span;
+
+    private final byte[] buf = new byte[64 * 1024];
+    private int bufPos = 0;
+    private int bufLen = 0;
+    /** offset in the file of the byte after buf */
+    private long bufEnd = 0;
+
+    private long bitBuf = 0;
+    private int bitCount = 0;
+
+    /** first compressed bytes, and the last ones read, for the checksum */
+    private final byte[] head = new byte[GZIPSeekIndex.WINDOW_SIZE];
+    private final byte[] recent = new byte[GZIPSeekIndex.WINDOW_SIZE + buf.length];
+
+    private final byte[] window = new byte[GZIPSeekIndex.WINDOW_SIZE];
+    private long out = 0;
+    private long memberStart = 0;
+
+    private final Huffman fixedLiterals = new Huffman();
+    private final Huffman fixedDistances = new Huffman();
+    private final Huffman literals = new Huffman();
+    private final Huffman distances = new Huffman();
+    private final Huffman codeLengths = new Huffman();
+
+    private final List<Checkpoint> checkpoints = new ArrayList<Checkpoint>();
+    private long lastCheckpoint = 0;
+
+    GZIPSeekIndexBuilder(InputStream in, long span) throws ZipException {
+        this.in = in;
+        this.span = span;
+
+        int[] lengths = new int[288];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, 288, 8);
+        fixedLiterals.build(lengths, 0, 288);
+        Arrays.fill(lengths, 0, 30, 5);
+        fixedDistances.build(lengths, 0, 30);
+    }
+
+    private int nextByte() throws IOException {
+        if (bufPos == bufLen) {
+            int amt = in.read(buf, 0, buf.length);
+            if (amt <= 0) {
+                return -1;
+            }
+            bufPos = 0;
+            bufLen = amt;
+            keep(amt);
+            bufEnd += amt;
+        }
+        return buf[bufPos++] & 0xff;
+    }
+
+    /**
+     * Copy the amt bytes just read to buf to head, if at the start of the
+     * file, and to the recent bytes
+     */
+    private void keep(int amt) {
+        if (bufEnd < head.length) {
+            System.arraycopy(buf, 0, head, (int) bufEnd, (int) Math.min(amt, head.length - bufEnd));
+        }
+        for (int i = 0; i < amt; ) {
+            int pos = (int) ((bufEnd + i) % recent.length);
+            int length = Math.min(amt - i, recent.length - pos);
+            System.arraycopy(buf, i, recent, pos, length);
+            i += length;
+        }
+    }
+
+    /**
+     * @return checksum of the first and last bytes of the compressedSize
+     * bytes of the file, see {@link GZIPSeekIndex#checksum(byte[], int, byte[], int)}
+     */
+    private long checksum(long compressedSize) {
+        int windowLength = (int) Math.min(GZIPSeekIndex.WINDOW_SIZE, compressedSize);
+        byte[] tail = new byte[windowLength];
+        for (int i = 0; i < windowLength; i++) {
+            tail[i] = recent[(int) ((compressedSize - windowLength + i) % recent.length)];
+        }
+        return GZIPSeekIndex.checksum(head, windowLength, tail, windowLength);
+    }
+
+    /**
+     * @return offset in the file, in bits, of the next bit to decode
+     */
+    private long bitPosition() {
+        return ((bufEnd - (bufLen - bufPos)) * 8) - bitCount;
+    }
+
+    private int bits(int n) throws IOException {
+        while (bitCount < n) {
+            int b = nextByte();
+            if (b < 0) {
+                throw new EOFException("Unexpected end of gzip data");
+            }
+            bitBuf |= ((long) b) << bitCount;
+            bitCount += 8;
+        }
+        int value = (int) (bitBuf & ((1L << n) - 1));
+        bitBuf >>>= n;
+        bitCount -= n;
+        return value;
+    }
+
+    private void alignToByte() {
+        int drop = bitCount & 7;
+        bitBuf >>>= drop;
+        bitCount -= drop;
+    }
+
+    /**
+     * @return the next byte, aligned, or -1 at the end of the file
+     */
+    private int alignedByte() throws IOException {
+        if (bitCount >= 8) {
+            return bits(8);
+        }
+        return nextByte();
+    }
+
+    private int decode(Huffman code) throws IOException {
+        while (bitCount < code.maxLength) {
+            int b = nextByte();
+            if (b < 0) {
+                // codes at the very end may be shorter than maxLength
+                break;
+            }
+            bitBuf |= ((long) b) << bitCount;
+            bitCount += 8;
+        }
+        int entry = code.table[(int) (bitBuf & ((1L << code.maxLength) - 1))];
+        int len = entry & 15;
+        if (len == 0) {
+            throw new ZipException("Invalid Huffman code");
+        }
+        if (len > bitCount) {
+            throw new EOFException("Unexpected end of gzip data");
+        }
+        bitBuf >>>= len;
+        bitCount -= len;
+        return entry >>> 4;
+    }
+
+    private void readHeader(int id1) throws IOException {
+        if ((id1 != 0x1f) || (alignedByte() != 0x8b)) {
+            throw new NoGzipMagicException();
+        }
+        if (alignedByte() != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = alignedByte();
+        // MTIME, XFL, OS
+        for (int i = 0; i < 6; i++) {
+            alignedByte();
+        }
+        if ((flags & 4) != 0) {
+            int xlen = alignedByte() | (alignedByte() << 8);
+            for (int i = 0; i < xlen; i++) {
+                alignedByte();
+            }
+        }
+        if ((flags & 8) != 0) {
+            skipZeroTerminated();
+        }
+        if ((flags & 16) != 0) {
+            skipZeroTerminated();
+        }
+        if ((flags & 2) != 0) {
+            alignedByte();
+            alignedByte();
+        }
+    }
+
+    private void skipZeroTerminated() throws IOException {
+        int b;
+        while ((b = alignedByte()) > 0) {
+        }
+        if (b < 0) {
+            throw new EOFException("Unexpected end of gzip header");
+        }
+    }
+
+    private void addCheckpoint(long bitPosition, boolean memberHeader) {
+        int windowLength = (int) Math.min(GZIPSeekIndex.WINDOW_SIZE, out - memberStart);
+        byte[] copy = new byte[windowLength];
+        for (int i = 0; i < windowLength; i++) {
+            copy[i] = window[(int) ((out - windowLength + i) & WINDOW_MASK)];
+        }
+        int bit = memberHeader ? -1 : (int) (bitPosition & 7);
+        checkpoints.add(new Checkpoint(out, bitPosition >>> 3, bit, copy));
+        lastCheckpoint = out;
+    }
+
+    private void inflateStored() throws IOException {
+        alignToByte();
+        int len = bits(16);
+        int nlen = bits(16);
+        if (len != (~nlen & 0xffff)) {
+            throw new ZipException("Invalid stored block length");
+        }
+        for (int i = 0; i < len; i++) {
+            int b = alignedByte();
+            if (b < 0) {
+                throw new EOFException("Unexpected end of gzip data");
+            }
+            window[(int) (out & WINDOW_MASK)] = (byte) b;
+            out++;
+        }
+    }
+
+    private void readDynamicCodes() throws IOException {
+        int nlen = bits(5) + 257;
+        int ndist = bits(5) + 1;
+        int ncode = bits(4) + 4;
+        if ((nlen > 286) || (ndist > 30)) {
+            throw new ZipException("Too many length or distance codes");
+        }
+        int[] lengths = new int[19];
+        for (int i = 0; i < ncode; i++) {
+            lengths[CODE_LENGTH_ORDER[i]] = bits(3);
+        }
+        codeLengths.build(lengths, 0, 19);
+
+        lengths = new int[nlen + ndist];
+        int i = 0;
+        while (i < nlen + ndist) {
+            int symbol = decode(codeLengths);
+            if (symbol < 16) {
+                lengths[i++] = symbol;
+                continue;
+            }
+            int repeat;
+            int value = 0;
+            if (symbol == 16) {
+                if (i == 0) {
+                    throw new ZipException("Repeat with no first length");
+                }
+                value = lengths[i - 1];
+                repeat = 3 + bits(2);
+            } else if (symbol == 17) {
+                repeat = 3 + bits(3);
+            } else {
+                repeat = 11 + bits(7);
+            }
+            if (i + repeat > nlen + ndist) {
+                throw new ZipException("Too many code lengths");
+            }
+            while (repeat-- > 0) {
+                lengths[i++] = value;
+            }
+        }
+        if (lengths[256] == 0) {
+            throw new ZipException("No end of block code");
+        }
+        literals.build(lengths, 0, nlen);
+        distances.build(lengths, nlen, ndist);
+    }
+
+    private void inflateCodes(Huffman lit, Huffman dist) throws IOException {
+        while (true) {
+            int symbol = decode(lit);
+            if (symbol < 256) {
+                window[(int) (out & WINDOW_MASK)] = (byte) symbol;
+                out++;
+                continue;
+            }
+            if (symbol == 256) {
+                return;
+            }
+            symbol -= 257;
+            if (symbol >= 29) {
+                throw new ZipException("Invalid length code");
+            }
+            int len = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+            int distSymbol = decode(dist);
+            if (distSymbol >= 30) {
+                throw new ZipException("Invalid distance code");
+            }
+            int distance = DIST_BASE[distSymbol] + bits(DIST_EXTRA[distSymbol]);
+            if (distance > out - memberStart) {
+                throw new ZipException("Distance too far back");
+            }
+            for (int i = 0; i < len; i++) {
+                window[(int) (out & WINDOW_MASK)] = window[(int) ((out - distance) & WINDOW_MASK)];
+                out++;
+            }
+        }
+    }
+
+    GZIPSeekIndex build() throws IOException {
+        boolean first = true;
+        while (true) {
+            int id1 = alignedByte();
+            if (id1 < 0) {
+                if (first) {
+                    throw new EOFException("Empty gzip file");
+                }
+                break;
+            }
+            long memberOffset = (bitPosition() >>> 3) - 1;
+            readHeader(id1);
+            memberStart = out;
+            if (first || (out - lastCheckpoint >= span)) {
+                addCheckpoint(memberOffset * 8, true);
+            }
+            first = false;
+
+            boolean last;
+            do {
+                long blockStart = bitPosition();
+                if (out - lastCheckpoint >= span) {
+                    addCheckpoint(blockStart, false);
+                }
+                last = (bits(1) == 1);
+                int type = bits(2);
+                if (type == 0) {
+                    inflateStored();
+                } else if (type == 1) {
+                    inflateCodes(fixedLiterals, fixedDistances);
+                } else if (type == 2) {
+                    readDynamicCodes();
+                    inflateCodes(literals, distances);
+                } else {
+                    throw new ZipException("Invalid block type");
+                }
+            } while (!last);
+
+            alignToByte();
+            // CRC32, checked when read from the start of the member, not
+            // from a block checkpoint within it
+            bits(16);
+            bits(16);
+            long isize = bits(16) | ((long) bits(16) << 16);
+            if (isize != ((out - memberStart) & 0xffffffffL)) {
+                throw new ZipException("Uncompressed size mismatch");
+            }
+        }
+        long compressedSize = bitPosition() >>> 3;
+        return new GZIPSeekIndex(compressedSize, out, checksum(compressedSize),
+                checkpoints.toArray(new Checkpoint[checkpoints.size()]));
+    }
+}
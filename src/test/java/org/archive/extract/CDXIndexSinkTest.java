@@ -0,0 +1,227 @@
+package org.archive.extract;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.archive.format.warc.WARCConstants;
+import org.archive.format.warc.WARCConstants.WARCRecordType;
+import org.archive.io.ParallelGZIPCompressor;
+import org.archive.io.warc.WARCRecordInfo;
+import org.archive.io.warc.WARCWriter;
+import org.archive.io.warc.WARCWriterPoolSettingsData;
+import org.archive.resource.Resource;
+import org.archive.uid.UUIDGenerator;
+import org.archive.url.WaybackURLKeyMaker;
+import org.archive.util.Base32;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CDXIndexSinkTest {
+
+    private static final AtomicInteger SERIAL_NO = new AtomicInteger();
+
+    private UUIDGenerator generator = new UUIDGenerator();
+
+    @TempDir
+    File tempDir;
+
+    private static final String HTML_PAGE =
+            "HTTP/1.1 200 OK\r\n"
+            + "Content-Type: text/html; charset=UTF-8\r\n"
+            + "\r\n"
+            + "<html><head><meta name=\"robots\" content=\"noindex, nofollow\">"
+            + "<meta http-equiv=\"refresh\" content=\"5; url=/next.html\">"
+            + "</head><body>Hello</body></html>";
+
+    private static final String REDIRECT =
+            "HTTP/1.1 301 Moved Permanently\r\n"
+            + "Location: /moved/\r\n"
+            + "X-Robots-Tag: noarchive\r\n"
+            + "Content-Length: 0\r\n"
+            + "\r\n";
+
+    private static final String IMAGE =
+            "HTTP/1.0 404 Not Found\r\n"
+            + "Content-Type: image/gif\r\n"
+            + "\r\n"
+            + "GIF89a not really";
+
+    private static final String REPEATED =
+            "HTTP/1.1 200 OK\r\n"
+            + "Content-Type: text/plain\r\n"
+            + "X-Robots-Tag: noarchive\r\n"
+            + "X-Robots-Tag: noindex\r\n"
+            + "\r\n"
+            + "text";
+
+    private static final String REQUEST =
+            "GET / HTTP/1.1\r\n"
+            + "Host: example.com\r\n"
+            + "\r\n";
+
+    private void writeRecord(WARCWriter w, WARCRecordType type, String url,
+            String mimetype, String content) throws IOException {
+        WARCRecordInfo recordInfo = new WARCRecordInfo();
+        recordInfo.setType(type);
+        recordInfo.setUrl(url);
+        recordInfo.setCreate14DigitDate("2017-03-04T05:06:07Z");
+        recordInfo.setMimetype(mimetype);
+        recordInfo.setRecordId(generator.getRecordID());
+        byte[] bytes = content.getBytes(UTF_8);
+        recordInfo.setContentLength(bytes.length);
+        recordInfo.setContentStream(new ByteArrayInputStream(bytes));
+        recordInfo.setEnforceLength(true);
+        if (type == WARCRecordType.revisit) {
+            recordInfo.addExtraHeader(WARCConstants.HEADER_KEY_PAYLOAD_DIGEST,
+                    "sha1:3I42H3S6NNFQ2MSVX7XZKYAYSCX5QBYJ");
+        }
+        w.writeRecord(recordInfo);
+    }
+
+    private File writeWARC(String prefix, CDXIndexSink sink,
+            ParallelGZIPCompressor compressor) throws IOException {
+        return writeWARC(prefix, sink, compressor, true);
+    }
+
+    private File writeWARC(String prefix, CDXIndexSink sink,
+            ParallelGZIPCompressor compressor, boolean compress) throws IOException {
+        WARCWriter w = new WARCWriter(SERIAL_NO, new WARCWriterPoolSettingsData(
+                prefix, "${prefix}", -1, compress, Arrays.asList(tempDir),
+                Collections.<String>emptyList(), generator));
+        w.setIndexSink(sink);
+        w.setCompressor(compressor);
+        String http = WARCConstants.HTTP_RESPONSE_MIMETYPE;
+        writeRecord(w, WARCRecordType.response, "http://example.com/", http, HTML_PAGE);
+        writeRecord(w, WARCRecordType.request, "http://example.com/", WARCConstants.HTTP_REQUEST_MIMETYPE, REQUEST);
+        writeRecord(w, WARCRecordType.response, "http://example.com/old", http, REDIRECT);
+        writeRecord(w, WARCRecordType.response, "http://example.com/a.gif", http, IMAGE);
+        writeRecord(w, WARCRecordType.response, "http://example.com/a.txt", http, REPEATED);
+        writeRecord(w, WARCRecordType.metadata, "http://example.com/", "application/warc-fields", "outlink: http://example.com/a.gif\r\n");
+        writeRecord(w, WARCRecordType.revisit, "http://example.com/", http, "HTTP/1.1 304 Not Modified\r\n\r\n");
+        writeRecord(w, WARCRecordType.response, "dns:example.com", "text/dns", "20170304050607\nexample.com.\t300\tIN\tA\t10.0.0.1\n");
+        w.close();
+        return w.getFile();
+    }
+
+    private static List<String> extractCDX(File file) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(bos, UTF_8));
+        RealCDXExtractorOutput out = new RealCDXExtractorOutput(pw);
+        out.setHTMLScanLimit(RealCDXExtractorOutput.DEFAULT_HTML_SCAN_LIMIT);
+        ExtractingResourceProducer producer = new ExtractingResourceProducer(
+                ProducerUtils.getProducer(file.getAbsolutePath()), new CDXResourceFactoryMapper());
+        Resource r;
+        while ((r = producer.getNext()) != null) {
+            out.output(r);
+        }
+        producer.close();
+        return lines(bos);
+    }
+
+    private static List<String> lines(ByteArrayOutputStream bos) throws Exception {
+        return new ArrayList<String>(Arrays.asList(bos.toString(UTF_8.name()).split("\n")));
+    }
+
+    /**
+     * The extractor does not have the block digest of non-HTTP records
+     * when it writes their line, the sink does.
+     */
+    private static void assertLinesMatch(List<String> extracted, List<String> indexed) {
+        assertEquals(extracted.size(), indexed.size());
+        for (int i = 0; i < extracted.size(); i++) {
+            String[] expected = extracted.get(i).split(" ");
+            String[] actual = indexed.get(i).split(" ");
+            if (expected.length == 11 && expected[5].equals("-")) {
+                expected[5] = actual[5];
+            }
+            assertEquals(Arrays.asList(expected), Arrays.asList(actual));
+        }
+    }
+
+    @Test
+    public void testMatchesExtraction() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(bos, UTF_8));
+        CDXIndexSink sink = new CDXIndexSink(pw);
+        File warc = writeWARC("indexSink", sink, null);
+        sink.flush();
+
+        List<String> indexed = lines(bos);
+        List<String> extracted = extractCDX(warc);
+        // warcinfo + 8 records, and the header
+        assertEquals(10, indexed.size());
+        assertLinesMatch(extracted, indexed);
+
+        assertTrue(indexed.get(2).contains(" text/html 200 "), indexed.get(2));
+        assertTrue(indexed.get(2).endsWith(" http://example.com/next.html FI "
+                + indexed.get(2).split(" ")[8] + " " + indexed.get(2).split(" ")[9] + " " + warc.getName()),
+                indexed.get(2));
+        assertTrue(indexed.get(4).contains(" 301 "), indexed.get(4));
+        assertTrue(indexed.get(4).contains(" http://example.com/moved/ A "), indexed.get(4));
+        // block digest of the request
+        assertEquals(Base32.encode(MessageDigest.getInstance("sha1").digest(REQUEST.getBytes(UTF_8))),
+                indexed.get(3).split(" ")[5]);
+    }
+
+    @Test
+    public void testMatchesExtractionUncompressed() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(bos, UTF_8));
+        CDXIndexSink sink = new CDXIndexSink(pw);
+        File warc = writeWARC("indexSinkUncompressed", sink, null, false);
+        sink.flush();
+
+        List<String> indexed = lines(bos);
+        assertLinesMatch(extractCDX(warc), indexed);
+        // no compressed length
+        assertEquals("-", indexed.get(2).split(" ")[8]);
+    }
+
+    @Test
+    public void testSortedWithParallelCompression() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(bos, UTF_8));
+        CDXIndexSink sink = new CDXIndexSink(pw, new WaybackURLKeyMaker(), true);
+        ParallelGZIPCompressor compressor = new ParallelGZIPCompressor(2);
+        File warc;
+        try {
+            warc = writeWARC("indexSinkSorted", sink, compressor);
+        } finally {
+            compressor.close();
+        }
+        // nothing but the header until flushed
+        assertEquals(1, lines(bos).size());
+        sink.flush();
+
+        List<String> indexed = lines(bos);
+        List<String> extracted = extractCDX(warc);
+        String header = extracted.remove(0);
+        Collections.sort(extracted, CDXIndexSink.UTF8_ORDER);
+        extracted.add(0, header);
+        assertLinesMatch(extracted, indexed);
+    }
+
+    @Test
+    public void testUTF8Order() {
+        List<String> lines = new ArrayList<String>(Arrays.asList(
+                "a\ud83d\ude00", "a\uffff", "a", "ab", "a\u00e9"));
+        Collections.sort(lines, CDXIndexSink.UTF8_ORDER);
+        // as the UTF-8 bytes, U+1F600 after U+FFFF
+        assertEquals(Arrays.asList("a", "ab", "a\u00e9", "a\uffff", "a\ud83d\ude00"), lines);
+    }
+}
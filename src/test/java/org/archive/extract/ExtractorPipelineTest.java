@@ -0,0 +1,213 @@
+package org.archive.extract;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.archive.format.gzip.GZIPFormatException;
+import org.archive.resource.Resource;
+import org.archive.util.StreamCopy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.base.Supplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExtractorPipelineTest {
+
+	private final static String WARC = new File("src/test/resources/org/archive/format/gzip/IAH-urls-wget.warc.gz").getAbsolutePath();
+
+	@TempDir
+	File tempDir;
+
+	private static Supplier<ResourceFactoryMapper> EXTRACTING = new Supplier<ResourceFactoryMapper>() {
+		@Override
+		public ResourceFactoryMapper get() {
+			return new ExtractingResourceFactoryMapper();
+		}
+	};
+
+	private static Supplier<ResourceFactoryMapper> CDX = new Supplier<ResourceFactoryMapper>() {
+		@Override
+		public ResourceFactoryMapper get() {
+			return new CDXResourceFactoryMapper();
+		}
+	};
+
+	private static int serial(ExtractorOutput out, ResourceFactoryMapper mapper) throws Exception {
+		return serial(WARC, out, mapper);
+	}
+
+	private static int serial(String path, ExtractorOutput out, ResourceFactoryMapper mapper) throws Exception {
+		ExtractingResourceProducer producer = new ExtractingResourceProducer(ProducerUtils.getProducer(path), mapper);
+		int count = 0;
+		Resource r;
+		while ((r = producer.getNext()) != null) {
+			out.output(r);
+			count++;
+		}
+		producer.close();
+		return count;
+	}
+
+	private static String normalizeWARC(ByteArrayOutputStream bos) throws IOException {
+		ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+		StreamCopy.copy(new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray())), inflated);
+		return new String(inflated.toByteArray(), UTF_8)
+				.replaceAll("(?m)^(WARC-Date|WARC-Record-ID|Extracted-Date|Content-Length|WARC-Block-Digest): .*$", "");
+	}
+
+	private static PrintWriter writer(ByteArrayOutputStream bos) {
+		return new PrintWriter(new OutputStreamWriter(bos, UTF_8));
+	}
+
+	@Test
+	public void testMatchesSerialExtraction() throws Exception {
+		ByteArrayOutputStream cdx = new ByteArrayOutputStream();
+		ByteArrayOutputStream wat = new ByteArrayOutputStream();
+		int records = serial(new MultiExtractorOutput(new RealCDXExtractorOutput(writer(cdx)),
+				new WATExtractorOutput(wat)), new ExtractingResourceFactoryMapper());
+		assertTrue(records > 10);
+
+		int[][] configs = {{1, 1}, {2, 1}, {4, 16}, {8, 3}};
+		for (int[] config : configs) {
+			ByteArrayOutputStream pCdx = new ByteArrayOutputStream();
+			ByteArrayOutputStream pWat = new ByteArrayOutputStream();
+			ExtractorPipeline pipeline = new ExtractorPipeline(WARC, EXTRACTING, config[0]);
+			pipeline.setQueueSize(config[1]);
+			int count = pipeline.run(new MultiExtractorOutput(new RealCDXExtractorOutput(writer(pCdx)),
+					new WATExtractorOutput(pWat)), Integer.MAX_VALUE);
+
+			assertEquals(records, count);
+			assertEquals(cdx.toString(UTF_8.name()), pCdx.toString(UTF_8.name()));
+			assertEquals(normalizeWARC(wat), normalizeWARC(pWat));
+		}
+	}
+
+	/**
+	 * Stored GZIP member of a resource record whose content holds the GZIP
+	 * magic, which the reader takes for the start of a member
+	 */
+	private static byte[] storedMagicRecord() throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		for (int i = 0; i < 100; i++) {
+			content.write(new byte[]{0x1f, (byte) 0x8b, 0x08, 0x00, 0x01, 0x02});
+			content.write(("line " + i + "\n").getBytes(UTF_8));
+		}
+		String header = "WARC/1.0\r\n"
+				+ "WARC-Type: resource\r\n"
+				+ "WARC-Target-URI: http://example.com/magic.gz\r\n"
+				+ "WARC-Date: 2020-01-01T00:00:00Z\r\n"
+				+ "WARC-Record-ID: <urn:uuid:0a8f4d6e-8d5a-4a52-9d2c-2b4b5a1f0001>\r\n"
+				+ "Content-Type: application/octet-stream\r\n"
+				+ "Content-Length: " + content.size() + "\r\n\r\n";
+		ByteArrayOutputStream member = new ByteArrayOutputStream();
+		GZIPOutputStream gzos = new GZIPOutputStream(member) {
+			{
+				def.setLevel(Deflater.NO_COMPRESSION);
+			}
+		};
+		gzos.write(header.getBytes(UTF_8));
+		content.writeTo(gzos);
+		gzos.write("\r\n\r\n".getBytes(UTF_8));
+		gzos.close();
+		return member.toByteArray();
+	}
+
+	@Test
+	public void testFalseMagicAndLargeRecords() throws Exception {
+		byte[] warc = Files.readAllBytes(new File(WARC).toPath());
+		File file = new File(tempDir, "magic.warc.gz");
+		FileOutputStream fos = new FileOutputStream(file);
+		fos.write(warc);
+		fos.write(storedMagicRecord());
+		fos.write(warc);
+		fos.close();
+
+		ByteArrayOutputStream cdx = new ByteArrayOutputStream();
+		ByteArrayOutputStream wat = new ByteArrayOutputStream();
+		int records = serial(file.getAbsolutePath(), new MultiExtractorOutput(
+				new RealCDXExtractorOutput(writer(cdx)), new WATExtractorOutput(wat)),
+				new ExtractingResourceFactoryMapper());
+		assertTrue(cdx.toString(UTF_8.name()).contains("magic.gz"));
+
+		// all ranges buffered, then streaming the larger ones, then all streamed
+		int[] maxBuffered = {ExtractorPipeline.DEFAULT_MAX_BUFFERED_BYTES, 1024, 1};
+		for (int max : maxBuffered) {
+			ByteArrayOutputStream pCdx = new ByteArrayOutputStream();
+			ByteArrayOutputStream pWat = new ByteArrayOutputStream();
+			ExtractorPipeline pipeline = new ExtractorPipeline(file.getAbsolutePath(), EXTRACTING, 3);
+			pipeline.setMaxBufferedBytes(max);
+			int count = pipeline.run(new MultiExtractorOutput(new RealCDXExtractorOutput(writer(pCdx)),
+					new WATExtractorOutput(pWat)), Integer.MAX_VALUE);
+
+			assertEquals(records, count, "max buffered " + max);
+			assertEquals(cdx.toString(UTF_8.name()), pCdx.toString(UTF_8.name()), "max buffered " + max);
+			assertEquals(normalizeWARC(wat), normalizeWARC(pWat), "max buffered " + max);
+		}
+	}
+
+	@Test
+	public void testFastCDX() throws Exception {
+		ByteArrayOutputStream cdx = new ByteArrayOutputStream();
+		serial(new RealCDXExtractorOutput(writer(cdx)), new ExtractingResourceFactoryMapper());
+
+		ByteArrayOutputStream pCdx = new ByteArrayOutputStream();
+		RealCDXExtractorOutput out = new RealCDXExtractorOutput(writer(pCdx));
+		out.setHTMLScanLimit(RealCDXExtractorOutput.DEFAULT_HTML_SCAN_LIMIT);
+		new ExtractorPipeline(WARC, CDX, 4).run(out, Integer.MAX_VALUE);
+
+		assertEquals(cdx.toString(UTF_8.name()), pCdx.toString(UTF_8.name()));
+	}
+
+	@Test
+	public void testMaxAndFailingOutput() throws Exception {
+		final int[] calls = new int[1];
+		ExtractorOutput counting = new ExtractorOutput() {
+			public void output(Resource resource) throws IOException {
+				calls[0]++;
+			}
+		};
+		assertEquals(5, new ExtractorPipeline(WARC, EXTRACTING, 2).run(counting, 5));
+		assertEquals(5, calls[0]);
+
+		ExtractorOutput failing = new ExtractorOutput() {
+			public void output(Resource resource) throws IOException {
+				throw new IOException("failed");
+			}
+		};
+		final ExtractorPipeline pipeline = new ExtractorPipeline(WARC, EXTRACTING, 2);
+		pipeline.setQueueSize(1);
+		IOException e = assertThrows(IOException.class, new Executable() {
+			@Override
+			public void execute() throws Throwable {
+				pipeline.run(failing, Integer.MAX_VALUE);
+			}
+		});
+		assertEquals("failed", e.getMessage());
+
+		// format errors of a record are logged, as by ResourceExtractor
+		calls[0] = 0;
+		int all = new ExtractorPipeline(WARC, EXTRACTING, 2).run(counting, Integer.MAX_VALUE);
+		ExtractorOutput badRecord = new ExtractorOutput() {
+			public void output(Resource resource) throws IOException {
+				throw new GZIPFormatException("bad record");
+			}
+		};
+		assertEquals(all, new ExtractorPipeline(WARC, EXTRACTING, 2).run(badRecord, Integer.MAX_VALUE));
+	}
+}
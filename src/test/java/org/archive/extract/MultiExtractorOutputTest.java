@@ -0,0 +1,128 @@
+package org.archive.extract;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.URISyntaxException;
+import java.util.zip.GZIPInputStream;
+
+import org.archive.resource.Resource;
+import org.archive.resource.ResourceParseException;
+import org.archive.resource.ResourceProducer;
+import org.archive.util.StreamCopy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MultiExtractorOutputTest {
+
+	private final static String WARC = "src/test/resources/org/archive/format/gzip/IAH-urls-wget.warc.gz";
+
+	private static void extract(ExtractorOutput out) throws IOException, ResourceParseException, URISyntaxException {
+		ResourceProducer producer = ProducerUtils.getProducer(new File(WARC).getAbsolutePath());
+		ExtractingResourceProducer exProducer =
+				new ExtractingResourceProducer(producer, new ExtractingResourceFactoryMapper());
+		Resource r;
+		while ((r = exProducer.getNext()) != null) {
+			out.output(r);
+		}
+	}
+
+	/**
+	 * Decompress WARC output, dropping the headers which depend on the time
+	 * of extraction or are random
+	 */
+	private static String normalizeWARC(ByteArrayOutputStream bos) throws IOException {
+		ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+		StreamCopy.copy(new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray())), inflated);
+		return new String(inflated.toByteArray(), UTF_8)
+				.replaceAll("(?m)^(WARC-Date|WARC-Record-ID|Extracted-Date|Content-Length|WARC-Block-Digest): .*$", "");
+	}
+
+	private static PrintWriter writer(ByteArrayOutputStream bos) {
+		return new PrintWriter(new OutputStreamWriter(bos, UTF_8));
+	}
+
+	@Test
+	public void testSinglePassMatchesSeparateRuns() throws Exception {
+		ByteArrayOutputStream cdx = new ByteArrayOutputStream();
+		ByteArrayOutputStream wat = new ByteArrayOutputStream();
+		ByteArrayOutputStream wet = new ByteArrayOutputStream();
+		extract(new RealCDXExtractorOutput(writer(cdx)));
+		extract(new WATExtractorOutput(wat));
+		extract(new WETExtractorOutput(wet));
+
+		ByteArrayOutputStream multiCdx = new ByteArrayOutputStream();
+		ByteArrayOutputStream multiWat = new ByteArrayOutputStream();
+		ByteArrayOutputStream multiWet = new ByteArrayOutputStream();
+		extract(new MultiExtractorOutput(new RealCDXExtractorOutput(writer(multiCdx)),
+				new WATExtractorOutput(multiWat), new WETExtractorOutput(multiWet)));
+
+		assertTrue(cdx.size() > 100);
+		assertEquals(cdx.toString(UTF_8.name()), multiCdx.toString(UTF_8.name()));
+		assertEquals(normalizeWARC(wat), normalizeWARC(multiWat));
+		assertEquals(normalizeWARC(wet), normalizeWARC(multiWet));
+		assertTrue(normalizeWARC(multiWat).contains("WARC-Type: metadata"));
+	}
+
+	@Test
+	public void testFailingOutputDoesNotStopOthers() throws Exception {
+		final int[] calls = new int[1];
+		ExtractorOutput failing = new ExtractorOutput() {
+			public void output(Resource resource) throws IOException {
+				throw new IOException("failed");
+			}
+		};
+		ExtractorOutput counting = new ExtractorOutput() {
+			public void output(Resource resource) throws IOException {
+				calls[0]++;
+			}
+		};
+
+		ResourceProducer producer = ProducerUtils.getProducer(new File(WARC).getAbsolutePath());
+		ExtractingResourceProducer exProducer =
+				new ExtractingResourceProducer(producer, new ExtractingResourceFactoryMapper());
+		final MultiExtractorOutput multi = new MultiExtractorOutput(failing, counting);
+		final Resource resource = exProducer.getNext();
+		IOException e = assertThrows(IOException.class, new Executable() {
+			public void execute() throws Throwable {
+				multi.output(resource);
+			}
+		});
+		assertEquals("failed", e.getMessage());
+		assertEquals(1, calls[0]);
+	}
+
+	@Test
+	public void testCommandLine() throws Exception {
+		File dir = new File(System.getProperty("java.io.tmpdir"));
+		final File cdx = File.createTempFile("multi", ".cdx", dir);
+		File wat = File.createTempFile("multi", ".warc.wat.gz", dir);
+		try {
+			int res = new ResourceExtractor().run(new String[]{"-multi", new File(WARC).getAbsolutePath(),
+					"cdx:" + cdx.getAbsolutePath(), "wat:" + wat.getAbsolutePath()});
+			assertEquals(0, res);
+			assertTrue(cdx.length() > 100);
+			assertTrue(wat.length() > 100);
+			assertEquals(1, new ResourceExtractor().run(new String[]{"-multi", WARC, "foo:bar"}));
+			assertThrows(FileNotFoundException.class, new Executable() {
+				public void execute() throws Throwable {
+					new ResourceExtractor().run(new String[]{"-multi", WARC,
+							"cdx:" + cdx.getAbsolutePath(), "wat:" + cdx.getAbsolutePath() + "/missing/out.wat.gz"});
+				}
+			});
+		} finally {
+			cdx.delete();
+			wat.delete();
+		}
+	}
+}
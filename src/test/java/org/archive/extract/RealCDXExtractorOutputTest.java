@@ -1,9 +1,17 @@
 package org.archive.extract;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.net.URI;
 
+import org.archive.resource.Resource;
+
 import org.junit.jupiter.api.Test;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -26,4 +34,37 @@ public class RealCDXExtractorOutputTest {
         String resolved = RealCDXExtractorOutput.resolve(spec, spec);
         assertTrue(spec.equals(resolved));
     }
+
+    private static String extractCDX(String path, ResourceFactoryMapper mapper, int htmlScanLimit) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(bos, UTF_8));
+        RealCDXExtractorOutput out = new RealCDXExtractorOutput(pw);
+        out.setHTMLScanLimit(htmlScanLimit);
+        ExtractingResourceProducer producer = new ExtractingResourceProducer(
+                ProducerUtils.getProducer(new File(path).getAbsolutePath()), mapper);
+        Resource r;
+        while ((r = producer.getNext()) != null) {
+            out.output(r);
+        }
+        producer.close();
+        return bos.toString(UTF_8.name());
+    }
+
+    @Test
+    public void testFastCDXMatchesFullExtraction() throws Exception {
+        String[] paths = {
+                "src/test/resources/org/archive/format/gzip/IAH-urls-wget.warc.gz",
+                "src/test/resources/org/archive/format/warc/mutliple-headers.warc",
+                "src/test/resources/org/archive/resource/html/link-extraction-test.warc",
+                "src/test/resources/org/archive/resource/html/meta-itemprop.warc",
+                "src/test/resources/org/archive/resource/html/html-lang-attribute.warc"
+        };
+        for (String path : paths) {
+            String full = extractCDX(path, new ExtractingResourceFactoryMapper(), 0);
+            String fast = extractCDX(path, new CDXResourceFactoryMapper(),
+                    RealCDXExtractorOutput.DEFAULT_HTML_SCAN_LIMIT);
+            assertTrue(full.split("\n").length > 1, path);
+            assertEquals(full, fast, path);
+        }
+    }
 }
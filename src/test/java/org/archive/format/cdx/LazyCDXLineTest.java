@@ -0,0 +1,156 @@
+package org.archive.format.cdx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.archive.format.gzip.zipnum.TimestampDedupIterator;
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.util.iterator.CloseableIteratorWrapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LazyCDXLineTest {
+
+	static final String[] LINES = {
+		"com,example)/ 20170304050607 http://example.com/ text/html 200 DAAEOYXF43YQ4CU7JKJRKX2QXJZ5ISC4 - FI 325 176 a.warc.gz",
+		"com,example)/a 20170304050607 http://example.com/a unk 301 3I42H3S6NNFQ2MSVX7XZKYAYSCX5QBYJ http://example.com/b - 265 730 a.warc.gz",
+		"com,example)/b 2017",
+		"com,example)/c  20170304050607 double",
+		"com,example)/d 20170304050607 trailing ",
+		" leading space",
+		"",
+	};
+
+	@Test
+	public void testFieldsMatchCDXLine() {
+		FieldSplitFormat[] formats = {StandardCDXLineFactory.cdx11, StandardCDXLineFactory.cdx09, null};
+		for (FieldSplitFormat format : formats) {
+			for (String line : LINES) {
+				CDXLine expected = new CDXLine(line, format);
+				LazyCDXLine lazy = new LazyCDXLine(line, format);
+				assertEquals(expected.getNumFields(), lazy.getNumFields(), line);
+				for (int i = 0; i < expected.getNumFields(); i++) {
+					assertEquals(expected.getField(i), lazy.getField(i), line);
+					assertEquals(expected.getField(i), lazy.getFieldSequence(i).toString(), line);
+				}
+				assertEquals(expected.getUrlKey(), lazy.getUrlKey());
+				assertEquals(expected.getTimestamp(), lazy.getTimestamp());
+				assertEquals(expected.getFilename(), lazy.getFilename());
+				assertEquals(expected.getRobotFlags(), lazy.getRobotFlags());
+				assertEquals(line, lazy.toString());
+				if (format != null) {
+					assertEquals(expected.selectValues(StandardCDXLineFactory.cdx09),
+							lazy.selectValues(StandardCDXLineFactory.cdx09));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSetField() {
+		LazyCDXLine lazy = new LazyCDXLine(LINES[0], StandardCDXLineFactory.cdx11);
+		assertEquals("text/html", lazy.getMimeType());
+		lazy.setMimeType("warc/revisit");
+		assertEquals("warc/revisit", lazy.getMimeType());
+		assertEquals("com,example)/", lazy.getUrlKey());
+		assertEquals("warc/revisit", lazy.getFieldSequence(3).toString());
+		assertEquals(LINES[0].replace("text/html", "warc/revisit"), lazy.toString());
+
+		CDXLine copy = new CDXLine(lazy, StandardCDXLineFactory.cdx09);
+		assertEquals("warc/revisit", copy.getMimeType());
+		assertEquals("176", copy.getOffset());
+	}
+
+	@Test
+	public void testUrlKeyTimestampOrder() {
+		String[] lines = {
+			"com,example)/ 20170304050607 x",
+			"com,example)/ 2017030405060 x",
+			"com,example)/ 20170304050608 a",
+			"com,example)/a 20170304050607 x",
+			"com,example) 20170304050607 x",
+			"com,examplf)/ 1 x",
+			"com,example)/ 20170304050607",
+		};
+		for (String a : lines) {
+			for (String b : lines) {
+				LazyCDXLine la = new LazyCDXLine(a, StandardCDXLineFactory.cdx11);
+				LazyCDXLine lb = new LazyCDXLine(b, StandardCDXLineFactory.cdx11);
+				int expected = la.getUrlKey().compareTo(lb.getUrlKey());
+				if (expected == 0) {
+					expected = la.getTimestamp().compareTo(lb.getTimestamp());
+				}
+				assertEquals(Integer.signum(expected),
+						Integer.signum(LazyCDXLine.URLKEY_TIMESTAMP_ORDER.compare(la, lb)), a + " / " + b);
+			}
+		}
+
+		List<LazyCDXLine> sorted = new ArrayList<LazyCDXLine>();
+		for (String line : lines) {
+			sorted.add(new LazyCDXLine(line, StandardCDXLineFactory.cdx11));
+		}
+		Collections.sort(sorted, LazyCDXLine.URLKEY_TIMESTAMP_ORDER);
+		for (int i = 1; i < sorted.size(); i++) {
+			assertTrue(LazyCDXLine.URLKEY_TIMESTAMP_ORDER.compare(sorted.get(i - 1), sorted.get(i)) <= 0);
+		}
+	}
+
+	@Test
+	public void testLineIterator() throws Exception {
+		StandardCDXLineFactory factory = new StandardCDXLineFactory("cdx11", true);
+		assertTrue(factory.isLazy());
+		CDXLineIterator lines = new CDXLineIterator(iterator(LINES[0], LINES[1]), factory);
+		assertTrue(lines.hasNext());
+		CDXLine line = lines.next();
+		assertTrue(line instanceof LazyCDXLine);
+		assertEquals("http://example.com/", line.getOriginalUrl());
+		assertEquals("301", lines.next().getStatusCode());
+		assertFalse(lines.hasNext());
+		lines.close();
+
+		factory = new StandardCDXLineFactory("cdx11");
+		assertTrue(factory.createStandardCDXLine(LINES[0]) instanceof CDX11Line);
+	}
+
+	@Test
+	public void testTimestampDedup() throws Exception {
+		String[] lines = {
+			"com,a)/ 20170304050607 1",
+			"com,a)/ 20170304050608 2",
+			"com,a)/ 20170304060607 3",
+			"com,a)/b 20170304060607 4",
+			"com,b)/ 20170304060607 5",
+			"com,b)/ 20170304060607 6",
+			"com,b)/",
+		};
+		for (int length = 0; length <= 14; length++) {
+			List<String> inPlace = drain(new TimestampDedupIterator(iterator(lines), length));
+			// subclass, which compares the keys as Strings
+			List<String> strings = drain(new TimestampDedupIterator(iterator(lines), length) {});
+			assertEquals(strings, inPlace, "length " + length);
+		}
+		assertEquals(Arrays.asList(lines[1], lines[2], lines[3], lines[5], lines[6]),
+				drain(new TimestampDedupIterator(iterator(lines), 10)));
+		// keys longer than the lines
+		assertEquals(Arrays.asList("com,a)/ 2017", "com,a)/ 2018"),
+				drain(new TimestampDedupIterator(iterator("com,a)/ 2017", "com,a)/ 2017", "com,a)/ 2018"), 14)));
+	}
+
+	private static List<String> drain(Iterator<String> iterator) {
+		List<String> lines = new ArrayList<String>();
+		while (iterator.hasNext()) {
+			lines.add(iterator.next());
+		}
+		return lines;
+	}
+
+	private static CloseableIterator<String> iterator(String... lines) {
+		return new CloseableIteratorWrapper<String>(Arrays.asList(lines).iterator());
+	}
+}
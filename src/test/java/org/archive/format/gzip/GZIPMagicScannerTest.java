@@ -0,0 +1,57 @@
+package org.archive.format.gzip;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class GZIPMagicScannerTest {
+
+	private static int naiveIndexOfMagic(byte[] b, int from, int to) {
+		byte[] magic = {0x1f, (byte) 0x8b, 0x08};
+		for(int i = from; i < to; i++) {
+			int j = 0;
+			while((j < 3) && (i + j < to) && (b[i + j] == magic[j])) {
+				j++;
+			}
+			if((j == 3) || (i + j == to)) {
+				return i;
+			}
+		}
+		return to;
+	}
+
+	@Test
+	public void testIndexOfMagic() {
+		byte[] b = {0x1f, (byte) 0x8b, 0x08, 0, 0x1f, 0x1f, (byte) 0x8b, 0x09,
+				0x1e, 0x1f, 0x1f, (byte) 0x8b, 0x08, 0, 0, 0, 0, 0, 0x1f, (byte) 0x8b};
+		assertEquals(0, GZIPMagicScanner.indexOfMagic(b, 0, b.length));
+		assertEquals(10, GZIPMagicScanner.indexOfMagic(b, 1, b.length));
+		assertEquals(18, GZIPMagicScanner.indexOfMagic(b, 11, b.length));
+		assertEquals(b.length, GZIPMagicScanner.indexOfMagic(b, 19, b.length));
+		assertEquals(b.length, GZIPMagicScanner.indexOfMagic(b, b.length, b.length));
+		// a magic cut at the end
+		assertEquals(10, GZIPMagicScanner.indexOfMagic(b, 1, 11));
+		assertEquals(10, GZIPMagicScanner.indexOfMagic(b, 1, 12));
+		assertEquals(10, GZIPMagicScanner.indexOfMagic(b, 1, 13));
+		assertEquals(9, GZIPMagicScanner.indexOfMagic(b, 7, 10));
+		assertEquals(9, GZIPMagicScanner.indexOfMagic(b, 7, 9));
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(20);
+		// a few byte values, to have many magics, partial or not
+		byte[] values = {0x1f, (byte) 0x8b, 0x08, 0x1e, 0};
+		for(int n = 0; n < 2000; n++) {
+			byte[] b = new byte[random.nextInt(40)];
+			for(int i = 0; i < b.length; i++) {
+				b[i] = values[random.nextInt(values.length)];
+			}
+			int from = (b.length == 0) ? 0 : random.nextInt(b.length);
+			assertEquals(naiveIndexOfMagic(b, from, b.length),
+					GZIPMagicScanner.indexOfMagic(b, from, b.length));
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package org.archive.format.gzip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.archive.streamcontext.ByteArrayWrappedStream;
+
+import com.google.common.io.ByteStreams;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GZIPMemberListerTest {
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream gzos = new GZIPOutputStream(bytes);
+		gzos.write(data);
+		gzos.close();
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void testList() throws IOException {
+		InputStream is = getClass().getResourceAsStream("abcd.gz");
+		byte abcd[] = ByteStreams.toByteArray(is);
+
+		Random random = new Random(20);
+		byte[] data = new byte[10000];
+		random.nextBytes(data);
+		byte[] big = gzip(data);
+		byte[] corrupt = Arrays.copyOf(big, big.length);
+		corrupt[corrupt.length - 1]++;
+		// garbage with magics, partial or not, across the buffer boundary
+		byte[] garbage = new byte[5000];
+		for(int i = 0; i < garbage.length; i += 7) {
+			garbage[i] = 0x1f;
+			garbage[i + 1] = (byte) ((i % 2 == 0) ? 0x8b : 0x1f);
+		}
+
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		long[][] expected = new long[4][];
+		expected[0] = new long[] {file.size(), abcd.length};
+		file.write(abcd);
+		file.write(garbage);
+		expected[1] = new long[] {file.size(), big.length};
+		file.write(big);
+		file.write(corrupt);
+		file.write(garbage, 0, 10);
+		expected[2] = new long[] {file.size(), abcd.length};
+		file.write(abcd);
+		expected[3] = new long[] {file.size(), big.length};
+		file.write(big);
+		file.write(new byte[] {0x1f, (byte) 0x8b});
+
+		GZIPMemberLister lister = new GZIPMemberLister(
+				new ByteArrayWrappedStream(file.toByteArray()), "test");
+		for(long[] member : expected) {
+			assertTrue(lister.next());
+			assertEquals(member[0], lister.getOffset());
+			assertEquals(member[1], lister.getLength());
+		}
+		assertFalse(lister.next());
+		lister.close();
+	}
+}
@@ -0,0 +1,111 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+import org.archive.util.iterator.CloseableIterator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InMemorySummaryTest {
+
+	@TempDir
+	File tempDir;
+
+	private static String key(int i) {
+		return String.format(Locale.ROOT, "com,example)/%05d 2020%010d", i / 3, i);
+	}
+
+	private File createSummary(int num) throws IOException {
+		File summary = new File(tempDir, "ALL.summary");
+		PrintWriter pw = new PrintWriter(summary, UTF_8.name());
+		long offset = 0;
+		for (int i = 0; i < num; i++) {
+			int part = i / 100;
+			if (i % 100 == 0) {
+				offset = 0;
+			}
+			int length = 1000 + (i % 17);
+			pw.print(key(i) + "\tpart-" + part + "\t" + offset + "\t" + length + "\t" + (i * 3000) + "\n");
+			offset += length;
+		}
+		pw.close();
+		return summary;
+	}
+
+	private ZipNumIndex createIndex(File summary, boolean inMemory) throws IOException {
+		ZipNumIndex index = new ZipNumIndex();
+		index.setSummaryFile(summary.getAbsolutePath());
+		index.setInMemorySummary(inMemory);
+		index.init();
+		return index;
+	}
+
+	private String first(CloseableIterator<String> iter) throws IOException {
+		String line = (iter.hasNext() ? iter.next() : null);
+		iter.close();
+		return line;
+	}
+
+	@Test
+	public void testMatchesSortedTextFile() throws IOException {
+		int num = 1000;
+		File summary = createSummary(num);
+		ZipNumIndex fileIndex = createIndex(summary, false);
+		ZipNumIndex memIndex = createIndex(summary, true);
+
+		InMemorySummary mem = memIndex.getMemorySummary();
+		assertNotNull(mem);
+		assertEquals(num, mem.size());
+		assertEquals("part-3", mem.getPartId(345));
+		assertEquals(345 * 3000, mem.getLineCount(345));
+
+		String[] keys = {"", "a", key(0), key(1), key(500), key(500) + "x",
+				"com,example)/00100", "com,example)/00100 ", key(num - 1), "zzz"};
+
+		for (String k : keys) {
+			for (boolean lessThan : new boolean[]{true, false}) {
+				assertEquals(first(fileIndex.getSummary().getRecordIterator(k, lessThan)),
+						first(mem.getRecordIterator(k, lessThan)), k + " " + lessThan);
+			}
+		}
+
+		assertArrayEquals(fileIndex.getSummaryRange("", ""), memIndex.getSummaryRange("", ""));
+		assertArrayEquals(fileIndex.getSummaryRange(key(10), key(700)), memIndex.getSummaryRange(key(10), key(700)));
+
+		// blocks 9 (may contain key(10)) to 699
+		assertEquals((700 - 9) * 3000, memIndex.getNumLines(key(10), key(700)));
+		assertEquals(fileIndex.getNumLines("", ""), memIndex.getNumLines("", ""));
+
+		assertEquals(fileIndex.getNthLine("30000", 4), memIndex.getNthLine("30000", 4));
+		assertEquals(fileIndex.getNthLine("30001", 4), memIndex.getNthLine("30001", 4));
+		assertEquals(fileIndex.getNthLine("99999999", 4), memIndex.getNthLine("99999999", 4));
+
+		// lookup with a full summary line, as done by getNthPage()
+		String line = mem.getLine(250);
+		assertEquals(line, first(mem.getRecordIterator(line, false)));
+	}
+
+	@Test
+	public void testReloadSwapsSummary() throws IOException {
+		File summary = createSummary(100);
+		ZipNumIndex memIndex = createIndex(summary, true);
+		InMemorySummary before = memIndex.getMemorySummary();
+
+		createSummary(200);
+		assertTrue(summary.setLastModified(before.getModTime() + 10000));
+		memIndex.reloadSummary();
+
+		assertEquals(200, memIndex.getMemorySummary().size());
+		assertEquals(100, before.size());
+	}
+}
@@ -0,0 +1,213 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.archive.util.iterator.CloseableIterator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SummaryBlockIteratorTest {
+
+	@TempDir
+	File tempDir;
+
+	ZipNumIndex index;
+
+	final static int NUM_PARTS = 3;
+	final static int LINES_PER_PART = 2000;
+	final static int LINES_PER_BLOCK = 50;
+
+	private static String cdxLine(int i) {
+		return cdxLine(i, 200);
+	}
+
+	private static String cdxLine(int i, int status) {
+		return String.format(Locale.ROOT, "com,example)/%06d 20200101000000 http://example.com/%06d text/html %d AAAA - - 100 %d part.warc.gz", i, i, status, i);
+	}
+
+	@BeforeEach
+	public void createCluster() throws IOException {
+		writeCluster(200, Deflater.DEFAULT_COMPRESSION);
+		index = ZipNumIndex.createIndexWithSummaryPath(new File(tempDir, "ALL.summary").getAbsolutePath());
+	}
+
+	private void writeCluster(int status, final int level) throws IOException {
+		PrintWriter summary = new PrintWriter(new File(tempDir, "ALL.summary"), UTF_8.name());
+		int lineNum = 0;
+
+		for (int part = 0; part < NUM_PARTS; part++) {
+			String partId = "part-0000" + part;
+			FileOutputStream main = new FileOutputStream(new File(tempDir, partId + ".gz"));
+			long offset = 0;
+
+			for (int block = 0; block < LINES_PER_PART / LINES_PER_BLOCK; block++) {
+				ByteArrayOutputStream member = new ByteArrayOutputStream();
+				GZIPOutputStream gzos = new GZIPOutputStream(member) {
+					{
+						def.setLevel(level);
+					}
+				};
+				String key = null;
+				for (int i = 0; i < LINES_PER_BLOCK; i++) {
+					String line = cdxLine(lineNum + i, status);
+					if (key == null) {
+						key = line.substring(0, line.indexOf(' ', line.indexOf(' ') + 1));
+					}
+					gzos.write((line + "\n").getBytes(UTF_8));
+				}
+				gzos.close();
+				member.writeTo(main);
+				summary.print(key + "\t" + partId + "\t" + offset + "\t" + member.size() + "\t" + lineNum + "\n");
+				offset += member.size();
+				lineNum += LINES_PER_BLOCK;
+			}
+			main.close();
+		}
+		summary.close();
+	}
+
+	private List<String> readAll(String start, ZipNumParams params) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		CloseableIterator<String> iter = index.getCDXIterator(index.getSummary().getRecordIteratorLT(start), params);
+		while (iter.hasNext()) {
+			lines.add(iter.next());
+		}
+		iter.close();
+		return lines;
+	}
+
+	@Test
+	public void testPrefetchMatchesSequential() throws IOException {
+		List<String> expected = readAll("", new ZipNumParams());
+		assertEquals(NUM_PARTS * LINES_PER_PART, expected.size());
+		assertEquals(cdxLine(0), expected.get(0));
+
+		int[] depths = {1, 2, 8, 64};
+		int[] windows = {0, 1, 4096, 1024 * 1024};
+
+		for (int depth : depths) {
+			for (int window : windows) {
+				ZipNumParams params = new ZipNumParams();
+				params.setPrefetchDepth(depth);
+				params.setPrefetchWindowBytes(window);
+				assertEquals(expected, readAll("", params), depth + "/" + window);
+			}
+		}
+	}
+
+	@Test
+	public void testPrefetchMaxBlocks() throws IOException {
+		ZipNumParams params = new ZipNumParams();
+		params.setMaxBlocks(5);
+		List<String> expected = readAll("com,example)/001000", params);
+		assertEquals(5 * LINES_PER_BLOCK, expected.size());
+
+		ZipNumParams prefetch = new ZipNumParams(params);
+		prefetch.setMaxBlocks(5);
+		prefetch.setPrefetchDepth(4);
+		assertEquals(expected, readAll("com,example)/001000", prefetch));
+	}
+
+	@Test
+	public void testPrefetchMaxAggregateBlocks() throws IOException {
+		List<String> expected = readAll("", new ZipNumParams());
+		int numBlocks = NUM_PARTS * LINES_PER_PART / LINES_PER_BLOCK;
+
+		// the cache loads each range once, so counts the ranged reads
+		ZipNumBlockCache cache = new ZipNumBlockCache(64L * 1024 * 1024, true);
+		index.setBlockCache(cache);
+
+		int[] maxAggregates = {1, 4, 0};
+		int[] expectedLoads = {numBlocks, numBlocks / 4, NUM_PARTS};
+
+		for (int i = 0; i < maxAggregates.length; i++) {
+			cache.invalidateAll();
+			long misses = cache.getMissCount();
+
+			ZipNumParams params = new ZipNumParams();
+			params.setMaxAggregateBlocks(maxAggregates[i]);
+			params.setPrefetchDepth(4);
+			params.setPrefetchWindowBytes(0);
+			assertEquals(expected, readAll("", params));
+			assertEquals(expectedLoads[i], cache.getMissCount() - misses, "maxAggregateBlocks " + maxAggregates[i]);
+		}
+	}
+
+	@Test
+	public void testPrefetchEarlyClose() throws IOException {
+		ZipNumParams params = new ZipNumParams();
+		params.setPrefetchDepth(16);
+		CloseableIterator<String> iter = index.getCDXIterator(index.getSummary().getRecordIteratorLT(""), params);
+		assertEquals(cdxLine(0), iter.next());
+		iter.close();
+	}
+
+	@Test
+	public void testBlockCache() throws IOException {
+		List<String> expected = readAll("", new ZipNumParams());
+
+		ZipNumBlockCache cache = new ZipNumBlockCache(64L * 1024 * 1024, true);
+		index.setBlockCache(cache);
+
+		ZipNumParams prefetch = new ZipNumParams();
+		prefetch.setPrefetchDepth(4);
+
+		for (ZipNumParams params : new ZipNumParams[]{new ZipNumParams(), prefetch}) {
+			cache.invalidateAll();
+			long misses = cache.getMissCount();
+			long hits = cache.getHitCount();
+
+			// first read loads each range, second read is served from the cache
+			assertEquals(expected, readAll("", params));
+			assertEquals(hits, cache.getHitCount());
+			long loads = cache.getMissCount() - misses;
+			assertTrue(loads > 0);
+
+			assertEquals(expected, readAll("", params));
+			assertEquals(hits + loads, cache.getHitCount());
+		}
+
+		assertTrue(cache.getCompressedBytesSaved() > 0);
+		assertTrue(cache.getInflatedBytesSaved() > cache.getCompressedBytesSaved());
+		assertTrue(cache.getCachedBytes() > 0);
+	}
+
+	@Test
+	public void testBlockCacheReload() throws IOException {
+		// stored blocks: the rewritten parts have the same offsets and lengths
+		writeCluster(200, Deflater.NO_COMPRESSION);
+		index = ZipNumIndex.createIndexWithSummaryPath(new File(tempDir, "ALL.summary").getAbsolutePath());
+		index.setBlockCache(new ZipNumBlockCache(64L * 1024 * 1024, false));
+
+		List<String> lines = readAll("", new ZipNumParams());
+		assertEquals(cdxLine(0, 200), lines.get(0));
+
+		File summaryFile = new File(tempDir, "ALL.summary");
+		long modTime = summaryFile.lastModified();
+		writeCluster(404, Deflater.NO_COMPRESSION);
+		assertTrue(summaryFile.setLastModified(modTime + 10000));
+
+		index.reloadSummary();
+
+		lines = readAll("", new ZipNumParams());
+		assertEquals(NUM_PARTS * LINES_PER_PART, lines.size());
+		for (int i = 0; i < lines.size(); i++) {
+			assertEquals(cdxLine(i, 404), lines.get(i));
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.binsearch.impl.MappedSeekableLineReader;
+import org.archive.util.binsearch.ByteBufferInputStream;
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ZipNumBlockCacheTest {
+
+	private static byte[] gzip(String text) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		GZIPOutputStream gzos = new GZIPOutputStream(bos);
+		gzos.write(text.getBytes(UTF_8));
+		gzos.close();
+		return bos.toByteArray();
+	}
+
+	private static Callable<SeekableLineReader> loader(final byte[] gz, final AtomicInteger loads, final CountDownLatch wait) {
+		return new Callable<SeekableLineReader>() {
+			@Override
+			public SeekableLineReader call() throws Exception {
+				loads.incrementAndGet();
+				if (wait != null) {
+					wait.await();
+				}
+				SeekableLineReader reader = new MappedSeekableLineReader(new ByteBufferInputStream(java.nio.ByteBuffer.wrap(gz)), 8192);
+				reader.seekWithMaxRead(0, true, gz.length);
+				return reader;
+			}
+		};
+	}
+
+	@Test
+	public void testConcurrentLoadsDeduplicated() throws Exception {
+		final ZipNumBlockCache cache = new ZipNumBlockCache(1024 * 1024);
+		final byte[] gz = gzip("a 1\nb 2\n");
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+
+		for (int i = 0; i < 8; i++) {
+			results.add(executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					SeekableLineReader reader = cache.getBlock("part-00000.gz", 100, gz.length, loader(gz, loads, release));
+					String line = reader.readLine() + "|" + reader.readLine();
+					reader.close();
+					return line;
+				}
+			}));
+		}
+
+		Thread.sleep(200);
+		release.countDown();
+
+		for (Future<String> result : results) {
+			assertEquals("a 1|b 2", result.get());
+		}
+		executor.shutdown();
+
+		assertEquals(1, loads.get());
+		assertEquals(7, cache.getHitCount() + (cache.getMissCount() - 1));
+		assertEquals(7L * gz.length, cache.getCompressedBytesSaved());
+	}
+
+	@Test
+	public void testFailedLoadNotCached() {
+		ZipNumBlockCache cache = new ZipNumBlockCache(1024 * 1024);
+		Callable<SeekableLineReader> failed = new Callable<SeekableLineReader>() {
+			@Override
+			public SeekableLineReader call() {
+				return null;
+			}
+		};
+		assertNull(cache.getBlock("part-00000.gz", 0, 10, failed));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		ZipNumBlockCache cache = new ZipNumBlockCache(4096);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			sb.append("line ").append(i).append('\n');
+		}
+		byte[] gz = gzip(sb.toString());
+		AtomicInteger loads = new AtomicInteger();
+
+		for (int i = 0; i < 20; i++) {
+			cache.getBlock("part-00000.gz", i * 1000, gz.length, loader(gz, loads, null)).close();
+		}
+
+		assertEquals(20, loads.get());
+		assertEquals(cache.size() * sb.length(), cache.getCachedBytes());
+		assertEquals(20 - cache.size(), cache.getEvictionCount());
+	}
+}
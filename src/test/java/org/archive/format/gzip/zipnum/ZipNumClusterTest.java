@@ -0,0 +1,385 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.io.RuntimeIOException;
+import org.archive.util.iterator.CloseableIterator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ZipNumClusterTest {
+
+	@TempDir
+	File tempDir;
+
+	final static int NUM_PARTS = 10;
+	final static int LINES_PER_PART = 100;
+
+	/**
+	 * Write a cluster of numParts parts of one block each, with its summary
+	 * and ALL.loc, and return an initialized ZipNumCluster
+	 */
+	static ZipNumCluster createCluster(File dir, int numParts, int linesPerPart) throws IOException {
+		PrintWriter summary = new PrintWriter(new File(dir, "ALL.summary"), UTF_8.name());
+		PrintWriter loc = new PrintWriter(new File(dir, "ALL.loc"), UTF_8.name());
+		int lineNum = 0;
+
+		for (int part = 0; part < numParts; part++) {
+			String partId = String.format(Locale.ROOT, "part-%05d", part);
+			File partFile = new File(dir, partId + ".gz");
+			ByteArrayOutputStream member = new ByteArrayOutputStream();
+			GZIPOutputStream gzos = new GZIPOutputStream(member);
+			String key = null;
+			for (int i = 0; i < linesPerPart; i++) {
+				String line = String.format(Locale.ROOT,
+						"com,example)/%06d 20200101000000 http://example.com/%06d text/html 200 AAAA - - 100 %d part.warc.gz",
+						lineNum, lineNum, lineNum);
+				if (key == null) {
+					key = line.substring(0, line.indexOf(' ', line.indexOf(' ') + 1));
+				}
+				gzos.write((line + "\n").getBytes(UTF_8));
+				lineNum++;
+			}
+			gzos.close();
+			FileOutputStream out = new FileOutputStream(partFile);
+			member.writeTo(out);
+			out.close();
+			summary.print(key + "\t" + partId + "\t0\t" + member.size() + "\t" + part + "\n");
+			loc.print(partId + "\t" + partFile.getAbsolutePath() + "\n");
+		}
+		summary.close();
+		loc.close();
+
+		ZipNumCluster cluster = new ZipNumCluster();
+		cluster.setSummaryFile(new File(dir, "ALL.summary").getAbsolutePath());
+		cluster.setLocFile(new File(dir, "ALL.loc").getAbsolutePath());
+		cluster.setCheckInterval(0);
+		cluster.setCdxLinesPerBlock(linesPerPart);
+		cluster.init();
+		return cluster;
+	}
+
+	private static int countLines(ZipNumCluster cluster) throws IOException {
+		CloseableIterator<String> iter = cluster.getCDXIterator("com,example)/", "com,example)/", false, new ZipNumParams());
+		int count = 0;
+		while (iter.hasNext()) {
+			iter.next();
+			count++;
+		}
+		iter.close();
+		return count;
+	}
+
+	@Test
+	public void testLocationReload() throws Exception {
+		ZipNumCluster cluster = createCluster(tempDir, NUM_PARTS, LINES_PER_PART);
+		assertEquals(NUM_PARTS * LINES_PER_PART, countLines(cluster));
+
+		String part0 = new File(tempDir, "part-00000.gz").getAbsolutePath();
+		assertArrayEquals(new String[] {part0}, cluster.getLocations("part-00000"));
+		assertNull(cluster.getLocations("part-99999"));
+
+		// parts 1 and 2 only, part 1 with a second location
+		File copy = new File(tempDir, "copy-00001.gz");
+		new File(tempDir, "part-00001.gz").renameTo(copy);
+		PrintWriter loc = new PrintWriter(new File(tempDir, "ALL.loc"), UTF_8.name());
+		loc.print("part-00001\t" + copy.getAbsolutePath() + "\tfile:///missing\n");
+		loc.print("part-00002\t" + new File(tempDir, "part-00002.gz").getAbsolutePath() + "\n");
+		loc.close();
+
+		final Map<String, String[]> before = cluster.locMap;
+		cluster.syncLoad(1);
+
+		// the previous snapshot is unchanged, missing parts are kept
+		assertEquals(1, before.get("part-00001").length);
+		assertArrayEquals(new String[] {part0}, cluster.getLocations("part-00000"));
+		assertEquals(copy.getAbsolutePath(), cluster.getLocations("part-00001")[0]);
+		assertEquals(2, cluster.getLocations("part-00001").length);
+		assertEquals(NUM_PARTS * LINES_PER_PART, countLines(cluster));
+
+		assertThrows(UnsupportedOperationException.class, new Executable() {
+			@Override
+			public void execute() throws Throwable {
+				before.put("part-00003", new String[0]);
+			}
+		});
+	}
+
+	@Test
+	public void testReadsDuringReload() throws Exception {
+		final ZipNumCluster cluster = createCluster(tempDir, NUM_PARTS, 10);
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final AtomicInteger missing = new AtomicInteger();
+		List<Thread> readers = new ArrayList<Thread>();
+
+		for (int t = 0; t < 4; t++) {
+			Thread reader = new Thread() {
+				@Override
+				public void run() {
+					while (!done.get()) {
+						for (int part = 0; part < NUM_PARTS; part++) {
+							if (cluster.getLocations(String.format(Locale.ROOT, "part-%05d", part)) == null) {
+								missing.incrementAndGet();
+							}
+						}
+					}
+				}
+			};
+			reader.start();
+			readers.add(reader);
+		}
+
+		for (int i = 0; i < 50; i++) {
+			cluster.syncLoad(i + 1);
+		}
+		done.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		assertEquals(0, missing.get());
+	}
+
+	/**
+	 * Block loader reading fake remote replicas from a local part file:
+	 * "http://down/..." fails, "http://slow/..." answers after a delay
+	 */
+	static class StubReplicaLoader extends ZipNumBlockLoader {
+		final String path;
+		final long slowMillis;
+		final AtomicInteger downAttempts = new AtomicInteger();
+		final List<SeekableLineReader> slowReaders = new CopyOnWriteArrayList<SeekableLineReader>();
+
+		StubReplicaLoader(String path, long slowMillis) {
+			this.path = path;
+			this.slowMillis = slowMillis;
+		}
+
+		@Override
+		public SeekableLineReader attemptLoadBlock(String location, long startOffset, int totalLength, boolean decompress, boolean isRequired) {
+			if (location.startsWith("http://down/")) {
+				downAttempts.incrementAndGet();
+				return null;
+			}
+			if (location.startsWith("http://slow/")) {
+				try {
+					Thread.sleep(slowMillis);
+				} catch (InterruptedException e) {
+					return null;
+				}
+				SeekableLineReader reader = super.attemptLoadBlock(path, startOffset, totalLength, decompress, isRequired);
+				slowReaders.add(reader);
+				return reader;
+			}
+			return super.attemptLoadBlock(path, startOffset, totalLength, decompress, isRequired);
+		}
+	}
+
+	private ZipNumCluster createReplicaCluster(StubReplicaLoader loader) throws IOException {
+		ZipNumCluster cluster = createCluster(tempDir, NUM_PARTS, 10);
+		cluster.setBlockLoader(loader);
+		cluster.locCacheMap = new ConcurrentHashMap<String, ZipNumCluster.LocCacheEntry>();
+		return cluster;
+	}
+
+	private static ReplicaStats findStats(ZipNumCluster cluster, String location) {
+		for (ReplicaStats stats : cluster.getReplicaStats()) {
+			if (stats.getLocation().equals(location)) {
+				return stats;
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void testLatencyAwareSelection() throws Exception {
+		String path = new File(tempDir, "part-00000.gz").getAbsolutePath();
+		StubReplicaLoader loader = new StubReplicaLoader(path, 0);
+		ZipNumCluster cluster = createReplicaCluster(loader);
+		int length = (int) new File(path).length();
+		String[] locations = {"http://down/part-00000.gz", "http://up/part-00000.gz"};
+
+		for (int i = 0; i < 20; i++) {
+			SeekableLineReader reader = cluster.loadCachedBalancedReader("part-00000", locations, 0, length);
+			assertTrue(reader.readLine().startsWith("com,example)/000000 "));
+			reader.close();
+		}
+
+		// once it failed, the down replica scores worse and is not tried first
+		assertTrue(loader.downAttempts.get() <= 1, "down attempts: " + loader.downAttempts.get());
+		assertEquals(20, findStats(cluster, "http://up/part-00000.gz").getSuccessCount());
+		assertEquals(0, findStats(cluster, "http://up/part-00000.gz").getOutstanding());
+		if (loader.downAttempts.get() > 0) {
+			ReplicaStats down = findStats(cluster, "http://down/part-00000.gz");
+			assertEquals(1, down.getFailureCount());
+			assertTrue(down.getEwmaMillis() >= loader.getReadTimeoutMS());
+		}
+
+		// after the stale delay, the down replica gets probed again
+		cluster.setReplicaStatsStaleMillis(1);
+		Thread.sleep(5);
+		loader.downAttempts.set(0);
+		for (int i = 0; i < 20; i++) {
+			cluster.loadCachedBalancedReader("part-00000", locations, 0, length).close();
+			Thread.sleep(2);
+		}
+		assertTrue(loader.downAttempts.get() > 0);
+	}
+
+	@Test
+	public void testCachedLoadStats() throws Exception {
+		String path = new File(tempDir, "part-00000.gz").getAbsolutePath();
+		StubReplicaLoader loader = new StubReplicaLoader(path, 0);
+		ZipNumCluster cluster = createReplicaCluster(loader);
+		int length = (int) new File(path).length();
+		String[] locations = {"http://down/part-00000.gz", "http://up/part-00000.gz"};
+
+		// loads from the replica which answered last are recorded as well
+		cluster.locCachePut("part-00000", "http://up/part-00000.gz");
+		for (int i = 0; i < 5; i++) {
+			cluster.loadCachedBalancedReader("part-00000", locations, 0, length).close();
+		}
+		assertEquals(0, loader.downAttempts.get());
+		ReplicaStats up = findStats(cluster, "http://up/part-00000.gz");
+		assertEquals(5, up.getSuccessCount());
+		assertEquals(0, up.getOutstanding());
+	}
+
+	private static void finished(ReplicaStats stats, long millis) {
+		stats.loadStarted();
+		stats.loadFinished(millis, true);
+	}
+
+	@Test
+	public void testOrderReplicas() throws Exception {
+		ZipNumCluster cluster = createReplicaCluster(new StubReplicaLoader(null, 0));
+		String[] locations = {"http://a/", "http://b/", "http://c/", "http://d/"};
+		finished(cluster.getReplicaStats("http://a/"), 400);
+		finished(cluster.getReplicaStats("http://b/"), 300);
+		finished(cluster.getReplicaStats("http://c/"), 100);
+		finished(cluster.getReplicaStats("http://d/"), 200);
+
+		for (int i = 0; i < 20; i++) {
+			String[] ordered = cluster.orderReplicas(locations, "http://b/");
+			assertEquals(3, ordered.length);
+			// a, the slowest, is never the better of two choices
+			assertTrue(!ordered[0].equals("http://a/"));
+			assertEquals("http://a/", ordered[2]);
+		}
+		assertArrayEquals(new String[] {"http://a/"}, cluster.orderReplicas(new String[] {"http://a/"}, null));
+	}
+
+	@Test
+	public void testHedgedLoad() throws Exception {
+		String path = new File(tempDir, "part-00000.gz").getAbsolutePath();
+		StubReplicaLoader loader = new StubReplicaLoader(path, 1000);
+		ZipNumCluster cluster = createReplicaCluster(loader);
+		cluster.setHedgeDelayMillis(20);
+		cluster.setLocCacheMaxDuration(0);
+		int length = (int) new File(path).length();
+		String[] locations = {"http://slow/part-00000.gz", "http://fast/part-00000.gz"};
+
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 4; i++) {
+			SeekableLineReader reader = cluster.loadCachedBalancedReader("part-00000", locations, 0, length);
+			assertTrue(reader.readLine().startsWith("com,example)/000000 "));
+			reader.close();
+		}
+		assertTrue((System.currentTimeMillis() - start) < 1000);
+
+		// the slow loads which lost the race complete later, and are closed
+		long deadline = System.currentTimeMillis() + 10000;
+		while ((findStats(cluster, "http://slow/part-00000.gz") != null)
+				&& (findStats(cluster, "http://slow/part-00000.gz").getOutstanding() > 0)
+				&& (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(50);
+		for (SeekableLineReader reader : loader.slowReaders) {
+			assertTrue(reader.isClosed());
+		}
+		assertEquals(4, findStats(cluster, "http://fast/part-00000.gz").getSuccessCount());
+	}
+
+	@Test
+	public void testHedgedLoadFailure() throws Exception {
+		StubReplicaLoader loader = new StubReplicaLoader(null, 0);
+		final ZipNumCluster cluster = createReplicaCluster(loader);
+		cluster.setHedgeDelayMillis(20);
+		final String[] locations = {"http://down/1", "http://down/2"};
+		final int length = 100;
+		cluster.setRequired(false);
+
+		assertNull(cluster.loadCachedBalancedReader("part-00000", locations, 0, length));
+		assertEquals(2, loader.downAttempts.get());
+
+		cluster.setRequired(true);
+		assertThrows(RuntimeIOException.class, new Executable() {
+			@Override
+			public void execute() throws Throwable {
+				cluster.loadCachedBalancedReader("part-00000", locations, 0, length);
+			}
+		});
+	}
+
+	@Test
+	public void testHedgedLoadSaturated() throws Exception {
+		String path = new File(tempDir, "part-00000.gz").getAbsolutePath();
+		StubReplicaLoader loader = new StubReplicaLoader(path, 200);
+		ZipNumCluster cluster = createReplicaCluster(loader);
+		cluster.setHedgeDelayMillis(20);
+		cluster.setHedgeThreads(1);
+		cluster.setLocCacheMaxDuration(0);
+		int length = (int) new File(path).length();
+		String[] locations = {"http://slow/1/part-00000.gz", "http://slow/2/part-00000.gz"};
+
+		// the only hedge thread is busy with the first load, no hedge is sent
+		SeekableLineReader reader = cluster.loadCachedBalancedReader("part-00000", locations, 0, length);
+		assertTrue(reader.readLine().startsWith("com,example)/000000 "));
+		reader.close();
+		Thread.sleep(300);
+		assertEquals(1, loader.slowReaders.size());
+	}
+
+	@Test
+	public void testHistogram() {
+		ReplicaStats stats = new ReplicaStats("http://a/");
+		finished(stats, 0);
+		finished(stats, 7);
+		finished(stats, 60000);
+		stats.loadStarted();
+		stats.loadFinished(10000, false);
+
+		long[] histogram = stats.getHistogram();
+		assertEquals(ReplicaStats.HISTOGRAM_BOUNDS_MILLIS.length + 1, histogram.length);
+		assertEquals(1, histogram[0]);
+		assertEquals(1, histogram[3]);
+		assertEquals(1, histogram[histogram.length - 1]);
+		assertEquals(3, stats.getSuccessCount());
+		assertEquals(1, stats.getFailureCount());
+		assertEquals(0, stats.getOutstanding());
+		assertTrue(stats.toString().contains("<=10ms:1"));
+	}
+}
@@ -0,0 +1,144 @@
+package org.archive.format.http;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HttpHeaderParserTest {
+
+	private final static String[] HEADERS = {
+		"Content-Type: text/plain\r\nServer: \r\n\r\nbody",
+		"Content-Type: text/plain\nContent-Length: 4\n\nbody",
+		"Folded: one\r\n  two\t three  \r\nX:y\r\n\r\n",
+		"Name : value\r\n\r\n",
+		" Leading: space\r\n\r\n",
+		"Bad\u0001Name: x\r\nGood: y\r\n\r\n",
+		"Utf8: cafÃ©\r\n\r\n",
+		"Unterminated: value\r\n",
+		"\r\n",
+		"",
+	};
+
+	/** stream read a byte at a time */
+	private static class UnmarkableInputStream extends FilterInputStream {
+		UnmarkableInputStream(InputStream in) {
+			super(in);
+		}
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+	private static String describe(HttpHeaders headers, int bytes) {
+		return headers.toString() + headers.isCorrupt() + "/" + headers.getTotalBytes() + "/" + bytes;
+	}
+
+	@Test
+	public void testBulkModesMatchByteAtATime() throws Exception {
+		HttpHeaderParser parser = new HttpHeaderParser();
+		for (String s : HEADERS) {
+			byte[] bytes = s.getBytes(ISO_8859_1);
+
+			HttpHeaders expected = new HttpHeaders();
+			int expectedBytes = parser.doParse(
+					new UnmarkableInputStream(new ByteArrayInputStream(bytes)), expected);
+
+			HttpHeaders headers = new HttpHeaders();
+			int n = parser.doParse(bytes, 0, bytes.length, headers);
+			assertEquals(describe(expected, expectedBytes), describe(headers, n), s);
+
+			headers = new HttpHeaders();
+			ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+			buf.put(bytes).flip();
+			n = parser.doParse(buf, headers);
+			assertEquals(describe(expected, expectedBytes), describe(headers, n), s);
+			assertEquals(bytes.length - n, buf.remaining());
+
+			headers = new HttpHeaders();
+			InputStream is = new BufferedInputStream(new ByteArrayInputStream(bytes), 3);
+			n = parser.doParse(is, headers);
+			assertEquals(describe(expected, expectedBytes), describe(headers, n), s);
+			// the stream is left after the headers
+			byte[] rest = new byte[bytes.length - n];
+			assertEquals(rest.length, Math.max(0, is.read(rest)));
+			assertArrayEquals(Arrays.copyOfRange(bytes, n, bytes.length), rest);
+			assertEquals(-1, is.read());
+		}
+	}
+
+	@Test
+	public void testLaxHandling() throws Exception {
+		HttpHeaderParser parser = new HttpHeaderParser();
+		byte[] bytes = HEADERS[2].getBytes(ISO_8859_1);
+		HttpHeaders headers = parser.parseHeaders(bytes, 0, bytes.length);
+		assertEquals(2, headers.size());
+		assertEquals("one two three", headers.getValue("Folded"));
+		assertEquals("y", headers.getValue("X"));
+		assertFalse(headers.isCorrupt());
+
+		bytes = HEADERS[5].getBytes(ISO_8859_1);
+		headers = parser.parseHeaders(bytes, 0, bytes.length);
+		// the rest of the corrupt line is skipped
+		assertEquals(2, headers.size());
+		assertEquals("", headers.getValue("Bad"));
+		assertEquals("y", headers.getValue("Good"));
+		assertTrue(headers.isCorrupt());
+
+		// non ASCII bytes are dropped
+		bytes = HEADERS[6].getBytes(ISO_8859_1);
+		headers = parser.parseHeaders(bytes, 0, bytes.length);
+		assertEquals("caf", headers.getValue("Utf8"));
+		assertTrue(headers.isCorrupt());
+	}
+
+	@Test
+	public void testLongValues() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			sb.append((char) ('a' + (i % 26)));
+		}
+		String value = sb.toString();
+		byte[] bytes = ("Long: " + value + "\r\n\r\n").getBytes(ISO_8859_1);
+
+		HttpHeaders headers = new HttpHeaderParser().parseHeaders(bytes, 0, bytes.length);
+		assertEquals(value, headers.getValue("Long"));
+
+		final HttpHeaderParser small = new HttpHeaderParser(null, 100, 1000);
+		final byte[] tooLong = bytes;
+		HttpParseException e = assertThrows(HttpParseException.class, new Executable() {
+			@Override
+			public void execute() throws Throwable {
+				small.parseHeaders(tooLong, 0, tooLong.length);
+			}
+		});
+		assertEquals("Value too long", e.getMessage());
+	}
+
+	@Test
+	public void testStrict() throws IOException {
+		final HttpHeaderParser parser = new HttpHeaderParser();
+		parser.isStrict = true;
+		final byte[] bytes = HEADERS[5].getBytes(ISO_8859_1);
+		assertThrows(HttpParseException.class, new Executable() {
+			@Override
+			public void execute() throws Throwable {
+				parser.parseHeaders(bytes, 0, bytes.length);
+			}
+		});
+	}
+}
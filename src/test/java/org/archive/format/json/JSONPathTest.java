@@ -0,0 +1,77 @@
+package org.archive.format.json;
+
+import com.github.openjson.JSONException;
+import com.github.openjson.JSONObject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JSONPathTest {
+	String json1 = "{\"a\": {\"b\": {\"c\": \"Foo\", \"n\": 12, \"l\": [1, 2]}, \"s\": \"str\"}}";
+
+	@Test
+	public void testLookups() throws JSONException {
+		JSONObject json = new JSONObject(json1);
+		JSONPath c = JSONPath.compile("a.b.c");
+		assertEquals("Foo", c.getString(json));
+		assertEquals("12", JSONPath.compile("a.b.n").getString(json));
+		assertEquals(2, JSONPath.compile("a.b.l").getArray(json).length());
+		assertSame(json.getJSONObject("a").getJSONObject("b"), JSONPath.compile("a.b").getObject(json));
+
+		assertNull(JSONPath.compile("a.x.c").getString(json));
+		assertNull(JSONPath.compile("a.b.x").getString(json));
+		assertNull(JSONPath.compile("a.b.c").getArray(json));
+		// not an object:
+		assertNull(JSONPath.compile("a.s.c").getString(json));
+		assertNull(JSONPath.compile("a.s").getObject(json));
+	}
+
+	@Test
+	public void testMatchesJSONUtils() throws JSONException {
+		JSONObject json = new JSONObject(json1);
+		String[] paths = {"a", "a.b", "a.b.c", "a.b.n", "a.b.l", "a.s", "a.s.c", "x", "a.x.y", ""};
+		for (String path : paths) {
+			JSONPath compiled = JSONPath.compile(path);
+			assertEquals(JSONUtils.extractSingle(json, path), compiled.getString(json), path);
+			assertSame(JSONUtils.extractObject(json, path), compiled.getObject(json), path);
+			assertSame(JSONUtils.extractArray(json, path), compiled.getArray(json), path);
+		}
+	}
+
+	@Test
+	public void testSharedPrefix() throws JSONException {
+		JSONObject json = new JSONObject(json1);
+		JSONPath b = JSONPath.compile("a").child("b");
+		JSONPath c = b.child("c");
+		JSONPath l = b.child("l");
+		assertEquals("a.b.c", c.toString());
+		assertEquals("c", c.getName());
+		assertTrue(c.startsWith(b));
+		assertTrue(c.startsWith(c));
+		assertFalse(b.startsWith(c));
+		assertFalse(c.startsWith(JSONPath.compile("a.x")));
+
+		JSONObject bObject = b.getObject(json);
+		assertEquals("Foo", c.getString(bObject, b));
+		assertEquals(2, l.getArray(bObject, b).length());
+		assertSame(bObject, b.getObject(bObject, b));
+		assertNull(c.getString(null, b));
+
+		final JSONObject top = json;
+		final JSONPath base = b;
+		final JSONPath other = JSONPath.compile("x.y");
+		assertThrows(IllegalArgumentException.class, new Executable() {
+			@Override
+			public void execute() throws Throwable {
+				other.getString(top, base);
+			}
+		});
+	}
+}
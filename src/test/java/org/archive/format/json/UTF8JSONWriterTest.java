@@ -0,0 +1,124 @@
+package org.archive.format.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.archive.resource.MetaData;
+import com.github.openjson.JSONArray;
+import com.github.openjson.JSONException;
+import com.github.openjson.JSONObject;
+
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UTF8JSONWriterTest {
+
+	private final static String[] STRINGS = {
+		"", "a", "plain text", "quote\"", "back\\slash", "</script>", "a/b", "<", "/",
+		"tab\tnl\nnr\rff\fbs\b", "\u0000\u0001\u001f\u007f", "café", "€",
+		"😀", "\ud83d", "\ude00x", "\ud83d😀", "  ", "�"
+	};
+
+	private static String randomString(Random random) {
+		StringBuilder sb = new StringBuilder();
+		int parts = random.nextInt(4);
+		for (int i = 0; i < parts; i++) {
+			sb.append(STRINGS[random.nextInt(STRINGS.length)]);
+		}
+		return sb.toString();
+	}
+
+	private static Object randomValue(Random random, int depth) throws JSONException {
+		switch (random.nextInt(depth > 3 ? 6 : 8)) {
+		case 0:
+			return random.nextBoolean();
+		case 1:
+			return random.nextInt();
+		case 2:
+			return random.nextLong();
+		case 3:
+			return random.nextDouble() * 1000;
+		case 4:
+			return JSONObject.NULL;
+		case 5:
+			return randomString(random);
+		case 6:
+			JSONArray array = new JSONArray();
+			int length = random.nextInt(5);
+			for (int i = 0; i < length; i++) {
+				array.put(randomValue(random, depth + 1));
+			}
+			return array;
+		default:
+			return randomObject(random, depth + 1);
+		}
+	}
+
+	private static JSONObject randomObject(Random random, int depth) throws JSONException {
+		JSONObject object = new JSONObject();
+		int length = random.nextInt(6);
+		for (int i = 0; i < length; i++) {
+			object.put(randomString(random), randomValue(random, depth));
+		}
+		return object;
+	}
+
+	private static byte[] viaString(JSONObject object) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		OutputStreamWriter osw = new OutputStreamWriter(bos, UTF_8);
+		osw.write(object.toString());
+		osw.flush();
+		return bos.toByteArray();
+	}
+
+	@Test
+	public void testSameAsToString() throws Exception {
+		Random random = new Random(24);
+		UTF8JSONWriter writer = new UTF8JSONWriter(16, 1024);
+		for (int i = 0; i < 5000; i++) {
+			JSONObject object = randomObject(random, 0);
+			writer.reset();
+			writer.write(object);
+			byte[] written = Arrays.copyOf(writer.getBuffer(), writer.getLength());
+			assertArrayEquals(viaString(object), written, object.toString());
+		}
+	}
+
+	@Test
+	public void testMetaData() throws Exception {
+		MetaData md = new MetaData();
+		MetaData child = new MetaData(md, "Envelope");
+		child.putString("WARC-Type", "response");
+		child.putLong("Offset", 1234L);
+		for (int i = 0; i < 1000; i++) {
+			JSONObject link = new JSONObject();
+			link.put("path", "A@/href");
+			link.put("url", "http://example.com/" + i + "?a=1&b=</x>");
+			child.appendChild("Links", link);
+		}
+		UTF8JSONWriter writer = new UTF8JSONWriter(16, 1024);
+		writer.write(md);
+		assertTrue(writer.getBuffer().length > 1024);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		writer.writeTo(bos);
+		assertArrayEquals(viaString(md), bos.toByteArray());
+
+		// large buffer released, small one reused
+		writer.reset();
+		assertEquals(0, writer.getLength());
+		assertEquals(16, writer.getBuffer().length);
+		writer.write(new JSONObject("{\"a\":1}"));
+		byte[] buffer = writer.getBuffer();
+		writer.reset();
+		writer.write(new JSONObject("{\"b\":2}"));
+		assertTrue(buffer == writer.getBuffer());
+		assertEquals("{\"b\":2}", new String(buffer, 0, writer.getLength(), UTF_8));
+	}
+}
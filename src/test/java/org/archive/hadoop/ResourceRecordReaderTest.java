@@ -0,0 +1,59 @@
+package org.archive.hadoop;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.archive.streamcontext.RandomAccessFileStream;
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResourceRecordReaderTest {
+
+	private final static File WARC = new File("src/test/resources/org/archive/format/gzip/IAH-urls-wget.warc.gz");
+
+	private List<Long> readSplit(long start, long length) throws Exception {
+		ResourceRecordReader reader = new ResourceRecordReader();
+		reader.initialize(new RandomAccessFileStream(WARC), WARC.getName(), start, length);
+		List<Long> offsets = new ArrayList<Long>();
+		while (reader.nextKeyValue()) {
+			offsets.add(reader.getCurrentKey().offset);
+			assertTrue(reader.getCurrentValue().has("Envelope"));
+		}
+		reader.close();
+		return offsets;
+	}
+
+	@Test
+	public void testSplitsReadEachRecordOnce() throws Exception {
+		long fileLength = WARC.length();
+		List<Long> expected = readSplit(0, fileLength);
+		assertTrue(expected.size() > 10);
+
+		long[] splitSizes = {997, 1841, 4096, fileLength / 2, fileLength - 1};
+		for (long splitSize : splitSizes) {
+			List<Long> offsets = new ArrayList<Long>();
+			for (long start = 0; start < fileLength; start += splitSize) {
+				offsets.addAll(readSplit(start, Math.min(splitSize, fileLength - start)));
+			}
+			assertEquals(expected, offsets, "split size " + splitSize);
+		}
+	}
+
+	@Test
+	public void testRecordStartChecks() {
+		assertTrue(ResourceRecordReader.isWARCRecordStart("WARC/1.0\r\n".getBytes(US_ASCII)));
+		assertFalse(ResourceRecordReader.isWARCRecordStart("HTTP/1.1 200 OK".getBytes(US_ASCII)));
+		assertTrue(ResourceRecordReader.isARCRecordStart(
+				"http://www.archive.org/ 207.241.224.2 20131021215306 text/html 1234\n<html>".getBytes(US_ASCII)));
+		assertTrue(ResourceRecordReader.isARCRecordStart(
+				"filedesc://IAH.arc 0.0.0.0 20131021215306 text/plain 76\n1 0 IA".getBytes(US_ASCII)));
+		assertFalse(ResourceRecordReader.isARCRecordStart("<html><body>\n".getBytes(US_ASCII)));
+		assertFalse(ResourceRecordReader.isARCRecordStart("http://www.archive.org/ 1.2.3.4 2013".getBytes(US_ASCII)));
+	}
+}
@@ -0,0 +1,64 @@
+package org.archive.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class GroupCommitOutputStreamTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    public void testWriteAndCommit() throws Exception {
+        File f = new File(tempDir, "group-commit");
+        // small chunks and queue, so that writes span chunks and block
+        final GroupCommitOutputStream out = new GroupCommitOutputStream(f, 100, 2, true);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        List<Future<Long>> commits = new ArrayList<Future<Long>>();
+        List<Long> positions = new ArrayList<Long>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            byte[] b = new byte[random.nextInt(300)];
+            random.nextBytes(b);
+            out.write(b);
+            out.write(i);
+            expected.write(b);
+            expected.write(i);
+            if (i % 3 == 0) {
+                out.flush();
+            }
+            if (i % 5 == 0) {
+                commits.add(out.commit());
+                positions.add((long) expected.size());
+            }
+        }
+        for (int i = 0; i < commits.size(); i++) {
+            assertEquals(positions.get(i), commits.get(i).get());
+        }
+        out.sync();
+        assertEquals(expected.size(), f.length());
+        out.close();
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(f.toPath()));
+
+        assertThrows(IOException.class, new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                out.commit();
+            }
+        });
+    }
+}
@@ -25,14 +25,19 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.archive.io.ArchiveRecord;
 import org.archive.io.ArchiveRecordHeader;
+import org.archive.io.ParallelGZIPCompressor;
 import org.archive.io.UTF8Bytes;
 import org.archive.io.WriterPoolMember;
 import org.archive.uid.RecordIDGenerator;
@@ -433,6 +438,201 @@ public class WARCWriterTest {
         return writer;
     }
 
+    /**
+     * Write records of deterministic ids, dates and content, of sizes on
+     * both sides of 10000 bytes.
+     */
+    private List<Future<Long>> writeSizedRecords(WARCWriter w, int count)
+    throws IOException {
+        return writeSizedRecords(w, count, false);
+    }
+
+    /**
+     * @param checkSize if true, roll over to a new file before each record
+     * once past the maximum size, as the writer pool does
+     */
+    private List<Future<Long>> writeSizedRecords(WARCWriter w, int count,
+            boolean checkSize)
+    throws IOException {
+        List<Future<Long>> committed = new ArrayList<Future<Long>>();
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            if (checkSize) {
+                w.checkSize();
+            }
+            WARCRecordInfo recordInfo = new WARCRecordInfo();
+            recordInfo.setType(WARCRecordType.resource);
+            recordInfo.setUrl("http://www.one.net/id=" + i);
+            recordInfo.setCreate14DigitDate("20200101000000");
+            recordInfo.setMimetype("application/octet-stream");
+            recordInfo.setRecordId(URI.create(String.format(Locale.ROOT,
+                    "urn:uuid:00000000-0000-0000-0000-%012d", i)));
+            recordInfo.setEnforceLength(true);
+
+            byte[] content = new byte[((i * 7919) % 20000) + 1];
+            for (int j = 0; j < content.length; j++) {
+                content[j] = (byte) ((j % 3 == 0) ? random.nextInt() : 'a' + (j % 26));
+            }
+            recordInfo.setContentStream(new ByteArrayInputStream(content));
+            recordInfo.setContentLength((long) content.length);
+            committed.add(w.writeRecordAsync(recordInfo));
+        }
+        return committed;
+    }
+
+    private static List<Long> recordOffsets(WARCWriter w) {
+        List<Long> offsets = new ArrayList<Long>();
+        for (WARCRecordInfo recordInfo : w.getTmpRecordLog()) {
+            offsets.add(recordInfo.getWARCFileOffset());
+        }
+        return offsets;
+    }
+
+    @Test
+    public void testParallelCompression() throws IOException {
+        File [] files = {tempDir};
+        WARCWriterPoolSettings settings = new WARCWriterPoolSettingsData(
+                "parallel", "${prefix}", -1, true, Arrays.asList(files), null, generator);
+
+        ByteArrayOutputStream serial = new ByteArrayOutputStream();
+        WARCWriter w = new WARCWriter(SERIAL_NO, serial, new File(tempDir, "serial.warc.gz"), settings);
+        writeSizedRecords(w, 50);
+        List<Long> serialOffsets = recordOffsets(w);
+        long serialSize = WARCWriter.getStat(w.getTmpStats(), WARCWriter.TOTALS, WARCWriter.SIZE_ON_DISK);
+        w.close();
+
+        ParallelGZIPCompressor compressor = new ParallelGZIPCompressor(4);
+        compressor.setMaxRecordBytes(10000);
+        compressor.setMaxPendingRecords(3);
+        try {
+            ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+            w = new WARCWriter(SERIAL_NO, parallel, new File(tempDir, "parallel.warc.gz"), settings);
+            w.setCompressor(compressor);
+            writeSizedRecords(w, 50);
+            assertEquals(serialOffsets, recordOffsets(w));
+            assertEquals(serialSize, WARCWriter.getStat(w.getTmpStats(), WARCWriter.TOTALS, WARCWriter.SIZE_ON_DISK));
+            assertEquals(50, WARCWriter.getStat(w.getTmpStats(), WARCWriter.TOTALS, WARCWriter.NUM_RECORDS));
+            w.close();
+
+            // same gzip members, in the same order
+            assertArrayEquals(serial.toByteArray(), parallel.toByteArray());
+        } finally {
+            compressor.close();
+        }
+    }
+
+    @Test
+    public void testParallelCompressionRollover() throws IOException {
+        final long maxSize = 50000;
+        File dir = new File(tempDir, "parallelRollover");
+        dir.mkdirs();
+        File [] files = {dir};
+        ParallelGZIPCompressor compressor = new ParallelGZIPCompressor(2);
+        compressor.setMaxPendingRecords(50);
+        WARCWriter w = new WARCWriter(SERIAL_NO, new WARCWriterPoolSettingsData(
+                "parallelRollover-" + SUFFIX, "${prefix}-${serialno}", maxSize, true,
+                Arrays.asList(files), null, generator));
+        w.setCompressor(compressor);
+        try {
+            writeSizedRecords(w, 50, true);
+            w.close();
+        } finally {
+            compressor.close();
+        }
+
+        File[] written = dir.listFiles();
+        assertTrue(written.length > 1, Arrays.toString(written));
+        for (File f : written) {
+            // at most one record, of up to 20000 bytes, past the maximum
+            assertTrue(f.length() < maxSize + 21000, f + " " + f.length());
+        }
+    }
+
+    @Test
+    public void testParallelCompressionFile() throws IOException {
+        final int recordCount = 20;
+        File [] files = {tempDir};
+        ParallelGZIPCompressor compressor = new ParallelGZIPCompressor(2);
+        WARCWriter w = new WARCWriter(SERIAL_NO, new WARCWriterPoolSettingsData(
+                "parallelFile-" + SUFFIX, "${prefix}", DEFAULT_MAX_WARC_FILE_SIZE, true,
+                Arrays.asList(files), null, generator));
+        w.setCompressor(compressor);
+        try {
+            for (int i = 0; i < recordCount; i++) {
+                writeRandomHTTPRecord(w, i);
+            }
+            List<WARCRecordInfo> written = new ArrayList<WARCRecordInfo>();
+            for (WARCRecordInfo recordInfo : w.getTmpRecordLog()) {
+                written.add(recordInfo);
+            }
+            w.close();
+            validate(w.getFile(), recordCount + 1);
+
+            // the logged offsets point at the records, after the warcinfo
+            assertEquals(recordCount + 1, written.size());
+            for (WARCRecordInfo recordInfo : written.subList(1, written.size())) {
+                WARCReader reader = WARCReaderFactory.get(w.getFile(), recordInfo.getWARCFileOffset());
+                ArchiveRecord r = reader.get();
+                assertEquals(recordInfo.getUrl(), r.getHeader().getUrl());
+                r.close();
+                reader.close();
+            }
+        } finally {
+            compressor.close();
+        }
+    }
+
+    private void checkAsyncOutput(String name, boolean compress,
+            ParallelGZIPCompressor compressor) throws Exception {
+        final int recordCount = 50;
+        File [] files = {tempDir};
+        WARCWriter w = new WARCWriter(SERIAL_NO, new WARCWriterPoolSettingsData(
+                name + "-" + SUFFIX, "${prefix}", -1, compress,
+                Arrays.asList(files), null, generator));
+        // small queue, so that writes block on the I/O thread
+        w.setAsyncOutput(2, true);
+        w.setCompressor(compressor);
+        List<Future<Long>> committed = writeSizedRecords(w, recordCount);
+        List<Long> offsets = recordOffsets(w);
+        assertEquals(recordCount + 1, offsets.size());
+        for (int i = 0; i < recordCount; i++) {
+            assertEquals(offsets.get(i + 1), committed.get(i).get());
+        }
+        // committed records are in the file before it is closed
+        long last = offsets.get(recordCount);
+        assertTrue(w.getFile().length() > last);
+        w.close();
+
+        WARCReader reader = WARCReaderFactory.get(w.getFile());
+        int count = 0;
+        for (ArchiveRecord r : reader) {
+            count++;
+        }
+        reader.close();
+        assertEquals(recordCount + 1, count);
+
+        for (int i = 0; i < recordCount; i += 7) {
+            reader = WARCReaderFactory.get(w.getFile(), offsets.get(i + 1));
+            ArchiveRecord r = reader.get();
+            assertEquals("http://www.one.net/id=" + i, r.getHeader().getUrl());
+            r.close();
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testAsyncOutput() throws Exception {
+        checkAsyncOutput("asyncOutput", false, null);
+        checkAsyncOutput("asyncOutputCompressed", true, null);
+        ParallelGZIPCompressor compressor = new ParallelGZIPCompressor(2);
+        compressor.setMaxRecordBytes(10000);
+        try {
+            checkAsyncOutput("asyncOutputParallel", true, compressor);
+        } finally {
+            compressor.close();
+        }
+    }
+
     @Test
     public void testSpaceInURL() throws IOException {
         long bytesWritten = holeyUrl("testSpaceInURL", false, " ");
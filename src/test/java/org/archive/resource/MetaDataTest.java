@@ -1,18 +1,27 @@
 package org.archive.resource;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.archive.extract.ExtractingResourceFactoryMapper;
 import org.archive.extract.ExtractingResourceProducer;
 import org.archive.extract.ProducerUtils;
 import org.archive.extract.ResourceFactoryMapper;
+import org.archive.format.http.HttpResponse;
+import org.archive.format.http.HttpResponseParser;
 import org.archive.format.json.JSONUtils;
+import org.archive.format.json.UTF8JSONWriter;
+import org.archive.util.StreamCopy;
 
 import com.github.openjson.JSONArray;
 import com.github.openjson.JSONObject;
 
 import org.junit.jupiter.api.Test;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class MetaDataTest {
@@ -188,4 +197,94 @@ public class MetaDataTest {
 		assertEquals("PHP/8.3.11", ((JSONArray) httpHeaders.get("x-powered-by")).get(0));
 		assertEquals("PleskLin", ((JSONArray) httpHeaders.get("x-powered-by")).get(1));
 	}
+
+	@Test
+	public void testRecordMetaData() throws IOException, ResourceParseException {
+		ResourceProducer producer = ProducerUtils.getProducer(testFilePaths[1]);
+		ExtractingResourceProducer exProducer = new ExtractingResourceProducer(producer,
+				new ExtractingResourceFactoryMapper());
+		Resource r = exProducer.getNext();
+		RecordMetaData record = null;
+		while (r != null) {
+			record = r.getMetaData().getRecordMetaData();
+			if ("response".equals(record.getWARCHeader("WARC-Type"))) {
+				break;
+			}
+			r = exProducer.getNext();
+		}
+		assertNotNull(r);
+		StreamCopy.readToEOF(r.getInputStream());
+
+		assertEquals("WARC/1.0", record.getEnvelopeFormat());
+		assertEquals("https://www.example.com/index.html/", record.getWARCHeader("WARC-Target-URI"));
+		assertNull(record.getWARCHeader("warc-target-uri"));
+		assertEquals(200, record.getHTTPStatus());
+		assertEquals("108", record.getHTTPHeader("Content-Length"));
+		assertEquals("[\"PHP/8.3.11\",\"PleskLin\"]", record.getHTTPHeader("x-powered-by"));
+
+		// streamed before the JSON tree is built, then the same as the tree
+		MetaData top = r.getMetaData().getTopMetaData();
+		UTF8JSONWriter writer = new UTF8JSONWriter();
+		writer.write(top);
+		String streamed = new String(writer.getBuffer(), 0, writer.getLength(), UTF_8);
+		assertEquals(top.toString(), streamed);
+
+		JSONObject httpHeaders = JSONUtils.extractObject(top, "Envelope.Payload-Metadata.HTTP-Response-Metadata.Headers");
+		assertEquals(record.getHTTPHeader("x-powered-by"), httpHeaders.getString("x-powered-by"));
+	}
+
+	@Test
+	public void testDeferredFields() throws IOException {
+		String message = "HTTP/1.1 200 OK\r\n"
+				+ "Content-Type: text/html\r\n"
+				+ "Set-Cookie: a=1\r\n"
+				+ "Server: test\r\n"
+				+ "Set-Cookie: b=2\r\n"
+				+ "\r\n";
+		HttpResponse response = new HttpResponseParser().parse(
+				new ByteArrayInputStream(message.getBytes(UTF_8)));
+
+		MetaData top = new MetaData();
+		MetaData m = top.createChild("HTTP-Response-Metadata");
+		m.putString("Before", "1");
+		m.getRecordMetaData().setHTTPResponse(m, response);
+		m.putString("After", "2");
+		m.putLong(ResourceConstants.HTTP_ENTITY_LENGTH, 0);
+
+		UTF8JSONWriter writer = new UTF8JSONWriter();
+		writer.write(top);
+		String streamed = new String(writer.getBuffer(), 0, writer.getLength(), UTF_8);
+
+		// reading other fields does not put the deferred ones
+		assertEquals("2", m.getString("After"));
+		assertEquals(streamed, top.toString());
+
+		List<String> keys = new ArrayList<String>(m.keySet());
+		assertEquals(Arrays.asList("Before", "Response-Message", "Headers-Length",
+				"Headers", "After", "Entity-Length"), keys);
+		JSONObject headers = m.getJSONObject("Headers");
+		assertEquals(Arrays.asList("Content-Type", "Set-Cookie", "Server"),
+				new ArrayList<String>(headers.keySet()));
+		assertEquals(2, headers.getJSONArray("Set-Cookie").length());
+		assertEquals("200", JSONUtils.extractSingle(m, "Response-Message.Status"));
+
+		// putting a deferred field puts them all first
+		MetaData m2 = new MetaData();
+		m2.getRecordMetaData().setHTTPResponse(m2, response);
+		m2.putString("Headers-Length", "0");
+		assertEquals(JSONArray.class, m2.get("Headers-Length").getClass());
+
+		// removing a member before them keeps them in place
+		MetaData m3 = new MetaData();
+		m3.putString("Before", "1");
+		m3.getRecordMetaData().setHTTPResponse(m3, response);
+		m3.putString("After", "2");
+		m3.remove("Before");
+		writer = new UTF8JSONWriter();
+		writer.write(m3);
+		streamed = new String(writer.getBuffer(), 0, writer.getLength(), UTF_8);
+		assertEquals(streamed, m3.toString());
+		assertEquals(Arrays.asList("Response-Message", "Headers-Length",
+				"Headers", "After"), new ArrayList<String>(m3.keySet()));
+	}
 }
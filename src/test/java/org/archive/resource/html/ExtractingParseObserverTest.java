@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Random;
 import java.util.logging.Logger;
 
 import org.archive.extract.ExtractingResourceFactoryMapper;
@@ -543,6 +544,30 @@ public class ExtractingParseObserverTest {
 		}
 	}
 
+	@Test
+	public void testDecodeCharEntInPlace() {
+		String[] parts = { "a", " ", "Text", "&", ";", "#", "x", "\r\n", "\u0000", "\u00e9",
+				"&amp;", "&AMP;", "&amp", "&ampx;", "&lt;", "&lt", "&gt;", "&quot;", "&nbsp;", "&nbsp",
+				"&copy;", "&notit;", "&apos;", "&#65;", "&#0065;", "&#x41;", "&#X41;", "&#x4a;", "&#;",
+				"&#x;", "&#0;", "&#9;", "&#127;", "&#128;", "&#150;", "&#159;", "&#160;", "&#xD800;",
+				"&#xFFFD;", "&#x1F600;", "&#1114111;", "&#1114112;", "&#99999999;", "&#65", "&#\u0661;" };
+		Random random = new Random(23);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			StringBuilder text = new StringBuilder();
+			int count = random.nextInt(8);
+			for (int j = 0; j < count; j++) {
+				text.append(parts[random.nextInt(parts.length)]);
+			}
+			String txt = text.toString();
+			sb.setLength(0);
+			sb.append("prefix");
+			ExtractingParseObserver.decodeCharEnt(txt, sb);
+			assertEquals("prefix" + ExtractingParseObserver.decodeCharEnt(txt, false), sb.toString(),
+					"Text " + txt + " not decoded as by jsoup");
+		}
+	}
+
 	public void testTrimDataURLs() {
 		String[][] urls = { //
 				{ "data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAA", "data:image/png;base64," }, //
@@ -0,0 +1,41 @@
+package org.archive.resource.html;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HTMLMetaTagScannerTest {
+
+	@Test
+	public void testScan() {
+		String html = "<!DOCTYPE html><html><head>"
+				+ "<!-- <meta name=\"robots\" content=\"commented\"> -->"
+				+ "<META NAME=Robots CONTENT='noindex, nofollow'>"
+				+ "<script>var s = '<meta name=\"x\" content=\"script\">';</script>"
+				+ "<meta http-equiv=\"refresh\" content=\"5; url=http://example.com/ > x\"/>"
+				+ "<meta charset=utf-8>"
+				+ "<title>a > b</title></head><body><p>text</body></html>";
+
+		List<Map<String, String>> metas = HTMLMetaTagScanner.scan(html.getBytes(UTF_8), html.length());
+		assertEquals(3, metas.size());
+		assertEquals("Robots", metas.get(0).get("name"));
+		assertEquals("noindex, nofollow", metas.get(0).get("content"));
+		assertEquals("refresh", metas.get(1).get("http-equiv"));
+		assertEquals("5; url=http://example.com/ > x", metas.get(1).get("content"));
+		assertEquals("utf-8", metas.get(2).get("charset"));
+	}
+
+	@Test
+	public void testTruncated() {
+		String html = "<html><head><meta name=\"robots\" content=\"noindex\"><meta name=\"descr";
+		List<Map<String, String>> metas = HTMLMetaTagScanner.scan(html);
+		assertEquals(1, metas.size());
+		assertTrue(HTMLMetaTagScanner.scan("<html><scr").isEmpty());
+	}
+}
@@ -0,0 +1,169 @@
+package org.archive.util.binsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.archive.util.binsearch.impl.MappedSeekableLineReader;
+import org.archive.util.iterator.CloseableIterator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ByteBufferInputStreamTest {
+
+	/** 16 byte chunks, to cross chunks as files over 1GB do */
+	private final static int CHUNK_SHIFT = 4;
+
+	@TempDir
+	File tempDir;
+
+	private ByteBufferInputStream map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return ByteBufferInputStream.map(raf.getChannel(), MapMode.READ_ONLY, CHUNK_SHIFT);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static int signum(int i) {
+		return Integer.signum(i);
+	}
+
+	@Test
+	public void testAbsoluteAccess() throws IOException {
+		byte[] bytes = new byte[100];
+		new Random(19).nextBytes(bytes);
+		bytes[40] = '\n';
+		bytes[90] = '\n';
+		File file = new File(tempDir, "bytes");
+		Files.write(file.toPath(), bytes);
+		ByteBufferInputStream bbis = map(file);
+
+		for (int i = 0; i < bytes.length; i++) {
+			assertEquals(bytes[i], bbis.get(i));
+		}
+		byte[] copy = new byte[70];
+		bbis.get(13, copy, 0, 70);
+		assertArrayEquals(Arrays.copyOfRange(bytes, 13, 83), copy);
+
+		assertEquals(40, bbis.indexOf((byte) '\n', 0, 100));
+		assertEquals(90, bbis.indexOf((byte) '\n', 41, 100));
+		assertEquals(-1, bbis.indexOf((byte) '\n', 41, 90));
+
+		byte[] key = Arrays.copyOfRange(bytes, 10, 50);
+		assertEquals(0, bbis.compare(10, 50, key));
+		assertTrue(bbis.compare(10, 49, key) < 0);
+		assertTrue(bbis.compare(10, 51, key) > 0);
+		key[35] = (byte) (key[35] + 1);
+		assertEquals(signum((bytes[45] & 0xFF) - (key[35] & 0xFF)), signum(bbis.compare(10, 50, key)));
+
+		// bulk reads across chunks, with the position
+		bbis.position(5);
+		byte[] read = new byte[100];
+		assertEquals(95, bbis.read(read, 0, 100));
+		assertArrayEquals(Arrays.copyOfRange(bytes, 5, 100), Arrays.copyOf(read, 95));
+		assertEquals(100, bbis.position());
+		assertEquals(-1, bbis.read(read, 0, 100));
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		File file = new File(tempDir, "empty");
+		Files.write(file.toPath(), new byte[0]);
+		ByteBufferInputStream bbis = map(file);
+		assertEquals(0, bbis.length());
+		assertEquals(-1, bbis.read());
+
+		MappedSeekableLineReader reader = new MappedSeekableLineReader(bbis, 8192);
+		assertNull(reader.readLine());
+		assertTrue(reader.compareLine("a".getBytes(UTF_8)) > 0);
+	}
+
+	@Test
+	public void testLinesAcrossChunks() throws IOException {
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < 500; i++) {
+			lines.add(String.format(Locale.ROOT, "%05d café %s", i * 2, (i % 7 == 0) ? "long line of a few chunks" : ""));
+		}
+		File file = new File(tempDir, "lines");
+		Files.write(file.toPath(), lines, UTF_8);
+		final ByteBufferInputStream bbis = map(file);
+
+		MappedSeekableLineReader reader = new MappedSeekableLineReader(bbis, 64);
+		for (String line : lines) {
+			assertTrue(reader.compareLine(line.getBytes(UTF_8)) == 0);
+			assertEquals(line, reader.readLine());
+		}
+		assertNull(reader.readLine());
+		reader.close();
+
+		SortedTextFile sorted = new SortedTextFile(new SeekableLineReaderFactory() {
+			public SeekableLineReader get() throws IOException {
+				return new MappedSeekableLineReader(bbis, 64);
+			}
+			public void close() {
+			}
+			public long getModTime() {
+				return 0;
+			}
+			public void reload() {
+			}
+		});
+		sorted.setBinsearchBlockSize(64);
+		for (int i = 0; i < 1001; i++) {
+			String key = String.format(Locale.ROOT, "%05d", i);
+			CloseableIterator<String> itr = sorted.getRecordIterator(key);
+			if (i >= 999) {
+				assertFalse(itr.hasNext());
+			} else {
+				assertEquals(lines.get((i + 1) / 2), itr.next());
+			}
+			itr.close();
+			itr = sorted.getRecordIteratorLT(key);
+			assertEquals(lines.get(Math.max(0, (i - 1) / 2)), itr.next());
+			itr.close();
+		}
+		assertEquals(lines.get(0), sorted.getRange("", "")[0]);
+		assertEquals(lines.get(lines.size() - 1), sorted.getRange("", "")[1]);
+	}
+
+	@Test
+	public void testLineEnds() throws IOException {
+		File file = new File(tempDir, "crlf");
+		Files.write(file.toPath(), "a\r\n\nb\nc\r\nlast".getBytes(UTF_8));
+		MappedSeekableLineReader reader = new MappedSeekableLineReader(map(file), 8192);
+		assertEquals("a", reader.readLine());
+		assertEquals("", reader.readLine());
+		assertEquals(4, reader.getOffset());
+		assertTrue(reader.compareLine("a".getBytes(UTF_8)) > 0);
+		assertEquals(0, reader.compareLine("b".getBytes(UTF_8)));
+		assertTrue(reader.compareLine("bb".getBytes(UTF_8)) < 0);
+		reader.skipLine();
+		assertEquals("c", reader.readLine());
+		assertEquals("last", reader.readLine());
+		assertNull(reader.readLine());
+
+		// bounded
+		reader.seekWithMaxRead(3, false, 4);
+		assertEquals("", reader.readLine());
+		assertEquals("b", reader.readLine());
+		assertEquals("c", reader.readLine());
+		assertNull(reader.readLine());
+	}
+}
@@ -2,19 +2,31 @@ package org.archive.util.binsearch;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
 
+import org.archive.format.cdx.CDXFile;
+import org.archive.util.binsearch.impl.GZIPIndexedSeekableLineReaderFactory;
+import org.archive.util.binsearch.impl.MappedSeekableLineReaderFactory;
+import org.archive.util.binsearch.impl.NIOSeekableLineReaderFactory;
+import org.archive.util.binsearch.impl.NIOSeekableLineReaderFactory.NIOType;
 import org.archive.util.binsearch.impl.RandomAccessFileSeekableLineReaderFactory;
 import org.archive.util.iterator.CloseableIterator;
+import org.archive.util.zip.GZIPSeekIndex;
 import org.junit.jupiter.api.Test;
 
+import com.google.common.io.Files;
+
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SortedTextFileTest {
 
@@ -63,6 +75,194 @@ public class SortedTextFileTest {
 //		test.delete();
 	}
 
+	@Test
+	public void testMidpointCache() throws IOException {
+		File test = File.createTempFile("test", null);
+		int max = 100000;
+		createFile(test,max);
+		RandomAccessFileSeekableLineReaderFactory factory = 
+			new RandomAccessFileSeekableLineReaderFactory(test);
+		SortedTextFile ff = new SortedTextFile(factory);
+		MidpointCache cache = new MidpointCache(64);
+		ff.setMidpointCache(cache);
+
+		checkFirst(ff,false,formatS(12355),formatS(12355));
+		long misses = cache.getMissCount();
+		assertTrue(misses > 0);
+		assertTrue(cache.size() <= 64);
+
+		checkFirst(ff,false,formatS(12355),formatS(12355));
+		checkFirst(ff,true,formatS(12355),formatS(12354));
+		checkFirst(ff,false,formatS(max-1),formatS(max-1));
+		checkFirst(ff,false,formatS(max),null);
+		assertTrue(cache.getHitCount() > 0);
+
+		// file changes size: cached probe lines must not be used
+		createFile(test,max / 2);
+		checkFirst(ff,false,formatS(max-1),null);
+		checkFirst(ff,true,formatS(max-1),formatS((max / 2) - 1));
+
+		ff.reloadFactory();
+		assertEquals(0, cache.size());
+		checkFirst(ff,false,formatS(12355),formatS(12355));
+		test.delete();
+	}
+
+	@Test
+	public void testMidpointCacheMapped() throws IOException {
+		File test = File.createTempFile("test", null);
+		createFile(test,100000);
+		MappedSeekableLineReaderFactory factory = new MappedSeekableLineReaderFactory(test, 8192);
+		SortedTextFile ff = new SortedTextFile(factory);
+		MidpointCache cache = new MidpointCache(64);
+		ff.setMidpointCache(cache);
+
+		// searched on the bytes of the mapping, the cache is not used
+		checkFirst(ff,false,formatS(12355),formatS(12355));
+		checkFirst(ff,true,formatS(12355),formatS(12354));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getMissCount());
+		factory.close();
+		test.delete();
+	}
+
+	@Test
+	public void testMidpointCacheModTime() throws IOException {
+		File test = File.createTempFile("test", null);
+		int max = 100000;
+		createFile(test,max);
+		RandomAccessFileSeekableLineReaderFactory factory = 
+			new RandomAccessFileSeekableLineReaderFactory(test);
+		SortedTextFile ff = new SortedTextFile(factory);
+		MidpointCache cache = new MidpointCache(64);
+		ff.setMidpointCache(cache);
+		ff.setModTimeCheckInterval(0);
+
+		checkFirst(ff,false,formatS(12355),formatS(12355));
+		assertTrue(cache.size() > 0);
+
+		// rewritten with the same size: seen by the mod time
+		PrintWriter pw = new PrintWriter(test, UTF_8.name());
+		for(int i = 0; i < max; i++) {
+			pw.println(formatS(max + i));
+		}
+		pw.close();
+		test.setLastModified(test.lastModified() + 10000);
+		checkFirst(ff,false,formatS(max + 12355),formatS(max + 12355));
+
+		// readers not got from the file are not cached
+		cache.invalidateAll();
+		SeekableLineReader slr = factory.get();
+		ff.binaryFindOffset(slr, formatS(max + 12355), SortedTextFile.defaultComparator);
+		slr.close();
+		assertEquals(0, cache.size());
+		test.delete();
+	}
+
+	@Test
+	public void testReaders() throws IOException {
+		File test = File.createTempFile("test", null);
+		int max = 100000;
+		createFile(test,max);
+		SeekableLineReaderFactory[] factories = {
+			new RandomAccessFileSeekableLineReaderFactory(test),
+			new NIOSeekableLineReaderFactory(test, 8192, NIOType.PLAIN),
+			new NIOSeekableLineReaderFactory(test, 8192, NIOType.MMAP),
+			new MappedSeekableLineReaderFactory(test, 8192),
+		};
+		for (SeekableLineReaderFactory factory : factories) {
+			SortedTextFile ff = new SortedTextFile(factory);
+			checkFirst(ff,true,formatS(0),formatS(0));
+			checkFirst(ff,false,formatS(1),formatS(1));
+			checkFirst(ff,false,formatS(12355),formatS(12355));
+			checkFirst(ff,true,formatS(12355),formatS(12354));
+			checkFirst(ff,true,formatS(max-1),formatS(max-2));
+			checkFirst(ff,false,formatS(max),null);
+			checkFirst(ff,true,formatS(max+1),formatS(max-1));
+			checkFirst(ff,false,"0012355x",formatS(12356));
+			checkFirst(ff,true,"0012355x",formatS(12355));
+
+			String[] range = ff.getRange("", "");
+			assertEquals(formatS(0), range[0]);
+			assertEquals(formatS(max-1), range[1]);
+			factory.close();
+		}
+		test.delete();
+	}
+
+	@Test
+	public void testSmallFile() throws IOException {
+		File test = File.createTempFile("test", null);
+		createFile(test,3);
+		SeekableLineReaderFactory[] factories = {
+			new RandomAccessFileSeekableLineReaderFactory(test),
+			new MappedSeekableLineReaderFactory(test, 8192),
+		};
+		for (SeekableLineReaderFactory factory : factories) {
+			SortedTextFile ff = new SortedTextFile(factory);
+			String[] range = ff.getRange("", "");
+			assertEquals(formatS(0), range[0]);
+			assertEquals(formatS(2), range[1]);
+			checkFirst(ff,false,formatS(1),formatS(1));
+			factory.close();
+		}
+		test.delete();
+	}
+
+	@Test
+	public void testMappedReadersIndependent() throws IOException {
+		File test = File.createTempFile("test", null);
+		createFile(test,1000);
+		MappedSeekableLineReaderFactory factory = new MappedSeekableLineReaderFactory(test, 8192);
+		SeekableLineReader a = factory.get();
+		SeekableLineReader b = factory.get();
+		a.seek(0);
+		b.seek(8 * 500);
+		assertEquals(formatS(0), a.readLine());
+		assertEquals(formatS(500), b.readLine());
+		assertEquals(formatS(1), a.readLine());
+		assertEquals(formatS(501), b.readLine());
+		a.close();
+		b.close();
+		factory.close();
+		test.delete();
+	}
+
+	@Test
+	public void testGZIPIndexed() throws IOException {
+		File plain = File.createTempFile("test", null);
+		int max = 100000;
+		createFile(plain,max);
+		File test = File.createTempFile("test", ".gz");
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(test));
+		Files.copy(plain, out);
+		out.close();
+		File indexFile = GZIPSeekIndex.getIndexFile(test);
+		GZIPSeekIndex.build(test, 16 * 1024).write(indexFile);
+
+		GZIPIndexedSeekableLineReaderFactory factory =
+			new GZIPIndexedSeekableLineReaderFactory(test, indexFile, 8192);
+		SortedTextFile ff = new SortedTextFile(factory);
+		checkFirst(ff,true,formatS(0),formatS(0));
+		checkFirst(ff,false,formatS(12355),formatS(12355));
+		checkFirst(ff,true,formatS(12355),formatS(12354));
+		checkFirst(ff,true,formatS(max-1),formatS(max-2));
+		checkFirst(ff,false,formatS(max),null);
+		checkFirst(ff,true,formatS(max+1),formatS(max-1));
+
+		// picked up by CDXFile, instead of decoding to a temporary file
+		SeekableLineReaderFactory uriFactory = CDXFile.getUriFactory(test.getPath(), true);
+		assertTrue(uriFactory instanceof GZIPIndexedSeekableLineReaderFactory);
+		checkFirst(new CDXFile(uriFactory),false,formatS(54321),formatS(54321));
+		uriFactory.close();
+
+		factory.close();
+		assertEquals(test.lastModified(), factory.getModTime());
+		test.delete();
+		indexFile.delete();
+		plain.delete();
+	}
+
 	private void checkFirst(SortedTextFile stf, boolean lt, String key, String want) throws IOException {
 		CloseableIterator<String> itr = stf.getRecordIterator(key, lt);
 		if(want == null) {
@@ -0,0 +1,305 @@
+package org.archive.util.binsearch.impl.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.binsearch.SortedTextFile;
+import org.archive.util.binsearch.impl.HTTPSeekableLineReader.BadHttpStatusException;
+import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory;
+import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory.HttpLibs;
+import org.archive.util.iterator.CloseableIterator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import com.google.common.io.ByteStreams;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ApacheHttp43PooledSLRTest {
+
+	private final static int LINES = 20000;
+
+	private byte[] data;
+	private HttpServer server;
+	private String url;
+	private HTTPSeekableLineReaderFactory factory;
+
+	private final Set<Object> connections = Collections.synchronizedSet(
+			Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
+	private final AtomicInteger requests = new AtomicInteger();
+
+	/**
+	 * Serves data, and ranges of it
+	 */
+	class RangeHandler implements HttpRequestHandler {
+		@Override
+		public void handle(HttpRequest request, HttpResponse response, HttpContext context)
+				throws HttpException, IOException {
+			connections.add(context.getAttribute(HttpCoreContext.HTTP_CONNECTION));
+			requests.incrementAndGet();
+
+			if (request.getRequestLine().getUri().equals("/moved")) {
+				response.setStatusCode(302);
+				response.setHeader("Location", "/data");
+				return;
+			}
+
+			// empty ranges, of unknown size
+			if (request.getRequestLine().getUri().equals("/empty")) {
+				response.setStatusCode(206);
+				response.setHeader("Content-Range", "bytes */*");
+				response.setEntity(new ByteArrayEntity(new byte[0]));
+				return;
+			}
+
+			// ranges not supported, and the whole data chunked
+			if (request.getRequestLine().getUri().equals("/chunked")) {
+				response.setEntity(new InputStreamEntity(new ByteArrayInputStream(data), -1));
+				return;
+			}
+
+			// same data, with its length only in the Content-Range of the first byte
+			boolean noSize = request.getRequestLine().getUri().equals("/nosize");
+
+			if (!request.getRequestLine().getUri().equals("/data") && !noSize) {
+				response.setStatusCode(404);
+				return;
+			}
+
+			String range = (request.getFirstHeader("Range") == null) ? null
+					: request.getFirstHeader("Range").getValue();
+
+			if (range == null) {
+				response.setEntity(new ByteArrayEntity(data));
+				return;
+			}
+
+			String[] startEnd = range.substring("bytes=".length()).split("-", -1);
+			int start = Integer.parseInt(startEnd[0]);
+			int end = startEnd[1].isEmpty() ? data.length - 1
+					: Math.min(Integer.parseInt(startEnd[1]), data.length - 1);
+
+			if (start >= data.length) {
+				response.setStatusCode(416);
+				response.setHeader("Content-Range", "bytes */" + data.length);
+				return;
+			}
+
+			response.setStatusCode(206);
+			response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + ((noSize && (end > 0)) ? "*" : data.length));
+			response.setEntity(new ByteArrayEntity(Arrays.copyOfRange(data, start, end + 1)));
+		}
+	}
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (int i = 0; i < LINES; i++) {
+			bytes.write(String.format(Locale.ROOT, "%08d some value\n", i * 2).getBytes(UTF_8));
+		}
+		data = bytes.toByteArray();
+
+		server = ServerBootstrap.bootstrap()
+				.setLocalAddress(InetAddress.getLoopbackAddress())
+				.setListenerPort(0)
+				.registerHandler("*", new RangeHandler())
+				.create();
+		server.start();
+		url = "http://localhost:" + server.getLocalPort() + "/data";
+
+		factory = HTTPSeekableLineReaderFactory.getHttpFactory(HttpLibs.APACHE_43_POOLED, url);
+		factory.setSocketTimeoutMS(10000);
+		factory.setConnectionTimeoutMS(10000);
+	}
+
+	@AfterEach
+	public void tearDown() throws IOException {
+		factory.close();
+		server.shutdown(1, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testBinarySearch() throws IOException {
+		SortedTextFile sorted = new SortedTextFile(factory);
+		sorted.setBinsearchBlockSize(4096);
+		for (int i = 0; i < 200; i += 7) {
+			String key = String.format(Locale.ROOT, "%08d", i * 97);
+			CloseableIterator<String> itr = sorted.getRecordIterator(key);
+			int expected = ((i * 97) + 1) / 2;
+			assertEquals(String.format(Locale.ROOT, "%08d some value", expected * 2), itr.next());
+			assertEquals(String.format(Locale.ROOT, "%08d some value", (expected + 1) * 2), itr.next());
+			itr.close();
+		}
+		assertTrue(requests.get() > 100);
+		assertEquals(1, connections.size());
+	}
+
+	@Test
+	public void testReadAhead() throws IOException {
+		SeekableLineReader reader = factory.get();
+		assertEquals(data.length, reader.getSize());
+		reader.seek(data.length / 3);
+		ByteArrayOutputStream rest = new ByteArrayOutputStream();
+		ByteStreams.copy(reader.getInputStream(), rest);
+		assertArrayEquals(Arrays.copyOfRange(data, data.length / 3, data.length), rest.toByteArray());
+		reader.close();
+
+		reader = factory.get();
+		reader.seek(data.length);
+		assertNull(reader.readLine());
+		reader.close();
+		assertEquals(1, connections.size());
+	}
+
+	@Test
+	public void testBufferFully() throws IOException {
+		for (int i = 0; i < 50; i++) {
+			SeekableLineReader reader = factory.get();
+			reader.setBufferFully(true);
+			reader.seekWithMaxRead(i * 20, false, 20);
+			assertEquals(String.format(Locale.ROOT, "%08d some value", i * 2), reader.readLine());
+			assertNull(reader.readLine());
+			reader.close();
+		}
+		assertEquals(50, requests.get());
+		assertEquals(1, connections.size());
+	}
+
+	@Test
+	public void testRedirect() throws IOException {
+		SeekableLineReader reader = factory.get(url.replace("/data", "/moved"));
+		reader.seekWithMaxRead(20, false, 40);
+		assertEquals(String.format(Locale.ROOT, "%08d some value", 2), reader.readLine());
+		reader.close();
+	}
+
+	@Test
+	public void testNoKeepAlive() throws IOException {
+		for (int i = 0; i < 5; i++) {
+			ApacheHttp43PooledSLR reader = (ApacheHttp43PooledSLR) factory.get();
+			reader.setNoKeepAlive(true);
+			reader.seekWithMaxRead(0, false, 20);
+			reader.readLine();
+			reader.close();
+		}
+		assertEquals(5, connections.size());
+	}
+
+	@Test
+	public void testIdleEviction() throws Exception {
+		((ApacheHttp43PooledSLRFactory) factory).setIdleTimeoutMS(100);
+		SeekableLineReader reader = factory.get();
+		reader.seekWithMaxRead(0, false, 20);
+		reader.readLine();
+		reader.close();
+		Thread.sleep(300);
+		reader = factory.get();
+		reader.seekWithMaxRead(0, false, 20);
+		reader.readLine();
+		reader.close();
+		assertEquals(2, connections.size());
+	}
+
+	@Test
+	public void testPoolSettings() throws IOException {
+		ApacheHttp43PooledSLRFactory pooled = (ApacheHttp43PooledSLRFactory) factory;
+		SeekableLineReader reader = factory.get();
+		reader.seekWithMaxRead(0, false, 20);
+		reader.close();
+
+		// applied to the pool already in use
+		pooled.setMaxTotalConnections(7);
+		pooled.setMaxHostConnections(3);
+		pooled.setStaleChecking(true);
+		assertEquals(7, pooled.getPool().getMaxTotal());
+		assertEquals(3, pooled.getPool().getDefaultMaxPerRoute());
+		assertTrue(pooled.getPool().getValidateAfterInactivity() > 0);
+		pooled.setStaleChecking(false);
+		assertEquals(0, pooled.getPool().getValidateAfterInactivity());
+	}
+
+	@Test
+	public void testSizeKeepsResponse() throws IOException {
+		SeekableLineReader reader = factory.get(url.replace("/data", "/nosize"));
+		reader.seekWithMaxRead(20, false, 20);
+		// the size is requested, but the headers are still those of the seek
+		assertEquals(data.length, reader.getSize());
+		assertEquals("bytes 20-39/*",
+				((ApacheHttp43PooledSLR) reader).getHeaderValue("Content-Range"));
+		assertEquals(String.format(Locale.ROOT, "%08d some value", 2), reader.readLine());
+		reader.close();
+	}
+
+	@Test
+	public void testEmptyRange() throws IOException {
+		SeekableLineReader reader = factory.get(url.replace("/data", "/empty"));
+		reader.seek(0);
+		// not requested again for the same offset
+		assertNull(reader.readLine());
+		assertEquals(1, requests.get());
+		reader.close();
+	}
+
+	@Test
+	public void testChunkedPastEnd() throws IOException {
+		SeekableLineReader reader = factory.get(url.replace("/data", "/chunked"));
+		reader.seek(data.length + 10);
+		assertNull(reader.readLine());
+		reader.close();
+
+		reader = factory.get(url.replace("/data", "/chunked"));
+		reader.seek(20);
+		assertEquals(String.format(Locale.ROOT, "%08d some value", 2), reader.readLine());
+		reader.close();
+	}
+
+	@Test
+	public void testNotFound() throws IOException {
+		final SeekableLineReader missing = factory.get(url.replace("/data", "/none"));
+		BadHttpStatusException e = assertThrows(BadHttpStatusException.class, new Executable() {
+			@Override
+			public void execute() throws Throwable {
+				missing.seek(0);
+			}
+		});
+		assertEquals(404, e.getStatus());
+		missing.close();
+
+		SeekableLineReader reader;
+
+		// the connection is still usable
+		reader = factory.get();
+		reader.seekWithMaxRead(0, false, 20);
+		assertEquals(String.format(Locale.ROOT, "%08d some value", 0), reader.readLine());
+		reader.close();
+		assertEquals(1, connections.size());
+	}
+}
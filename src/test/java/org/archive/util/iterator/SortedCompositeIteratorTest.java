@@ -7,13 +7,22 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SortedCompositeIteratorTest {
@@ -56,4 +65,153 @@ public class SortedCompositeIteratorTest {
 		b.delete();
 	}
 
+	private static final Comparator<String> PLAIN = new Comparator<String>() {
+		public int compare(String o1, String o2) {
+			return o1.compareTo(o2);
+		}
+	};
+
+	private static List<String> drain(Iterator<String> itr) {
+		List<String> result = new ArrayList<String>();
+		while(itr.hasNext()) {
+			result.add(itr.next());
+		}
+		return result;
+	}
+
+	private static List<List<String>> makeInputs(int k, Random random) {
+		List<List<String>> inputs = new ArrayList<List<String>>();
+		for(int i = 0; i < k; i++) {
+			List<String> input = new ArrayList<String>();
+			int size = random.nextInt(20);
+			for(int j = 0; j < size; j++) {
+				// short strings sharing prefixes, some equal, some 4 chars or less
+				StringBuilder sb = new StringBuilder("com,");
+				sb.setLength(random.nextInt(5));
+				int extra = random.nextInt(4);
+				for(int c = 0; c < extra; c++) {
+					sb.append((char) ('a' + random.nextInt(3)));
+				}
+				input.add(sb.toString());
+			}
+			inputs.add(input);
+		}
+		return inputs;
+	}
+
+	@Test
+	public void testMerge() {
+		Random random = new Random(17);
+		for(int k : new int[] {1, 2, 3, 5, 8, 13, 64, 100}) {
+			for(int round = 0; round < 10; round++) {
+				List<List<String>> inputs = makeInputs(k, random);
+				List<String> expected = new ArrayList<String>();
+				List<String> reverseExpected = new ArrayList<String>();
+				for(List<String> input : inputs) {
+					expected.addAll(input);
+				}
+				reverseExpected.addAll(expected);
+				Collections.sort(expected);
+				Collections.sort(reverseExpected, Collections.reverseOrder());
+
+				for(Comparator<String> comparator : Arrays.<Comparator<String>>asList(PLAIN, StringPrefixComparator.NATURAL)) {
+					SortedCompositeIterator<String> sci = new SortedCompositeIterator<String>(comparator);
+					for(List<String> input : inputs) {
+						Collections.sort(input);
+						sci.addIterator(input.iterator());
+					}
+					assertEquals(expected, drain(sci));
+				}
+
+				SortedCompositeIterator<String> sci = new SortedCompositeIterator<String>(StringPrefixComparator.REVERSE);
+				for(List<String> input : inputs) {
+					Collections.sort(input, Collections.reverseOrder());
+					sci.addIterator(input.iterator());
+				}
+				assertEquals(reverseExpected, drain(sci));
+			}
+		}
+	}
+
+	@Test
+	public void testStable() {
+		// equal elements come in the order their iterators were added
+		final Comparator<String> firstChar = new Comparator<String>() {
+			public int compare(String o1, String o2) {
+				return o1.charAt(0) - o2.charAt(0);
+			}
+		};
+		SortedCompositeIterator<String> sci = new SortedCompositeIterator<String>(firstChar);
+		sci.addIterator(Arrays.asList("a1", "b1", "c1").iterator());
+		sci.addIterator(Arrays.asList("a2", "a2'", "c2").iterator());
+		sci.addIterator(Arrays.asList("b3", "c3").iterator());
+		assertEquals(Arrays.asList("a1", "a2", "a2'", "b1", "b3", "c1", "c2", "c3"), drain(sci));
+	}
+
+	@Test
+	public void testAddWhileIterating() {
+		SortedCompositeIterator<String> sci = new SortedCompositeIterator<String>(StringPrefixComparator.NATURAL);
+		sci.addIterator(Arrays.asList("a", "c", "e", "g").iterator());
+		sci.addIterator(Arrays.asList("b").iterator());
+		sci.addIterator(Collections.<String>emptyList().iterator());
+		assertEquals("a", sci.next());
+		assertEquals("b", sci.next());
+		sci.addIterator(Arrays.asList("d", "f").iterator());
+		assertEquals(Arrays.asList("c", "d", "e", "f", "g"), drain(sci));
+		assertFalse(sci.hasNext());
+		sci.addIterator(Arrays.asList("z").iterator());
+		assertEquals(Arrays.asList("z"), drain(sci));
+	}
+
+	@Test
+	public void testNullElement() {
+		final SortedCompositeIterator<String> sci = new SortedCompositeIterator<String>(PLAIN);
+		sci.addIterator(Arrays.asList("a", "c").iterator());
+		sci.addIterator(Arrays.asList("b", null, "d").iterator());
+		assertEquals("a", sci.next());
+		assertThrows(NullPointerException.class, new Executable() {
+			@Override
+			public void execute() throws Throwable {
+				sci.next();
+			}
+		});
+	}
+
+	static class CountingIterator extends AbstractPeekableIterator<String> {
+		Iterator<String> inner;
+		int closed = 0;
+
+		CountingIterator(String... values) {
+			inner = Arrays.asList(values).iterator();
+		}
+
+		@Override
+		public String getNextInner() {
+			return inner.hasNext() ? inner.next() : null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed++;
+		}
+	}
+
+	@Test
+	public void testClose() throws IOException {
+		CountingIterator a = new CountingIterator("a", "b");
+		CountingIterator b = new CountingIterator("c", "d");
+		CountingIterator c = new CountingIterator("e");
+		SortedCompositeIterator<String> sci = new SortedCompositeIterator<String>(PLAIN);
+		sci.addIterator(a);
+		sci.addIterator(b);
+		assertEquals("a", sci.next());
+		assertEquals("b", sci.next());
+		// closed once exhausted
+		assertEquals(1, a.closed);
+		sci.addIterator(c);
+		sci.close();
+		assertEquals(1, a.closed);
+		assertEquals(1, b.closed);
+		assertEquals(1, c.closed);
+	}
 }
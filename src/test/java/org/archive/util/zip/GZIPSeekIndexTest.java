@@ -0,0 +1,187 @@
+package org.archive.util.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.io.ByteStreams;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GZIPSeekIndexTest {
+
+    @TempDir
+    File tempDir;
+
+    private static byte[] cdxLines(int count, Random random) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            lines.append(String.format(Locale.ROOT,
+                    "org,example)/page/%d?q=%d 2024%010d http://example.org/page/%d text/html 200 %08X - - %d %d file-%d.warc.gz\n",
+                    i, random.nextInt(1000), random.nextInt(1000000000), i, random.nextInt(),
+                    random.nextInt(5000), random.nextInt(100000000), random.nextInt(100)));
+        }
+        return lines.toString().getBytes(UTF_8);
+    }
+
+    private static byte[] gzip(byte[] data, int level) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final int deflateLevel = level;
+        GZIPOutputStream gzos = new GZIPOutputStream(bytes) {
+            {
+                def.setLevel(deflateLevel);
+            }
+        };
+        gzos.write(data);
+        gzos.close();
+        return bytes.toByteArray();
+    }
+
+    private File write(String name, byte[]... parts) throws IOException {
+        File file = new File(tempDir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        out.close();
+        return file;
+    }
+
+    private void checkReads(File gz, byte[] data, GZIPSeekIndex index, Random random) throws IOException {
+        assertEquals(data.length, index.getUncompressedSize());
+        assertEquals(gz.length(), index.getCompressedSize());
+        RandomAccessFile raf = new RandomAccessFile(gz, "r");
+        try {
+            for (int i = 0; i < 200; i++) {
+                int offset = random.nextInt(data.length);
+                int len = Math.min(random.nextInt(5000), data.length - offset);
+                InputStream is = index.open(raf, offset);
+                byte[] read = new byte[len];
+                ByteStreams.readFully(is, read);
+                assertArrayEquals(Arrays.copyOfRange(data, offset, offset + len), read);
+            }
+            // to the end, across members
+            InputStream is = index.open(raf, data.length - 100000);
+            assertArrayEquals(Arrays.copyOfRange(data, data.length - 100000, data.length),
+                    ByteStreams.toByteArray(is));
+            assertEquals(-1, index.open(raf, data.length).read());
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void testPrimer() throws Exception {
+        // the crafted block must inflate to nothing, aligning the next bits
+        for (int bit = 0; bit < 8; bit++) {
+            byte[] data = "aligned data".getBytes(UTF_8);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] deflated = new byte[100];
+            int len = deflater.deflate(deflated);
+            deflater.end();
+
+            byte[] primer = GZIPSeekIndex.primer(bit);
+            // shift the deflated block by bit
+            byte[] input = Arrays.copyOf(primer, primer.length + len + 1);
+            int pos = (primer.length * 8) - ((bit == 0) ? 0 : (8 - bit));
+            for (int i = 0; i < len * 8; i++, pos++) {
+                if ((deflated[i >>> 3] & (1 << (i & 7))) != 0) {
+                    input[pos >>> 3] |= 1 << (pos & 7);
+                }
+            }
+            java.util.zip.Inflater inflater = new java.util.zip.Inflater(true);
+            inflater.setInput(input);
+            byte[] out = new byte[100];
+            int amt = inflater.inflate(out);
+            inflater.end();
+            assertEquals("aligned data", new String(out, 0, amt, UTF_8));
+        }
+    }
+
+    @Test
+    public void testSingleMember() throws IOException {
+        Random random = new Random(22);
+        byte[] data = cdxLines(40000, random);
+        for (int level : new int[] {1, 6, 9}) {
+            File gz = write("single.cdx.gz", gzip(data, level));
+            GZIPSeekIndex index = GZIPSeekIndex.build(gz, 64 * 1024);
+            assertTrue(index.getCheckpointCount() > 20);
+            Set<Integer> bits = new HashSet<Integer>();
+            for (long offset = 0; offset < data.length; offset += 1024) {
+                bits.add(index.find(offset).bit);
+            }
+            // block checkpoints at several bit offsets, and the member start
+            assertTrue(bits.contains(-1));
+            assertTrue(bits.size() > 4);
+            checkReads(gz, data, index, random);
+
+            File indexFile = GZIPSeekIndex.getIndexFile(gz);
+            index.write(indexFile);
+            GZIPSeekIndex read = GZIPSeekIndex.read(indexFile);
+            assertEquals(index.getCheckpointCount(), read.getCheckpointCount());
+            assertTrue(read.isIndexOf(gz));
+            checkReads(gz, data, read, random);
+        }
+    }
+
+    @Test
+    public void testMembers() throws IOException {
+        Random random = new Random(23);
+        byte[] a = cdxLines(5000, random);
+        byte[] b = new byte[300000];
+        random.nextBytes(b);
+        byte[] c = cdxLines(20000, random);
+        byte[] empty = new byte[0];
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        data.write(a);
+        data.write(b);
+        data.write(c);
+        File gz = write("members.gz", gzip(a, 6), gzip(b, 6), gzip(empty, 6), gzip(c, 6));
+        GZIPSeekIndex index = GZIPSeekIndex.build(gz, 100000);
+        checkReads(gz, data.toByteArray(), index, random);
+    }
+
+    @Test
+    public void testIsIndexOf() throws IOException {
+        Random random = new Random(24);
+        byte[] data = cdxLines(20000, random);
+        File gz = write("index-of.gz", gzip(data, 6));
+        GZIPSeekIndex index = GZIPSeekIndex.build(gz, 64 * 1024);
+        assertTrue(index.isIndexOf(gz));
+
+        // same size, different content at either end
+        byte[] bytes = Files.readAllBytes(gz.toPath());
+        bytes[bytes.length - 1] ^= 1;
+        assertFalse(index.isIndexOf(write("index-of-tail.gz", bytes)));
+        bytes[bytes.length - 1] ^= 1;
+        bytes[20] ^= 1;
+        assertFalse(index.isIndexOf(write("index-of-head.gz", bytes)));
+        bytes[20] ^= 1;
+        assertTrue(index.isIndexOf(write("index-of-copy.gz", bytes)));
+
+        // small file, shorter than a window
+        File small = write("small.gz", gzip(cdxLines(10, random), 6));
+        assertTrue(GZIPSeekIndex.build(small, 64 * 1024).isIndexOf(small));
+    }
+}